@@ -19,37 +19,90 @@ public class Arm
   // INNER TYPES
 
   /**
-   * Denotes the "Current Program Status Register" (CPSR).
+   * Denotes the "Current Program Status Register" (CPSR), held as a packed
+   * 32-bit value.
    */
   static class Cpsr
   {
-    // VARIABLES
+    // CONSTANTS
+
+    private static final int N = 1 << 31;
+    private static final int Z = 1 << 30;
+    private static final int C = 1 << 29;
+    private static final int V = 1 << 28;
+    private static final int Q = 1 << 27;
+    private static final int J = 1 << 24;
+    private static final int E = 1 << 9;
+    private static final int A = 1 << 8;
+    private static final int I = 1 << 7;
+    private static final int F = 1 << 6;
+    private static final int T = 1 << 5;
+
+    private static final int IT_LOW_MASK = 0x03 << 25;
+    private static final int IT_HIGH_MASK = 0xFC << 8;
+    private static final int GE_MASK = 0x0F << 16;
+    private static final int MODE_MASK = 0x1F;
+    // bits 23..20 are not implemented, and always read as zero...
+    private static final int VALUE_MASK = ~(0x0F << 20);
+
+    private static final int NONE = 0;
+    private static final int RESULT = 1;
+    private static final int ADD = 2;
+    private static final int SUB = 3;
 
-    boolean n; // 31
-    boolean z; // 30
-    boolean c; // 29
-    boolean v; // 28
-    boolean q; // 27
-
-    int it; // 26, 25 & 15..10
+    // VARIABLES
 
-    boolean j; // 24
+    private int value;
 
-    // padding 23..20
+    // Lazily evaluated N & Z flags, see materializeNZ()
+    private int nzOp;
+    private int nzA;
+    private int nzB;
+    // Lazily evaluated C & V flags, see materializeCV()
+    private int cvOp;
+    private int cvA;
+    private int cvB;
 
-    int ge; // 19..16
+    // METHODS
 
-    boolean E; // 9
-    boolean A; // 8
-    boolean I; // 7
-    boolean F; // 6
-    boolean t; // 5
+    /**
+     * Returns whether the given condition passes for the current flags.
+     * 
+     * @param aCond
+     *          the 4-bit condition code.
+     * @return <code>true</code> if the condition passes, <code>false</code>
+     *         otherwise.
+     */
+    boolean conditionPassed(int aCond)
+    {
+      materializeNZ();
+      materializeCV();
+      return ((CONDITION_TABLE[aCond] >>> (this.value >>> 28)) & 1) != 0;
+    }
 
-    // 5-bits mode
+    /**
+     * @return the GE-flags (bits 19..16).
+     */
+    int getGE()
+    {
+      return (this.value & GE_MASK) >>> 16;
+    }
 
-    int mode; // 4..0
+    /**
+     * @return the IT-bits (bits 26, 25 & 15..10).
+     */
+    int getIT()
+    {
+      return ((this.value & IT_HIGH_MASK) >>> 8) | ((this.value & IT_LOW_MASK) >>> 25);
+    }
 
-    // METHODS
+    /**
+     * @return the processor mode (bits 4..0).
+     */
+    int getMode()
+    {
+      return this.value & MODE_MASK;
+    }
 
     /**
      * Returns the value of the CPSR as 32-bit value.
@@ -58,23 +111,267 @@ public class Arm
      */
     int getValue()
     {
-      long result = 0;
-      result |= (this.n ? (1L << 31) : 0);
-      result |= (this.z ? (1L << 30) : 0);
-      result |= (this.c ? (1L << 29) : 0);
-      result |= (this.v ? (1L << 28) : 0);
-      result |= (this.q ? (1L << 27) : 0);
-      result |= ((this.it & 0x03) << 25);
-      result |= (this.j ? (1L << 24) : 0);
-      result |= ((this.ge & 0x0F) << 16);
-      result |= ((this.it & 0xFC) << 8);
-      result |= (this.E ? (1L << 9) : 0);
-      result |= (this.A ? (1L << 8) : 0);
-      result |= (this.I ? (1L << 7) : 0);
-      result |= (this.F ? (1L << 6) : 0);
-      result |= (this.t ? (1L << 5) : 0);
-      result |= (this.mode & 0x1F);
-      return (int) (result & 0xFFFFFFFF);
+      materializeNZ();
+      materializeCV();
+      return this.value;
+    }
+
+    /**
+     * @return the imprecise abort disable (A) bit.
+     */
+    boolean isA()
+    {
+      return (this.value & A) != 0;
+    }
+
+    /**
+     * @return the carry (C) flag.
+     */
+    boolean isC()
+    {
+      materializeCV();
+      return (this.value & C) != 0;
+    }
+
+    /**
+     * @return the endianness (E) bit.
+     */
+    boolean isE()
+    {
+      return (this.value & E) != 0;
+    }
+
+    /**
+     * @return the FIQ disable (F) bit.
+     */
+    boolean isF()
+    {
+      return (this.value & F) != 0;
+    }
+
+    /**
+     * @return the IRQ disable (I) bit.
+     */
+    boolean isI()
+    {
+      return (this.value & I) != 0;
+    }
+
+    /**
+     * @return the Jazelle (J) bit.
+     */
+    boolean isJ()
+    {
+      return (this.value & J) != 0;
+    }
+
+    /**
+     * @return the negative (N) flag.
+     */
+    boolean isN()
+    {
+      materializeNZ();
+      return (this.value & N) != 0;
+    }
+
+    /**
+     * @return the saturation (Q) flag.
+     */
+    boolean isQ()
+    {
+      return (this.value & Q) != 0;
+    }
+
+    /**
+     * @return the THUMB (T) bit.
+     */
+    boolean isT()
+    {
+      return (this.value & T) != 0;
+    }
+
+    /**
+     * @return the overflow (V) flag.
+     */
+    boolean isV()
+    {
+      materializeCV();
+      return (this.value & V) != 0;
+    }
+
+    /**
+     * @return the zero (Z) flag.
+     */
+    boolean isZ()
+    {
+      materializeNZ();
+      return (this.value & Z) != 0;
+    }
+
+    /**
+     * @param aA
+     *          the imprecise abort disable (A) bit to set.
+     */
+    void setA(boolean aA)
+    {
+      set(A, aA);
+    }
+
+    /**
+     * Records an addition of the given values, whose N, Z, C and V flags are
+     * only computed once they are read.
+     * 
+     * @param aA
+     *          the first operand;
+     * @param aB
+     *          the second operand.
+     */
+    void setAddition(int aA, int aB)
+    {
+      this.nzOp = this.cvOp = ADD;
+      this.nzA = this.cvA = aA;
+      this.nzB = this.cvB = aB;
+    }
+
+    /**
+     * @param aC
+     *          the carry (C) flag to set.
+     */
+    void setC(boolean aC)
+    {
+      materializeCV();
+      set(C, aC);
+    }
+
+    /**
+     * @param aE
+     *          the endianness (E) bit to set.
+     */
+    void setE(boolean aE)
+    {
+      set(E, aE);
+    }
+
+    /**
+     * @param aF
+     *          the FIQ disable (F) bit to set.
+     */
+    void setF(boolean aF)
+    {
+      set(F, aF);
+    }
+
+    /**
+     * @param aGE
+     *          the GE-flags to set, only the lower 4 bits are used.
+     */
+    void setGE(int aGE)
+    {
+      this.value = (this.value & ~GE_MASK) | ((aGE << 16) & GE_MASK);
+    }
+
+    /**
+     * @param aI
+     *          the IRQ disable (I) bit to set.
+     */
+    void setI(boolean aI)
+    {
+      set(I, aI);
+    }
+
+    /**
+     * @param aIT
+     *          the IT-bits to set, only the lower 8 bits are used.
+     */
+    void setIT(int aIT)
+    {
+      this.value = (this.value & ~(IT_LOW_MASK | IT_HIGH_MASK)) | ((aIT << 25) & IT_LOW_MASK)
+          | ((aIT << 8) & IT_HIGH_MASK);
+    }
+
+    /**
+     * @param aJ
+     *          the Jazelle (J) bit to set.
+     */
+    void setJ(boolean aJ)
+    {
+      set(J, aJ);
+    }
+
+    /**
+     * @param aMode
+     *          the processor mode to set, only the lower 5 bits are used.
+     */
+    void setMode(int aMode)
+    {
+      this.value = (this.value & ~MODE_MASK) | (aMode & MODE_MASK);
+    }
+
+    /**
+     * @param aN
+     *          the negative (N) flag to set.
+     */
+    void setN(boolean aN)
+    {
+      materializeNZ();
+      set(N, aN);
+    }
+
+    /**
+     * Records the result of a (logical) operation, whose N and Z flags are only
+     * computed once they are read.
+     * 
+     * @param aResult
+     *          the result to set the N and Z flags for.
+     */
+    void setNZ(int aResult)
+    {
+      this.nzOp = RESULT;
+      this.nzA = aResult;
+    }
+
+    /**
+     * @param aQ
+     *          the saturation (Q) flag to set.
+     */
+    void setQ(boolean aQ)
+    {
+      set(Q, aQ);
+    }
+
+    /**
+     * Records a subtraction of the given values, whose N, Z, C and V flags are
+     * only computed once they are read.
+     * 
+     * @param aA
+     *          the value to subtract from;
+     * @param aB
+     *          the value to subtract.
+     */
+    void setSubtraction(int aA, int aB)
+    {
+      this.nzOp = this.cvOp = SUB;
+      this.nzA = this.cvA = aA;
+      this.nzB = this.cvB = aB;
+    }
+
+    /**
+     * @param aT
+     *          the THUMB (T) bit to set.
+     */
+    void setT(boolean aT)
+    {
+      set(T, aT);
+    }
+
+    /**
+     * @param aV
+     *          the overflow (V) flag to set.
+     */
+    void setV(boolean aV)
+    {
+      materializeCV();
+      set(V, aV);
     }
 
     /**
@@ -85,35 +382,179 @@ public class Arm
      */
     void setValue(int aValue)
     {
-      long value = aValue;
-      this.n = (value & (1L << 31)) != 0;
-      this.z = (value & (1L << 30)) != 0;
-      this.c = (value & (1L << 29)) != 0;
-      this.v = (value & (1L << 28)) != 0;
-      this.q = (value & (1L << 27)) != 0;
-      this.it = (int) (((value >> 8) & 0xFC) | ((value >> 25) & 0x03));
-      this.j = (value & (1L << 24)) != 0;
-      this.ge = (int) ((value >> 16) & 0x0F);
-      this.E = (value & (1L << 9)) != 0;
-      this.A = (value & (1L << 8)) != 0;
-      this.I = (value & (1L << 7)) != 0;
-      this.F = (value & (1L << 6)) != 0;
-      this.t = (value & (1L << 5)) != 0;
-      this.mode = (int) (value & 0x1f);
+      this.nzOp = NONE;
+      this.cvOp = NONE;
+      this.value = aValue & VALUE_MASK;
+    }
+
+    /**
+     * @param aZ
+     *          the zero (Z) flag to set.
+     */
+    void setZ(boolean aZ)
+    {
+      materializeNZ();
+      set(Z, aZ);
+    }
+
+    /**
+     * Computes the C and V flags of the last recorded operation, if any. Uses
+     * the same definitions as {@link Arm#carryFrom(int, int)},
+     * {@link Arm#borrowFrom(int, int)} and {@link Arm#overflowFrom(int, int)}.
+     */
+    private void materializeCV()
+    {
+      int a = this.cvA;
+      int b = this.cvB;
+      boolean c, v;
+      switch (this.cvOp)
+      {
+        case ADD:
+          c = (a + b) < a;
+          v = overflow(a, b);
+          break;
+        case SUB:
+          c = !(a < b);
+          v = overflow(a, -b);
+          break;
+        default:
+          return;
+      }
+      this.value = (this.value & ~(C | V)) | (c ? C : 0) | (v ? V : 0);
+      this.cvOp = NONE;
+    }
+
+    /**
+     * Computes the N and Z flags of the last recorded operation, if any.
+     */
+    private void materializeNZ()
+    {
+      int result;
+      boolean n;
+      switch (this.nzOp)
+      {
+        case RESULT:
+          result = this.nzA;
+          n = (result >> 31) != 0;
+          break;
+        case ADD:
+          result = this.nzA + this.nzB;
+          n = (result >> 31) != 0;
+          break;
+        case SUB:
+          result = this.nzA - this.nzB;
+          n = (result >> 31) == 1;
+          break;
+        default:
+          return;
+      }
+      this.value = (this.value & ~(N | Z)) | (n ? N : 0) | ((result == 0) ? Z : 0);
+      this.nzOp = NONE;
+    }
+
+    /**
+     * @param aMask
+     * @param aSet
+     */
+    private void set(int aMask, boolean aSet)
+    {
+      if (aSet)
+      {
+        this.value |= aMask;
+      }
+      else
+      {
+        this.value &= ~aMask;
+      }
+    }
+
+    /**
+     * @return <code>true</code> if adding the given values overflows,
+     *         <code>false</code> otherwise.
+     */
+    private static boolean overflow(int a, int b)
+    {
+      int s = a + b;
+      return ((a & (1 << 31)) == (b & (1 << 31))) && ((s & (1 << 31)) != (a & (1 << 31)));
+    }
+  }
+
+  // CONSTANTS
+
+  private static final ConditionCode[] CONDITIONS = ConditionCode.values();
+
+  /**
+   * For each condition code, a 16-bit mask whose bit <em>i</em> tells whether
+   * the condition passes when the NZCV-flags equal <em>i</em>.
+   */
+  static final short[] CONDITION_TABLE = new short[16];
+
+  static
+  {
+    for (int cond = 0; cond < CONDITION_TABLE.length; cond++)
+    {
+      int mask = 0;
+      for (int flags = 0; flags < 16; flags++)
+      {
+        if (evaluate(CONDITIONS[cond], flags))
+        {
+          mask |= (1 << flags);
+        }
+      }
+      CONDITION_TABLE[cond] = (short) mask;
     }
   }
 
+  /** The processor mode upon taking an abort. */
+  private static final int MODE_ABORT = 0x17;
+  /** The exception vectors of prefetch and data aborts. */
+  private static final int VECTOR_PREFETCH_ABORT = 0x0C;
+  private static final int VECTOR_DATA_ABORT = 0x10;
+
+  /** The number of times a block is interpreted before it is translated. */
+  private static final int HOT_THRESHOLD = 16;
+  /** The maximum number of instructions in a single block. */
+  private static final int MAX_BLOCK_LENGTH = 64;
+
   // VARIABLES
 
-  private final int[] r;
-  private final Cpsr cpsr;
-  private int spsr;
+  final int[] r;
+  final Cpsr cpsr;
+  int spsr;
 
   private boolean finished;
+  // A watchpoint hit also sets the finished flag, so it ends runs and blocks
+  // without any additional check...
+  private boolean watchpointHit;
   private int entryPoint; // initial PC value
+  private long instructionCount;
+  private final int cpuId;
+
+  // The local exclusive monitor, opened by LDREX and closed by STREX...
+  private boolean exclusive;
+  private int exclusiveAddress;
+  private int exclusiveValue;
+
+  private final IntSet breakpoints;
+  final Memory memory;
 
-  private final List<Integer> breakpoints;
-  private final Memory memory;
+  private TraceSink traceSink;
+  final WatchpointListener watchpointListener;
+
+  // Scratch buffer for LDM/STM, which transfer at most 16 registers...
+  final int[] words = new int[16];
+  // Scratch buffer for the write syscall, which copies in pieces of this size...
+  private final byte[] bytes = new byte[4096];
+
+  // The last data access, only kept while tracing...
+  int dataAccesses;
+  int dataAddress;
+  int dataValue;
+  boolean dataWrite;
+
+  private final DecodeCache armCache;
+  private final BlockCache armBlocks;
+  private final BlockCache thumbBlocks;
 
   // CONSTRUCTORS
 
@@ -124,13 +565,43 @@ public class Arm
    *          the memory to use in the processor.
    */
   public Arm(Memory aMemory)
+  {
+    this(aMemory, 0);
+  }
+
+  /**
+   * Creates a new Arm instance, as one of multiple cores sharing the same
+   * memory.
+   * 
+   * @param aMemory
+   *          the memory to use in the processor;
+   * @param aCpuId
+   *          the number of this core, as reported by the MPIDR, &gt;= 0.
+   * @see Cluster
+   */
+  public Arm(Memory aMemory, int aCpuId)
   {
     this.r = new int[16];
+    this.cpuId = aCpuId;
     this.cpsr = new Cpsr();
 
     this.memory = aMemory;
-    this.breakpoints = new ArrayList<Integer>(32);
+    this.breakpoints = new IntSet();
     this.entryPoint = 0;
+
+    this.armCache = new DecodeCache(DecodeCache.DEFAULT_SIZE, 4);
+    this.armBlocks = new BlockCache(BlockCache.DEFAULT_SIZE, 4);
+    this.thumbBlocks = new BlockCache(BlockCache.DEFAULT_SIZE, 2);
+
+    this.watchpointListener = new WatchpointListener()
+    {
+      @Override
+      public void watchpointHit(int aAddress, int aValue, boolean aWrite)
+      {
+        Arm.this.watchpointHit = true;
+        Arm.this.finished = true;
+      }
+    };
   }
 
   // METHODS
@@ -228,10 +699,7 @@ public class Arm
    */
   public void breakAdd(int address)
   {
-    if (!breakFind(address))
-    {
-      this.breakpoints.add(address);
-    }
+    this.breakpoints.add(address);
   }
 
   /**
@@ -239,16 +707,7 @@ public class Arm
    */
   public void breakDel(int address)
   {
-    Iterator<Integer> iter = this.breakpoints.iterator();
-    while (iter.hasNext())
-    {
-      Integer addr = iter.next();
-      if ((addr != null) && (addr.intValue() == address))
-      {
-        iter.remove();
-        break;
-      }
-    }
+    this.breakpoints.remove(address);
   }
 
   /**
@@ -257,38 +716,61 @@ public class Arm
    */
   public boolean breakFind(int address)
   {
-    Iterator<Integer> iter = this.breakpoints.iterator();
-    while (iter.hasNext())
-    {
-      Integer addr = iter.next();
-      if ((addr != null) && (addr.intValue() == address))
-      {
-        return true;
-      }
-    }
-    return false;
+    return this.breakpoints.contains(address);
   }
 
   /**
+   * Adds a watchpoint on the given range of addresses. A run stops right after
+   * the instruction that accesses it.
    * 
+   * @param aAddress
+   *          the first watched address;
+   * @param aLength
+   *          the number of watched bytes, &gt; 0;
+   * @param aRead
+   *          <code>true</code> to stop on reads;
+   * @param aWrite
+   *          <code>true</code> to stop on writes.
+   * @see StopReason#WATCHPOINT
    */
-  public void dumpRegs()
+  public void watchAdd(int aAddress, int aLength, boolean aRead, boolean aWrite)
   {
-    System.out.println("REGISTERS DUMP:");
-    System.out.println("===============");
+    this.memory.setWatchpointListener(this.watchpointListener);
+    this.memory.addWatchpoint(aAddress, aLength, aRead, aWrite);
+  }
 
-    /* Print GPRs */
-    for (int i = 0; i < 16; i += 2)
-    {
-      System.out.printf("r%-2d: 0x%08X\t\tr%-2d: 0x%08X\n", i, this.r[i], i + 1, this.r[i + 1]);
+  /**
+   * Removes all watchpoints that start at the given address.
+   * 
+   * @param aAddress
+   *          the first address of the watchpoints to remove.
+   */
+  public void watchDel(int aAddress)
+  {
+    this.memory.removeWatchpoint(aAddress);
+  }
+
+  /**
+   * 
+   */
+  public void dumpRegs()
+  {
+    System.out.println("REGISTERS DUMP:");
+    System.out.println("===============");
+
+    /* Print GPRs */
+    for (int i = 0; i < 16; i += 2)
+    {
+      System.out.printf("r%-2d: 0x%08X\t\tr%-2d: 0x%08X\n", i, this.r[i], i + 1, this.r[i + 1]);
     }
 
     System.out.println();
 
     /* Print CPSR */
     System.out.printf("cpsr: 0x%x\n", this.cpsr.getValue());
-    System.out.println(" (z: " + this.cpsr.z + ", n: " + this.cpsr.n + ", c: " + this.cpsr.c + ", v: " + this.cpsr.v
-         + ", I: " + this.cpsr.I + ", F: " + this.cpsr.F + ", t: " + this.cpsr.t + ", mode: " + this.cpsr.mode + ")");
+    System.out.println(" (z: " + this.cpsr.isZ() + ", n: " + this.cpsr.isN() + ", c: " + this.cpsr.isC() + ", v: " + this.cpsr.isV()
+         + ", I: " + this.cpsr.isI() + ", F: " + this.cpsr.isF() + ", t: " + this.cpsr.isT() + ", mode: " + this.cpsr.getMode()
+        + ")");
 
     /* Print SPSR */
     System.out.printf("spsr: 0x%x\n", this.spsr);
@@ -343,6 +825,174 @@ public class Arm
     this.r[15] = this.entryPoint;
     this.cpsr.setValue(this.spsr = 0);
     this.finished = false;
+    this.watchpointHit = false;
+    this.instructionCount = 0L;
+    this.exclusive = false;
+  }
+
+  /**
+   * Restores this CPU and its memory to the given snapshot. Only the memory
+   * pages written since the snapshot (or since the last restore of it) are
+   * copied back.
+   * 
+   * @param aSnapshot
+   *          the snapshot to restore, taken from this CPU, cannot be
+   *          <code>null</code>.
+   * @see Memory#restore(MemorySnapshot)
+   */
+  public void restore(ArmSnapshot aSnapshot)
+  {
+    if (aSnapshot == null)
+    {
+      throw new IllegalArgumentException("Snapshot cannot be null!");
+    }
+    if (aSnapshot.arm != this)
+    {
+      throw new IllegalArgumentException("Snapshot is not taken from this CPU!");
+    }
+
+    this.memory.restore(aSnapshot.memory);
+
+    System.arraycopy(aSnapshot.registers, 0, this.r, 0, this.r.length);
+    this.cpsr.setValue(aSnapshot.cpsr);
+    this.spsr = aSnapshot.spsr;
+    this.finished = aSnapshot.finished;
+    this.watchpointHit = false;
+    this.instructionCount = aSnapshot.instructionCount;
+    // The memory may have changed, so any reservation is void...
+    this.exclusive = false;
+  }
+
+  /**
+   * Returns the number of this core, as reported by the MPIDR.
+   * 
+   * @return the CPU number, &gt;= 0.
+   */
+  public int getCpuId()
+  {
+    return this.cpuId;
+  }
+
+  /**
+   * Returns the number of instructions retired since this CPU was created or
+   * last reset.
+   * 
+   * @return the number of retired instructions, &gt;= 0.
+   */
+  public long getInstructionCount()
+  {
+    return this.instructionCount;
+  }
+
+  /**
+   * Returns the sink that receives an event for every executed instruction.
+   * 
+   * @return the current trace sink, can be <code>null</code> if tracing is
+   *         turned off.
+   */
+  public TraceSink getTraceSink()
+  {
+    return this.traceSink;
+  }
+
+  /**
+   * Runs the program until the given number of instructions is executed, or
+   * until it stops for another reason. Unlike {@link #step()}, this method does
+   * not print anything when it stops; use {@link #getInstructionCount()} to
+   * find out how many instructions were executed.
+   * 
+   * @param aMaxInstructions
+   *          the maximum number of instructions to execute.
+   * @return the reason for stopping, never <code>null</code>.
+   */
+  public StopReason run(long aMaxInstructions)
+  {
+    final boolean checkBreakpoints = !this.breakpoints.isEmpty();
+
+    long remaining = aMaxInstructions;
+    try
+    {
+      while (!this.finished)
+      {
+        if (remaining <= 0L)
+        {
+          return StopReason.BUDGET_EXHAUSTED;
+        }
+
+        int pc = this.r[15];
+        if (checkBreakpoints && breakFind(pc & ~1))
+        {
+          return StopReason.BREAKPOINT;
+        }
+
+        boolean thumb = this.cpsr.isT();
+        BasicBlock block = null;
+        try
+        {
+          if (!checkBreakpoints)
+          {
+            block = lookupBlock(pc, thumb);
+            if ((block != null) && (block.getLength() <= remaining))
+            {
+              int retired = block.execute(this);
+              if (retired > 0)
+              {
+                remaining -= retired;
+                continue;
+              }
+            }
+            block = null;
+          }
+
+          Instruction instruction = thumb ? fetchThumb(pc) : fetchArm(pc);
+          if (instruction == null)
+          {
+            // Let the memory apply its policy, which might raise an abort...
+            if (thumb)
+            {
+              this.memory.fetch16(pc);
+            }
+            else
+            {
+              this.memory.fetch32(pc);
+            }
+            return StopReason.MEMORY_FAULT;
+          }
+          if (instruction.isUndefined())
+          {
+            return StopReason.UNDEFINED_INSTRUCTION;
+          }
+
+          execute(pc, instruction, thumb);
+          remaining--;
+        }
+        catch (MemoryFault fault)
+        {
+          int size = thumb ? 2 : 4;
+          if (block != null)
+          {
+            // Account for the instructions retired before the faulting one...
+            remaining -= ((this.r[15] - size - pc) / size);
+          }
+          if (!takeAbort(fault, thumb))
+          {
+            return StopReason.MEMORY_FAULT;
+          }
+          // Count taking the abort as a step, so a run always ends...
+          remaining--;
+        }
+      }
+
+      if (clearWatchpointHit())
+      {
+        return StopReason.WATCHPOINT;
+      }
+      return StopReason.EXIT;
+    }
+    finally
+    {
+      this.instructionCount += (aMaxInstructions - remaining);
+    }
   }
 
   /**
@@ -353,6 +1003,33 @@ public class Arm
     this.r[15] = this.entryPoint = val;
   }
 
+  /**
+   * Sets the sink that receives an event for every executed instruction. By
+   * default, no sink is set and no tracing takes place at all.
+   * 
+   * @param aTraceSink
+   *          the trace sink to use, can be <code>null</code> to turn tracing
+   *          off.
+   */
+  public void setTraceSink(TraceSink aTraceSink)
+  {
+    this.traceSink = aTraceSink;
+  }
+
+  /**
+   * Takes a snapshot of the registers, CPSR and SPSR of this CPU, along with
+   * the contents of its memory, which can be restored with
+   * {@link #restore(ArmSnapshot)}. Breakpoints, watchpoints and the trace sink
+   * are not part of the snapshot.
+   * 
+   * @return the snapshot, never <code>null</code>.
+   * @see Memory#snapshot()
+   */
+  public ArmSnapshot snapshot()
+  {
+    return new ArmSnapshot(this, this.finished, this.instructionCount, this.memory.snapshot());
+  }
+
   /**
    * Steps through the instructions.
    * 
@@ -373,8 +1050,8 @@ public class Arm
     /* Remove thumb bit */
     int pc = this.r[15] & ~1;
 
-    /* Check breakpoint */
-    ret = breakFind(pc);
+    /* Check breakpoint, if any */
+    ret = !this.breakpoints.isEmpty() && breakFind(pc);
     if (ret)
     {
       System.out.printf("BREAKPOINT! (0x%x)\n", pc);
@@ -382,18 +1059,118 @@ public class Arm
     }
 
     /* Parse instruction */
-    if (this.cpsr.t)
+    boolean thumb = this.cpsr.isT();
+    try
+    {
+      if (thumb)
+      {
+        parseThumb();
+      }
+      else
+      {
+        parse();
+      }
+    }
+    catch (MemoryFault fault)
     {
-      parseThumb();
+      if (!takeAbort(fault, thumb))
+      {
+        System.out.printf("MEMORY FAULT! (0x%x)\n", fault.getAddress());
+        return false;
+      }
     }
-    else
+    this.instructionCount++;
+
+    if (clearWatchpointHit())
     {
-      parse();
+      System.out.printf("WATCHPOINT! (0x%x)\n", pc);
+      return false;
     }
 
     return true;
   }
 
+  /**
+   * Steps through the basic block at the current PC, that is, all instructions
+   * up to and including the first branch. Blocks that are executed often are
+   * translated once and executed as a whole afterwards.
+   * <p>
+   * When breakpoints are set, this method steps through a single instruction
+   * only, as {@link #step()} does.
+   * </p>
+   * 
+   * @return the number of executed instructions, or 0 if the program is
+   *         finished or a breakpoint is hit.
+   */
+  public int stepBlock()
+  {
+    if (this.finished || !this.breakpoints.isEmpty())
+    {
+      return step() ? 1 : 0;
+    }
+
+    int pc = this.r[15];
+    boolean thumb = this.cpsr.isT();
+
+    BasicBlock block = lookupBlock(pc, thumb);
+    if (block != null)
+    {
+      try
+      {
+        int retired = block.execute(this);
+        if (retired > 0)
+        {
+          this.instructionCount += retired;
+          return retired;
+        }
+      }
+      catch (MemoryFault fault)
+      {
+        int size = thumb ? 2 : 4;
+        int retired = (this.r[15] - size - pc) / size;
+        this.instructionCount += retired;
+        return takeAbort(fault, thumb) ? retired + 1 : retired;
+      }
+      finally
+      {
+        clearWatchpointHit();
+      }
+    }
+
+    /* Interpret up to the first change in control flow */
+    int retired = 0;
+    int next;
+    try
+    {
+      do
+      {
+        if (thumb)
+        {
+          next = this.r[15] + 2;
+          parseThumb();
+        }
+        else
+        {
+          next = this.r[15] + 4;
+          parse();
+        }
+        retired++;
+      }
+      while ((retired < MAX_BLOCK_LENGTH) && (this.r[15] == next) && (this.cpsr.isT() == thumb) && !this.finished);
+    }
+    catch (MemoryFault fault)
+    {
+      if (takeAbort(fault, thumb))
+      {
+        retired++;
+      }
+    }
+    clearWatchpointHit();
+    this.instructionCount += retired;
+
+    return retired;
+  }
+
   /**
    * 32-bit values.
    * 
@@ -406,11 +1183,8 @@ public class Arm
     /* Add values */
     int result = a + b;
 
-    /* Set flags */
-    this.cpsr.c = carryFrom(a, b);
-    this.cpsr.v = overflowFrom(a, b);
-    this.cpsr.z = result == 0;
-    this.cpsr.n = ((result >> 31) != 0);
+    /* Set flags, evaluated lazily */
+    this.cpsr.setAddition(a, b);
 
     return result;
   }
@@ -448,7 +1222,7 @@ public class Arm
   protected boolean condCheck(int opcode)
   {
     int condCheck = (opcode >> 28) & 0x0f;
-    return conditionCheck(ConditionCode.values()[condCheck]);
+    return conditionPassed(condCheck);
   }
 
   /**
@@ -460,31 +1234,7 @@ public class Arm
   protected boolean condCheck(short opcode)
   {
     int condCheck = (opcode >> 8) & 0x0f;
-    return conditionCheck(ConditionCode.values()[condCheck]);
-  }
-
-  /**
-   * 32-bit opcode.
-   * 
-   * @param opcode
-   * @return
-   */
-  protected void condPrint(int opcode)
-  {
-    int condCheck = (opcode >> 28) & 0x0f;
-    System.out.print(ConditionCode.values()[condCheck]);
-  }
-
-  /**
-   * 16-bit opcode.
-   * 
-   * @param opcode
-   * @return
-   */
-  protected void condPrint(short opcode)
-  {
-    int condCheck = (opcode >> 8) & 0x0f;
-    System.out.print(ConditionCode.values()[condCheck]);
+    return conditionPassed(condCheck);
   }
 
   /**
@@ -492,7 +1242,7 @@ public class Arm
    */
   protected void forceThumbMode()
   {
-    this.cpsr.t = true;
+    this.cpsr.setT(true);
   }
 
   /**
@@ -520,1983 +1270,110 @@ public class Arm
    */
   protected void parse()
   {
-    System.out.printf("%08X [A] ", this.r[15]);
-
-    /* Read opcode */
-    int opcode = this.memory.read32(this.r[15]);
-
-    System.out.printf("(%08x) ", opcode);
+    int pc = this.r[15];
 
-    /* Update PC */
-    this.r[15] += 4; // 32-bit
-
-    /* Registers */
-    int Rn = ((opcode >> 16) & 0xF);
-    int Rd = ((opcode >> 12) & 0xF);
-    int Rm = ((opcode >> 0) & 0xF);
-    int Rs = ((opcode >> 8) & 0xF);
-    int Imm = ((opcode >> 0) & 0xFF);
-    int amt = Rs << 1;
-
-    /* Flags */
-    boolean I = ((opcode >> 25) & 1) != 0;
-    boolean P = ((opcode >> 24) & 1) != 0;
-    boolean U = ((opcode >> 23) & 1) != 0;
-    boolean B = ((opcode >> 22) & 1) != 0;
-    boolean W = ((opcode >> 21) & 1) != 0;
-    boolean S = ((opcode >> 20) & 1) != 0;
-    boolean L = ((opcode >> 20) & 1) != 0;
-
-    if (((opcode >> 8) & 0x0FFFFF) == 0x012FFF)
+    /* Fetch & decode opcode */
+    Instruction instruction = fetchArm(pc);
+    if (instruction == null)
     {
-      boolean link = ((opcode >> 5) & 1) != 0;
+      instruction = ArmDecoder.decode(this.memory.fetch32(pc));
+    }
 
-      System.out.printf("b%sx", (link) ? "l" : "");
-      condPrint(opcode);
-      System.out.printf(" r%d\n", Rm);
+    execute(pc, instruction, false);
+  }
 
-      if (!condCheck(opcode))
-      {
-        return;
+  /**
+   * 8-bit value
+   * 
+   * @param num
+   */
+  protected void parseSvc(int num)
+  {
+    /* Parse syscall */
+    switch (num)
+    {
+      case 0:
+      { // exit
+        /* Set finish flag */
+        this.finished = true;
+        break;
       }
 
-      if (link)
-      {
-        this.r[14] = this.r[15];
-      }
+      case 4:
+      { // write
+        int fd = this.r[0];
+        int addr = this.r[1];
+        int len = this.r[2];
 
-      this.cpsr.t = (this.r[Rm] & 1) == 1;
+        /* No output descriptor */
+        if ((fd < 1) || (fd > 2))
+        {
+          break;
+        }
 
-      this.r[15] = this.r[Rm] & ~1;
+        /* Print string, as far as it is mapped */
+        Chunk chunk = this.memory.find(addr & 0xFFFFFFFFL);
+        if (chunk == null)
+        {
+          len = 0;
+        }
+        else
+        {
+          long mapped = chunk.getBaseAddress() + chunk.getSize() - (addr & 0xFFFFFFFFL);
+          len = (int) Math.min(len, mapped);
+        }
 
-      return;
-    }
+        for (int done = 0; done < len;)
+        {
+          int count = Math.min(len - done, this.bytes.length);
+          this.memory.read(addr + done, this.bytes, 0, count);
+          for (int i = 0; i < count; i++)
+          {
+            System.out.printf("0x%x", this.bytes[i]);
+          }
+          done += count;
+        }
 
-    if ((opcode >>> 24) == 0xEF)
-    {
-      int ImmA = (opcode & 0xFFFFFF);
+        /* Return value */
+        this.r[0] = len;
 
-      System.out.printf("swi 0x%X\n", ImmA);
-      parseSvc(ImmA & 0xFF);
+        break;
+      }
 
-      return;
+      default:
+        System.out.printf("         [S] Unhandled syscall! (%02X)\n", num);
     }
+  }
+
+  /**
+   * Parses a THUMB (16-bit) instruction.
+   */
+  protected void parseThumb()
+  {
+    int pc = this.r[15];
 
-    if ((((opcode >> 22) & 0x3F) == 0) &&
-        (((opcode >> 4) & 0x0F) == 9))
+    /* Fetch & decode opcode */
+    Instruction instruction = fetchThumb(pc);
+    if (instruction == null)
     {
-      System.out.printf("%s", W ? "mla" : "mul");
-      condPrint(opcode);
-      suffPrint(opcode);
+      instruction = ThumbDecoder.decode(this.memory.fetch16(pc));
+    }
 
-      System.out.printf(" r%d, r%d, r%d", Rn, Rm, Rs);
-      if (W)
-      {
-        System.out.printf(", r%d", Rd);
-      }
-      System.out.printf("\n");
+    execute(pc, instruction, true);
+  }
 
-      if (!condCheck(opcode))
-      {
-        return;
-      }
+  /**
+   * @return 32-bit value.
+   */
+  protected int pop()
+  {
+    int addr = this.r[13];
 
-      if (W)
-      {
-        this.r[Rn] = (this.r[Rm] * this.r[Rs] + this.r[Rd]) & 0xFFFFFFFF;
-      }
-      else
-      {
-        this.r[Rn] = (this.r[Rm] * this.r[Rs]) & 0xFFFFFFFF;
-      }
+    this.r[13] += 4; // 32-bit
 
-      if (S)
-      {
-        this.cpsr.z = this.r[Rn] == 0;
-        this.cpsr.n = (this.r[Rn] >> 31) != 0;
-      }
-
-      return;
-    }
-
-    switch ((opcode >> 26) & 0x3)
-    {
-      case 0:
-      {
-        switch ((opcode >> 21) & 0xF)
-        {
-          case 0:
-          { // AND
-            System.out.printf("and");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d, r%d", Rd, Rn, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, r%d, #0x%X", Rd, Rn, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = this.r[Rn] & ROR(Imm, amt);
-            }
-            else
-            {
-              this.r[Rd] = this.r[Rn] & shift(opcode, this.r[Rm]);
-            }
-
-            if (S)
-            {
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 1:
-          { // EOR
-            System.out.printf("eor");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d, r%d", Rd, Rn, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, r%d, #0x%X", Rd, Rn, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = this.r[Rn] ^ ROR(Imm, amt);
-            }
-            else
-            {
-              this.r[Rd] = this.r[Rn] ^ shift(opcode, this.r[Rm]);
-            }
-
-            if (S)
-            {
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 2:
-          { // SUB
-            System.out.printf("sub");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d, r%d", Rd, Rn, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, r%d, #0x%X", Rd, Rn, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = this.r[Rn] - ROR(Imm, amt);
-            }
-            else
-            {
-              this.r[Rd] = this.r[Rn] - shift(opcode, this.r[Rm]);
-            }
-
-            if (S)
-            {
-              this.cpsr.c = (I) ? (this.r[Rn] >= ROR(Imm, amt)) : (this.r[Rn] < this.r[Rd]);
-              this.cpsr.v = (I) ? ((this.r[Rn] >> 31) & ~(this.r[Rd] >> 31)) != 0
-                  : ((this.r[Rn] >> 31) & ~(this.r[Rd] >> 31)) != 0;
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 3:
-          { // RSB
-            System.out.printf("rsb");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d, r%d", Rd, Rn, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, r%d, #0x%X", Rd, Rn, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = ROR(Imm, amt) - this.r[Rn];
-            }
-            else
-            {
-              this.r[Rd] = shift(opcode, this.r[Rm]) - this.r[Rn];
-            }
-
-            if (S)
-            {
-              this.cpsr.c = (I) ? (this.r[Rn] > Imm) : (this.r[Rn] > this.r[Rm]);
-              this.cpsr.v = (I) ? ((Imm >> 31) & ~((Imm - this.r[Rn]) >> 31)) != 0
-                  : ((Imm >> 31) & ~((this.r[Rm] - this.r[Rn]) >> 31)) != 0;
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 4:
-          { // ADD
-            System.out.printf("add");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d, r%d", Rd, Rn, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, r%d, #0x%X", Rd, Rn, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = this.r[Rn] + ROR(Imm, amt);
-            }
-            else
-            {
-              this.r[Rd] = this.r[Rn] + shift(opcode, this.r[Rm]);
-            }
-
-            if (Rn == 15)
-            {
-              this.r[Rd] += 4;
-            }
-
-            if (S)
-            {
-              this.cpsr.c = this.r[Rd] < this.r[Rn];
-              this.cpsr.v = ((this.r[Rn] >> 31) & ~(this.r[Rd] >> 31)) != 0;
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 5:
-          { // ADC
-            System.out.printf("adc");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d, r%d", Rd, Rn, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, r%d, #0x%X", Rd, Rn, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = this.r[Rn] + ROR(Imm, amt) + (this.cpsr.c ? 1 : 0);
-            }
-            else
-            {
-              this.r[Rd] = this.r[Rn] + shift(opcode, this.r[Rm]) + (this.cpsr.c ? 1 : 0);
-            }
-
-            if (S)
-            {
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 6:
-          { // SBC
-            System.out.printf("sbc");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d, r%d", Rd, Rn, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, r%d, #0x%X", Rd, Rn, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = this.r[Rn] - ROR(Imm, amt) - (this.cpsr.c ? 0 : 1);
-            }
-            else
-            {
-              this.r[Rd] = this.r[Rn] - shift(opcode, this.r[Rm]) - (this.cpsr.c ? 0 : 1);
-            }
-
-            if (S)
-            {
-              this.cpsr.c = this.r[Rd] > this.r[Rn];
-              this.cpsr.v = ((this.r[Rn] >> 31) & ~(this.r[Rd] >> 31)) != 0;
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 7:
-          { // RSC
-            System.out.printf("rsc");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d, r%d", Rd, Rn, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, r%d, #0x%X", Rd, Rn, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = ROR(Imm, amt) - this.r[Rn] - (this.cpsr.c ? 0 : 1);
-            }
-            else
-            {
-              this.r[Rd] = shift(opcode, this.r[Rm]) - this.r[Rn] - (this.cpsr.c ? 0 : 1);
-            }
-
-            if (S)
-            {
-              this.cpsr.c = (I) ? (this.r[Rd] > Imm) : (this.r[Rd] > this.r[Rm]);
-              this.cpsr.v = (I) ? ((this.r[Rm] >> 31) & ~(this.r[Rd] >> 31)) != 0
-                  : ((this.r[Rn] >> 31) & ~(this.r[Rd] >> 31)) != 0;
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 8:
-          { // TST/MRS
-            if (S)
-            {
-              int result;
-
-              System.out.printf("tst");
-              condPrint(opcode);
-
-              if (!I)
-              {
-                System.out.printf(" r%d, r%d\n", Rn, Rm);
-                shiftPrint(opcode);
-
-                result = this.r[Rn] & shift(opcode, this.r[Rm]);
-              }
-              else
-              {
-                System.out.printf(" r%d, #0x%X\n", Rn, ROR(Imm, amt));
-                result = this.r[Rn] & ROR(Imm, amt);
-              }
-
-              this.cpsr.z = result == 0;
-              this.cpsr.n = (result >> 31) != 0;
-            }
-            else
-            {
-              System.out.printf("mrs r%d, cpsr\n", Rd);
-              this.r[Rd] = this.cpsr.getValue();
-            }
-
-            return;
-          }
-
-          case 9:
-          { // TEQ/MSR
-            if (S)
-            {
-              int result;
-
-              System.out.printf("teq");
-              condPrint(opcode);
-
-              if (!I)
-              {
-                System.out.printf(" r%d, r%d\n", Rn, Rm);
-                shiftPrint(opcode);
-
-                result = this.r[Rn] ^ shift(opcode, this.r[Rm]);
-              }
-              else
-              {
-                System.out.printf(" r%d, #0x%X\n", Rn, ROR(Imm, amt));
-                result = this.r[Rn] ^ ROR(Imm, amt);
-              }
-
-              this.cpsr.z = result == 0;
-              this.cpsr.n = (result >> 31) != 0;
-            }
-            else
-            {
-              if (I)
-              {
-                System.out.printf("msr cpsr, r%d\n", Rm);
-                this.cpsr.setValue(this.r[Rm]);
-              }
-              else
-              {
-                System.out.printf("msr cpsr, 0x%08X\n", Imm);
-                this.cpsr.setValue(Imm);
-              }
-            }
-
-            return;
-          }
-
-          case 10:
-          { // CMP/MRS2
-            if (S)
-            {
-              int value;
-
-              System.out.printf("cmp");
-              condPrint(opcode);
-
-              if (I)
-              {
-                value = ROR(Imm, amt);
-                System.out.printf(" r%d, 0x%08X\n", Rn, value);
-              }
-              else
-              {
-                value = this.r[Rm];
-                System.out.printf(" r%d, r%d\n", Rn, Rm);
-              }
-
-              if (condCheck(opcode))
-              {
-                subtract(this.r[Rn], value);
-              }
-            }
-            else
-            {
-              System.out.printf("mrs2\n");
-            }
-
-            return;
-          }
-
-          case 11:
-          { // CMN/MSR2
-            if (S)
-            {
-              int value;
-
-              System.out.printf("cmn");
-              condPrint(opcode);
-
-              if (I)
-              {
-                value = ROR(Imm, amt);
-                System.out.printf(" r%d, 0x%08X\n", Rn, value);
-              }
-              else
-              {
-                value = this.r[Rm];
-                System.out.printf(" r%d, r%d\n", Rn, Rm);
-              }
-
-              if (condCheck(opcode))
-              {
-                addition(this.r[Rn], value);
-              }
-            }
-            else
-            {
-              System.out.printf("msr2\n");
-            }
-
-            return;
-          }
-
-          case 12:
-          { // ORR
-            System.out.printf("orr");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d, r%d", Rd, Rn, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, r%d, #0x%X", Rd, Rn, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = this.r[Rn] | ROR(Imm, amt);
-            }
-            else
-            {
-              this.r[Rd] = this.r[Rn] | shift(opcode, this.r[Rm]);
-            }
-
-            if (S)
-            {
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 13:
-          { // MOV
-            System.out.printf("mov");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d", Rd, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, #0x%X", Rd, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = ROR(Imm, amt);
-            }
-            else
-            {
-              this.r[Rd] = (Rm == 15) ? (this.r[15] + 4 /* 32-bit */) : shift(opcode, this.r[Rm]);
-            }
-
-            if (S)
-            {
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 14:
-          { // BIC
-            System.out.printf("bic");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d, r%d", Rd, Rn, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, r%d, #0x%X", Rd, Rn, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = this.r[Rn] & ~(ROR(Imm, amt));
-            }
-            else
-            {
-              this.r[Rd] = this.r[Rd] & ~shift(opcode, this.r[Rm]);
-            }
-
-            if (S)
-            {
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-
-          case 15:
-          { // MVN
-            System.out.printf("mvn");
-            condPrint(opcode);
-            suffPrint(opcode);
-
-            if (!I)
-            {
-              System.out.printf(" r%d, r%d", Rd, Rm);
-              shiftPrint(opcode);
-            }
-            else
-            {
-              System.out.printf(" r%d, #0x%X", Rd, ROR(Imm, amt));
-            }
-
-            System.out.printf("\n");
-
-            if (!condCheck(opcode))
-            {
-              return;
-            }
-
-            if (I)
-            {
-              this.r[Rd] = ~ROR(Imm, amt);
-            }
-            else
-            {
-              this.r[Rd] = ~shift(opcode, this.r[Rm]);
-            }
-
-            if (S)
-            {
-              this.cpsr.z = this.r[Rd] == 0;
-              this.cpsr.n = (this.r[Rd] >> 31) != 0;
-            }
-
-            return;
-          }
-        }
-      }
-
-      case 1:
-      { // LDR/STR
-        int addr, value = 0, wb;
-
-        System.out.printf("%s%s", (L) ? "ldr" : "str", (B) ? "b" : "");
-        condPrint(opcode);
-        System.out.printf(" r%d,", Rd);
-
-        Imm = opcode & 0xFFF;
-
-        if (L && (Rn == 15))
-        {
-          addr = this.r[15] + Imm + 4;
-          value = this.memory.read32(addr);
-
-          if (condCheck(opcode))
-          {
-            this.r[Rd] = value;
-          }
-
-          System.out.printf(" =0x%X\n", value);
-          return;
-        }
-
-        System.out.printf(" [r%d", Rn);
-
-        if (I)
-        {
-          value = shift(opcode, this.r[Rm]);
-
-          System.out.printf(", %sr%d", (U) ? "" : "-", Rm);
-          shiftPrint(opcode);
-        }
-        else
-        {
-          value = Imm;
-          System.out.printf(", #%s0x%X", (U) ? "" : "-", value);
-        }
-        System.out.printf("]%s\n", (W) ? "!" : "");
-
-        if (!condCheck(opcode))
-        {
-          return;
-        }
-
-        if (U)
-        {
-          wb = this.r[Rn] + value;
-        }
-        else
-        {
-          wb = this.r[Rn] - value;
-        }
-
-        addr = (P) ? wb : this.r[Rn];
-
-        if (L)
-        {
-          if (B)
-          {
-            this.r[Rd] = this.memory.read8(addr);
-          }
-          else
-          {
-            this.r[Rd] = this.memory.read32(addr);
-          }
-        }
-        else
-        {
-          value = this.r[Rd];
-          if (Rd == 15)
-          {
-            value += 8;
-          }
-
-          if (B)
-          {
-            this.memory.write8(addr, (byte) (value & 0xFF));
-          }
-          else
-          {
-            this.memory.write32(addr, value);
-          }
-        }
-
-        if (W || !P)
-        {
-          this.r[Rn] = wb;
-        }
-        return;
-      }
-
-      default:
-        break;
-    }
-
-    switch ((opcode >> 25) & 7)
-    {
-      case 4:
-      { // LDM/STM
-        int start = this.r[Rn];
-        boolean pf = false;
-
-        if (L)
-        {
-          System.out.printf("ldm");
-          if (Rn == 13)
-          {
-            System.out.printf("%c%c", (P) ? 'e' : 'f', (U) ? 'd' : 'a');
-          }
-          else
-          {
-            System.out.printf("%c%c", (U) ? 'i' : 'd', (P) ? 'b' : 'a');
-          }
-        }
-        else
-        {
-          System.out.printf("stm");
-          if (Rn == 13)
-          {
-            System.out.printf("%c%c", (P) ? 'f' : 'e', (U) ? 'a' : 'd');
-          }
-          else
-          {
-            System.out.printf("%c%c", (U) ? 'i' : 'd', (P) ? 'b' : 'a');
-          }
-        }
-
-        if (Rn == 13)
-        {
-          System.out.printf(" sp");
-        }
-        else
-        {
-          System.out.printf(" r%d", Rn);
-        }
-
-        if (W)
-        {
-          System.out.printf("!");
-        }
-        System.out.printf(", {");
-
-        for (int i = 0; i < 16; i++)
-        {
-          if (((opcode >> i) & 1) != 0)
-          {
-            if (pf)
-            {
-              System.out.printf(", ");
-            }
-            System.out.printf("r%d", i);
-
-            pf = true;
-          }
-        }
-
-        System.out.printf("}");
-        if (B)
-        {
-          System.out.printf("^");
-          if ((opcode & (1 << 15)) != 0)
-          {
-            this.cpsr.setValue(this.spsr);
-          }
-        }
-        System.out.printf("\n");
-
-        if (L)
-        {
-          for (int i = 0; i < 16; i++)
-          {
-            if (((opcode >> i) & 1) != 0)
-            {
-              if (P)
-              {
-                start += U ? 4 : -4; // 32-bit
-              }
-              this.r[i] = this.memory.read32(start);
-              if (!P)
-              {
-                start += U ? 4 : -4; // 32-bit
-              }
-            }
-          }
-        }
-        else
-        {
-          for (int i = 15; i >= 0; i--)
-          {
-            if (((opcode >> i) & 1) != 0)
-            {
-              if (P)
-              {
-                start += U ? 4 : -4; // 32-bit
-               }
-              this.memory.write32(start, this.r[i]);
-              if (!P)
-              {
-                start += U ? 4 : -4; // 32-bit
-              }
-            }
-          }
-        }
-
-        if (W)
-        {
-          this.r[Rn] = start;
-        }
-        return;
-      }
-
-      case 5:
-      { // B/BL
-        boolean link = (opcode & (1 << 24)) != 0;
-
-        System.out.printf("b%s", (link) ? "l" : "");
-        condPrint(opcode);
-
-        Imm = (opcode & 0xFFFFFF) << 2;
-        if ((Imm & (1 << 25)) != 0)
-        {
-          Imm = ~(~Imm & 0xFFFFFF);
-        }
-        Imm += 4; // 32-bit
-
-        System.out.printf(" 0x%08X\n", this.r[15] + Imm);
-
-        if (!condCheck(opcode))
-        {
-          return;
-        }
-
-        if (link)
-        {
-          this.r[14] = this.r[15];
-        }
-        this.r[15] += Imm;
-
-        return;
-      }
-
-      case 7:
-      { // MRC
-        System.out.printf("mrc ...\n");
-        return;
-      }
-    }
-
-    System.out.printf("Unknown opcode! (0x%08X)\n", opcode);
-
-  }
-
-  /**
-   * 8-bit value
-   * 
-   * @param num
-   */
-  protected void parseSvc(int num)
-  {
-    /* Parse syscall */
-    switch (num)
-    {
-      case 0:
-      { // exit
-        /* Set finish flag */
-        this.finished = true;
-        break;
-      }
-
-      case 4:
-      { // write
-        int fd = this.r[0];
-        int addr = this.r[1];
-        int len = this.r[2];
-
-        /* No output descriptor */
-        if ((fd < 1) || (fd > 2))
-        {
-          break;
-        }
-
-        /* Print string */
-        for (int i = 0; i < len; i++)
-        {
-          System.out.printf("0x%x", this.memory.read8(addr + i));
-        }
-
-        /* Return value */
-        this.r[0] = len;
-
-        break;
-      }
-
-      default:
-        System.out.printf("         [S] Unhandled syscall! (%02X)\n", num);
-    }
-  }
-
-  /**
-   * Parses a THUMB (16-bit) instruction.
-   */
-  protected void parseThumb()
-  {
-    System.out.printf("%08X [T] ", this.r[15]);
-
-    /* Read opcode */
-    int opcode = this.memory.read16(this.r[15]) & 0xFFFF;
-
-    System.out.printf("(%04x) ", opcode);
-
-    /* Update PC */
-    this.r[15] += 2; // 16-bit
-
-    if ((opcode >> 13) == 0)
-    {
-      int Imm = (opcode >> 6) & 0x1F;
-      int Rn = (opcode >> 6) & 7;
-      int Rm = (opcode >> 3) & 7;
-      int Rd = (opcode >> 0) & 7;
-
-      switch ((opcode >> 11) & 3)
-      {
-        case 0:
-        { // LSL
-          if ((Imm > 0) && (Imm <= 32))
-          {
-            this.cpsr.c = (this.r[Rd] & (1 << (32 - Imm))) != 0;
-            this.r[Rd] = LSL(this.r[Rd], Imm);
-          }
-
-          if (Imm > 32)
-          {
-            this.cpsr.c = false;
-            this.r[Rd] = 0;
-          }
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("lsl r%d, r%d, #0x%02X\n", Rd, Rm, Imm);
-          return;
-        }
-
-        case 1:
-        { // LSR
-          if ((Imm > 0) && (Imm <= 32))
-          {
-            this.cpsr.c = (this.r[Rd] & (1 << (Imm - 1))) != 0;
-            this.r[Rd] = LSR(this.r[Rd], Imm);
-          }
-
-          if (Imm > 32)
-          {
-            this.cpsr.c = false;
-            this.r[Rd] = 0;
-          }
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("lsr r%d, r%d, #0x%02X\n", Rd, Rm, Imm);
-          return;
-        }
-
-        case 2:
-        { // ASR
-          if ((Imm > 0) && (Imm <= 32))
-          {
-            this.cpsr.c = (this.r[Rd] & (1 << (Imm - 1))) != 0;
-            this.r[Rd] = ASR(this.r[Rd], Imm);
-          }
-
-          if (Imm > 32)
-          {
-            this.cpsr.c = false;
-            this.r[Rd] = 0;
-          }
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("asr r%d, r%d, #0x%02X\n", Rd, Rm, Imm);
-          return;
-        }
-
-        case 3:
-        { // ADD, SUB
-          if ((opcode & 0x400) != 0)
-          {
-            Imm &= 7;
-
-            if ((opcode & 0x200) != 0)
-            {
-              this.r[Rd] = subtract(this.r[Rm], Imm);
-
-              System.out.printf("sub r%d, r%d, #0x%02X\n", Rd, Rm, Imm);
-              return;
-            }
-            else
-            {
-              this.r[Rd] = addition(this.r[Rm], Imm);
-
-              System.out.printf("add r%d, r%d, #0x%02X\n", Rd, Rm, Imm);
-            }
-          }
-          else
-          {
-            if ((opcode & 0x200) != 0)
-            {
-              this.r[Rd] = subtract(this.r[Rm], this.r[Rn]);
-
-              System.out.printf("sub r%d, r%d, r%d\n", Rd, Rm, Rn);
-              return;
-            }
-            else
-            {
-              this.r[Rd] = addition(this.r[Rm], this.r[Rn]);
-
-              System.out.printf("add r%d, r%d, r%d\n", Rd, Rm, Rn);
-              return;
-            }
-          }
-
-          return;
-        }
-      }
-    }
-
-    if ((opcode >> 13) == 1)
-    {
-      int Imm = (opcode & 0xFF);
-      int Rn = (opcode >> 8) & 7;
-
-      switch ((opcode >> 11) & 3)
-      {
-        case 0:
-        { // MOV
-          this.r[Rn] = Imm;
-
-          this.cpsr.z = this.r[Rn] == 0;
-          this.cpsr.n = (this.r[Rn] >> 31) != 0;
-
-          System.out.printf("mov r%d, #0x%02X\n", Rn, Imm);
-          return;
-        }
-
-        case 1:
-        { // CMP
-          subtract(this.r[Rn], Imm);
-
-          System.out.printf("cmp r%d, #0x%02X\n", Rn, Imm);
-          return;
-        }
-
-        case 2:
-        { // ADD
-          this.r[Rn] = addition(this.r[Rn], Imm);
-
-          System.out.printf("add r%d, #0x%02X\n", Rn, Imm);
-          return;
-        }
-
-        case 3:
-        { // SUB
-          this.r[Rn] = subtract(this.r[Rn], Imm);
-
-          System.out.printf("sub r%d, #0x%02X\n", Rn, Imm);
-          return;
-        }
-      }
-    }
-
-    if ((opcode >> 10) == 0x10)
-    {
-      int Rd = opcode & 7;
-      int Rm = (opcode >> 3) & 7;
-
-      switch ((opcode >> 6) & 0xF)
-      {
-        case 0:
-        { // AND
-          this.r[Rd] &= this.r[Rm];
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("and r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 1:
-        { // EOR
-          this.r[Rd] ^= this.r[Rm];
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("eor r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 2:
-        { // LSL
-          int shift = this.r[Rm] & 0xFF;
-
-          if ((shift > 0) && (shift <= 32))
-          {
-            this.cpsr.c = (this.r[Rd] & (1 << (32 - shift))) != 0;
-            this.r[Rd] = LSL(this.r[Rd], shift);
-          }
-
-          if (shift > 32)
-          {
-            this.cpsr.c = false;
-            this.r[Rd] = 0;
-          }
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("lsl r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 3:
-        { // LSR
-          int shift = this.r[Rm] & 0xFF;
-
-          if ((shift > 0) && (shift <= 32))
-          {
-            this.cpsr.c = (this.r[Rd] & (1 << (shift - 1))) != 0;
-            this.r[Rd] = LSR(this.r[Rd], shift);
-          }
-
-          if (shift > 32)
-          {
-            this.cpsr.c = false;
-            this.r[Rd] = 0;
-          }
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("lsr r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 4:
-        { // ASR
-          int shift = this.r[Rm] & 0xFF;
-
-          if ((shift > 0) && (shift < 32))
-          {
-            this.cpsr.c = (this.r[Rd] & (1 << (shift - 1))) != 0;
-            this.r[Rd] = ASR(this.r[Rd], shift);
-          }
-
-          if (shift == 32)
-          {
-            this.cpsr.c = (this.r[Rd] >> 31) != 0;
-            this.r[Rd] = 0;
-          }
-
-          if (shift > 32)
-          {
-            this.cpsr.c = false;
-            this.r[Rd] = 0;
-          }
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("asr r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 5:
-        { // ADC
-          this.r[Rd] = addition(this.r[Rd], this.r[Rm]);
-          this.r[Rd] = addition(this.r[Rd], this.cpsr.c ? 1 : 0);
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("adc r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 6:
-        { // SBC
-          this.r[Rd] = subtract(this.r[Rd], this.r[Rm]);
-          this.r[Rd] = subtract(this.r[Rd], this.cpsr.c ? 0 : 1);
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("sbc r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 7:
-        { // ROR
-          int shift = this.r[Rm] & 0xFF;
-
-          while (shift >= 32)
-          {
-            shift -= 32;
-          }
-
-          if (shift != 0)
-          {
-            this.cpsr.c = (this.r[Rd] & (1 << (shift - 1))) != 0;
-            this.r[Rd] = ROR(this.r[Rd], shift);
-          }
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("ror r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 8:
-        { // TST
-          int result = this.r[Rd] & this.r[Rm];
-
-          this.cpsr.z = result == 0;
-          this.cpsr.n = (result >> 31) != 0;
-
-          System.out.printf("tst r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 9:
-        { // NEG
-          this.r[Rd] = -this.r[Rm];
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("neg r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 10:
-        { // CMP
-          subtract(this.r[Rd], this.r[Rm]);
-
-          System.out.printf("cmp r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 11:
-        { // CMN/MVN
-          if ((opcode & 0x100) != 0)
-          {
-            this.r[Rd] = ~this.r[Rm];
-
-            this.cpsr.z = this.r[Rd] == 0;
-            this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-            System.out.printf("mvn r%d, r%d\n", Rd, Rm);
-          }
-          else
-          {
-            addition(this.r[Rd], this.r[Rm]);
-
-            System.out.printf("cmn r%d, r%d\n", Rd, Rm);
-          }
-
-          return;
-        }
-
-        case 12:
-        { // ORR
-          this.r[Rd] |= this.r[Rm];
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("orr r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 13:
-        { // MUL
-          this.r[Rd] *= this.r[Rm];
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("mul r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 14:
-        { // BIC
-          this.r[Rd] &= ~this.r[Rm];
-
-          this.cpsr.z = this.r[Rd] == 0;
-          this.cpsr.n = (this.r[Rd] >> 31) != 0;
-
-          System.out.printf("bic r%d, r%d\n", Rd, Rm);
-          return;
-        }
-      }
-    }
-
-    if ((opcode >> 7) == 0x8F)
-    {
-      int Rm = (opcode >> 3) & 0xF;
-
-      this.r[14] = this.r[15] | 1;
-
-      this.cpsr.t = (this.r[Rm] & 1) != 0;
-
-      this.r[15] = this.r[Rm] & ~1;
-
-      System.out.printf("blx r%d\n", Rm);
-      return;
-    }
-
-    if ((opcode >> 10) == 0x11)
-    {
-      int Rd = ((opcode >> 4) & 8) | (opcode & 7);
-      int Rm = ((opcode >> 3) & 0xF);
-
-      switch ((opcode >> 8) & 3)
-      {
-        case 0:
-        { // ADD
-          this.r[Rd] = addition(this.r[Rd], this.r[Rm]);
-
-          System.out.printf("add r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 1:
-        { // CMP
-          subtract(this.r[Rd], this.r[Rm]);
-
-          System.out.printf("cmp r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 2:
-        { // MOV (NOP)
-          if ((Rd == 8) && (Rm == 8))
-          {
-            System.out.printf("nop\n");
-            return;
-          }
-
-          this.r[Rd] = this.r[Rm];
-
-          System.out.printf("mov r%d, r%d\n", Rd, Rm);
-          return;
-        }
-
-        case 3:
-        { // BX
-          this.cpsr.t = (this.r[Rm] & 1) != 0;
-
-          if (Rm == 15)
-          {
-            this.r[15] += 2; // 16-bit
-          }
-          else
-          {
-            this.r[15] = this.r[Rm] & ~1;
-          }
-
-          System.out.printf("bx r%d\n", Rm);
-          return;
-        }
-      }
-    }
-
-    if ((opcode >> 11) == 9)
-    {
-      int Rd = (opcode >> 8) & 7;
-      int Imm = (opcode & 0xFF);
-      int addr = this.r[15] + (Imm << 2) + 2; // 16-bit
-
-      this.r[Rd] = this.memory.read32(addr);
-
-      System.out.printf("ldr r%d, =0x%08X\n", Rd, this.r[Rd]);
-      return;
-    }
-
-    if ((opcode >> 12) == 5)
-    {
-      int Rd = (opcode >> 0) & 7;
-      int Rn = (opcode >> 3) & 7;
-      int Rm = (opcode >> 6) & 7;
-
-      switch ((opcode >> 9) & 7)
-      {
-        case 0:
-        { // STR
-          int addr = this.r[Rn] + this.r[Rm];
-          int value = this.r[Rd];
-
-          this.memory.write32(addr, value);
-
-          System.out.printf("str r%d, [r%d, r%d]\n", Rd, Rn, Rm);
-          return;
-        }
-
-        case 2:
-        { // STRB
-          int addr = this.r[Rn] + this.r[Rm];
-          byte value = (byte) (this.r[Rd] & 0xFF);
-
-          this.memory.write8(addr, value);
-
-          System.out.printf("strb r%d, [r%d, r%d]\n", Rd, Rn, Rm);
-          return;
-        }
-
-        case 4:
-        { // LDR
-          int addr = this.r[Rn] + this.r[Rm];
-
-          this.r[Rd] = this.memory.read32(addr);
-
-          System.out.printf("ldr r%d, [r%d, r%d]\n", Rd, Rn, Rm);
-          return;
-        }
-
-        case 6:
-        { // LDRB
-          int addr = this.r[Rn] + this.r[Rm];
-
-          this.r[Rd] = this.memory.read8(addr);
-
-          System.out.printf("ldrb r%d, [r%d, r%d]\n", Rd, Rn, Rm);
-          return;
-        }
-      }
-    }
-
-    if ((opcode >> 13) == 3)
-    {
-      int Rd = (opcode >> 0) & 7;
-      int Rn = (opcode >> 3) & 7;
-      int Imm = (opcode >> 6) & 7;
-
-      if ((opcode & 0x1000) != 0)
-      {
-        if ((opcode & 0x800) != 0)
-        {
-          int addr = this.r[Rn] + (Imm << 2);
-
-          this.r[Rd] = this.memory.read8(addr);
-
-          System.out.printf("ldrb r%d, [r%d, 0x%02X]\n", Rd, Rn, Imm);
-        }
-        else
-        {
-          int addr = this.r[Rn] + (Imm << 2);
-          byte value = (byte) (this.r[Rd] & 0xFF);
-
-          this.memory.write8(addr, value);
-
-          System.out.printf("strb r%d, [r%d, 0x%02X]\n", Rd, Rn, Imm);
-        }
-      }
-      else
-      {
-        if ((opcode & 0x800) != 0)
-        {
-          int addr = this.r[Rn] + (Imm << 2);
-
-          this.r[Rd] = this.memory.read32(addr);
-
-          System.out.printf("ldr r%d, [r%d, 0x%02X]\n", Rd, Rn, Imm << 2);
-        }
-        else
-        {
-          int addr = this.r[Rn] + (Imm << 2);
-          int value = this.r[Rd];
-
-          this.memory.write32(addr, value);
-
-          System.out.printf("str r%d, [r%d, 0x%02X]\n", Rd, Rn, Imm << 2);
-        }
-      }
-
-      return;
-    }
-
-    if ((opcode >> 12) == 8)
-    {
-      int Rd = (opcode >> 0) & 7;
-      int Rn = (opcode >> 3) & 7;
-      int Imm = (opcode >> 6) & 7;
-
-      if ((opcode & 0x800) != 0)
-      {
-        int addr = this.r[Rn] + (Imm << 1);
-
-        this.r[Rd] = this.memory.read16(addr);
-
-        System.out.printf("ldrh r%d, [r%d, 0x%02X]\n", Rd, Rn, Imm << 1);
-      }
-      else
-      {
-        int addr = this.r[Rn] + (Imm << 1);
-        short value = (short) (this.r[Rd] & 0xFFFF);
-
-        this.memory.write16(addr, value);
-
-        System.out.printf("strh r%d, [r%d, 0x%02X]\n", Rd, Rn, Imm << 1);
-      }
-
-      return;
-    }
-
-    if ((opcode >> 12) == 9)
-    {
-      int Rd = (opcode >> 8) & 7;
-      int Imm = (opcode & 0xFF);
-
-      if ((opcode & 0x800) != 0)
-      {
-        int addr = this.r[13] + (Imm << 2);
-
-        this.r[Rd] = this.memory.read32(addr);
-
-        System.out.printf("ldr r%d, [sp, 0x%02X]\n", Rd, Imm << 2);
-      }
-      else
-      {
-        int addr = this.r[13] + (Imm << 2);
-        int value = this.r[Rd];
-
-        this.memory.write32(addr, value);
-
-        System.out.printf("str r%d, [sp, 0x%02X]\n", Rd, Imm << 2);
-      }
-
-      return;
-    }
-
-    if ((opcode >> 12) == 10)
-    {
-      int Rd = (opcode >> 8) & 7;
-      int Imm = (opcode & 0xFF);
-
-      if ((opcode & 0x800) != 0)
-      {
-        this.r[Rd] = this.r[13] + (Imm << 2);
-
-        System.out.printf("add r%d, sp, #0x%02X\n", Rd, Imm << 2);
-      }
-      else
-      {
-        this.r[Rd] = (this.r[15] & ~2) + (Imm << 2);
-
-        System.out.printf("add r%d, pc, #0x%02X\n", Rd, Imm << 2);
-      }
-
-      return;
-    }
-
-    if ((opcode >> 12) == 11)
-    {
-      switch ((opcode >> 9) & 7)
-      {
-        case 0:
-        { // ADD/SUB
-          int Imm = (opcode & 0x7F);
-
-          if ((opcode & 0x80) != 0)
-          {
-            this.r[13] -= Imm << 2;
-            System.out.printf("sub sp, #0x%02X\n", Imm << 2);
-          }
-          else
-          {
-            this.r[13] += Imm << 2;
-            System.out.printf("add sp, #0x%02X\n", Imm << 2);
-          }
-
-          return;
-        }
-
-        case 2:
-        { // PUSH
-          boolean lrf = (opcode & 0x100) != 0;
-          boolean pf = false;
-
-          if (lrf)
-          {
-            push(this.r[14]);
-          }
-
-          for (int i = 7; i >= 0; i--)
-          {
-            if (((opcode >> i) & 1) != 0)
-            {
-              push(this.r[i]);
-            }
-          }
-
-          System.out.printf("push {");
-
-          for (int i = 0; i < 8; i++)
-          {
-            if (((opcode >> i) & 1) != 0)
-            {
-              if (pf)
-              {
-                System.out.printf(",");
-              }
-              System.out.printf("r%d", i);
-
-              pf = true;
-            }
-          }
-
-          if (lrf)
-          {
-            if (pf)
-            {
-              System.out.printf(",");
-            }
-            System.out.printf("lr");
-          }
-
-          System.out.printf("}\n");
-          return;
-        }
-
-        case 6:
-        { // POP
-          boolean pcf = (opcode & 0x100) != 0;
-          boolean pf = false;
-
-          System.out.printf("pop {");
-
-          for (int i = 0; i < 8; i++)
-          {
-            if (((opcode >> i) & 1) != 0)
-            {
-              if (pf)
-              {
-                System.out.printf(",");
-              }
-              System.out.printf("r%d", i);
-
-              this.r[i] = pop();
-              pf = true;
-            }
-          }
-
-          if (pcf)
-          {
-            if (pf)
-            {
-              System.out.printf(",");
-            }
-            System.out.printf("pc");
-
-            this.r[15] = pop();
-            this.cpsr.t = (this.r[15] & 1) != 0;
-          }
-
-          System.out.printf("}\n");
-          return;
-        }
-      }
-    }
-
-    if ((opcode >> 12) == 12)
-    {
-      int Rn = (opcode >> 8) & 7;
-
-      if ((opcode & 0x800) != 0)
-      {
-        System.out.printf("ldmia r%d!, {", Rn);
-
-        for (int i = 0; i < 8; i++)
-        {
-          if (((opcode >> i) & 1) != 0)
-          {
-            this.r[i] = this.memory.read32(this.r[Rn]);
-            this.r[Rn] += 4;
-
-            System.out.printf("r%d,", i);
-          }
-        }
-
-        System.out.printf("}\n");
-        return;
-      }
-      else
-      {
-        System.out.printf("stmia r%d!, {", Rn);
-
-        for (int i = 0; i < 8; i++)
-        {
-          if (((opcode >> i) & 1) != 0)
-          {
-            this.memory.write32(this.r[Rn], this.r[i]);
-            this.r[Rn] += 4;
-
-            System.out.printf("r%d,", i);
-          }
-        }
-
-        System.out.printf("}\n");
-        return;
-      }
-    }
-
-    if ((opcode >> 12) == 13)
-    {
-      int Imm = (opcode & 0xFF) << 1;
-
-      if ((Imm & 0x100) != 0)
-      {
-        Imm = ~((~Imm) & 0xFF);
-      }
-
-      Imm += 2;
-
-      System.out.printf("b");
-      condPrint(opcode);
-      System.out.printf(" 0x%08X\n", (this.r[15] + Imm));
-
-      if (condCheck(opcode))
-      {
-        this.r[15] += Imm;
-      }
-
-      return;
-    }
-
-    if ((opcode >> 11) == 28)
-    {
-      int Imm = (opcode & 0x7FF) << 1;
-
-      if ((Imm & (1 << 11)) != 0)
-      {
-        Imm = (~Imm) & 0xFFE;
-        this.r[15] -= Imm;
-      }
-      else
-      {
-        this.r[15] += Imm + 2; // 16-bit
-      }
-
-      System.out.printf("b 0x%08X, 0x%X\n", this.r[15], Imm);
-      return;
-    }
-
-    if ((opcode >> 11) == 0x1E)
-    {
-      boolean blx = false;
-      if ((opcode & (1 << 11)) == 0)
-      {
-        // H = 0
-        int Imm = ((opcode & 0x7FF) << 12);
-
-        this.r[14] = this.r[15] + Imm;
-      }
-      else
-      {
-        // H = 1
-        int temp = this.r[15];
-
-        int Imm = ((opcode & 0x7FF) << 1);
-
-        this.r[15] = this.r[14] + Imm;
-        this.r[14] = temp | 1;
-
-        if ((Imm & (1 << 22)) != 0)
-        {
-          Imm = (~Imm) & 0x7FFFFE;
-          this.r[15] -= Imm;
-        }
-        else
-        {
-          this.r[15] += Imm + 2;
-        }
-      }
-
-      if (blx)
-      {
-        this.cpsr.t = false;
-        System.out.printf("blx 0x%08X\n", this.r[15]);
-      }
-      else
-      {
-        System.out.printf("bl 0x%08X\n", this.r[15]);
-      }
-
-      return;
-    }
-
-    System.out.printf("Unknown opcode! (0x%04X)\n", opcode);
-  }
-
-  /**
-   * @return 32-bit value.
-   */
-  protected int pop()
-  {
-    int addr = this.r[13];
-
-    this.r[13] += 4; // 32-bit
-
-    /* Read value */
-    return this.memory.read32(addr);
-  }
+    /* Read value */
+    return load32(addr);
+  }
 
   /**
    * 32-bit value.
@@ -2509,7 +1386,7 @@ public class Arm
     this.r[13] -= 4; // 32-bit
 
     /* Write value */
-    this.memory.write32(this.r[13], value);
+    store32(this.r[13], value);
   }
 
   /**
@@ -2523,7 +1400,24 @@ public class Arm
   {
     boolean signed = ((opcode >> 20) & 1) == 1;
 
-    int amt = (opcode >> 7) & 0x1F;
+    return shift((opcode >> 5) & 3, (opcode >> 7) & 0x1F, signed, value);
+  }
+
+  /**
+   * Shifts a value using an already extracted shift type and amount.
+   * 
+   * @param type
+   *          the shift type (LSL, LSR, ASR or ROR);
+   * @param amt
+   *          the shift amount;
+   * @param signed
+   *          <code>true</code> if the carry flag should be updated;
+   * @param value
+   *          the value to shift.
+   * @return the shifted value.
+   */
+  protected int shift(int type, int amt, boolean signed, int value)
+  {
     int result;
 
     if (amt == 0)
@@ -2531,12 +1425,12 @@ public class Arm
       return value;
     }
 
-    switch ((opcode >> 5) & 3)
+    switch (type)
     {
       case 0:
         if (signed)
         {
-          this.cpsr.c = (value & (1 << (32 - amt))) == 1;
+          this.cpsr.setC((value & (1 << (32 - amt))) == 1);
         }
 
         result = LSL(value, amt);
@@ -2544,7 +1438,7 @@ public class Arm
       case 1:
         if (signed)
         {
-          this.cpsr.c = (value & (1 << (amt - 1))) == 1;
+          this.cpsr.setC((value & (1 << (amt - 1))) == 1);
         }
 
         result = LSR(value, amt);
@@ -2552,7 +1446,7 @@ public class Arm
       case 2:
         if (signed)
         {
-          this.cpsr.c = (value & (1 << (amt - 1))) == 1;
+          this.cpsr.setC((value & (1 << (amt - 1))) == 1);
         }
 
         result = ASR(value, amt);
@@ -2569,110 +1463,522 @@ public class Arm
   }
 
   /**
-   * 32-bit opcode.
+   * 32-bit values.
    * 
-   * @param opcode
+   * @param a
+   * @param b
+   * @return
    */
-  protected void shiftPrint(int opcode)
+  protected int subtract(int a, int b)
   {
-    int amt = (opcode >> 7) & 0x1F;
-    if (amt == 0)
+    /* Subtract values */
+    int result = a - b;
+
+    /* Set flags, evaluated lazily */
+    this.cpsr.setSubtraction(a, b);
+
+    return result;
+  }
+
+  /**
+   * Clears the local exclusive monitor, as done by CLREX and upon taking an
+   * exception, so a subsequent STREX fails.
+   */
+  final void clearExclusive()
+  {
+    this.exclusive = false;
+  }
+
+  /**
+   * Returns whether the given (already extracted) condition passes.
+   * 
+   * @param aCond
+   *          the 4-bit condition code.
+   * @return <code>true</code> if the condition passes, <code>false</code>
+   *         otherwise.
+   */
+  final boolean conditionPassed(int aCond)
+  {
+    return this.cpsr.conditionPassed(aCond);
+  }
+
+  /**
+   * Returns whether the program has exited.
+   * 
+   * @return <code>true</code> if the program is finished, <code>false</code>
+   *         otherwise.
+   */
+  final boolean isFinished()
+  {
+    return this.finished;
+  }
+
+  /**
+   * Loads a 16-bit value from memory.
+   * 
+   * @param aAddress
+   *          the address to load from.
+   * @return the sign-extended 16-bit value.
+   */
+  final int load16(int aAddress)
+  {
+    return loaded(aAddress, this.memory.read16(aAddress));
+  }
+
+  /**
+   * Loads a 32-bit value from memory.
+   * 
+   * @param aAddress
+   *          the address to load from.
+   * @return the 32-bit value.
+   */
+  final int load32(int aAddress)
+  {
+    return loaded(aAddress, this.memory.read32(aAddress));
+  }
+
+  /**
+   * Loads an 8-bit value from memory.
+   * 
+   * @param aAddress
+   *          the address to load from.
+   * @return the sign-extended 8-bit value.
+   */
+  final int load8(int aAddress)
+  {
+    return loaded(aAddress, this.memory.read8(aAddress));
+  }
+
+  /**
+   * Loads a 32-bit value from memory and opens the local exclusive monitor for
+   * its address, as done by LDREX.
+   * 
+   * @param aAddress
+   *          the address to load from.
+   * @return the 32-bit value.
+   */
+  final int loadExclusive(int aAddress)
+  {
+    int value = this.memory.readExclusive32(aAddress);
+
+    this.exclusive = true;
+    this.exclusiveAddress = aAddress;
+    this.exclusiveValue = value;
+
+    return loaded(aAddress, value);
+  }
+
+  /**
+   * Loads a block of consecutive 32-bit values from memory at once.
+   * 
+   * @param aAddress
+   *          the lowest address to load from;
+   * @param aValues
+   *          the array to load the values into, cannot be <code>null</code>;
+   * @param aCount
+   *          the number of values to load;
+   * @param aAscending
+   *          <code>true</code> if the values are transferred in ascending
+   *          address order, <code>false</code> if in descending order, which
+   *          determines what is the last data access.
+   */
+  final void loadMultiple(int aAddress, int[] aValues, int aCount, boolean aAscending)
+  {
+    if (aCount > 0)
+    {
+      this.memory.read(aAddress, aValues, 0, aCount);
+
+      int last = aAscending ? (aCount - 1) : 0;
+      loaded(aAddress + (4 * last), aValues[last]);
+    }
+  }
+
+  /**
+   * Stores a 16-bit value in memory.
+   * 
+   * @param aAddress
+   *          the address to store to;
+   * @param aValue
+   *          the value to store, only its lower 16 bits are used.
+   */
+  final void store16(int aAddress, int aValue)
+  {
+    this.memory.write16(aAddress, (short) (aValue & 0xFFFF));
+    stored(aAddress, aValue & 0xFFFF);
+  }
+
+  /**
+   * Stores a 32-bit value in memory.
+   * 
+   * @param aAddress
+   *          the address to store to;
+   * @param aValue
+   *          the value to store.
+   */
+  final void store32(int aAddress, int aValue)
+  {
+    this.memory.write32(aAddress, aValue);
+    stored(aAddress, aValue);
+  }
+
+  /**
+   * Stores an 8-bit value in memory.
+   * 
+   * @param aAddress
+   *          the address to store to;
+   * @param aValue
+   *          the value to store, only its lower 8 bits are used.
+   */
+  final void store8(int aAddress, int aValue)
+  {
+    this.memory.write8(aAddress, (byte) (aValue & 0xFF));
+    stored(aAddress, aValue & 0xFF);
+  }
+
+  /**
+   * Stores a 32-bit value in memory if the local exclusive monitor is open for
+   * the given address, and no other core changed the value since, as done by
+   * STREX. The monitor is closed in any case.
+   * 
+   * @param aAddress
+   *          the address to store to;
+   * @param aValue
+   *          the value to store.
+   * @return <code>true</code> if the value is stored, <code>false</code>
+   *         otherwise.
+   */
+  final boolean storeExclusive(int aAddress, int aValue)
+  {
+    boolean open = this.exclusive && (this.exclusiveAddress == aAddress);
+    this.exclusive = false;
+
+    if (!open || !this.memory.writeExclusive32(aAddress, this.exclusiveValue, aValue))
     {
-      return;
+      return false;
     }
+    stored(aAddress, aValue);
+    return true;
+  }
 
-    switch ((opcode >> 5) & 3)
+  /**
+   * Stores a block of consecutive 32-bit values in memory at once.
+   * 
+   * @param aAddress
+   *          the lowest address to store to;
+   * @param aValues
+   *          the values to store, cannot be <code>null</code>;
+   * @param aCount
+   *          the number of values to store;
+   * @param aAscending
+   *          <code>true</code> if the values are transferred in ascending
+   *          address order, <code>false</code> if in descending order, which
+   *          determines what is the last data access.
+   */
+  final void storeMultiple(int aAddress, int[] aValues, int aCount, boolean aAscending)
+  {
+    if (aCount > 0)
     {
-      case 0:
-        System.out.printf(",LSL#%d", amt);
-        break;
-      case 1:
-        System.out.printf(",LSR#%d", amt);
-        break;
-      case 2:
-        System.out.printf(",ASR#%d", amt);
-        break;
-      case 3:
-        System.out.printf(",ROR#%d", amt);
-        break;
+      this.memory.write(aAddress, aValues, 0, aCount);
+
+      int last = aAscending ? (aCount - 1) : 0;
+      stored(aAddress + (4 * last), aValues[last]);
     }
   }
 
   /**
-   * 32-bit values.
+   * Executes a single, already fetched, instruction.
    * 
-   * @param a
-   * @param b
-   * @return
+   * @param aAddress
+   *          the address of the instruction;
+   * @param aInstruction
+   *          the instruction to execute;
+   * @param aThumb
+   *          <code>true</code> if the instruction is a THUMB instruction,
+   *          <code>false</code> if it is an ARM instruction.
    */
-  protected int subtract(int a, int b)
+  private void execute(int aAddress, Instruction aInstruction, boolean aThumb)
   {
-    /* Subtract values */
-    int result = a - b;
+    if (this.traceSink != null)
+    {
+      this.traceSink.instruction(aAddress, aInstruction.opcode, aThumb);
+    }
+
+    this.r[15] = aAddress + (aThumb ? 2 : 4);
 
-    /* Set flags */
-    this.cpsr.c = !borrowFrom(a, b);
-    this.cpsr.v = overflowFrom(a, -b);
-    this.cpsr.z = result == 0;
-    this.cpsr.n = ((result >> 31) == 1);
+    aInstruction.execute(this);
+  }
+
+  /**
+   * Remembers a load as the last data access, if a trace sink is set.
+   * 
+   * @return the given value.
+   */
+  private int loaded(int aAddress, int aValue)
+  {
+    if (this.traceSink != null)
+    {
+      this.dataAccesses++;
+      this.dataAddress = aAddress;
+      this.dataValue = aValue;
+      this.dataWrite = false;
+    }
+    return aValue;
+  }
+
+  /**
+   * Remembers a store as the last data access, if a trace sink is set.
+   */
+  private void stored(int aAddress, int aValue)
+  {
+    if (this.traceSink != null)
+    {
+      this.dataAccesses++;
+      this.dataAddress = aAddress;
+      this.dataValue = aValue;
+      this.dataWrite = true;
+    }
+  }
 
+  /**
+   * Fetches and decodes the ARM instruction at the given address, using the
+   * decode cache whenever possible.
+   * 
+   * @param aAddress
+   *          the address of the instruction.
+   * @return the decoded instruction, or <code>null</code> if the given address
+   *         is not mapped.
+   */
+  private Instruction fetchArm(int aAddress)
+  {
+    Instruction result = this.armCache.get(aAddress);
+    if (result == null)
+    {
+      Chunk chunk = this.memory.findCode(aAddress);
+      if (chunk == null)
+      {
+        return null;
+      }
+
+      result = ArmDecoder.decode(chunk.fetch32(aAddress));
+      this.armCache.put(aAddress, result, this.memory.codePage(aAddress));
+    }
     return result;
   }
 
   /**
-   * 32-bit opcode.
+   * Fetches and decodes the THUMB instruction at the given address. As all
+   * THUMB opcodes are decoded up front, this needs no decode cache.
    * 
-   * @param opcode
+   * @param aAddress
+   *          the address of the instruction.
+   * @return the decoded instruction, or <code>null</code> if the given address
+   *         is not mapped.
    */
-  protected void suffPrint(int opcode)
+  private Instruction fetchThumb(int aAddress)
   {
-    if (((opcode >> 20) & 1) != 0)
+    Chunk chunk = this.memory.findCode(aAddress);
+    if (chunk == null)
     {
-      System.out.print("s");
+      return null;
     }
+    return ThumbDecoder.decode(chunk.fetch16(aAddress));
   }
 
   /**
-   * @param aOpcode
-   * @return
+   * Clears a pending watchpoint hit, along with the finished flag it set.
+   * 
+   * @return <code>true</code> if a watchpoint was hit, <code>false</code>
+   *         otherwise.
+   */
+  private boolean clearWatchpointHit()
+  {
+    if (!this.watchpointHit)
+    {
+      return false;
+    }
+    this.watchpointHit = false;
+    this.finished = false;
+    return true;
+  }
+
+  /**
+   * Handles a fault raised by the memory, according to its invalid access
+   * policy: either the CPU takes a prefetch or data abort, or it stops with the
+   * PC pointing to the faulting instruction.
+   * 
+   * @param aFault
+   *          the raised fault, cannot be <code>null</code>;
+   * @param aThumb
+   *          <code>true</code> if the faulting instruction is a THUMB
+   *          instruction, <code>false</code> if it is an ARM instruction.
+   * @return <code>true</code> if an abort is taken, <code>false</code> if the
+   *         CPU should stop.
+   */
+  private boolean takeAbort(MemoryFault aFault, boolean aThumb)
+  {
+    // A fetch fault leaves the PC untouched, a data fault happens after the PC
+    // is advanced past the faulting instruction...
+    int address = aFault.isFetch() ? this.r[15] : (this.r[15] - (aThumb ? 2 : 4));
+    clearExclusive();
+
+    if (this.memory.getInvalidAccessPolicy() != InvalidAccessPolicy.ABORT)
+    {
+      this.r[15] = address;
+      return false;
+    }
+
+    this.spsr = this.cpsr.getValue();
+    this.cpsr.setMode(MODE_ABORT);
+    this.cpsr.setT(false);
+    this.cpsr.setI(true);
+    this.cpsr.setA(true);
+
+    if (aFault.isFetch())
+    {
+      this.r[14] = address + 4;
+      this.r[15] = VECTOR_PREFETCH_ABORT;
+    }
+    else
+    {
+      this.r[14] = address + 8;
+      this.r[15] = VECTOR_DATA_ABORT;
+    }
+    return true;
+  }
+
+  /**
+   * Looks up the translated block for the given address, and translates it if
+   * it is executed often enough.
+   * 
+   * @param aAddress
+   *          the address of the first instruction of the block;
+   * @param aThumb
+   *          <code>true</code> for a block of THUMB instructions,
+   *          <code>false</code> for a block of ARM instructions.
+   * @return the translated block, or <code>null</code> if the block is not
+   *         (yet) translated.
+   */
+  private BasicBlock lookupBlock(int aAddress, boolean aThumb)
+  {
+    BlockCache blocks = aThumb ? this.thumbBlocks : this.armBlocks;
+    BasicBlock block = blocks.get(aAddress);
+    if ((block == null) && (blocks.count(aAddress) >= HOT_THRESHOLD))
+    {
+      block = translate(aAddress, aThumb);
+      blocks.put(aAddress, block);
+    }
+    return block;
+  }
+
+  /**
+   * Translates the basic block starting at the given address.
+   * 
+   * @param aAddress
+   *          the address of the first instruction of the block;
+   * @param aThumb
+   *          <code>true</code> to translate THUMB instructions,
+   *          <code>false</code> to translate ARM instructions.
+   * @return the translated block, or <code>null</code> if the instruction at
+   *         the given address cannot be translated.
+   */
+  private BasicBlock translate(int aAddress, boolean aThumb)
+  {
+    Chunk chunk = this.memory.findCode(aAddress);
+    if (chunk == null)
+    {
+      return null;
+    }
+
+    int size = aThumb ? 2 : 4;
+
+    List<Instruction> instructions = new ArrayList<Instruction>();
+    for (int addr = aAddress; instructions.size() < MAX_BLOCK_LENGTH; addr += size)
+    {
+      // Blocks never span multiple chunks...
+      if (this.memory.findCode(addr + size - 1) != chunk)
+      {
+        break;
+      }
+
+      Instruction instruction = aThumb ? fetchThumb(addr) : fetchArm(addr);
+      if ((instruction == null) || !instruction.isTranslatable())
+      {
+        break;
+      }
+
+      instructions.add(instruction);
+      if (instruction.endsBlock())
+      {
+        break;
+      }
+    }
+
+    if (instructions.isEmpty())
+    {
+      return null;
+    }
+
+    // Track writes to the pages this block is translated from...
+    CodePage firstPage = this.memory.codePage(aAddress);
+    CodePage lastPage = this.memory.codePage(aAddress + (size * instructions.size()) - 1);
+
+    return new BasicBlock(aAddress, aThumb, instructions.toArray(new Instruction[instructions.size()]), firstPage,
+        lastPage);
+  }
+
+  /**
+   * Evaluates the given condition for the given flags.
+   * 
+   * @param aCode
+   *          the condition to evaluate;
+   * @param aFlags
+   *          the NZCV-flags, as 4-bit value.
+   * @return <code>true</code> if the condition passes, <code>false</code>
+   *         otherwise.
    */
-  private boolean conditionCheck(ConditionCode aCode)
+  static boolean evaluate(ConditionCode aCode, int aFlags)
   {
+    boolean n = (aFlags & 8) != 0;
+    boolean z = (aFlags & 4) != 0;
+    boolean c = (aFlags & 2) != 0;
+    boolean v = (aFlags & 1) != 0;
+
     /* Check condition */
     switch (aCode)
     {
       case EQ:
-        return this.cpsr.z;
+        return z;
       case NE:
-        return !this.cpsr.z;
+        return !z;
       case CS:
-        return this.cpsr.c;
+        return c;
       case CC:
-        return !this.cpsr.c;
+        return !c;
       case MI:
-        return this.cpsr.n;
+        return n;
       case PL:
-        return !this.cpsr.n;
+        return !n;
       case VS:
-        return this.cpsr.v;
+        return v;
       case VC:
-        return !this.cpsr.v;
+        return !v;
       case HI:
-        return (this.cpsr.c && !this.cpsr.z);
+        return (c && !z);
       case LS:
-        return (!this.cpsr.c || this.cpsr.z);
+        return (!c || z);
       case GE:
-        return (this.cpsr.n == this.cpsr.v);
+        return (n == v);
       case LT:
-        return (this.cpsr.n != this.cpsr.v);
+        return (n != v);
       case GT:
-        return ((this.cpsr.n == this.cpsr.v) && !this.cpsr.z);
+        return ((n == v) && !z);
       case LE:
-        return ((this.cpsr.n != this.cpsr.v) || this.cpsr.z);
+        return ((n != v) || z);
       case AL:
         return true;
     }
 
     return false;
   }
+
 }
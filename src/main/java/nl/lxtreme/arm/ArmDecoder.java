@@ -0,0 +1,1740 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import static nl.lxtreme.arm.Arm.*;
+import static nl.lxtreme.arm.Disassembler.*;
+
+import java.util.*;
+
+
+/**
+ * Decodes ARM (32-bit) opcodes into pre-decoded {@link Instruction}s.
+ */
+final class ArmDecoder
+{
+  // INNER TYPES
+
+  /**
+   * BX/BLX with a register operand.
+   */
+  static final class BranchExchange extends Instruction
+  {
+    final int cond;
+    final int rm;
+    final boolean link;
+
+    BranchExchange(int aOpcode)
+    {
+      super(aOpcode);
+      this.cond = (aOpcode >> 28) & 0x0f;
+      this.rm = aOpcode & 0xF;
+      this.link = ((aOpcode >> 5) & 1) != 0;
+    }
+
+    @Override
+    boolean endsBlock()
+    {
+      return true;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      if (this.link)
+      {
+        aArm.r[14] = aArm.r[15];
+      }
+
+      aArm.cpsr.setT((aArm.r[this.rm] & 1) == 1);
+
+      aArm.r[15] = aArm.r[this.rm] & ~1;
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("b%sx%s r%d", (this.link) ? "l" : "", condition(this.opcode), this.rm);
+    }
+  }
+
+  /**
+   * B/BL.
+   */
+  static final class Branch extends Instruction
+  {
+    final int cond;
+    final int offset;
+    final boolean link;
+
+    Branch(int aOpcode)
+    {
+      super(aOpcode);
+      this.cond = (aOpcode >> 28) & 0x0f;
+      this.link = (aOpcode & (1 << 24)) != 0;
+
+      int imm = (aOpcode & 0xFFFFFF) << 2;
+      if ((imm & (1 << 25)) != 0)
+      {
+        imm = ~(~imm & 0xFFFFFF);
+      }
+      this.offset = imm + 4; // 32-bit
+    }
+
+    @Override
+    boolean endsBlock()
+    {
+      return true;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      if (this.link)
+      {
+        aArm.r[14] = aArm.r[15];
+      }
+      aArm.r[15] += this.offset;
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("b%s%s 0x%08X", (this.link) ? "l" : "", condition(this.opcode), aAddress + 4 + this.offset);
+    }
+  }
+
+  /**
+   * Base class for all data processing instructions.
+   */
+  abstract static class DataProcessing extends Instruction
+  {
+    final int cond;
+    final int rd;
+    final int rn;
+    final int rm;
+    final int imm8;
+    final int imm;
+    final int shiftType;
+    final int shiftAmount;
+    final boolean I;
+    final boolean S;
+
+    DataProcessing(int aOpcode)
+    {
+      super(aOpcode);
+      this.cond = (aOpcode >> 28) & 0x0f;
+      this.rn = (aOpcode >> 16) & 0xF;
+      this.rd = (aOpcode >> 12) & 0xF;
+      this.rm = aOpcode & 0xF;
+      this.imm8 = aOpcode & 0xFF;
+      this.imm = ROR(this.imm8, ((aOpcode >> 8) & 0xF) << 1);
+      this.shiftType = (aOpcode >> 5) & 3;
+      this.shiftAmount = (aOpcode >> 7) & 0x1F;
+      this.I = ((aOpcode >> 25) & 1) != 0;
+      this.S = ((aOpcode >> 20) & 1) != 0;
+    }
+
+    /**
+     * Returns the second operand, either the rotated immediate or the shifted
+     * register value.
+     */
+    final int operand(Arm aArm)
+    {
+      if (this.I)
+      {
+        return this.imm;
+      }
+      return aArm.shift(this.shiftType, this.shiftAmount, this.S, aArm.r[this.rm]);
+    }
+
+    /**
+     * Formats the mnemonic and operands of a three-operand instruction.
+     */
+    final void format(Formatter aOut, String aMnemonic)
+    {
+      aOut.format("%s%s%s", aMnemonic, condition(this.opcode), suffix(this.opcode));
+
+      if (!this.I)
+      {
+        aOut.format(" r%d, r%d, r%d%s", this.rd, this.rn, this.rm, shift(this.opcode));
+      }
+      else
+      {
+        aOut.format(" r%d, r%d, #0x%X", this.rd, this.rn, this.imm);
+      }
+    }
+
+    /**
+     * Formats the mnemonic and operands of a two-operand (move) instruction.
+     */
+    final void formatMove(Formatter aOut, String aMnemonic)
+    {
+      aOut.format("%s%s%s", aMnemonic, condition(this.opcode), suffix(this.opcode));
+
+      if (!this.I)
+      {
+        aOut.format(" r%d, r%d%s", this.rd, this.rm, shift(this.opcode));
+      }
+      else
+      {
+        aOut.format(" r%d, #0x%X", this.rd, this.imm);
+      }
+    }
+
+    /**
+     * Sets the Z and N flags according to the destination register.
+     */
+    final void setZN(Arm aArm)
+    {
+      aArm.cpsr.setNZ(aArm.r[this.rd]);
+    }
+  }
+
+  static final class And extends DataProcessing
+  {
+    And(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      aArm.r[this.rd] = aArm.r[this.rn] & operand(aArm);
+
+      if (this.S)
+      {
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      format(aOut, "and");
+    }
+  }
+
+  static final class Eor extends DataProcessing
+  {
+    Eor(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      aArm.r[this.rd] = aArm.r[this.rn] ^ operand(aArm);
+
+      if (this.S)
+      {
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      format(aOut, "eor");
+    }
+  }
+
+  static final class Sub extends DataProcessing
+  {
+    Sub(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      int[] r = aArm.r;
+      r[this.rd] = r[this.rn] - operand(aArm);
+
+      if (this.S)
+      {
+        aArm.cpsr.setC((this.I) ? (r[this.rn] >= this.imm) : (r[this.rn] < r[this.rd]));
+        aArm.cpsr.setV(((r[this.rn] >> 31) & ~(r[this.rd] >> 31)) != 0);
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      format(aOut, "sub");
+    }
+  }
+
+  static final class Rsb extends DataProcessing
+  {
+    Rsb(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      int[] r = aArm.r;
+      r[this.rd] = operand(aArm) - r[this.rn];
+
+      if (this.S)
+      {
+        aArm.cpsr.setC((this.I) ? (r[this.rn] > this.imm8) : (r[this.rn] > r[this.rm]));
+        aArm.cpsr.setV((this.I) ? ((this.imm8 >> 31) & ~((this.imm8 - r[this.rn]) >> 31)) != 0
+            : ((this.imm8 >> 31) & ~((r[this.rm] - r[this.rn]) >> 31)) != 0);
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      format(aOut, "rsb");
+    }
+  }
+
+  static final class Add extends DataProcessing
+  {
+    Add(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      int[] r = aArm.r;
+      r[this.rd] = r[this.rn] + operand(aArm);
+
+      if (this.rn == 15)
+      {
+        r[this.rd] += 4;
+      }
+
+      if (this.S)
+      {
+        aArm.cpsr.setC(r[this.rd] < r[this.rn]);
+        aArm.cpsr.setV(((r[this.rn] >> 31) & ~(r[this.rd] >> 31)) != 0);
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      format(aOut, "add");
+    }
+  }
+
+  static final class Adc extends DataProcessing
+  {
+    Adc(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      aArm.r[this.rd] = aArm.r[this.rn] + operand(aArm) + (aArm.cpsr.isC() ? 1 : 0);
+
+      if (this.S)
+      {
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      format(aOut, "adc");
+    }
+  }
+
+  static final class Sbc extends DataProcessing
+  {
+    Sbc(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      int[] r = aArm.r;
+      r[this.rd] = r[this.rn] - operand(aArm) - (aArm.cpsr.isC() ? 0 : 1);
+
+      if (this.S)
+      {
+        aArm.cpsr.setC(r[this.rd] > r[this.rn]);
+        aArm.cpsr.setV(((r[this.rn] >> 31) & ~(r[this.rd] >> 31)) != 0);
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      format(aOut, "sbc");
+    }
+  }
+
+  static final class Rsc extends DataProcessing
+  {
+    Rsc(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      int[] r = aArm.r;
+      r[this.rd] = operand(aArm) - r[this.rn] - (aArm.cpsr.isC() ? 0 : 1);
+
+      if (this.S)
+      {
+        aArm.cpsr.setC((this.I) ? (r[this.rd] > this.imm8) : (r[this.rd] > r[this.rm]));
+        aArm.cpsr.setV((this.I) ? ((r[this.rm] >> 31) & ~(r[this.rd] >> 31)) != 0
+            : ((r[this.rn] >> 31) & ~(r[this.rd] >> 31)) != 0);
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      format(aOut, "rsc");
+    }
+  }
+
+  /**
+   * TST; note that this instruction is executed unconditionally.
+   */
+  static final class Tst extends DataProcessing
+  {
+    Tst(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int result = aArm.r[this.rn] & operand(aArm);
+
+      aArm.cpsr.setNZ(result);
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("tst%s", condition(this.opcode));
+
+      if (!this.I)
+      {
+        aOut.format(" r%d, r%d%s", this.rn, this.rm, shift(this.opcode));
+      }
+      else
+      {
+        aOut.format(" r%d, #0x%X", this.rn, this.imm);
+      }
+    }
+  }
+
+  /**
+   * TEQ; note that this instruction is executed unconditionally.
+   */
+  static final class Teq extends DataProcessing
+  {
+    Teq(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int result = aArm.r[this.rn] ^ operand(aArm);
+
+      aArm.cpsr.setNZ(result);
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("teq%s", condition(this.opcode));
+
+      if (!this.I)
+      {
+        aOut.format(" r%d, r%d%s", this.rn, this.rm, shift(this.opcode));
+      }
+      else
+      {
+        aOut.format(" r%d, #0x%X", this.rn, this.imm);
+      }
+    }
+  }
+
+  /**
+   * MRS; note that this instruction is executed unconditionally.
+   */
+  static final class Mrs extends DataProcessing
+  {
+    Mrs(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      aArm.r[this.rd] = aArm.cpsr.getValue();
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("mrs r%d, cpsr", this.rd);
+    }
+  }
+
+  /**
+   * MSR; note that this instruction is executed unconditionally.
+   */
+  static final class Msr extends DataProcessing
+  {
+    Msr(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (this.I)
+      {
+        aArm.cpsr.setValue(aArm.r[this.rm]);
+      }
+      else
+      {
+        aArm.cpsr.setValue(this.imm8);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      if (this.I)
+      {
+        aOut.format("msr cpsr, r%d", this.rm);
+      }
+      else
+      {
+        aOut.format("msr cpsr, 0x%08X", this.imm8);
+      }
+    }
+  }
+
+  static final class Cmp extends DataProcessing
+  {
+    Cmp(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int value = (this.I) ? this.imm : aArm.r[this.rm];
+
+      if (aArm.conditionPassed(this.cond))
+      {
+        aArm.subtract(aArm.r[this.rn], value);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("cmp%s", condition(this.opcode));
+
+      if (this.I)
+      {
+        aOut.format(" r%d, 0x%08X", this.rn, this.imm);
+      }
+      else
+      {
+        aOut.format(" r%d, r%d", this.rn, this.rm);
+      }
+    }
+  }
+
+  static final class Cmn extends DataProcessing
+  {
+    Cmn(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int value = (this.I) ? this.imm : aArm.r[this.rm];
+
+      if (aArm.conditionPassed(this.cond))
+      {
+        aArm.addition(aArm.r[this.rn], value);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("cmn%s", condition(this.opcode));
+
+      if (this.I)
+      {
+        aOut.format(" r%d, 0x%08X", this.rn, this.imm);
+      }
+      else
+      {
+        aOut.format(" r%d, r%d", this.rn, this.rm);
+      }
+    }
+  }
+
+  static final class Orr extends DataProcessing
+  {
+    Orr(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      aArm.r[this.rd] = aArm.r[this.rn] | operand(aArm);
+
+      if (this.S)
+      {
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      format(aOut, "orr");
+    }
+  }
+
+  static final class Mov extends DataProcessing
+  {
+    Mov(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      if (this.I)
+      {
+        aArm.r[this.rd] = this.imm;
+      }
+      else
+      {
+        aArm.r[this.rd] = (this.rm == 15) ? (aArm.r[15] + 4 /* 32-bit */) : operand(aArm);
+      }
+
+      if (this.S)
+      {
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      formatMove(aOut, "mov");
+    }
+  }
+
+  static final class Bic extends DataProcessing
+  {
+    Bic(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      if (this.I)
+      {
+        aArm.r[this.rd] = aArm.r[this.rn] & ~(this.imm);
+      }
+      else
+      {
+        aArm.r[this.rd] = aArm.r[this.rd] & ~operand(aArm);
+      }
+
+      if (this.S)
+      {
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      format(aOut, "bic");
+    }
+  }
+
+  static final class Mvn extends DataProcessing
+  {
+    Mvn(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      aArm.r[this.rd] = ~operand(aArm);
+
+      if (this.S)
+      {
+        setZN(aArm);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      formatMove(aOut, "mvn");
+    }
+  }
+
+  /**
+   * MUL/MLA.
+   */
+  static final class Multiply extends Instruction
+  {
+    final int cond;
+    final int rd;
+    final int rn;
+    final int rm;
+    final int rs;
+    final boolean accumulate;
+    final boolean S;
+
+    Multiply(int aOpcode)
+    {
+      super(aOpcode);
+      this.cond = (aOpcode >> 28) & 0x0f;
+      this.rn = (aOpcode >> 16) & 0xF;
+      this.rd = (aOpcode >> 12) & 0xF;
+      this.rs = (aOpcode >> 8) & 0xF;
+      this.rm = aOpcode & 0xF;
+      this.accumulate = ((aOpcode >> 21) & 1) != 0;
+      this.S = ((aOpcode >> 20) & 1) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      int[] r = aArm.r;
+      if (this.accumulate)
+      {
+        r[this.rn] = (r[this.rm] * r[this.rs] + r[this.rd]) & 0xFFFFFFFF;
+      }
+      else
+      {
+        r[this.rn] = (r[this.rm] * r[this.rs]) & 0xFFFFFFFF;
+      }
+
+      if (this.S)
+      {
+        aArm.cpsr.setNZ(r[this.rn]);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("%s%s%s", this.accumulate ? "mla" : "mul", condition(this.opcode), suffix(this.opcode));
+
+      aOut.format(" r%d, r%d, r%d", this.rn, this.rm, this.rs);
+      if (this.accumulate)
+      {
+        aOut.format(", r%d", this.rd);
+      }
+    }
+  }
+
+  /**
+   * LDR with the PC as base register.
+   */
+  static final class LoadLiteral extends Instruction
+  {
+    final int cond;
+    final int rd;
+    final int offset;
+    final boolean B;
+
+    LoadLiteral(int aOpcode)
+    {
+      super(aOpcode);
+      this.cond = (aOpcode >> 28) & 0x0f;
+      this.rd = (aOpcode >> 12) & 0xF;
+      this.offset = (aOpcode & 0xFFF) + 4;
+      this.B = ((aOpcode >> 22) & 1) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int value = aArm.load32(aArm.r[15] + this.offset);
+
+      if (aArm.conditionPassed(this.cond))
+      {
+        aArm.r[this.rd] = value;
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("ldr%s%s r%d, =0x%X", (this.B) ? "b" : "", condition(this.opcode), this.rd,
+          aDisassembler.read32(aAddress + 4 + this.offset));
+    }
+  }
+
+  /**
+   * LDR/STR (byte/word).
+   */
+  static final class LoadStore extends Instruction
+  {
+    final int cond;
+    final int rd;
+    final int rn;
+    final int rm;
+    final int imm;
+    final int shiftType;
+    final int shiftAmount;
+    final boolean I;
+    final boolean P;
+    final boolean U;
+    final boolean B;
+    final boolean W;
+    final boolean L;
+
+    LoadStore(int aOpcode)
+    {
+      super(aOpcode);
+      this.cond = (aOpcode >> 28) & 0x0f;
+      this.rn = (aOpcode >> 16) & 0xF;
+      this.rd = (aOpcode >> 12) & 0xF;
+      this.rm = aOpcode & 0xF;
+      this.imm = aOpcode & 0xFFF;
+      this.shiftType = (aOpcode >> 5) & 3;
+      this.shiftAmount = (aOpcode >> 7) & 0x1F;
+      this.I = ((aOpcode >> 25) & 1) != 0;
+      this.P = ((aOpcode >> 24) & 1) != 0;
+      this.U = ((aOpcode >> 23) & 1) != 0;
+      this.B = ((aOpcode >> 22) & 1) != 0;
+      this.W = ((aOpcode >> 21) & 1) != 0;
+      this.L = ((aOpcode >> 20) & 1) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+      int addr, value, wb;
+
+      if (this.I)
+      {
+        value = aArm.shift(this.shiftType, this.shiftAmount, this.L, r[this.rm]);
+      }
+      else
+      {
+        value = this.imm;
+      }
+
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      if (this.U)
+      {
+        wb = r[this.rn] + value;
+      }
+      else
+      {
+        wb = r[this.rn] - value;
+      }
+
+      addr = (this.P) ? wb : r[this.rn];
+
+      if (this.L)
+      {
+        if (this.B)
+        {
+          r[this.rd] = aArm.load8(addr);
+        }
+        else
+        {
+          r[this.rd] = aArm.load32(addr);
+        }
+      }
+      else
+      {
+        value = r[this.rd];
+        if (this.rd == 15)
+        {
+          value += 8;
+        }
+
+        if (this.B)
+        {
+          aArm.store8(addr, value);
+        }
+        else
+        {
+          aArm.store32(addr, value);
+        }
+      }
+
+      if (this.W || !this.P)
+      {
+        r[this.rn] = wb;
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("%s%s%s r%d, [r%d", (this.L) ? "ldr" : "str", (this.B) ? "b" : "", condition(this.opcode), this.rd,
+          this.rn);
+
+      if (this.I)
+      {
+        aOut.format(", %sr%d%s", (this.U) ? "" : "-", this.rm, shift(this.opcode));
+      }
+      else
+      {
+        aOut.format(", #%s0x%X", (this.U) ? "" : "-", this.imm);
+      }
+      aOut.format("]%s", (this.W) ? "!" : "");
+    }
+  }
+
+  /**
+   * LDM/STM; note that this instruction is executed unconditionally.
+   */
+  static final class LoadStoreMultiple extends Instruction
+  {
+    final int rn;
+    final int registers;
+    final boolean P;
+    final boolean U;
+    final boolean B;
+    final boolean W;
+    final boolean L;
+
+    LoadStoreMultiple(int aOpcode)
+    {
+      super(aOpcode);
+      this.rn = (aOpcode >> 16) & 0xF;
+      this.registers = aOpcode & 0xFFFF;
+      this.P = ((aOpcode >> 24) & 1) != 0;
+      this.U = ((aOpcode >> 23) & 1) != 0;
+      this.B = ((aOpcode >> 22) & 1) != 0;
+      this.W = ((aOpcode >> 21) & 1) != 0;
+      this.L = ((aOpcode >> 20) & 1) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+      int start = r[this.rn];
+
+      if (this.B && ((this.registers & (1 << 15)) != 0))
+      {
+        aArm.cpsr.setValue(aArm.spsr);
+      }
+
+      int step = this.U ? 4 : -4; // 32-bit
+      int count = Integer.bitCount(this.registers);
+
+      // The k-th transferred register is at first + k * step, so all registers
+      // form a single block that can be transferred at once...
+      int first = this.P ? (start + step) : start;
+      int lowest = this.U ? first : (first + (step * (count - 1)));
+
+      int[] words = aArm.words;
+      int k = 0;
+      if (this.L)
+      {
+        aArm.loadMultiple(lowest, words, count, this.U);
+        for (int i = 0; i < 16; i++)
+        {
+          if (((this.registers >> i) & 1) != 0)
+          {
+            r[i] = words[this.U ? k : (count - 1 - k)];
+            k++;
+          }
+        }
+      }
+      else
+      {
+        for (int i = 15; i >= 0; i--)
+        {
+          if (((this.registers >> i) & 1) != 0)
+          {
+            words[this.U ? k : (count - 1 - k)] = r[i];
+            k++;
+          }
+        }
+        aArm.storeMultiple(lowest, words, count, this.U);
+      }
+
+      if (this.W)
+      {
+        r[this.rn] = start + (step * count);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      if (this.L)
+      {
+        aOut.format("ldm");
+        if (this.rn == 13)
+        {
+          aOut.format("%c%c", (this.P) ? 'e' : 'f', (this.U) ? 'd' : 'a');
+        }
+        else
+        {
+          aOut.format("%c%c", (this.U) ? 'i' : 'd', (this.P) ? 'b' : 'a');
+        }
+      }
+      else
+      {
+        aOut.format("stm");
+        if (this.rn == 13)
+        {
+          aOut.format("%c%c", (this.P) ? 'f' : 'e', (this.U) ? 'a' : 'd');
+        }
+        else
+        {
+          aOut.format("%c%c", (this.U) ? 'i' : 'd', (this.P) ? 'b' : 'a');
+        }
+      }
+
+      if (this.rn == 13)
+      {
+        aOut.format(" sp");
+      }
+      else
+      {
+        aOut.format(" r%d", this.rn);
+      }
+
+      if (this.W)
+      {
+        aOut.format("!");
+      }
+      aOut.format(", {");
+
+      boolean pf = false;
+      for (int i = 0; i < 16; i++)
+      {
+        if (((this.registers >> i) & 1) != 0)
+        {
+          if (pf)
+          {
+            aOut.format(", ");
+          }
+          aOut.format("r%d", i);
+
+          pf = true;
+        }
+      }
+
+      aOut.format("}");
+      if (this.B)
+      {
+        aOut.format("^");
+      }
+    }
+  }
+
+  /**
+   * LDREX/STREX (word).
+   */
+  static final class Exclusive extends Instruction
+  {
+    final int cond;
+    final int rn;
+    final int rd;
+    final int rm;
+    final boolean L;
+
+    Exclusive(int aOpcode)
+    {
+      super(aOpcode);
+      this.cond = (aOpcode >> 28) & 0x0f;
+      this.rn = (aOpcode >> 16) & 0xF;
+      this.rd = (aOpcode >> 12) & 0xF;
+      this.rm = aOpcode & 0xF;
+      this.L = ((aOpcode >> 20) & 1) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      int[] r = aArm.r;
+      if (this.L)
+      {
+        r[this.rd] = aArm.loadExclusive(r[this.rn]);
+      }
+      else
+      {
+        r[this.rd] = aArm.storeExclusive(r[this.rn], r[this.rm]) ? 0 : 1;
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      if (this.L)
+      {
+        aOut.format("ldrex%s r%d, [r%d]", condition(this.opcode), this.rd, this.rn);
+      }
+      else
+      {
+        aOut.format("strex%s r%d, r%d, [r%d]", condition(this.opcode), this.rd, this.rm, this.rn);
+      }
+    }
+  }
+
+  /**
+   * SWI.
+   */
+  static final class SoftwareInterrupt extends Instruction
+  {
+    final int imm;
+
+    SoftwareInterrupt(int aOpcode)
+    {
+      super(aOpcode);
+      this.imm = aOpcode & 0xFFFFFF;
+    }
+
+    @Override
+    boolean endsBlock()
+    {
+      return true;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      aArm.parseSvc(this.imm & 0xFF);
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("swi 0x%X", this.imm);
+    }
+  }
+
+  /**
+   * MRC; not implemented.
+   */
+  static final class CoprocessorTransfer extends Instruction
+  {
+    CoprocessorTransfer(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    boolean isTranslatable()
+    {
+      return false;
+    }
+
+    @Override
+    boolean isUndefined()
+    {
+      return true;
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("mrc ...");
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      // NO-op
+    }
+  }
+
+  /**
+   * DMB/DSB/ISB/CLREX; these ARMv7 opcodes are unconditional.
+   */
+  static final class Barrier extends Instruction
+  {
+    final int option;
+
+    Barrier(int aOpcode)
+    {
+      super(aOpcode);
+      this.option = (aOpcode >> 4) & 0xF;
+    }
+
+    /**
+     * @param aOpcode
+     *          the 32-bit opcode to test.
+     * @return <code>true</code> if the given opcode is a supported barrier,
+     *         <code>false</code> otherwise.
+     */
+    static boolean matches(int aOpcode)
+    {
+      int option = (aOpcode >> 4) & 0xF;
+      return ((aOpcode & 0xFFFFFF00) == 0xF57FF000)
+          && ((option == 1) || (option == 4) || (option == 5) || (option == 6));
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (this.option == 1)
+      {
+        aArm.clearExclusive();
+      }
+      else
+      {
+        aArm.memory.barrier();
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      switch (this.option)
+      {
+        case 1:
+          aOut.format("clrex");
+          break;
+        case 4:
+          aOut.format("dsb");
+          break;
+        case 5:
+          aOut.format("dmb");
+          break;
+        default:
+          aOut.format("isb");
+          break;
+      }
+    }
+  }
+
+  /**
+   * MRC/MCR of the few CP15 registers needed by multi-core programs: reading
+   * the MPIDR and the ARMv6 barrier operations.
+   */
+  static final class SystemControl extends Instruction
+  {
+    // Opcodes without their condition and register operand...
+    static final int MRC_MPIDR = 0x0E100FB0; // mrc p15, 0, rd, c0, c0, 5
+    static final int MCR_ISB = 0x0E070F95; // mcr p15, 0, rd, c7, c5, 4
+    static final int MCR_DSB = 0x0E070F9A; // mcr p15, 0, rd, c7, c10, 4
+    static final int MCR_DMB = 0x0E070FBA; // mcr p15, 0, rd, c7, c10, 5
+
+    final int cond;
+    final int rd;
+    final int operation;
+
+    SystemControl(int aOpcode)
+    {
+      super(aOpcode);
+      this.cond = (aOpcode >> 28) & 0x0f;
+      this.rd = (aOpcode >> 12) & 0xF;
+      this.operation = aOpcode & 0x0FFF0FFF;
+    }
+
+    /**
+     * @param aOpcode
+     *          the 32-bit opcode to test.
+     * @return <code>true</code> if the given opcode is a supported CP15
+     *         operation, <code>false</code> otherwise.
+     */
+    static boolean matches(int aOpcode)
+    {
+      int operation = aOpcode & 0x0FFF0FFF;
+      return (operation == MRC_MPIDR) || (operation == MCR_ISB) || (operation == MCR_DSB) || (operation == MCR_DMB);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (!aArm.conditionPassed(this.cond))
+      {
+        return;
+      }
+
+      if (this.operation == MRC_MPIDR)
+      {
+        aArm.r[this.rd] = 0x80000000 | aArm.getCpuId();
+      }
+      else
+      {
+        aArm.memory.barrier();
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      switch (this.operation)
+      {
+        case MRC_MPIDR:
+          aOut.format("mrc%s p15, 0, r%d, c0, c0, 5", condition(this.opcode), this.rd);
+          break;
+        case MCR_ISB:
+          aOut.format("mcr%s p15, 0, r%d, c7, c5, 4", condition(this.opcode), this.rd);
+          break;
+        case MCR_DSB:
+          aOut.format("mcr%s p15, 0, r%d, c7, c10, 4", condition(this.opcode), this.rd);
+          break;
+        default:
+          aOut.format("mcr%s p15, 0, r%d, c7, c10, 5", condition(this.opcode), this.rd);
+          break;
+      }
+    }
+  }
+
+  /**
+   * MRS2/MSR2 (data processing opcodes 10 and 11 without the S-bit); not
+   * implemented.
+   */
+  static final class StatusTransfer extends Instruction
+  {
+    StatusTransfer(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    boolean isTranslatable()
+    {
+      return false;
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format((((this.opcode >> 21) & 1) != 0) ? "msr2" : "mrs2");
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      // NO-op
+    }
+  }
+
+  /**
+   * Any opcode that is not (yet) supported.
+   */
+  static final class Unknown extends Instruction
+  {
+    Unknown(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    boolean isTranslatable()
+    {
+      return false;
+    }
+
+    @Override
+    boolean isUndefined()
+    {
+      return true;
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("Unknown opcode! (0x%08X)", this.opcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      // NO-op
+    }
+  }
+
+  // CONSTANTS
+
+  private static final byte UNKNOWN = 0;
+  private static final byte BRANCH_EXCHANGE_OR_MSR = 1;
+  private static final byte SWI_OR_COPROCESSOR = 2;
+  private static final byte MULTIPLY = 3;
+  private static final byte AND = 4;
+  private static final byte EOR = 5;
+  private static final byte SUB = 6;
+  private static final byte RSB = 7;
+  private static final byte ADD = 8;
+  private static final byte ADC = 9;
+  private static final byte SBC = 10;
+  private static final byte RSC = 11;
+  private static final byte TST = 12;
+  private static final byte TEQ = 13;
+  private static final byte CMP = 14;
+  private static final byte CMN = 15;
+  private static final byte MRS = 16;
+  private static final byte MSR = 17;
+  private static final byte STATUS_TRANSFER = 18;
+  private static final byte ORR = 19;
+  private static final byte MOV = 20;
+  private static final byte BIC = 21;
+  private static final byte MVN = 22;
+  private static final byte LOAD_STORE = 23;
+  private static final byte LOAD_STORE_OR_LITERAL = 24;
+  private static final byte LOAD_STORE_MULTIPLE = 25;
+  private static final byte BRANCH = 26;
+  private static final byte COPROCESSOR = 27;
+  private static final byte EXCLUSIVE = 28;
+
+  /**
+   * Dispatch table indexed by opcode bits 27..20 and 7..4, see
+   * {@link #index(int)}. Only BX vs. MSR, SWI vs. coprocessor transfers,
+   * literal loads, barriers and CP15 operations depend on other bits, and are
+   * resolved in {@link #decode(int)}.
+   */
+  private static final byte[] TABLE = new byte[4096];
+
+  static
+  {
+    for (int i = 0; i < TABLE.length; i++)
+    {
+      TABLE[i] = classify(i);
+    }
+  }
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new ArmDecoder instance, never used.
+   */
+  private ArmDecoder()
+  {
+    // NO-op
+  }
+
+  // METHODS
+
+  /**
+   * Decodes the given ARM opcode.
+   * 
+   * @param aOpcode
+   *          the 32-bit opcode to decode.
+   * @return the decoded instruction, never <code>null</code>.
+   */
+  static Instruction decode(int aOpcode)
+  {
+    switch (TABLE[index(aOpcode)])
+    {
+      case BRANCH_EXCHANGE_OR_MSR:
+        if (((aOpcode >> 8) & 0x0FFF) == 0x0FFF)
+        {
+          return new BranchExchange(aOpcode);
+        }
+        return new Msr(aOpcode);
+      case SWI_OR_COPROCESSOR:
+        if ((aOpcode >>> 28) == 0x0E)
+        {
+          return new SoftwareInterrupt(aOpcode);
+        }
+        return new CoprocessorTransfer(aOpcode);
+      case MULTIPLY:
+        return new Multiply(aOpcode);
+      case EXCLUSIVE:
+        return new Exclusive(aOpcode);
+      case AND:
+        return new And(aOpcode);
+      case EOR:
+        return new Eor(aOpcode);
+      case SUB:
+        return new Sub(aOpcode);
+      case RSB:
+        return new Rsb(aOpcode);
+      case ADD:
+        return new Add(aOpcode);
+      case ADC:
+        return new Adc(aOpcode);
+      case SBC:
+        return new Sbc(aOpcode);
+      case RSC:
+        return new Rsc(aOpcode);
+      case TST:
+        return new Tst(aOpcode);
+      case TEQ:
+        return new Teq(aOpcode);
+      case CMP:
+        return new Cmp(aOpcode);
+      case CMN:
+        return new Cmn(aOpcode);
+      case MRS:
+        return new Mrs(aOpcode);
+      case MSR:
+        return new Msr(aOpcode);
+      case STATUS_TRANSFER:
+        return new StatusTransfer(aOpcode);
+      case ORR:
+        return new Orr(aOpcode);
+      case MOV:
+        return new Mov(aOpcode);
+      case BIC:
+        return new Bic(aOpcode);
+      case MVN:
+        return new Mvn(aOpcode);
+      case LOAD_STORE_OR_LITERAL:
+        if (Barrier.matches(aOpcode))
+        {
+          return new Barrier(aOpcode);
+        }
+        if (((aOpcode >> 16) & 0xF) == 15)
+        {
+          return new LoadLiteral(aOpcode);
+        }
+        return new LoadStore(aOpcode);
+      case LOAD_STORE:
+        return new LoadStore(aOpcode);
+      case LOAD_STORE_MULTIPLE:
+        return new LoadStoreMultiple(aOpcode);
+      case BRANCH:
+        return new Branch(aOpcode);
+      case COPROCESSOR:
+        if (SystemControl.matches(aOpcode))
+        {
+          return new SystemControl(aOpcode);
+        }
+        return new CoprocessorTransfer(aOpcode);
+      default:
+        return new Unknown(aOpcode);
+    }
+  }
+
+  /**
+   * Returns the dispatch table index for the given opcode.
+   * 
+   * @param aOpcode
+   *          the 32-bit opcode.
+   * @return the concatenation of opcode bits 27..20 and 7..4.
+   */
+  static int index(int aOpcode)
+  {
+    return ((aOpcode >> 16) & 0x0FF0) | ((aOpcode >> 4) & 0x0F);
+  }
+
+  /**
+   * Classifies all opcodes sharing the given dispatch table index.
+   * 
+   * @param aIndex
+   *          the dispatch table index, see {@link #index(int)}.
+   * @return the kind of instruction, one of the constants of this class.
+   */
+  private static byte classify(int aIndex)
+  {
+    int bits27_20 = aIndex >> 4;
+    int bits7_4 = aIndex & 0x0F;
+
+    if (bits27_20 == 0x12)
+    {
+      return BRANCH_EXCHANGE_OR_MSR;
+    }
+    if ((bits27_20 >> 4) == 0x0F)
+    {
+      return SWI_OR_COPROCESSOR;
+    }
+    if (((bits27_20 >> 2) == 0) && (bits7_4 == 9))
+    {
+      return MULTIPLY;
+    }
+    if (((bits27_20 & 0xFE) == 0x18) && (bits7_4 == 9))
+    {
+      return EXCLUSIVE;
+    }
+
+    boolean S = (bits27_20 & 1) != 0;
+
+    switch (bits27_20 >> 6)
+    {
+      case 0:
+      {
+        switch ((bits27_20 >> 1) & 0xF)
+        {
+          case 0:
+            return AND;
+          case 1:
+            return EOR;
+          case 2:
+            return SUB;
+          case 3:
+            return RSB;
+          case 4:
+            return ADD;
+          case 5:
+            return ADC;
+          case 6:
+            return SBC;
+          case 7:
+            return RSC;
+          case 8:
+            return S ? TST : MRS;
+          case 9:
+            return S ? TEQ : MSR;
+          case 10:
+            return S ? CMP : STATUS_TRANSFER;
+          case 11:
+            return S ? CMN : STATUS_TRANSFER;
+          case 12:
+            return ORR;
+          case 13:
+            return MOV;
+          case 14:
+            return BIC;
+          default:
+            return MVN;
+        }
+      }
+
+      case 1:
+        return S ? LOAD_STORE_OR_LITERAL : LOAD_STORE;
+
+      default:
+        break;
+    }
+
+    switch (bits27_20 >> 5)
+    {
+      case 4:
+        return LOAD_STORE_MULTIPLE;
+      case 5:
+        return BRANCH;
+      case 7:
+        return COPROCESSOR;
+    }
+
+    return UNKNOWN;
+  }
+}
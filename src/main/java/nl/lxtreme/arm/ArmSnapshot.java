@@ -0,0 +1,78 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import nl.lxtreme.arm.memory.*;
+
+
+/**
+ * Provides the saved state of an {@link Arm} and its memory, as taken by
+ * {@link Arm#snapshot()}. A snapshot is never changed, so it can be restored
+ * any number of times, for example, once before each run of a fuzzing
+ * campaign.
+ */
+public final class ArmSnapshot
+{
+  // VARIABLES
+
+  final Arm arm;
+  final int[] registers;
+  final int cpsr;
+  final int spsr;
+  final boolean finished;
+  final long instructionCount;
+  final MemorySnapshot memory;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new ArmSnapshot instance.
+   * 
+   * @param aArm
+   *          the CPU this snapshot is taken from;
+   * @param aFinished
+   *          whether the CPU is finished;
+   * @param aInstructionCount
+   *          the number of retired instructions;
+   * @param aMemory
+   *          the snapshot of the memory of the CPU.
+   */
+  ArmSnapshot(Arm aArm, boolean aFinished, long aInstructionCount, MemorySnapshot aMemory)
+  {
+    this.arm = aArm;
+    this.registers = aArm.r.clone();
+    this.cpsr = aArm.cpsr.getValue();
+    this.spsr = aArm.spsr;
+    this.finished = aFinished;
+    this.instructionCount = aInstructionCount;
+    this.memory = aMemory;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the snapshot of the memory of the CPU.
+   * 
+   * @return the memory snapshot, never <code>null</code>.
+   */
+  public MemorySnapshot getMemory()
+  {
+    return this.memory;
+  }
+
+  /**
+   * Returns the saved value of the given register.
+   * 
+   * @param aIndex
+   *          the index of the register, 0..15.
+   * @return the register value.
+   */
+  public int getRegister(int aIndex)
+  {
+    return this.registers[aIndex];
+  }
+}
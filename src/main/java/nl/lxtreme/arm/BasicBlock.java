@@ -0,0 +1,131 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import nl.lxtreme.arm.memory.*;
+
+
+/**
+ * Provides a translated basic block, that is, a straight-line run of
+ * pre-decoded instructions that is executed without fetching, decoding or
+ * dispatching each instruction separately.
+ * <p>
+ * A block ends at the first branch or software interrupt, or right before an
+ * instruction that cannot be translated. Since conditional instructions or
+ * writes to the PC can still leave the block halfway, the PC and instruction
+ * set are checked after every instruction.
+ * </p>
+ */
+final class BasicBlock
+{
+  // VARIABLES
+
+  final int address;
+  final boolean thumb;
+
+  private final Instruction[] instructions;
+  // A block spans at most two pages...
+  private final CodePage firstPage;
+  private final int firstVersion;
+  private final CodePage lastPage;
+  private final int lastVersion;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new BasicBlock instance.
+   * 
+   * @param aAddress
+   *          the address of the first instruction of this block;
+   * @param aThumb
+   *          <code>true</code> if this block consists of THUMB instructions,
+   *          <code>false</code> for ARM instructions;
+   * @param aInstructions
+   *          the instructions of this block, at least one;
+   * @param aFirstPage
+   *          the code page holding the first instruction;
+   * @param aLastPage
+   *          the code page holding the last instruction.
+   */
+  BasicBlock(int aAddress, boolean aThumb, Instruction[] aInstructions, CodePage aFirstPage, CodePage aLastPage)
+  {
+    this.address = aAddress;
+    this.thumb = aThumb;
+    this.instructions = aInstructions;
+    this.firstPage = aFirstPage;
+    this.firstVersion = aFirstPage.getVersion();
+    this.lastPage = aLastPage;
+    this.lastVersion = aLastPage.getVersion();
+  }
+
+  // METHODS
+
+  /**
+   * Executes this block on the given CPU, starting at its first instruction.
+   * 
+   * @param aArm
+   *          the CPU to execute this block on, cannot be <code>null</code>.
+   * @return the number of executed instructions, &gt;= 0.
+   */
+  int execute(Arm aArm)
+  {
+    final int[] r = aArm.r;
+    final int size = this.thumb ? 2 : 4;
+    final int count = this.instructions.length;
+    final TraceSink sink = aArm.getTraceSink();
+
+    int pc = this.address;
+    int retired = 0;
+    while (retired < count)
+    {
+      // A store in this block might have overwritten its own code...
+      if (!isValid())
+      {
+        break;
+      }
+
+      Instruction instruction = this.instructions[retired++];
+
+      if (sink != null)
+      {
+        sink.instruction(pc, instruction.opcode, this.thumb);
+      }
+
+      pc += size;
+      r[15] = pc;
+
+      instruction.execute(aArm);
+
+      if ((r[15] != pc) || (aArm.cpsr.isT() != this.thumb) || aArm.isFinished())
+      {
+        break;
+      }
+    }
+    return retired;
+  }
+
+  /**
+   * Returns the number of instructions in this block.
+   * 
+   * @return the length of this block, &gt; 0.
+   */
+  int getLength()
+  {
+    return this.instructions.length;
+  }
+
+  /**
+   * Returns whether the code this block is translated from is left untouched.
+   * 
+   * @return <code>true</code> if this block is still valid, <code>false</code>
+   *         if it should be translated again.
+   */
+  boolean isValid()
+  {
+    return (this.firstPage.getVersion() == this.firstVersion) && (this.lastPage.getVersion() == this.lastVersion);
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.util.*;
+
+import nl.lxtreme.arm.memory.*;
+
+
+/**
+ * Denotes a single, independent, simulation of a {@link BatchRunner}: a
+ * program image, patched and started with specific registers, that runs for
+ * at most a given number of instructions.
+ * <p>
+ * Each job runs on a CPU and memory of its own, so jobs never influence each
+ * other, even if they share the same image.
+ * </p>
+ */
+public class BatchJob
+{
+  // INNER TYPES
+
+  /**
+   * Denotes a change that is written over the image, either a block of bytes
+   * or a single 32-bit value.
+   */
+  static final class Patch
+  {
+    // VARIABLES
+
+    final int address;
+    final byte[] data; // null for a 32-bit value
+    final int value;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Patch instance.
+     */
+    Patch(int aAddress, byte[] aData, int aValue)
+    {
+      this.address = aAddress;
+      this.data = aData;
+      this.value = aValue;
+    }
+
+    // METHODS
+
+    /**
+     * Writes this patch to the given memory.
+     */
+    void apply(Memory aMemory)
+    {
+      if (this.data != null)
+      {
+        aMemory.write(this.address, this.data, 0, this.data.length);
+      }
+      else
+      {
+        aMemory.write32(this.address, this.value);
+      }
+    }
+  }
+
+  // VARIABLES
+
+  private final Image image;
+  private final long maxInstructions;
+
+  private final int[] registers;
+  private int registerMask; // one bit for each set register
+  private final List<Patch> patches;
+  private InvalidAccessPolicy invalidAccessPolicy;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new BatchJob instance.
+   * 
+   * @param aImage
+   *          the image to run, cannot be <code>null</code>;
+   * @param aMaxInstructions
+   *          the maximum number of instructions to execute.
+   */
+  public BatchJob(Image aImage, long aMaxInstructions)
+  {
+    if (aImage == null)
+    {
+      throw new IllegalArgumentException("Image cannot be null!");
+    }
+
+    this.image = aImage;
+    this.maxInstructions = aMaxInstructions;
+
+    this.registers = new int[16];
+    this.patches = new ArrayList<Patch>();
+    // Do not let thousands of jobs print each invalid access...
+    this.invalidAccessPolicy = InvalidAccessPolicy.COUNT;
+  }
+
+  // METHODS
+
+  /**
+   * Adds a patch that writes the given bytes over the image. Patches are
+   * applied in the order they are added.
+   * 
+   * @param aAddress
+   *          the address to write the first byte to;
+   * @param aData
+   *          the bytes to write, cannot be <code>null</code>. The array is not
+   *          copied, and should not be changed afterwards.
+   */
+  public void addPatch(int aAddress, byte[] aData)
+  {
+    if (aData == null)
+    {
+      throw new IllegalArgumentException("Data cannot be null!");
+    }
+    this.patches.add(new Patch(aAddress, aData, 0));
+  }
+
+  /**
+   * Adds a patch that writes the given 32-bit value over the image. Patches
+   * are applied in the order they are added.
+   * 
+   * @param aAddress
+   *          the address to write the value to;
+   * @param aValue
+   *          the 32-bit value to write.
+   */
+  public void addPatch(int aAddress, int aValue)
+  {
+    this.patches.add(new Patch(aAddress, null, aValue));
+  }
+
+  /**
+   * Returns the image this job runs.
+   * 
+   * @return the image, never <code>null</code>.
+   */
+  public Image getImage()
+  {
+    return this.image;
+  }
+
+  /**
+   * Returns what the memory of this job does upon an access to an unmapped
+   * address.
+   * 
+   * @return the invalid access policy, never <code>null</code>.
+   */
+  public InvalidAccessPolicy getInvalidAccessPolicy()
+  {
+    return this.invalidAccessPolicy;
+  }
+
+  /**
+   * Returns the maximum number of instructions this job executes.
+   * 
+   * @return the instruction budget.
+   */
+  public long getMaxInstructions()
+  {
+    return this.maxInstructions;
+  }
+
+  /**
+   * Sets what the memory of this job does upon an access to an unmapped
+   * address. By default, {@link InvalidAccessPolicy#COUNT} is used, so invalid
+   * accesses are only counted.
+   * 
+   * @param aPolicy
+   *          the invalid access policy to use, cannot be <code>null</code>.
+   */
+  public void setInvalidAccessPolicy(InvalidAccessPolicy aPolicy)
+  {
+    if (aPolicy == null)
+    {
+      throw new IllegalArgumentException("Policy cannot be null!");
+    }
+    this.invalidAccessPolicy = aPolicy;
+  }
+
+  /**
+   * Sets the initial value of a register. Registers that are not set start at
+   * zero, except for the PC, which starts at the entry point of the image.
+   * 
+   * @param aIndex
+   *          the index of the register, 0..15;
+   * @param aValue
+   *          the initial value of the register.
+   */
+  public void setRegister(int aIndex, int aValue)
+  {
+    this.registers[aIndex] = aValue;
+    this.registerMask |= (1 << aIndex);
+  }
+
+  /**
+   * Runs this job on a new CPU and memory.
+   * 
+   * @return the result of this job, never <code>null</code>.
+   */
+  BatchResult run()
+  {
+    Arm arm = null;
+    Memory memory = null;
+    try
+    {
+      memory = this.image.load();
+      memory.setInvalidAccessPolicy(this.invalidAccessPolicy);
+      for (Patch patch : this.patches)
+      {
+        patch.apply(memory);
+      }
+
+      arm = new Arm(memory);
+      arm.setPC(this.image.getEntryPoint());
+      for (int i = 0; i < this.registers.length; i++)
+      {
+        if ((this.registerMask & (1 << i)) != 0)
+        {
+          arm.pokeReg(i, this.registers[i]);
+        }
+      }
+
+      StopReason reason = arm.run(this.maxInstructions);
+      return new BatchResult(this, reason, arm, memory, null);
+    }
+    catch (RuntimeException exception)
+    {
+      return new BatchResult(this, null, arm, memory, exception);
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import nl.lxtreme.arm.memory.*;
+
+
+/**
+ * Provides the outcome of a single {@link BatchJob}: why it stopped, its final
+ * registers and its counters.
+ */
+public class BatchResult
+{
+  // VARIABLES
+
+  private final BatchJob job;
+  private final StopReason stopReason;
+  private final int[] registers;
+  private final int cpsr;
+  private final long instructionCount;
+  private final long faultCount;
+  private final RuntimeException failure;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new BatchResult instance.
+   * 
+   * @param aJob
+   *          the job this result is for;
+   * @param aStopReason
+   *          the reason the job stopped, or <code>null</code> if it failed;
+   * @param aArm
+   *          the CPU the job ran on, can be <code>null</code> if the job
+   *          failed before it was created;
+   * @param aMemory
+   *          the memory the job ran on, can be <code>null</code> if the job
+   *          failed before it was created;
+   * @param aFailure
+   *          the exception the job failed with, can be <code>null</code>.
+   */
+  BatchResult(BatchJob aJob, StopReason aStopReason, Arm aArm, Memory aMemory, RuntimeException aFailure)
+  {
+    this.job = aJob;
+    this.stopReason = aStopReason;
+    this.failure = aFailure;
+
+    this.registers = (aArm != null) ? aArm.r.clone() : new int[16];
+    this.cpsr = (aArm != null) ? aArm.cpsr.getValue() : 0;
+    this.instructionCount = (aArm != null) ? aArm.getInstructionCount() : 0L;
+    this.faultCount = (aMemory != null) ? aMemory.getFaultCount() : 0L;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the final value of the CPSR.
+   * 
+   * @return the CPSR as 32-bit value.
+   */
+  public int getCpsr()
+  {
+    return this.cpsr;
+  }
+
+  /**
+   * Returns the exit code of the program, which is the value of R0 upon the
+   * exit-syscall.
+   * 
+   * @return the exit code, only meaningful if {@link #isExited()} returns
+   *         <code>true</code>.
+   */
+  public int getExitCode()
+  {
+    return this.registers[0];
+  }
+
+  /**
+   * Returns the exception the job failed with, if any.
+   * 
+   * @return the failure, or <code>null</code> if the job did not fail.
+   */
+  public RuntimeException getFailure()
+  {
+    return this.failure;
+  }
+
+  /**
+   * Returns the number of invalid accesses the job made, as counted by its
+   * memory.
+   * 
+   * @return the number of invalid accesses, &gt;= 0.
+   * @see Memory#getFaultCount()
+   */
+  public long getFaultCount()
+  {
+    return this.faultCount;
+  }
+
+  /**
+   * Returns the number of instructions the job executed.
+   * 
+   * @return the number of retired instructions, &gt;= 0.
+   */
+  public long getInstructionCount()
+  {
+    return this.instructionCount;
+  }
+
+  /**
+   * Returns the job this result is for.
+   * 
+   * @return the job, never <code>null</code>.
+   */
+  public BatchJob getJob()
+  {
+    return this.job;
+  }
+
+  /**
+   * Returns the final value of the given register.
+   * 
+   * @param aIndex
+   *          the index of the register, 0..15.
+   * @return the register value.
+   */
+  public int getRegister(int aIndex)
+  {
+    return this.registers[aIndex];
+  }
+
+  /**
+   * Returns the reason the job stopped.
+   * 
+   * @return the stop reason, or <code>null</code> if the job failed.
+   * @see #getFailure()
+   */
+  public StopReason getStopReason()
+  {
+    return this.stopReason;
+  }
+
+  /**
+   * Returns whether the program exited through the exit-syscall.
+   * 
+   * @return <code>true</code> if the program exited, <code>false</code>
+   *         otherwise.
+   */
+  public boolean isExited()
+  {
+    return this.stopReason == StopReason.EXIT;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Runs many independent simulations in parallel, for example, the same
+ * firmware against many input vectors.
+ * <p>
+ * Each {@link BatchJob} gets a CPU and memory of its own, so the jobs share
+ * nothing but their (read-only) image, and the throughput scales with the
+ * number of threads of the executor.
+ * </p>
+ */
+public class BatchRunner
+{
+  // VARIABLES
+
+  private final ExecutorService executor;
+  private final boolean ownExecutor;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new BatchRunner instance that uses a fixed thread pool with as
+   * many threads as there are host cores. Call {@link #dispose()} to end these
+   * threads.
+   */
+  public BatchRunner()
+  {
+    this(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()), true);
+  }
+
+  /**
+   * Creates a new BatchRunner instance that uses the given executor, for
+   * example, one that starts a virtual thread per job. The executor remains
+   * owned by the caller.
+   * 
+   * @param aExecutor
+   *          the executor to run the jobs on, cannot be <code>null</code>.
+   */
+  public BatchRunner(ExecutorService aExecutor)
+  {
+    this(aExecutor, false);
+  }
+
+  /**
+   * Creates a new BatchRunner instance.
+   */
+  private BatchRunner(ExecutorService aExecutor, boolean aOwnExecutor)
+  {
+    if (aExecutor == null)
+    {
+      throw new IllegalArgumentException("Executor cannot be null!");
+    }
+
+    this.executor = aExecutor;
+    this.ownExecutor = aOwnExecutor;
+  }
+
+  // METHODS
+
+  /**
+   * Shuts down the executor of this runner, if it created one itself.
+   */
+  public void dispose()
+  {
+    if (this.ownExecutor)
+    {
+      this.executor.shutdown();
+    }
+  }
+
+  /**
+   * Runs all given jobs in parallel, and waits until all of them are done. A
+   * job that fails with an exception does not affect the other jobs; its
+   * result holds the exception instead.
+   * 
+   * @param aJobs
+   *          the jobs to run, cannot be <code>null</code>.
+   * @return the result of each job, in the order of the given jobs, never
+   *         <code>null</code>.
+   * @throws InterruptedException
+   *           in case the calling thread is interrupted while waiting for the
+   *           jobs, in which case all unfinished jobs are cancelled.
+   */
+  public List<BatchResult> run(List<BatchJob> aJobs) throws InterruptedException
+  {
+    List<Callable<BatchResult>> tasks = new ArrayList<Callable<BatchResult>>(aJobs.size());
+    for (final BatchJob job : aJobs)
+    {
+      tasks.add(new Callable<BatchResult>()
+      {
+        @Override
+        public BatchResult call()
+        {
+          return job.run();
+        }
+      });
+    }
+
+    List<BatchResult> results = new ArrayList<BatchResult>(tasks.size());
+    for (Future<BatchResult> future : this.executor.invokeAll(tasks))
+    {
+      try
+      {
+        results.add(future.get());
+      }
+      catch (ExecutionException exception)
+      {
+        // Jobs catch all runtime exceptions, so this is an error...
+        throw (Error) exception.getCause();
+      }
+    }
+    return results;
+  }
+}
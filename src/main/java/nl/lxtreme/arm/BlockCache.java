@@ -0,0 +1,126 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.util.*;
+
+
+/**
+ * Provides a direct-mapped cache of translated basic blocks, keyed by their
+ * entry address. Next to the blocks themselves, it counts how often each entry
+ * address is executed, so only hot code gets translated.
+ */
+final class BlockCache
+{
+  // CONSTANTS
+
+  static final int DEFAULT_SIZE = 1024;
+
+  // VARIABLES
+
+  private final int shift;
+  private final int mask;
+  private final int[] tags;
+  private final int[] counters;
+  private final BasicBlock[] blocks;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new BlockCache instance.
+   * 
+   * @param aSize
+   *          the number of entries, should be a power of two;
+   * @param aInstructionSize
+   *          the size of a single instruction, in bytes.
+   */
+  BlockCache(int aSize, int aInstructionSize)
+  {
+    this.shift = Integer.numberOfTrailingZeros(aInstructionSize);
+    this.mask = aSize - 1;
+    this.tags = new int[aSize];
+    this.counters = new int[aSize];
+    this.blocks = new BasicBlock[aSize];
+  }
+
+  // METHODS
+
+  /**
+   * Removes all entries from this cache.
+   */
+  void clear()
+  {
+    Arrays.fill(this.counters, 0);
+    Arrays.fill(this.blocks, null);
+  }
+
+  /**
+   * Counts an execution of the given entry address.
+   * 
+   * @param aAddress
+   *          the entry address of the block.
+   * @return the number of times the given address is executed since it was
+   *         last translated.
+   */
+  int count(int aAddress)
+  {
+    int idx = index(aAddress);
+    if (this.tags[idx] != aAddress)
+    {
+      this.tags[idx] = aAddress;
+      this.counters[idx] = 0;
+      this.blocks[idx] = null;
+    }
+    return ++this.counters[idx];
+  }
+
+  /**
+   * Returns the translated block for the given entry address.
+   * 
+   * @param aAddress
+   *          the entry address of the block.
+   * @return the translated block, or <code>null</code> if it is not translated
+   *         (yet) or its code has been written since it was translated.
+   */
+  BasicBlock get(int aAddress)
+  {
+    int idx = index(aAddress);
+    BasicBlock block = this.blocks[idx];
+    if ((block != null) && (this.tags[idx] == aAddress) && block.isValid())
+    {
+      return block;
+    }
+    return null;
+  }
+
+  /**
+   * Caches the given block for the given entry address, and resets its
+   * execution count.
+   * 
+   * @param aAddress
+   *          the entry address of the block;
+   * @param aBlock
+   *          the translated block, can be <code>null</code> if the code at the
+   *          given address cannot be translated.
+   */
+  void put(int aAddress, BasicBlock aBlock)
+  {
+    int idx = index(aAddress);
+    this.tags[idx] = aAddress;
+    this.counters[idx] = 0;
+    this.blocks[idx] = aBlock;
+  }
+
+  /**
+   * @param aAddress
+   * @return the index of the given address in this cache.
+   */
+  private int index(int aAddress)
+  {
+    return (aAddress >>> this.shift) & this.mask;
+  }
+}
@@ -0,0 +1,429 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import nl.lxtreme.arm.memory.*;
+
+
+/**
+ * Provides a symmetric multi-processing (SMP) system of multiple ARM-cores that
+ * share a single memory.
+ * <p>
+ * Each core runs on its own thread, so multi-core programs run (up to) as many
+ * times faster as there are host cores. The cores run independently for a
+ * quantum of instructions, after which they wait for each other; a small
+ * quantum keeps the cores closer together, a large quantum reduces the waiting.
+ * </p>
+ * <p>
+ * As on a real multi-core CPU, the cores only see each other's memory
+ * accesses in a defined order through LDREX/STREX and memory barriers, which
+ * are all implemented by the shared {@link Memory}. The same holds for code
+ * that one core writes and another executes.
+ * </p>
+ * <p>
+ * The cores report their number through the MPIDR, so a program can tell
+ * them apart; their initial registers can be set through {@link #getCore(int)}.
+ * </p>
+ */
+public class Cluster
+{
+  // INNER TYPES
+
+  /**
+   * Runs a single core, quantum by quantum, until the cluster halts.
+   */
+  final class Worker implements Runnable
+  {
+    // VARIABLES
+
+    private final int index;
+    private final Round round;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Worker instance.
+     */
+    Worker(int aIndex, Round aRound)
+    {
+      this.index = aIndex;
+      this.round = aRound;
+    }
+
+    // METHODS
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run()
+    {
+      try
+      {
+        runQuanta();
+      }
+      catch (InterruptedException exception)
+      {
+        Thread.currentThread().interrupt();
+      }
+      catch (BrokenBarrierException exception)
+      {
+        // The calling thread is interrupted, so the run is abandoned...
+      }
+    }
+
+    /**
+     * Runs the core until the cluster halts.
+     * 
+     * @throws InterruptedException
+     *           in case the current thread is interrupted while waiting for
+     *           the other cores;
+     * @throws BrokenBarrierException
+     *           in case another thread is interrupted while waiting for the
+     *           other cores.
+     */
+    void runQuanta() throws InterruptedException, BrokenBarrierException
+    {
+      Arm core = Cluster.this.cores[this.index];
+      Cluster.this.current.set(core);
+      try
+      {
+        while (!this.round.halted)
+        {
+          if (this.round.isActive(this.index))
+          {
+            long count = core.getInstructionCount();
+            try
+            {
+              this.round.reasons[this.index] = core.run(Math.min(Cluster.this.quantum,
+                  this.round.remaining[this.index]));
+            }
+            catch (RuntimeException exception)
+            {
+              this.round.failures[this.index] = exception;
+            }
+            catch (Error exception)
+            {
+              this.round.failures[this.index] = exception;
+            }
+            this.round.remaining[this.index] -= (core.getInstructionCount() - count);
+          }
+
+          this.round.barrier.await();
+        }
+      }
+      finally
+      {
+        Cluster.this.current.remove();
+      }
+    }
+  }
+
+  /**
+   * Keeps the state of a single run of all cores. Each core only changes its
+   * own entries, while the others wait at the barrier.
+   */
+  static final class Round implements Runnable
+  {
+    // VARIABLES
+
+    final StopReason[] reasons;
+    final long[] remaining;
+    final Throwable[] failures;
+    final CyclicBarrier barrier;
+
+    // Only changed by the barrier action, which happens before all threads
+    // continue...
+    boolean halted;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Round instance.
+     */
+    Round(int aCount, long aMaxInstructions)
+    {
+      this.reasons = new StopReason[aCount];
+      this.remaining = new long[aCount];
+      this.failures = new Throwable[aCount];
+      this.barrier = new CyclicBarrier(aCount, this);
+
+      Arrays.fill(this.reasons, StopReason.BUDGET_EXHAUSTED);
+      Arrays.fill(this.remaining, aMaxInstructions);
+    }
+
+    // METHODS
+
+    /**
+     * Decides whether the cores run another quantum, which they do unless all
+     * cores are done, or any core stopped for a reason that stops a debugger
+     * as well.
+     */
+    @Override
+    public void run()
+    {
+      boolean active = false;
+      for (int i = 0; i < this.reasons.length; i++)
+      {
+        if ((this.failures[i] != null) || ((this.reasons[i] != StopReason.BUDGET_EXHAUSTED)
+            && (this.reasons[i] != StopReason.EXIT)))
+        {
+          this.halted = true;
+          return;
+        }
+        active |= isActive(i);
+      }
+      this.halted = !active;
+    }
+
+    /**
+     * @return the first failure of any core, can be <code>null</code>.
+     */
+    Throwable getFailure()
+    {
+      for (Throwable failure : this.failures)
+      {
+        if (failure != null)
+        {
+          return failure;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * @return <code>true</code> if the given core should run another quantum,
+     *         <code>false</code> otherwise.
+     */
+    boolean isActive(int aIndex)
+    {
+      return (this.reasons[aIndex] == StopReason.BUDGET_EXHAUSTED) && (this.remaining[aIndex] > 0L);
+    }
+  }
+
+  // CONSTANTS
+
+  /** The default number of instructions each core runs between two waits. */
+  public static final long DEFAULT_QUANTUM = 10000L;
+
+  // VARIABLES
+
+  private final Memory memory;
+  private final Arm[] cores;
+  private long quantum;
+
+  // The core run by the current thread, to which watchpoint hits are passed...
+  private final ThreadLocal<Arm> current;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new Cluster instance.
+   * <p>
+   * As all cores would update the same TLB statistics upon each memory access,
+   * which would keep them from running in parallel, the statistics of the given
+   * memory are turned off.
+   * </p>
+   * 
+   * @param aMemory
+   *          the memory shared by all cores, cannot be <code>null</code>;
+   * @param aCoreCount
+   *          the number of cores, &gt; 0.
+   */
+  public Cluster(Memory aMemory, int aCoreCount)
+  {
+    if (aMemory == null)
+    {
+      throw new IllegalArgumentException("Memory cannot be null!");
+    }
+    if (aCoreCount <= 0)
+    {
+      throw new IllegalArgumentException("Core count must be positive!");
+    }
+
+    this.memory = aMemory;
+    this.memory.setStatisticsEnabled(false);
+
+    this.cores = new Arm[aCoreCount];
+    for (int i = 0; i < aCoreCount; i++)
+    {
+      this.cores[i] = new Arm(aMemory, i);
+    }
+
+    this.quantum = DEFAULT_QUANTUM;
+    this.current = new ThreadLocal<Arm>();
+  }
+
+  // METHODS
+
+  /**
+   * Returns the core with the given number.
+   * 
+   * @param aIndex
+   *          the number of the core to return, &gt;= 0 and &lt;
+   *          {@link #getCoreCount()}.
+   * @return the core, never <code>null</code>.
+   */
+  public Arm getCore(int aIndex)
+  {
+    return this.cores[aIndex];
+  }
+
+  /**
+   * Returns the number of cores in this cluster.
+   * 
+   * @return the number of cores, &gt; 0.
+   */
+  public int getCoreCount()
+  {
+    return this.cores.length;
+  }
+
+  /**
+   * Returns the memory shared by all cores.
+   * 
+   * @return the memory, never <code>null</code>.
+   */
+  public Memory getMemory()
+  {
+    return this.memory;
+  }
+
+  /**
+   * Returns the number of instructions each core runs before it waits for the
+   * other cores.
+   * 
+   * @return the quantum, &gt; 0.
+   */
+  public long getQuantum()
+  {
+    return this.quantum;
+  }
+
+  /**
+   * Resets all cores.
+   */
+  public void reset()
+  {
+    for (Arm core : this.cores)
+    {
+      core.reset();
+    }
+  }
+
+  /**
+   * Runs all cores in parallel until each of them executed the given number of
+   * instructions, or stopped for another reason. The calling thread runs the
+   * first core, all other cores run on a thread of their own.
+   * <p>
+   * A core that exits leaves the other cores running. A core that stops for
+   * any other reason, such as a breakpoint, halts all cores at the end of the
+   * current quantum; the halted cores report
+   * {@link StopReason#BUDGET_EXHAUSTED}, and resume upon the next run.
+   * </p>
+   * <p>
+   * Watchpoint hits stop the core that made the access, for which this method
+   * sets the watchpoint listener of the shared memory.
+   * </p>
+   * 
+   * @param aMaxInstructions
+   *          the maximum number of instructions to execute per core.
+   * @return the reason for stopping of each core, never <code>null</code>.
+   * @throws InterruptedException
+   *           in case the calling thread is interrupted while waiting for the
+   *           other cores, in which case all cores stop at the end of their
+   *           current quantum.
+   */
+  public StopReason[] run(long aMaxInstructions) throws InterruptedException
+  {
+    this.memory.setWatchpointListener(new WatchpointListener()
+    {
+      @Override
+      public void watchpointHit(int aAddress, int aValue, boolean aWrite)
+      {
+        Arm core = Cluster.this.current.get();
+        if (core != null)
+        {
+          core.watchpointListener.watchpointHit(aAddress, aValue, aWrite);
+        }
+      }
+    });
+
+    Round round = new Round(this.cores.length, aMaxInstructions);
+
+    Thread[] threads = new Thread[this.cores.length];
+    for (int i = 1; i < threads.length; i++)
+    {
+      threads[i] = new Thread(new Worker(i, round), "Cluster core " + i);
+      threads[i].start();
+    }
+
+    try
+    {
+      new Worker(0, round).runQuanta();
+    }
+    catch (BrokenBarrierException exception)
+    {
+      // Cannot happen, as the other threads are never interrupted...
+      throw new IllegalStateException(exception);
+    }
+    finally
+    {
+      // Let all other threads end, even if the calling thread is interrupted...
+      boolean interrupted = false;
+      for (int i = 1; i < threads.length; i++)
+      {
+        while (threads[i].isAlive())
+        {
+          try
+          {
+            threads[i].join();
+          }
+          catch (InterruptedException exception)
+          {
+            interrupted = true;
+          }
+        }
+      }
+      if (interrupted)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    Throwable failure = round.getFailure();
+    if (failure instanceof RuntimeException)
+    {
+      throw (RuntimeException) failure;
+    }
+    if (failure != null)
+    {
+      throw (Error) failure;
+    }
+
+    return round.reasons;
+  }
+
+  /**
+   * Sets the number of instructions each core runs before it waits for the
+   * other cores.
+   * 
+   * @param aQuantum
+   *          the quantum to use, &gt; 0.
+   */
+  public void setQuantum(long aQuantum)
+  {
+    if (aQuantum <= 0L)
+    {
+      throw new IllegalArgumentException("Quantum must be positive!");
+    }
+    this.quantum = aQuantum;
+  }
+}
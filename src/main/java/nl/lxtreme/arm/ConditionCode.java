@@ -25,5 +25,6 @@ public enum ConditionCode
   LT, //
   GT, //
   LE, //
-  AL;
+  AL, //
+  NV; // never (ARMv4), unconditional extension space for later versions
 }
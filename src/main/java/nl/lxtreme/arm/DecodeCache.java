@@ -0,0 +1,109 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.util.*;
+
+import nl.lxtreme.arm.memory.*;
+
+
+/**
+ * Provides a direct-mapped cache of pre-decoded instructions, keyed by their
+ * address. Each entry remembers the code page it was fetched from together
+ * with the version of that page, so a write to the page invalidates the
+ * entries decoded from it, while writes to other pages leave them alone.
+ */
+final class DecodeCache
+{
+  // CONSTANTS
+
+  static final int DEFAULT_SIZE = 4096;
+
+  // VARIABLES
+
+  private final int shift;
+  private final int mask;
+  private final int[] tags;
+  private final Instruction[] instructions;
+  private final CodePage[] pages;
+  private final int[] versions;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new DecodeCache instance.
+   * 
+   * @param aSize
+   *          the number of entries, should be a power of two;
+   * @param aInstructionSize
+   *          the size of a single instruction, in bytes.
+   */
+  DecodeCache(int aSize, int aInstructionSize)
+  {
+    this.shift = Integer.numberOfTrailingZeros(aInstructionSize);
+    this.mask = aSize - 1;
+    this.tags = new int[aSize];
+    this.instructions = new Instruction[aSize];
+    this.pages = new CodePage[aSize];
+    this.versions = new int[aSize];
+  }
+
+  // METHODS
+
+  /**
+   * Removes all entries from this cache.
+   */
+  void clear()
+  {
+    Arrays.fill(this.instructions, null);
+    Arrays.fill(this.pages, null);
+  }
+
+  /**
+   * Returns the cached instruction for the given address.
+   * 
+   * @param aAddress
+   *          the address of the instruction to return.
+   * @return the cached instruction, or <code>null</code> if it is not cached
+   *         or its page has been written since it was cached.
+   */
+  Instruction get(int aAddress)
+  {
+    int idx = (aAddress >>> this.shift) & this.mask;
+    CodePage page = this.pages[idx];
+    if ((page != null) && (this.tags[idx] == aAddress) && (page.getVersion() == this.versions[idx]))
+    {
+      return this.instructions[idx];
+    }
+    return null;
+  }
+
+  /**
+   * Caches the given instruction.
+   * 
+   * @param aAddress
+   *          the address of the instruction;
+   * @param aInstruction
+   *          the decoded instruction;
+   * @param aPage
+   *          the code page the instruction is fetched from, can be
+   *          <code>null</code> in which case nothing is cached.
+   */
+  void put(int aAddress, Instruction aInstruction, CodePage aPage)
+  {
+    if (aPage == null)
+    {
+      return;
+    }
+
+    int idx = (aAddress >>> this.shift) & this.mask;
+    this.tags[idx] = aAddress;
+    this.instructions[idx] = aInstruction;
+    this.pages[idx] = aPage;
+    this.versions[idx] = aPage.getVersion();
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.util.*;
+
+import nl.lxtreme.arm.memory.*;
+
+
+/**
+ * Provides a disassembler for ARM and THUMB opcodes, producing the same text as
+ * the CPU used to print while executing.
+ */
+public final class Disassembler
+{
+  // CONSTANTS
+
+  private static final ConditionCode[] CONDITIONS = ConditionCode.values();
+  private static final String[] SHIFTS = { "LSL", "LSR", "ASR", "ROR" };
+
+  // VARIABLES
+
+  private final Memory memory;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new Disassembler instance.
+   * 
+   * @param aMemory
+   *          the memory to read literal values from, cannot be
+   *          <code>null</code>.
+   */
+  public Disassembler(Memory aMemory)
+  {
+    if (aMemory == null)
+    {
+      throw new IllegalArgumentException("Memory cannot be null!");
+    }
+    this.memory = aMemory;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the condition suffix of the given 32-bit opcode.
+   * 
+   * @param aOpcode
+   *          the opcode to return the condition for.
+   * @return the condition, for example "AL", never <code>null</code>.
+   */
+  static String condition(int aOpcode)
+  {
+    return CONDITIONS[(aOpcode >> 28) & 0x0f].name();
+  }
+
+  /**
+   * Returns the shift of the register operand of the given 32-bit opcode.
+   * 
+   * @param aOpcode
+   *          the opcode to return the shift for.
+   * @return the shift, for example ",LSL#2", or an empty string if the operand
+   *         is not shifted.
+   */
+  static String shift(int aOpcode)
+  {
+    int amt = (aOpcode >> 7) & 0x1F;
+    if (amt == 0)
+    {
+      return "";
+    }
+    return "," + SHIFTS[(aOpcode >> 5) & 3] + "#" + amt;
+  }
+
+  /**
+   * Returns the flag-setting suffix of the given 32-bit opcode.
+   * 
+   * @param aOpcode
+   *          the opcode to return the suffix for.
+   * @return "s" if the opcode updates the flags, an empty string otherwise.
+   */
+  static String suffix(int aOpcode)
+  {
+    return (((aOpcode >> 20) & 1) != 0) ? "s" : "";
+  }
+
+  /**
+   * Disassembles a single opcode.
+   * 
+   * @param aAddress
+   *          the address of the opcode, used to resolve PC-relative operands;
+   * @param aOpcode
+   *          the opcode to disassemble;
+   * @param aThumb
+   *          <code>true</code> if the opcode is a THUMB opcode,
+   *          <code>false</code> if it is an ARM opcode.
+   * @return the disassembled opcode, never <code>null</code>.
+   */
+  public String disassemble(int aAddress, int aOpcode, boolean aThumb)
+  {
+    StringBuilder sb = new StringBuilder();
+    disassemble(aAddress, aOpcode, aThumb, sb);
+    return sb.toString();
+  }
+
+  /**
+   * Disassembles a single opcode to the given output.
+   * 
+   * @param aAddress
+   *          the address of the opcode, used to resolve PC-relative operands;
+   * @param aOpcode
+   *          the opcode to disassemble;
+   * @param aThumb
+   *          <code>true</code> if the opcode is a THUMB opcode,
+   *          <code>false</code> if it is an ARM opcode;
+   * @param aOut
+   *          the output to append the disassembled opcode to, cannot be
+   *          <code>null</code>.
+   */
+  public void disassemble(int aAddress, int aOpcode, boolean aThumb, Appendable aOut)
+  {
+    Instruction instruction = aThumb ? ThumbDecoder.decode(aOpcode) : ArmDecoder.decode(aOpcode);
+    instruction.disassemble(this, aAddress, new Formatter(aOut));
+  }
+
+  /**
+   * Reads a 32-bit literal value without complaining about unmapped addresses.
+   * 
+   * @param aAddress
+   *          the address to read.
+   * @return the 32-bit value at the given address, or 0 if the address is not
+   *         mapped.
+   */
+  int read32(int aAddress)
+  {
+    Chunk chunk = this.memory.find(aAddress);
+    if (chunk == null)
+    {
+      return 0;
+    }
+    return chunk.read32(aAddress);
+  }
+}
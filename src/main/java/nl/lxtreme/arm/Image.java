@@ -0,0 +1,215 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.arm.memory.*;
+import nl.lxtreme.binutils.elf.*;
+
+
+/**
+ * Provides a program image, that is, the contents of all memory regions a
+ * program starts with, along with its entry point.
+ * <p>
+ * An image is read once, and can then be loaded into any number of memories,
+ * for example, one for each job of a {@link BatchRunner}. It should not be
+ * changed while it is being loaded by another thread.
+ * </p>
+ */
+public class Image
+{
+  // INNER TYPES
+
+  /**
+   * Denotes a single memory region of an image.
+   */
+  static final class Segment
+  {
+    // VARIABLES
+
+    final long address;
+    final int size;
+    final byte[] data;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Segment instance.
+     */
+    Segment(long aAddress, int aSize, byte[] aData)
+    {
+      this.address = aAddress;
+      this.size = aSize;
+      this.data = aData;
+    }
+  }
+
+  // VARIABLES
+
+  private final Endianness endianness;
+  private final List<Segment> segments;
+  private int entryPoint;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new, empty, Image instance for a word-invariant big-endian
+   * memory.
+   */
+  public Image()
+  {
+    this(Endianness.BE_32);
+  }
+
+  /**
+   * Creates a new, empty, Image instance.
+   * 
+   * @param aEndianness
+   *          the byte order of the memory to load this image into, cannot be
+   *          <code>null</code>.
+   */
+  public Image(Endianness aEndianness)
+  {
+    if (aEndianness == null)
+    {
+      throw new IllegalArgumentException("Endianness cannot be null!");
+    }
+
+    this.endianness = aEndianness;
+    this.segments = new ArrayList<Segment>();
+  }
+
+  // METHODS
+
+  /**
+   * Reads an image from the loadable segments of the given ELF file. Each
+   * segment is zero-filled beyond the data in the file.
+   * 
+   * @param aFile
+   *          the ELF file to read, cannot be <code>null</code>.
+   * @return the image, never <code>null</code>.
+   * @throws IOException
+   *           in case of I/O problems reading the given file.
+   */
+  public static Image loadElf(File aFile) throws IOException
+  {
+    Image result = new Image();
+
+    Elf elf = new Elf(aFile);
+    try
+    {
+      for (ProgramHeader ph : elf.getProgramHeaders())
+      {
+        int size = (int) ph.getMemorySize();
+        if (size <= 0)
+        {
+          continue;
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream(size);
+        elf.readSegment(ph, data);
+
+        result.addSegment(ph.getVirtualAddress(), size, Arrays.copyOf(data.toByteArray(), size));
+      }
+      result.setEntryPoint((int) elf.getHeader().getEntryPoint());
+    }
+    finally
+    {
+      elf.dispose();
+    }
+
+    return result;
+  }
+
+  /**
+   * Adds a memory region to this image.
+   * 
+   * @param aAddress
+   *          the base address of the region;
+   * @param aSize
+   *          the size of the region, in bytes, &gt; 0;
+   * @param aData
+   *          the initial contents of the region, which is written from its
+   *          base address on, can be <code>null</code> to leave the region
+   *          uninitialized. The array is not copied, and should not be changed
+   *          afterwards.
+   */
+  public void addSegment(long aAddress, int aSize, byte[] aData)
+  {
+    if (aSize <= 0)
+    {
+      throw new IllegalArgumentException("Size must be positive!");
+    }
+    if ((aData != null) && (aData.length > aSize))
+    {
+      throw new IllegalArgumentException("Data does not fit in segment!");
+    }
+    this.segments.add(new Segment(aAddress, aSize, aData));
+  }
+
+  /**
+   * Returns the byte order of the memory to load this image into.
+   * 
+   * @return the endianness, never <code>null</code>.
+   */
+  public Endianness getEndianness()
+  {
+    return this.endianness;
+  }
+
+  /**
+   * Returns the address of the first instruction of this image.
+   * 
+   * @return the entry point.
+   */
+  public int getEntryPoint()
+  {
+    return this.entryPoint;
+  }
+
+  /**
+   * Sets the address of the first instruction of this image.
+   * 
+   * @param aEntryPoint
+   *          the entry point to set.
+   */
+  public void setEntryPoint(int aEntryPoint)
+  {
+    this.entryPoint = aEntryPoint;
+  }
+
+  /**
+   * Creates a new memory with all regions of this image.
+   * 
+   * @return the new memory, never <code>null</code>.
+   */
+  Memory load()
+  {
+    Memory memory = new Memory(this.endianness);
+    for (Segment s : this.segments)
+    {
+      Chunk chunk = memory.create(s.address, s.size);
+      if (s.data != null)
+      {
+        // Write through the stream, as the ELF loader does, which does not
+        // depend on how the base address maps onto the chunk...
+        try
+        {
+          chunk.write(s.data, 0, s.data.length);
+        }
+        catch (IOException exception)
+        {
+          // Cannot happen, as the chunk is new...
+          throw new IllegalStateException(exception);
+        }
+      }
+    }
+    return memory;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.util.*;
+
+
+/**
+ * Denotes a pre-decoded instruction, that is, an opcode whose operands, shift
+ * and condition are already extracted and only need to be executed.
+ * <p>
+ * Instances are immutable and do not hold any CPU state, so they can be cached
+ * and shared freely.
+ * </p>
+ */
+abstract class Instruction
+{
+  // VARIABLES
+
+  final int opcode;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new Instruction instance.
+   * 
+   * @param aOpcode
+   *          the raw opcode this instruction is decoded from.
+   */
+  Instruction(int aOpcode)
+  {
+    this.opcode = aOpcode;
+  }
+
+  // METHODS
+
+  /**
+   * Returns whether this instruction ends a basic block, which is the case for
+   * branches and software interrupts.
+   * 
+   * @return <code>true</code> if this instruction ends a basic block,
+   *         <code>false</code> otherwise.
+   */
+  boolean endsBlock()
+  {
+    return false;
+  }
+
+  /**
+   * Formats the mnemonic and operands of this instruction, without a trailing
+   * newline.
+   * 
+   * @param aDisassembler
+   *          the disassembler to use for looking up literal values;
+   * @param aAddress
+   *          the address of this instruction, used to resolve PC-relative
+   *          operands;
+   * @param aOut
+   *          the formatter to write the disassembly to.
+   */
+  abstract void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut);
+
+  /**
+   * Executes this instruction on the given CPU. The PC is already advanced past
+   * this instruction when this method is called.
+   * 
+   * @param aArm
+   *          the CPU to execute this instruction on, cannot be
+   *          <code>null</code>.
+   */
+  abstract void execute(Arm aArm);
+
+  /**
+   * Returns whether this instruction is undefined, that is, cannot be executed
+   * by this emulator at all.
+   * 
+   * @return <code>true</code> if this instruction is undefined,
+   *         <code>false</code> otherwise.
+   */
+  boolean isUndefined()
+  {
+    return false;
+  }
+
+  /**
+   * Returns whether this instruction can be part of a translated basic block.
+   * Instructions that are not (fully) supported are always left to the
+   * interpreter.
+   * 
+   * @return <code>true</code> if this instruction can be translated,
+   *         <code>false</code> otherwise.
+   */
+  boolean isTranslatable()
+  {
+    return true;
+  }
+}
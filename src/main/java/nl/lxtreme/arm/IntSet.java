@@ -0,0 +1,225 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.util.*;
+
+
+/**
+ * Provides a set of primitive int values, using open addressing with linear
+ * probing. Lookups take constant time and never allocate.
+ */
+final class IntSet
+{
+  // CONSTANTS
+
+  private static final int MIN_CAPACITY = 16;
+  /** Marks an empty slot; the value itself is tracked separately. */
+  private static final int FREE = 0;
+
+  // VARIABLES
+
+  private int[] keys;
+  private int mask;
+  private int size;
+  private boolean containsFree;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new, empty, IntSet instance.
+   */
+  IntSet()
+  {
+    this.keys = new int[MIN_CAPACITY];
+    this.mask = MIN_CAPACITY - 1;
+  }
+
+  // METHODS
+
+  /**
+   * Adds the given value to this set.
+   * 
+   * @param aValue
+   *          the value to add.
+   * @return <code>true</code> if the value is added, <code>false</code> if it
+   *         was already contained in this set.
+   */
+  boolean add(int aValue)
+  {
+    if (aValue == FREE)
+    {
+      if (this.containsFree)
+      {
+        return false;
+      }
+      this.containsFree = true;
+      this.size++;
+      return true;
+    }
+
+    int idx = hash(aValue) & this.mask;
+    int key;
+    while ((key = this.keys[idx]) != FREE)
+    {
+      if (key == aValue)
+      {
+        return false;
+      }
+      idx = (idx + 1) & this.mask;
+    }
+
+    this.keys[idx] = aValue;
+    if (++this.size > (this.keys.length >> 1))
+    {
+      rehash(this.keys.length << 1);
+    }
+    return true;
+  }
+
+  /**
+   * Removes all values from this set.
+   */
+  void clear()
+  {
+    Arrays.fill(this.keys, FREE);
+    this.containsFree = false;
+    this.size = 0;
+  }
+
+  /**
+   * Returns whether the given value is contained in this set.
+   * 
+   * @param aValue
+   *          the value to look up.
+   * @return <code>true</code> if the value is contained in this set,
+   *         <code>false</code> otherwise.
+   */
+  boolean contains(int aValue)
+  {
+    if (aValue == FREE)
+    {
+      return this.containsFree;
+    }
+
+    int idx = hash(aValue) & this.mask;
+    int key;
+    while ((key = this.keys[idx]) != FREE)
+    {
+      if (key == aValue)
+      {
+        return true;
+      }
+      idx = (idx + 1) & this.mask;
+    }
+    return false;
+  }
+
+  /**
+   * @return <code>true</code> if this set is empty, <code>false</code>
+   *         otherwise.
+   */
+  boolean isEmpty()
+  {
+    return this.size == 0;
+  }
+
+  /**
+   * Removes the given value from this set.
+   * 
+   * @param aValue
+   *          the value to remove.
+   * @return <code>true</code> if the value is removed, <code>false</code> if
+   *         it was not contained in this set.
+   */
+  boolean remove(int aValue)
+  {
+    if (aValue == FREE)
+    {
+      if (!this.containsFree)
+      {
+        return false;
+      }
+      this.containsFree = false;
+      this.size--;
+      return true;
+    }
+
+    int idx = hash(aValue) & this.mask;
+    int key;
+    while ((key = this.keys[idx]) != aValue)
+    {
+      if (key == FREE)
+      {
+        return false;
+      }
+      idx = (idx + 1) & this.mask;
+    }
+
+    // Shift back the entries of the same probe sequence, so no tombstones are
+    // needed...
+    int gap = idx;
+    idx = (idx + 1) & this.mask;
+    while ((key = this.keys[idx]) != FREE)
+    {
+      int home = hash(key) & this.mask;
+      if (((idx - home) & this.mask) >= ((idx - gap) & this.mask))
+      {
+        this.keys[gap] = key;
+        gap = idx;
+      }
+      idx = (idx + 1) & this.mask;
+    }
+    this.keys[gap] = FREE;
+
+    this.size--;
+    return true;
+  }
+
+  /**
+   * @return the number of values in this set, &gt;= 0.
+   */
+  int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * @param aValue
+   * @return a scrambled hash code for the given value.
+   */
+  private static int hash(int aValue)
+  {
+    int h = aValue * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * @param aCapacity
+   *          the new capacity, a power of two.
+   */
+  private void rehash(int aCapacity)
+  {
+    int[] old = this.keys;
+
+    this.keys = new int[aCapacity];
+    this.mask = aCapacity - 1;
+
+    for (int key : old)
+    {
+      if (key != FREE)
+      {
+        int idx = hash(key) & this.mask;
+        while (this.keys[idx] != FREE)
+        {
+          idx = (idx + 1) & this.mask;
+        }
+        this.keys[idx] = key;
+      }
+    }
+  }
+}
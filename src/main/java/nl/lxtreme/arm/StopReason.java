@@ -0,0 +1,36 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+/**
+ * Represents the reasons for {@link Arm#run(long)} to return.
+ */
+public enum StopReason
+{
+  /** The given number of instructions is executed. */
+  BUDGET_EXHAUSTED, //
+  /** The PC hit a breakpoint; the instruction at the PC is not executed. */
+  BREAKPOINT, //
+  /**
+   * An instruction accessed a watched address; the instruction is executed,
+   * and the PC points to the next one.
+   */
+  WATCHPOINT, //
+  /** The program exited through the exit-syscall. */
+  EXIT, //
+  /**
+   * The instruction at the PC is undefined; it is not executed, and the PC
+   * still points to it.
+   */
+  UNDEFINED_INSTRUCTION, //
+  /**
+   * The PC points to unmapped memory, or the instruction at the PC made an
+   * invalid access while the memory policy is
+   * {@link nl.lxtreme.arm.memory.InvalidAccessPolicy#STOP}.
+   */
+  MEMORY_FAULT;
+}
@@ -0,0 +1,66 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.io.*;
+
+import nl.lxtreme.arm.memory.*;
+
+
+/**
+ * Provides a trace sink that prints a line of disassembly for every executed
+ * instruction.
+ */
+public class TextTraceSink implements TraceSink
+{
+  // VARIABLES
+
+  private final Disassembler disassembler;
+  private final PrintStream out;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new TextTraceSink instance.
+   * 
+   * @param aMemory
+   *          the memory to read literal values from, cannot be
+   *          <code>null</code>;
+   * @param aOut
+   *          the stream to print the trace to, cannot be <code>null</code>.
+   */
+  public TextTraceSink(Memory aMemory, PrintStream aOut)
+  {
+    if (aOut == null)
+    {
+      throw new IllegalArgumentException("Output cannot be null!");
+    }
+    this.disassembler = new Disassembler(aMemory);
+    this.out = aOut;
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void instruction(int aAddress, int aOpcode, boolean aThumb)
+  {
+    if (aThumb)
+    {
+      this.out.printf("%08X [T] (%04x) ", aAddress, aOpcode & 0xFFFF);
+    }
+    else
+    {
+      this.out.printf("%08X [A] (%08x) ", aAddress, aOpcode);
+    }
+
+    this.disassembler.disassemble(aAddress, aOpcode, aThumb, this.out);
+    this.out.println();
+  }
+}
@@ -0,0 +1,1336 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import static nl.lxtreme.arm.Arm.*;
+import static nl.lxtreme.arm.Disassembler.*;
+
+import java.util.*;
+
+
+/**
+ * Decodes THUMB (16-bit) opcodes into pre-decoded {@link Instruction}s.
+ */
+final class ThumbDecoder
+{
+  // INNER TYPES
+
+  /**
+   * LSL/LSR/ASR with an immediate shift amount.
+   */
+  static final class ShiftImmediate extends Instruction
+  {
+    final int type;
+    final int rd;
+    final int rm;
+    final int imm;
+
+    ShiftImmediate(int aOpcode)
+    {
+      super(aOpcode);
+      this.type = (aOpcode >> 11) & 3;
+      this.imm = (aOpcode >> 6) & 0x1F;
+      this.rm = (aOpcode >> 3) & 7;
+      this.rd = aOpcode & 7;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+
+      if (this.imm > 0)
+      {
+        switch (this.type)
+        {
+          case 0:
+            aArm.cpsr.setC((r[this.rd] & (1 << (32 - this.imm))) != 0);
+            r[this.rd] = LSL(r[this.rd], this.imm);
+            break;
+          case 1:
+            aArm.cpsr.setC((r[this.rd] & (1 << (this.imm - 1))) != 0);
+            r[this.rd] = LSR(r[this.rd], this.imm);
+            break;
+          default:
+            aArm.cpsr.setC((r[this.rd] & (1 << (this.imm - 1))) != 0);
+            r[this.rd] = ASR(r[this.rd], this.imm);
+            break;
+        }
+      }
+
+      aArm.cpsr.setNZ(r[this.rd]);
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      String mnemonic = (this.type == 0) ? "lsl" : (this.type == 1) ? "lsr" : "asr";
+      aOut.format("%s r%d, r%d, #0x%02X", mnemonic, this.rd, this.rm, this.imm);
+    }
+  }
+
+  /**
+   * ADD/SUB with a register or 3-bit immediate operand.
+   */
+  static final class AddSubtract extends Instruction
+  {
+    final int rd;
+    final int rm;
+    final int rn;
+    final int imm;
+    final boolean immediate;
+    final boolean subtract;
+
+    AddSubtract(int aOpcode)
+    {
+      super(aOpcode);
+      this.rn = (aOpcode >> 6) & 7;
+      this.rm = (aOpcode >> 3) & 7;
+      this.rd = aOpcode & 7;
+      this.imm = (aOpcode >> 6) & 7;
+      this.immediate = (aOpcode & 0x400) != 0;
+      this.subtract = (aOpcode & 0x200) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+      int value = this.immediate ? this.imm : r[this.rn];
+
+      if (this.subtract)
+      {
+        r[this.rd] = aArm.subtract(r[this.rm], value);
+      }
+      else
+      {
+        r[this.rd] = aArm.addition(r[this.rm], value);
+      }
+
+      if (this.immediate)
+      {
+      }
+      else
+      {
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      if (this.immediate)
+      {
+        aOut.format("%s r%d, r%d, #0x%02X", this.subtract ? "sub" : "add", this.rd, this.rm, this.imm);
+      }
+      else
+      {
+        aOut.format("%s r%d, r%d, r%d", this.subtract ? "sub" : "add", this.rd, this.rm, this.rn);
+      }
+    }
+  }
+
+  /**
+   * MOV/CMP/ADD/SUB with an 8-bit immediate operand.
+   */
+  static final class Immediate extends Instruction
+  {
+    private static final String[] MNEMONICS = { "mov", "cmp", "add", "sub" };
+
+    final int type;
+    final int rn;
+    final int imm;
+
+    Immediate(int aOpcode)
+    {
+      super(aOpcode);
+      this.type = (aOpcode >> 11) & 3;
+      this.rn = (aOpcode >> 8) & 7;
+      this.imm = aOpcode & 0xFF;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+
+      switch (this.type)
+      {
+        case 0:
+        { // MOV
+          r[this.rn] = this.imm;
+
+          aArm.cpsr.setNZ(r[this.rn]);
+          return;
+        }
+
+        case 1:
+        { // CMP
+          aArm.subtract(r[this.rn], this.imm);
+          return;
+        }
+
+        case 2:
+        { // ADD
+          r[this.rn] = aArm.addition(r[this.rn], this.imm);
+          return;
+        }
+
+        default:
+        { // SUB
+          r[this.rn] = aArm.subtract(r[this.rn], this.imm);
+          return;
+        }
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("%s r%d, #0x%02X", MNEMONICS[this.type], this.rn, this.imm);
+    }
+  }
+
+  /**
+   * Register-to-register ALU operations.
+   */
+  static final class Alu extends Instruction
+  {
+    private static final String[] MNEMONICS = { "and", "eor", "lsl", "lsr", "asr", "adc", "sbc", "ror", "tst", "neg",
+        "cmp", "cmn", "orr", "mul", "bic", "bic" };
+
+    final int type;
+    final int rd;
+    final int rm;
+
+    Alu(int aOpcode)
+    {
+      super(aOpcode);
+      this.type = (aOpcode >> 6) & 0xF;
+      this.rm = (aOpcode >> 3) & 7;
+      this.rd = aOpcode & 7;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+      int rd = this.rd;
+      int rm = this.rm;
+
+      switch (this.type)
+      {
+        case 0:
+        { // AND
+          r[rd] &= r[rm];
+          setZN(aArm);
+          return;
+        }
+
+        case 1:
+        { // EOR
+          r[rd] ^= r[rm];
+          setZN(aArm);
+          return;
+        }
+
+        case 2:
+        { // LSL
+          int shift = r[rm] & 0xFF;
+
+          if ((shift > 0) && (shift <= 32))
+          {
+            aArm.cpsr.setC((r[rd] & (1 << (32 - shift))) != 0);
+            r[rd] = LSL(r[rd], shift);
+          }
+
+          if (shift > 32)
+          {
+            aArm.cpsr.setC(false);
+            r[rd] = 0;
+          }
+
+          setZN(aArm);
+          return;
+        }
+
+        case 3:
+        { // LSR
+          int shift = r[rm] & 0xFF;
+
+          if ((shift > 0) && (shift <= 32))
+          {
+            aArm.cpsr.setC((r[rd] & (1 << (shift - 1))) != 0);
+            r[rd] = LSR(r[rd], shift);
+          }
+
+          if (shift > 32)
+          {
+            aArm.cpsr.setC(false);
+            r[rd] = 0;
+          }
+
+          setZN(aArm);
+          return;
+        }
+
+        case 4:
+        { // ASR
+          int shift = r[rm] & 0xFF;
+
+          if ((shift > 0) && (shift < 32))
+          {
+            aArm.cpsr.setC((r[rd] & (1 << (shift - 1))) != 0);
+            r[rd] = ASR(r[rd], shift);
+          }
+
+          if (shift == 32)
+          {
+            aArm.cpsr.setC((r[rd] >> 31) != 0);
+            r[rd] = 0;
+          }
+
+          if (shift > 32)
+          {
+            aArm.cpsr.setC(false);
+            r[rd] = 0;
+          }
+
+          setZN(aArm);
+          return;
+        }
+
+        case 5:
+        { // ADC
+          r[rd] = aArm.addition(r[rd], r[rm]);
+          r[rd] = aArm.addition(r[rd], aArm.cpsr.isC() ? 1 : 0);
+          setZN(aArm);
+          return;
+        }
+
+        case 6:
+        { // SBC
+          r[rd] = aArm.subtract(r[rd], r[rm]);
+          r[rd] = aArm.subtract(r[rd], aArm.cpsr.isC() ? 0 : 1);
+          setZN(aArm);
+          return;
+        }
+
+        case 7:
+        { // ROR
+          int shift = r[rm] & 0xFF;
+
+          while (shift >= 32)
+          {
+            shift -= 32;
+          }
+
+          if (shift != 0)
+          {
+            aArm.cpsr.setC((r[rd] & (1 << (shift - 1))) != 0);
+            r[rd] = ROR(r[rd], shift);
+          }
+
+          setZN(aArm);
+          return;
+        }
+
+        case 8:
+        { // TST
+          int result = r[rd] & r[rm];
+
+          aArm.cpsr.setNZ(result);
+          return;
+        }
+
+        case 9:
+        { // NEG
+          r[rd] = -r[rm];
+          setZN(aArm);
+          return;
+        }
+
+        case 10:
+        { // CMP
+          aArm.subtract(r[rd], r[rm]);
+          return;
+        }
+
+        case 11:
+        { // CMN/MVN
+          if ((this.opcode & 0x100) != 0)
+          {
+            r[rd] = ~r[rm];
+            setZN(aArm);
+          }
+          else
+          {
+            aArm.addition(r[rd], r[rm]);
+          }
+          return;
+        }
+
+        case 12:
+        { // ORR
+          r[rd] |= r[rm];
+          setZN(aArm);
+          return;
+        }
+
+        case 13:
+        { // MUL
+          r[rd] *= r[rm];
+          setZN(aArm);
+          return;
+        }
+
+        default:
+        { // BIC
+          r[rd] &= ~r[rm];
+          setZN(aArm);
+          return;
+        }
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      String mnemonic = ((this.type == 11) && ((this.opcode & 0x100) != 0)) ? "mvn" : MNEMONICS[this.type];
+      aOut.format("%s r%d, r%d", mnemonic, this.rd, this.rm);
+    }
+
+    /**
+     * Sets the Z and N flags according to the destination register.
+     */
+    private void setZN(Arm aArm)
+    {
+      aArm.cpsr.setNZ(aArm.r[this.rd]);
+    }
+  }
+
+  /**
+   * BLX with a register operand.
+   */
+  static final class BranchLinkExchange extends Instruction
+  {
+    final int rm;
+
+    BranchLinkExchange(int aOpcode)
+    {
+      super(aOpcode);
+      this.rm = (aOpcode >> 3) & 0xF;
+    }
+
+    @Override
+    boolean endsBlock()
+    {
+      return true;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+
+      r[14] = r[15] | 1;
+
+      aArm.cpsr.setT((r[this.rm] & 1) != 0);
+
+      r[15] = r[this.rm] & ~1;
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("blx r%d", this.rm);
+    }
+  }
+
+  /**
+   * ADD/CMP/MOV/BX on high registers.
+   */
+  static final class HighRegister extends Instruction
+  {
+    final int type;
+    final int rd;
+    final int rm;
+
+    HighRegister(int aOpcode)
+    {
+      super(aOpcode);
+      this.type = (aOpcode >> 8) & 3;
+      this.rd = ((aOpcode >> 4) & 8) | (aOpcode & 7);
+      this.rm = (aOpcode >> 3) & 0xF;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+
+      switch (this.type)
+      {
+        case 0:
+        { // ADD
+          r[this.rd] = aArm.addition(r[this.rd], r[this.rm]);
+          return;
+        }
+
+        case 1:
+        { // CMP
+          aArm.subtract(r[this.rd], r[this.rm]);
+          return;
+        }
+
+        case 2:
+        { // MOV (NOP)
+          r[this.rd] = r[this.rm];
+          return;
+        }
+
+        default:
+        { // BX
+          aArm.cpsr.setT((r[this.rm] & 1) != 0);
+
+          if (this.rm == 15)
+          {
+            r[15] += 2; // 16-bit
+          }
+          else
+          {
+            r[15] = r[this.rm] & ~1;
+          }
+          return;
+        }
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      switch (this.type)
+      {
+        case 0:
+          aOut.format("add r%d, r%d", this.rd, this.rm);
+          break;
+        case 1:
+          aOut.format("cmp r%d, r%d", this.rd, this.rm);
+          break;
+        case 2:
+          if ((this.rd == 8) && (this.rm == 8))
+          {
+            aOut.format("nop");
+          }
+          else
+          {
+            aOut.format("mov r%d, r%d", this.rd, this.rm);
+          }
+          break;
+        default:
+          aOut.format("bx r%d", this.rm);
+          break;
+      }
+    }
+  }
+
+  /**
+   * LDR relative to the PC.
+   */
+  static final class LoadLiteral extends Instruction
+  {
+    final int rd;
+    final int offset;
+
+    LoadLiteral(int aOpcode)
+    {
+      super(aOpcode);
+      this.rd = (aOpcode >> 8) & 7;
+      this.offset = ((aOpcode & 0xFF) << 2) + 2; // 16-bit
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      aArm.r[this.rd] = aArm.load32(aArm.r[15] + this.offset);
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("ldr r%d, =0x%08X", this.rd, aDisassembler.read32(aAddress + 2 + this.offset));
+    }
+  }
+
+  /**
+   * LDR/STR/LDRB/STRB with a register offset.
+   */
+  static final class LoadStoreRegister extends Instruction
+  {
+    final int type;
+    final int rd;
+    final int rn;
+    final int rm;
+
+    LoadStoreRegister(int aOpcode)
+    {
+      super(aOpcode);
+      this.type = (aOpcode >> 9) & 7;
+      this.rd = aOpcode & 7;
+      this.rn = (aOpcode >> 3) & 7;
+      this.rm = (aOpcode >> 6) & 7;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+      int addr = r[this.rn] + r[this.rm];
+
+      switch (this.type)
+      {
+        case 0:
+        { // STR
+          aArm.store32(addr, r[this.rd]);
+          return;
+        }
+
+        case 2:
+        { // STRB
+          aArm.store8(addr, r[this.rd]);
+          return;
+        }
+
+        case 4:
+        { // LDR
+          r[this.rd] = aArm.load32(addr);
+          return;
+        }
+
+        default:
+        { // LDRB
+          r[this.rd] = aArm.load8(addr);
+          return;
+        }
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      String mnemonic = (this.type == 0) ? "str" : (this.type == 2) ? "strb" : (this.type == 4) ? "ldr" : "ldrb";
+      aOut.format("%s r%d, [r%d, r%d]", mnemonic, this.rd, this.rn, this.rm);
+    }
+  }
+
+  /**
+   * LDR/STR/LDRB/STRB with an immediate offset.
+   */
+  static final class LoadStoreImmediate extends Instruction
+  {
+    final int rd;
+    final int rn;
+    final int imm;
+    final boolean B;
+    final boolean L;
+
+    LoadStoreImmediate(int aOpcode)
+    {
+      super(aOpcode);
+      this.rd = aOpcode & 7;
+      this.rn = (aOpcode >> 3) & 7;
+      this.imm = (aOpcode >> 6) & 7;
+      this.B = (aOpcode & 0x1000) != 0;
+      this.L = (aOpcode & 0x800) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+      int addr = r[this.rn] + (this.imm << 2);
+
+      if (this.B)
+      {
+        if (this.L)
+        {
+          r[this.rd] = aArm.load8(addr);
+        }
+        else
+        {
+          aArm.store8(addr, r[this.rd]);
+        }
+      }
+      else
+      {
+        if (this.L)
+        {
+          r[this.rd] = aArm.load32(addr);
+        }
+        else
+        {
+          aArm.store32(addr, r[this.rd]);
+        }
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      if (this.B)
+      {
+        aOut.format("%s r%d, [r%d, 0x%02X]", this.L ? "ldrb" : "strb", this.rd, this.rn, this.imm);
+      }
+      else
+      {
+        aOut.format("%s r%d, [r%d, 0x%02X]", this.L ? "ldr" : "str", this.rd, this.rn, this.imm << 2);
+      }
+    }
+  }
+
+  /**
+   * LDRH/STRH with an immediate offset.
+   */
+  static final class LoadStoreHalfword extends Instruction
+  {
+    final int rd;
+    final int rn;
+    final int offset;
+    final boolean L;
+
+    LoadStoreHalfword(int aOpcode)
+    {
+      super(aOpcode);
+      this.rd = aOpcode & 7;
+      this.rn = (aOpcode >> 3) & 7;
+      this.offset = ((aOpcode >> 6) & 7) << 1;
+      this.L = (aOpcode & 0x800) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+      int addr = r[this.rn] + this.offset;
+
+      if (this.L)
+      {
+        r[this.rd] = aArm.load16(addr);
+      }
+      else
+      {
+        aArm.store16(addr, r[this.rd]);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("%s r%d, [r%d, 0x%02X]", this.L ? "ldrh" : "strh", this.rd, this.rn, this.offset);
+    }
+  }
+
+  /**
+   * LDR/STR relative to the SP.
+   */
+  static final class LoadStoreStack extends Instruction
+  {
+    final int rd;
+    final int offset;
+    final boolean L;
+
+    LoadStoreStack(int aOpcode)
+    {
+      super(aOpcode);
+      this.rd = (aOpcode >> 8) & 7;
+      this.offset = (aOpcode & 0xFF) << 2;
+      this.L = (aOpcode & 0x800) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+      int addr = r[13] + this.offset;
+
+      if (this.L)
+      {
+        r[this.rd] = aArm.load32(addr);
+      }
+      else
+      {
+        aArm.store32(addr, r[this.rd]);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("%s r%d, [sp, 0x%02X]", this.L ? "ldr" : "str", this.rd, this.offset);
+    }
+  }
+
+  /**
+   * ADD relative to the SP or PC.
+   */
+  static final class LoadAddress extends Instruction
+  {
+    final int rd;
+    final int offset;
+    final boolean sp;
+
+    LoadAddress(int aOpcode)
+    {
+      super(aOpcode);
+      this.rd = (aOpcode >> 8) & 7;
+      this.offset = (aOpcode & 0xFF) << 2;
+      this.sp = (aOpcode & 0x800) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+
+      if (this.sp)
+      {
+        r[this.rd] = r[13] + this.offset;
+      }
+      else
+      {
+        r[this.rd] = (r[15] & ~2) + this.offset;
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("add r%d, %s, #0x%02X", this.rd, this.sp ? "sp" : "pc", this.offset);
+    }
+  }
+
+  /**
+   * ADD/SUB on the SP.
+   */
+  static final class AdjustStack extends Instruction
+  {
+    final int offset;
+    final boolean subtract;
+
+    AdjustStack(int aOpcode)
+    {
+      super(aOpcode);
+      this.offset = (aOpcode & 0x7F) << 2;
+      this.subtract = (aOpcode & 0x80) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (this.subtract)
+      {
+        aArm.r[13] -= this.offset;
+      }
+      else
+      {
+        aArm.r[13] += this.offset;
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("%s sp, #0x%02X", this.subtract ? "sub" : "add", this.offset);
+    }
+  }
+
+  /**
+   * PUSH.
+   */
+  static final class Push extends Instruction
+  {
+    final int registers;
+    final boolean lr;
+
+    Push(int aOpcode)
+    {
+      super(aOpcode);
+      this.registers = aOpcode & 0xFF;
+      this.lr = (aOpcode & 0x100) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (this.lr)
+      {
+        aArm.push(aArm.r[14]);
+      }
+
+      for (int i = 7; i >= 0; i--)
+      {
+        if (((this.registers >> i) & 1) != 0)
+        {
+          aArm.push(aArm.r[i]);
+        }
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      boolean pf = false;
+
+      aOut.format("push {");
+
+      for (int i = 0; i < 8; i++)
+      {
+        if (((this.registers >> i) & 1) != 0)
+        {
+          if (pf)
+          {
+            aOut.format(",");
+          }
+          aOut.format("r%d", i);
+
+          pf = true;
+        }
+      }
+
+      if (this.lr)
+      {
+        if (pf)
+        {
+          aOut.format(",");
+        }
+        aOut.format("lr");
+      }
+
+      aOut.format("}");
+    }
+  }
+
+  /**
+   * POP.
+   */
+  static final class Pop extends Instruction
+  {
+    final int registers;
+    final boolean pc;
+
+    Pop(int aOpcode)
+    {
+      super(aOpcode);
+      this.registers = aOpcode & 0xFF;
+      this.pc = (aOpcode & 0x100) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      for (int i = 0; i < 8; i++)
+      {
+        if (((this.registers >> i) & 1) != 0)
+        {
+          aArm.r[i] = aArm.pop();
+        }
+      }
+
+      if (this.pc)
+      {
+        aArm.r[15] = aArm.pop();
+        aArm.cpsr.setT((aArm.r[15] & 1) != 0);
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      boolean pf = false;
+
+      aOut.format("pop {");
+
+      for (int i = 0; i < 8; i++)
+      {
+        if (((this.registers >> i) & 1) != 0)
+        {
+          if (pf)
+          {
+            aOut.format(",");
+          }
+          aOut.format("r%d", i);
+
+          pf = true;
+        }
+      }
+
+      if (this.pc)
+      {
+        if (pf)
+        {
+          aOut.format(",");
+        }
+        aOut.format("pc");
+      }
+
+      aOut.format("}");
+    }
+  }
+
+  /**
+   * LDMIA/STMIA.
+   */
+  static final class LoadStoreMultiple extends Instruction
+  {
+    final int rn;
+    final int registers;
+    final boolean L;
+
+    LoadStoreMultiple(int aOpcode)
+    {
+      super(aOpcode);
+      this.rn = (aOpcode >> 8) & 7;
+      this.registers = aOpcode & 0xFF;
+      this.L = (aOpcode & 0x800) != 0;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      int[] r = aArm.r;
+
+      for (int i = 0; i < 8; i++)
+      {
+        if (((this.registers >> i) & 1) != 0)
+        {
+          if (this.L)
+          {
+            r[i] = aArm.load32(r[this.rn]);
+          }
+          else
+          {
+            aArm.store32(r[this.rn], r[i]);
+          }
+          r[this.rn] += 4;
+        }
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("%s r%d!, {", this.L ? "ldmia" : "stmia", this.rn);
+
+      for (int i = 0; i < 8; i++)
+      {
+        if (((this.registers >> i) & 1) != 0)
+        {
+          aOut.format("r%d,", i);
+        }
+      }
+
+      aOut.format("}");
+    }
+  }
+
+  /**
+   * Conditional branch.
+   */
+  static final class ConditionalBranch extends Instruction
+  {
+    final int cond;
+    final int offset;
+
+    ConditionalBranch(int aOpcode)
+    {
+      super(aOpcode);
+      this.cond = (aOpcode >> 28) & 0x0f;
+
+      int imm = (aOpcode & 0xFF) << 1;
+      if ((imm & 0x100) != 0)
+      {
+        imm = ~((~imm) & 0xFF);
+      }
+      this.offset = imm + 2;
+    }
+
+    @Override
+    boolean endsBlock()
+    {
+      return true;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      if (aArm.conditionPassed(this.cond))
+      {
+        aArm.r[15] += this.offset;
+      }
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("b%s 0x%08X", condition(this.opcode), aAddress + 2 + this.offset);
+    }
+  }
+
+  /**
+   * Unconditional branch.
+   */
+  static final class Branch extends Instruction
+  {
+    final int imm;
+    final int offset;
+
+    Branch(int aOpcode)
+    {
+      super(aOpcode);
+
+      int imm = (aOpcode & 0x7FF) << 1;
+      if ((imm & (1 << 11)) != 0)
+      {
+        this.imm = (~imm) & 0xFFE;
+        this.offset = -this.imm;
+      }
+      else
+      {
+        this.imm = imm;
+        this.offset = imm + 2; // 16-bit
+      }
+    }
+
+    @Override
+    boolean endsBlock()
+    {
+      return true;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      aArm.r[15] += this.offset;
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("b 0x%08X, 0x%X", aAddress + 2 + this.offset, this.imm);
+    }
+  }
+
+  /**
+   * First half of a BL pair; sets up the LR.
+   */
+  static final class BranchLinkPrefix extends Instruction
+  {
+    final int offset;
+
+    BranchLinkPrefix(int aOpcode)
+    {
+      super(aOpcode);
+      this.offset = (aOpcode & 0x7FF) << 12;
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      aArm.r[14] = aArm.r[15] + this.offset;
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("bl 0x%08X", aAddress + 2);
+    }
+  }
+
+  /**
+   * Any opcode that is not (yet) supported.
+   */
+  static final class Unknown extends Instruction
+  {
+    Unknown(int aOpcode)
+    {
+      super(aOpcode);
+    }
+
+    @Override
+    boolean isTranslatable()
+    {
+      return false;
+    }
+
+    @Override
+    boolean isUndefined()
+    {
+      return true;
+    }
+
+    @Override
+    void disassemble(Disassembler aDisassembler, int aAddress, Formatter aOut)
+    {
+      aOut.format("Unknown opcode! (0x%04X)", this.opcode);
+    }
+
+    @Override
+    void execute(Arm aArm)
+    {
+      // NO-op
+    }
+  }
+
+  // CONSTANTS
+
+  /**
+   * All 65536 THUMB opcodes, decoded once. As decoded instructions are
+   * immutable, they can be shared by all CPUs.
+   */
+  private static final Instruction[] TABLE = new Instruction[65536];
+
+  static
+  {
+    for (int i = 0; i < TABLE.length; i++)
+    {
+      TABLE[i] = classify(i);
+    }
+  }
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new ThumbDecoder instance, never used.
+   */
+  private ThumbDecoder()
+  {
+    // NO-op
+  }
+
+  // METHODS
+
+  /**
+   * Decodes the given THUMB opcode.
+   * 
+   * @param aOpcode
+   *          the 16-bit opcode to decode.
+   * @return the decoded instruction, never <code>null</code>.
+   */
+  static Instruction decode(int aOpcode)
+  {
+    return TABLE[aOpcode & 0xFFFF];
+  }
+
+  /**
+   * Decodes the given THUMB opcode into a new instruction.
+   * 
+   * @param aOpcode
+   *          the 16-bit opcode to decode.
+   * @return the decoded instruction, never <code>null</code>.
+   */
+  private static Instruction classify(int aOpcode)
+  {
+    if ((aOpcode >> 13) == 0)
+    {
+      if (((aOpcode >> 11) & 3) == 3)
+      {
+        return new AddSubtract(aOpcode);
+      }
+      return new ShiftImmediate(aOpcode);
+    }
+
+    if ((aOpcode >> 13) == 1)
+    {
+      return new Immediate(aOpcode);
+    }
+
+    if ((aOpcode >> 10) == 0x10)
+    {
+      if (((aOpcode >> 6) & 0xF) != 15)
+      {
+        return new Alu(aOpcode);
+      }
+    }
+
+    if ((aOpcode >> 7) == 0x8F)
+    {
+      return new BranchLinkExchange(aOpcode);
+    }
+
+    if ((aOpcode >> 10) == 0x11)
+    {
+      return new HighRegister(aOpcode);
+    }
+
+    if ((aOpcode >> 11) == 9)
+    {
+      return new LoadLiteral(aOpcode);
+    }
+
+    if ((aOpcode >> 12) == 5)
+    {
+      if ((((aOpcode >> 9) & 7) & 1) == 0)
+      {
+        return new LoadStoreRegister(aOpcode);
+      }
+    }
+
+    if ((aOpcode >> 13) == 3)
+    {
+      return new LoadStoreImmediate(aOpcode);
+    }
+
+    if ((aOpcode >> 12) == 8)
+    {
+      return new LoadStoreHalfword(aOpcode);
+    }
+
+    if ((aOpcode >> 12) == 9)
+    {
+      return new LoadStoreStack(aOpcode);
+    }
+
+    if ((aOpcode >> 12) == 10)
+    {
+      return new LoadAddress(aOpcode);
+    }
+
+    if ((aOpcode >> 12) == 11)
+    {
+      switch ((aOpcode >> 9) & 7)
+      {
+        case 0:
+          return new AdjustStack(aOpcode);
+        case 2:
+          return new Push(aOpcode);
+        case 6:
+          return new Pop(aOpcode);
+      }
+    }
+
+    if ((aOpcode >> 12) == 12)
+    {
+      return new LoadStoreMultiple(aOpcode);
+    }
+
+    if ((aOpcode >> 12) == 13)
+    {
+      return new ConditionalBranch(aOpcode);
+    }
+
+    if ((aOpcode >> 11) == 28)
+    {
+      return new Branch(aOpcode);
+    }
+
+    if ((aOpcode >> 11) == 0x1E)
+    {
+      return new BranchLinkPrefix(aOpcode);
+    }
+
+    return new Unknown(aOpcode);
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import static nl.lxtreme.arm.TraceRecorder.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel.MapMode;
+
+import nl.lxtreme.arm.memory.*;
+
+
+/**
+ * Provides an offline decoder for ring files written by a
+ * {@link TraceRecorder}, turning the recorded instructions back into
+ * disassembly, oldest first.
+ */
+public final class TraceDecoder
+{
+  // VARIABLES
+
+  private final ByteBuffer buffer;
+  private final int capacity;
+  private final long count;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new TraceDecoder instance.
+   * 
+   * @param aFile
+   *          the ring file to decode, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case the file could not be read or is not a ring file.
+   */
+  public TraceDecoder(File aFile) throws IOException
+  {
+    RandomAccessFile file = new RandomAccessFile(aFile, "r");
+    try
+    {
+      long length = file.length();
+      if (length < HEADER_SIZE)
+      {
+        throw new IOException("Not a trace file: " + aFile);
+      }
+      this.buffer = file.getChannel().map(MapMode.READ_ONLY, 0, length);
+    }
+    finally
+    {
+      file.close();
+    }
+
+    if ((this.buffer.getInt(OFFSET_MAGIC) != MAGIC) || (this.buffer.getInt(OFFSET_VERSION) != VERSION)
+        || (this.buffer.getInt(OFFSET_RECORD_SIZE) != RECORD_SIZE))
+    {
+      throw new IOException("Not a trace file: " + aFile);
+    }
+
+    this.capacity = this.buffer.getInt(OFFSET_CAPACITY);
+    this.count = this.buffer.getLong(OFFSET_COUNT);
+
+    if ((this.capacity <= 0) || (this.buffer.capacity() < (HEADER_SIZE + ((long) this.capacity * RECORD_SIZE))))
+    {
+      throw new IOException("Truncated trace file: " + aFile);
+    }
+  }
+
+  // METHODS
+
+  /**
+   * Decodes the given ring file to standard out.
+   * 
+   * @param aArgs
+   *          the name of the ring file to decode.
+   */
+  public static void main(String[] aArgs) throws IOException
+  {
+    if (aArgs.length != 1)
+    {
+      System.err.println("Usage: TraceDecoder <trace file>");
+      System.exit(1);
+    }
+
+    new TraceDecoder(new File(aArgs[0])).decode(System.out);
+  }
+
+  /**
+   * Prints a line of disassembly for every record in the ring file, oldest
+   * first. PC-relative literals are shown as zero, as the memory contents are
+   * not part of the trace.
+   * 
+   * @param aOut
+   *          the stream to print to, cannot be <code>null</code>.
+   */
+  public void decode(PrintStream aOut)
+  {
+    Disassembler disassembler = new Disassembler(new Memory());
+
+    for (long i = getFirstRecord(); i < this.count; i++)
+    {
+      int pos = HEADER_SIZE + (int) (i % this.capacity) * RECORD_SIZE;
+
+      int pc = this.buffer.getInt(pos + RECORD_PC);
+      int opcode = this.buffer.getInt(pos + RECORD_OPCODE);
+      int flags = this.buffer.getInt(pos + RECORD_FLAGS);
+      boolean thumb = (flags & FLAG_THUMB) != 0;
+
+      if (thumb)
+      {
+        aOut.printf("%08X [T] (%04x) ", pc, opcode & 0xFFFF);
+      }
+      else
+      {
+        aOut.printf("%08X [A] (%08x) ", pc, opcode);
+      }
+      disassembler.disassemble(pc, opcode, thumb, aOut);
+
+      int reg = (flags >> REGISTER_SHIFT) & 0xFF;
+      if (reg != NO_REGISTER)
+      {
+        aOut.printf("\t; r%d=0x%08X", reg, this.buffer.getInt(pos + RECORD_REGISTER_VALUE));
+      }
+      if ((flags & (FLAG_LOAD | FLAG_STORE)) != 0)
+      {
+        aOut.printf("\t; %s [0x%08X]=0x%08X", ((flags & FLAG_STORE) != 0) ? "write" : "read",
+            this.buffer.getInt(pos + RECORD_ADDRESS), this.buffer.getInt(pos + RECORD_VALUE));
+      }
+      aOut.println();
+    }
+  }
+
+  /**
+   * Returns the index of the oldest record that is still in the ring file.
+   * 
+   * @return a record index, &gt;= 0.
+   */
+  public long getFirstRecord()
+  {
+    return Math.max(0L, this.count - this.capacity);
+  }
+
+  /**
+   * Returns the total number of recorded instructions, including the ones that
+   * are overwritten.
+   * 
+   * @return the number of records, &gt;= 0.
+   */
+  public long getRecordCount()
+  {
+    return this.count;
+  }
+}
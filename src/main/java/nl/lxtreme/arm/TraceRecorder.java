@@ -0,0 +1,229 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel.MapMode;
+
+
+/**
+ * Provides a trace sink that records every executed instruction as a
+ * fixed-width binary record in a memory-mapped ring file. Once the file is
+ * full, the oldest records are overwritten.
+ * <p>
+ * Each record holds the PC, the opcode, the first general purpose register
+ * (r0..r14) changed by the instruction and the last memory location it
+ * accessed. As the file is memory-mapped, the records written so far survive
+ * a crash of the JVM, and can be turned into disassembly afterwards with a
+ * {@link TraceDecoder}.
+ * </p>
+ */
+public final class TraceRecorder implements TraceSink, Closeable
+{
+  // CONSTANTS
+
+  static final int MAGIC = 0x41524D54; // "ARMT"
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 32;
+  static final int OFFSET_MAGIC = 0;
+  static final int OFFSET_VERSION = 4;
+  static final int OFFSET_RECORD_SIZE = 8;
+  static final int OFFSET_CAPACITY = 12;
+  static final int OFFSET_COUNT = 16;
+
+  static final int RECORD_SIZE = 24;
+  static final int RECORD_PC = 0;
+  static final int RECORD_OPCODE = 4;
+  static final int RECORD_FLAGS = 8;
+  static final int RECORD_REGISTER_VALUE = 12;
+  static final int RECORD_ADDRESS = 16;
+  static final int RECORD_VALUE = 20;
+
+  static final int FLAG_THUMB = 1 << 0;
+  static final int FLAG_LOAD = 1 << 1;
+  static final int FLAG_STORE = 1 << 2;
+  /** Bits 8..15 of the flags hold the index of the changed register. */
+  static final int REGISTER_SHIFT = 8;
+  static final int NO_REGISTER = 0xFF;
+
+  // VARIABLES
+
+  private final Arm arm;
+  private final RandomAccessFile file;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  private final int[] registers;
+
+  private long count;
+  private int position;
+  // The record of the instruction that is currently executing...
+  private boolean pending;
+  private int pc;
+  private int opcode;
+  private int flags;
+  private int dataAccesses;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new TraceRecorder instance.
+   * 
+   * @param aArm
+   *          the CPU to record the instructions of, cannot be
+   *          <code>null</code>;
+   * @param aFile
+   *          the file to record to, will be created or truncated;
+   * @param aCapacity
+   *          the number of records that fit in the ring file, &gt; 0.
+   * @throws IOException
+   *           in case the file could not be created or mapped.
+   */
+  public TraceRecorder(Arm aArm, File aFile, int aCapacity) throws IOException
+  {
+    if (aArm == null)
+    {
+      throw new IllegalArgumentException("Arm cannot be null!");
+    }
+    if ((aCapacity <= 0) || (aCapacity > ((Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE)))
+    {
+      throw new IllegalArgumentException("Illegal capacity!");
+    }
+
+    this.arm = aArm;
+    this.capacity = aCapacity;
+    this.registers = new int[15];
+
+    int size = HEADER_SIZE + (aCapacity * RECORD_SIZE);
+
+    this.file = new RandomAccessFile(aFile, "rw");
+    try
+    {
+      this.file.setLength(size);
+      this.buffer = this.file.getChannel().map(MapMode.READ_WRITE, 0, size);
+    }
+    catch (IOException exception)
+    {
+      this.file.close();
+      throw exception;
+    }
+
+    this.buffer.putInt(OFFSET_MAGIC, MAGIC);
+    this.buffer.putInt(OFFSET_VERSION, VERSION);
+    this.buffer.putInt(OFFSET_RECORD_SIZE, RECORD_SIZE);
+    this.buffer.putInt(OFFSET_CAPACITY, aCapacity);
+    this.buffer.putLong(OFFSET_COUNT, 0L);
+  }
+
+  // METHODS
+
+  /**
+   * Flushes all records and closes the ring file.
+   * 
+   * @throws IOException
+   *           in case of I/O problems.
+   */
+  @Override
+  public void close() throws IOException
+  {
+    flush();
+    this.file.close();
+  }
+
+  /**
+   * Writes the record of the last executed instruction, and forces all records
+   * to the ring file.
+   */
+  public void flush()
+  {
+    if (this.pending)
+    {
+      commit();
+    }
+    this.buffer.force();
+  }
+
+  /**
+   * Returns the number of records written so far, including the ones that are
+   * already overwritten.
+   * 
+   * @return the number of records, &gt;= 0.
+   */
+  public long getRecordCount()
+  {
+    return this.count;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void instruction(int aAddress, int aOpcode, boolean aThumb)
+  {
+    // The previous instruction is completely executed by now...
+    if (this.pending)
+    {
+      commit();
+    }
+
+    this.pending = true;
+    this.pc = aAddress;
+    this.opcode = aOpcode;
+    this.flags = aThumb ? FLAG_THUMB : 0;
+    this.dataAccesses = this.arm.dataAccesses;
+
+    System.arraycopy(this.arm.r, 0, this.registers, 0, this.registers.length);
+  }
+
+  /**
+   * Writes the record of the last executed instruction.
+   */
+  private void commit()
+  {
+    final Arm a = this.arm;
+    final int[] r = a.r;
+
+    int reg = NO_REGISTER;
+    for (int i = 0; i < this.registers.length; i++)
+    {
+      if (r[i] != this.registers[i])
+      {
+        reg = i;
+        break;
+      }
+    }
+
+    int f = this.flags | (reg << REGISTER_SHIFT);
+    int address = 0;
+    int value = 0;
+    if (a.dataAccesses != this.dataAccesses)
+    {
+      f |= a.dataWrite ? FLAG_STORE : FLAG_LOAD;
+      address = a.dataAddress;
+      value = a.dataValue;
+    }
+
+    int pos = HEADER_SIZE + (this.position * RECORD_SIZE);
+    if (++this.position == this.capacity)
+    {
+      this.position = 0;
+    }
+
+    this.buffer.putInt(pos + RECORD_PC, this.pc);
+    this.buffer.putInt(pos + RECORD_OPCODE, this.opcode);
+    this.buffer.putInt(pos + RECORD_FLAGS, f);
+    this.buffer.putInt(pos + RECORD_REGISTER_VALUE, (reg == NO_REGISTER) ? 0 : r[reg]);
+    this.buffer.putInt(pos + RECORD_ADDRESS, address);
+    this.buffer.putInt(pos + RECORD_VALUE, value);
+
+    // Publish the record only after it is completely written...
+    this.buffer.putLong(OFFSET_COUNT, ++this.count);
+
+    this.pending = false;
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+/**
+ * Receives an event for every instruction the CPU executes, right before it is
+ * executed.
+ * <p>
+ * Events are structured, so a sink decides for itself whether and when to turn
+ * them into text. When no sink is set, the CPU does not spend any time on
+ * tracing at all.
+ * </p>
+ * 
+ * @see Arm#setTraceSink(TraceSink)
+ * @see TextTraceSink
+ */
+public interface TraceSink
+{
+  // METHODS
+
+  /**
+   * Called right before an instruction is executed.
+   * 
+   * @param aAddress
+   *          the address of the instruction;
+   * @param aOpcode
+   *          the raw opcode of the instruction, only the lower 16 bits are
+   *          used for THUMB instructions;
+   * @param aThumb
+   *          <code>true</code> if the instruction is a THUMB instruction,
+   *          <code>false</code> if it is an ARM instruction.
+   */
+  void instruction(int aAddress, int aOpcode, boolean aThumb);
+}
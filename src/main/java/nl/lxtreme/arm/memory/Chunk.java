@@ -7,41 +7,110 @@ package nl.lxtreme.arm.memory;
 
 
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 
 
 /**
  * Denotes a "chunk" of memory, located at a certain address and with a certain
  * size.
+ * <p>
+ * 16- and 32-bit values are accessed through byte buffer views on the backing
+ * storage, in the byte order of the chosen {@link Endianness}, so the JIT can
+ * replace the separate byte accesses and shifts with a single load or store.
+ * </p>
+ * <p>
+ * By default, the storage is an array on the Java heap. Subclasses can provide
+ * other storage, such as the off-heap memory of a {@link DirectChunk}.
+ * </p>
  */
 public class Chunk extends OutputStream
 {
+  // CONSTANTS
+
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate( 0 );
+
   // VARIABLES
 
   private final long address;
-  private final byte[] data;
+  private final Endianness endianness;
+
+  private int size;
+  private ByteBuffer dataView;
+  private ByteBuffer codeView;
 
   private long writePtr = 0L;
+  private volatile CodePage[] codePages; // lazily allocated, see codePage()
+  private volatile boolean[] cleanPages; // pages unchanged since the snapshot
+  private byte[][] baseline; // the snapshot the clean pages are equal to
 
   // CONSTRUCTORS
 
   /**
-   * Creates a new Chunk instance.
+   * Creates a new, word-invariant big-endian, Chunk instance.
    * 
    * @param aAddress
    * @param aSize
    */
   public Chunk( long aAddress, int aSize )
   {
-    if ( aSize <= 0 )
+    this( aAddress, aSize, Endianness.BE_32 );
+  }
+
+  /**
+   * Creates a new Chunk instance.
+   * 
+   * @param aAddress
+   *          the base address of this chunk;
+   * @param aSize
+   *          the size of this chunk, in bytes, &gt; 0;
+   * @param aEndianness
+   *          the byte order of this chunk, cannot be <code>null</code>.
+   */
+  public Chunk( long aAddress, int aSize, Endianness aEndianness )
+  {
+    this( aAddress, aSize, allocate( aSize ), aEndianness );
+  }
+
+  /**
+   * Creates a new Chunk instance on the given storage.
+   * 
+   * @param aAddress
+   *          the base address of this chunk;
+   * @param aSize
+   *          the size of this chunk, in bytes, &gt; 0;
+   * @param aStorage
+   *          the storage of this chunk, with a capacity of at least the size of
+   *          this chunk. Can only be <code>null</code> for subclasses that
+   *          override all read and write methods;
+   * @param aEndianness
+   *          the byte order of this chunk, cannot be <code>null</code>.
+   */
+  protected Chunk( long aAddress, int aSize, ByteBuffer aStorage, Endianness aEndianness )
+  {
+    if ( ( aSize <= 0 ) || ( ( aStorage != null ) && ( aStorage.capacity() < aSize ) ) )
     {
       throw new IllegalArgumentException( "Illegal memory size!" );
     }
+    if ( aEndianness == null )
+    {
+      throw new IllegalArgumentException( "Endianness cannot be null!" );
+    }
 
     this.address = aAddress;
-    this.data = new byte[aSize];
+    this.size = aSize;
+    this.endianness = aEndianness;
 
-    Arrays.fill( this.data, ( byte )0xff );
+    if ( aStorage == null )
+    {
+      this.dataView = EMPTY;
+      this.codeView = EMPTY;
+    }
+    else
+    {
+      this.dataView = aStorage.duplicate().order( aEndianness.dataOrder );
+      this.codeView = aStorage.duplicate().order( aEndianness.codeOrder );
+    }
   }
 
   // METHODS
@@ -56,6 +125,37 @@ public class Chunk extends OutputStream
     this.writePtr = -1;
   }
 
+  /**
+   * Releases the storage of this chunk. Afterwards, this chunk no longer maps
+   * any address, and all accesses to it fail.
+   * <p>
+   * Heap-based chunks leave their storage to the garbage collector, so calling
+   * this method is optional for them.
+   * </p>
+   */
+  public void dispose()
+  {
+    this.size = 0;
+    this.dataView = EMPTY;
+    this.codeView = EMPTY;
+    // Invalidate any code decoded from this chunk...
+    invalidateCode( 0, Integer.MAX_VALUE );
+    this.codePages = null;
+    this.cleanPages = null;
+    this.baseline = null;
+  }
+
+  /**
+   * Returns whether this chunk has been disposed.
+   * 
+   * @return <code>true</code> if this chunk is disposed, <code>false</code>
+   *         otherwise.
+   */
+  public boolean isDisposed()
+  {
+    return this.size == 0;
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -75,6 +175,146 @@ public class Chunk extends OutputStream
     return this.address;
   }
 
+  /**
+   * Returns the byte order of this chunk.
+   * 
+   * @return the endianness, never <code>null</code>.
+   */
+  public Endianness getEndianness()
+  {
+    return this.endianness;
+  }
+
+  /**
+   * Reads a 16-bit instruction from this memory at the given address, which
+   * uses the instruction byte order of this chunk.
+   * 
+   * @param aAddr
+   *          the memory location to read.
+   * @return the 16-bit instruction at the given memory location.
+   */
+  public short fetch16( int aAddr )
+  {
+    int addr = mapAddress( aAddr );
+    if ( validAddress( addr ) )
+    {
+      return this.codeView.getShort( addr );
+    }
+    else
+    {
+      throw invalidAccess( aAddr, false, true );
+    }
+  }
+
+  /**
+   * Reads a 32-bit instruction from this memory at the given address, which
+   * uses the instruction byte order of this chunk.
+   * 
+   * @param aAddr
+   *          the memory location to read.
+   * @return the 32-bit instruction at the given memory location.
+   */
+  public int fetch32( int aAddr )
+  {
+    int addr = mapAddress( aAddr );
+    if ( validAddress( addr ) )
+    {
+      return this.codeView.getInt( addr );
+    }
+    else
+    {
+      throw invalidAccess( aAddr, false, true );
+    }
+  }
+
+  /**
+   * Copies a block of this memory, which may overlap, to another address in
+   * this memory.
+   * 
+   * @param aSrc
+   *          the memory location to copy from;
+   * @param aDst
+   *          the memory location to copy to;
+   * @param aLength
+   *          the number of bytes to copy, &gt;= 0.
+   */
+  public void copy( int aSrc, int aDst, int aLength )
+  {
+    int src = validRange( aSrc, aLength, false );
+    int dst = validRange( aDst, aLength, true );
+    blockWritten( dst, aLength );
+    if ( isBuffered() && this.dataView.hasArray() )
+    {
+      byte[] array = this.dataView.array();
+      int offset = this.dataView.arrayOffset();
+      System.arraycopy( array, offset + src, array, offset + dst, aLength );
+    }
+    else if ( isBuffered() )
+    {
+      // Relative bulk puts between views of the same storage are overlap-safe...
+      ByteBuffer from = this.dataView.duplicate();
+      from.position( src );
+      from.limit( src + aLength );
+      ByteBuffer to = this.dataView.duplicate();
+      to.position( dst );
+      to.put( from );
+    }
+    else if ( dst > src )
+    {
+      for ( int i = aLength - 1; i >= 0; i-- )
+      {
+        write8( aDst + i, read8( aSrc + i ) );
+      }
+    }
+    else
+    {
+      for ( int i = 0; i < aLength; i++ )
+      {
+        write8( aDst + i, read8( aSrc + i ) );
+      }
+    }
+  }
+
+  /**
+   * Fills a block of this memory with the given value.
+   * 
+   * @param aAddr
+   *          the memory location to start filling;
+   * @param aLength
+   *          the number of bytes to fill, &gt;= 0;
+   * @param aValue
+   *          the value to fill with.
+   */
+  public void fill( int aAddr, int aLength, byte aValue )
+  {
+    int addr = validRange( aAddr, aLength, true );
+    blockWritten( addr, aLength );
+    if ( isBuffered() && this.dataView.hasArray() )
+    {
+      int start = this.dataView.arrayOffset() + addr;
+      Arrays.fill( this.dataView.array(), start, start + aLength, aValue );
+    }
+    else if ( isBuffered() )
+    {
+      byte[] pattern = new byte[Math.min( aLength, Memory.PAGE_SIZE )];
+      Arrays.fill( pattern, aValue );
+
+      ByteBuffer view = this.dataView.duplicate();
+      view.position( addr );
+      for ( int left = aLength; left > 0; left -= pattern.length )
+      {
+        view.put( pattern, 0, Math.min( left, pattern.length ) );
+      }
+    }
+    else
+    {
+      for ( int i = 0; i < aLength; i++ )
+      {
+        write8( aAddr + i, aValue );
+      }
+    }
+  }
+
   /**
    * Returns the size of this chunk.
    * 
@@ -82,7 +322,7 @@ public class Chunk extends OutputStream
    */
   public int getSize()
   {
-    return this.data.length;
+    return this.size;
   }
 
   /**
@@ -99,6 +339,67 @@ public class Chunk extends OutputStream
     return ( addr >= 0 ) && ( addr < getSize() );
   }
 
+  /**
+   * Reads a block of bytes from this memory at the given address.
+   * 
+   * @param aAddr
+   *          the memory location to start reading;
+   * @param aDst
+   *          the array to read into, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset in the given array to start storing;
+   * @param aLength
+   *          the number of bytes to read, &gt;= 0.
+   */
+  public void read( int aAddr, byte[] aDst, int aOffset, int aLength )
+  {
+    int addr = validRange( aAddr, aLength, false );
+    if ( isBuffered() )
+    {
+      ByteBuffer view = this.dataView.duplicate();
+      view.position( addr );
+      view.get( aDst, aOffset, aLength );
+    }
+    else
+    {
+      for ( int i = 0; i < aLength; i++ )
+      {
+        aDst[aOffset + i] = read8( aAddr + i );
+      }
+    }
+  }
+
+  /**
+   * Reads a block of 32-bit values from this memory at the given address.
+   * 
+   * @param aAddr
+   *          the memory location to start reading;
+   * @param aDst
+   *          the array to read into, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset in the given array to start storing;
+   * @param aLength
+   *          the number of 32-bit values to read, &gt;= 0.
+   */
+  public void read( int aAddr, int[] aDst, int aOffset, int aLength )
+  {
+    int addr = validRange( aAddr, 4 * aLength, false );
+    if ( isBuffered() )
+    {
+      for ( int i = 0; i < aLength; i++ )
+      {
+        aDst[aOffset + i] = this.dataView.getInt( addr + 4 * i );
+      }
+    }
+    else
+    {
+      for ( int i = 0; i < aLength; i++ )
+      {
+        aDst[aOffset + i] = read32( aAddr + 4 * i );
+      }
+    }
+  }
+
   /**
    * Reads a 16-bit value from this memory at the given address.
    * 
@@ -111,13 +412,11 @@ public class Chunk extends OutputStream
     int addr = mapAddress( aAddr );
     if ( validAddress( addr ) )
     {
-      int msb = ( this.data[addr + 0] & 0xFF );
-      int lsb = ( this.data[addr + 1] & 0xFF );
-      return ( short )( ( msb << 8 ) | lsb );
+      return this.dataView.getShort( addr );
     }
     else
     {
-      throw new IllegalArgumentException( String.format( "Invalid address to read: 0x%08x", aAddr ) );
+      throw invalidAccess( aAddr, false, false );
     }
   }
 
@@ -133,15 +432,11 @@ public class Chunk extends OutputStream
     int addr = mapAddress( aAddr );
     if ( validAddress( addr ) )
     {
-      int b1 = this.data[addr + 0] & 0xff;
-      int b2 = this.data[addr + 1] & 0xff;
-      int b3 = this.data[addr + 2] & 0xff;
-      int b4 = this.data[addr + 3] & 0xff;
-      return ( b1 << 24 ) | ( b2 << 16 ) | ( b3 << 8 ) | b4;
+      return this.dataView.getInt( addr );
     }
     else
     {
-      throw new IllegalArgumentException( String.format( "Invalid address to read: 0x%08x", aAddr ) );
+      throw invalidAccess( aAddr, false, false );
     }
   }
 
@@ -157,11 +452,11 @@ public class Chunk extends OutputStream
     int addr = mapAddress( aAddr );
     if ( validAddress( addr ) )
     {
-      return this.data[addr];
+      return this.dataView.get( addr );
     }
     else
     {
-      throw new IllegalArgumentException( String.format( "Invalid address to read: 0x%08x", aAddr ) );
+      throw invalidAccess( aAddr, false, false );
     }
   }
 
@@ -171,9 +466,113 @@ public class Chunk extends OutputStream
   @Override
   public String toString()
   {
-    return String.format( "Chunk @ 0x%08x: %d bytes", this.address, this.data.length );
+    return String.format( "%s @ 0x%08x: %d bytes", getClass().getSimpleName(), this.address, this.size );
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write( byte[] aBuffer, int aOffset, int aLength ) throws IOException
+  {
+    if ( this.writePtr < 0 )
+    {
+      throw new IOException( "Writer is closed!" );
+    }
+    if ( ( aOffset < 0 ) || ( aLength < 0 ) || ( aLength > ( aBuffer.length - aOffset ) ) )
+    {
+      throw new IndexOutOfBoundsException();
+    }
+    if ( aLength > ( this.size - this.writePtr ) )
+    {
+      throw new IOException( "End of chunk!" );
+    }
+
+    blockWritten( ( int )this.writePtr, aLength );
+
+    if ( isBuffered() )
+    {
+      ByteBuffer view = this.dataView.duplicate();
+      view.position( ( int )this.writePtr );
+      view.put( aBuffer, aOffset, aLength );
+    }
+    else
+    {
+      for ( int i = 0; i < aLength; i++ )
+      {
+        put( ( int )this.writePtr + i, aBuffer[aOffset + i] );
+      }
+    }
+
+    this.writePtr += aLength;
+  }
+
+  /**
+   * Writes a block of bytes to the memory denoted by the given address.
+   * 
+   * @param aAddr
+   *          the memory location to start writing;
+   * @param aSrc
+   *          the array to write, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset in the given array to start writing from;
+   * @param aLength
+   *          the number of bytes to write, &gt;= 0.
+   */
+  public void write( int aAddr, byte[] aSrc, int aOffset, int aLength )
+  {
+    int addr = validRange( aAddr, aLength, true );
+    blockWritten( addr, aLength );
+    if ( isBuffered() )
+    {
+      ByteBuffer view = this.dataView.duplicate();
+      view.position( addr );
+      view.put( aSrc, aOffset, aLength );
+    }
+    else
+    {
+      for ( int i = 0; i < aLength; i++ )
+      {
+        write8( aAddr + i, aSrc[aOffset + i] );
+      }
+    }
+  }
+
+  /**
+   * Writes a block of 32-bit values to the memory denoted by the given address.
+   * 
+   * @param aAddr
+   *          the memory location to start writing;
+   * @param aSrc
+   *          the array to write, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset in the given array to start writing from;
+   * @param aLength
+   *          the number of 32-bit values to write, &gt;= 0.
+   */
+  public void write( int aAddr, int[] aSrc, int aOffset, int aLength )
+  {
+    int addr = validRange( aAddr, 4 * aLength, true );
+    blockWritten( addr, 4 * aLength );
+    if ( isBuffered() )
+    {
+      for ( int i = 0; i < aLength; i++ )
+      {
+        this.dataView.putInt( addr + 4 * i, aSrc[aOffset + i] );
+      }
+    }
+    else
+    {
+      for ( int i = 0; i < aLength; i++ )
+      {
+        write32( aAddr + 4 * i, aSrc[aOffset + i] );
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
   @Override
   public void write( int aByte ) throws IOException
   {
@@ -181,8 +580,13 @@ public class Chunk extends OutputStream
     {
       throw new IOException( "Writer is closed!" );
     }
+    if ( this.writePtr >= this.size )
+    {
+      throw new IOException( "End of chunk!" );
+    }
 
-    this.data[( int )this.writePtr++] = ( byte )aByte;
+    blockWritten( ( int )this.writePtr, 1 );
+    put( ( int )this.writePtr++, ( byte )aByte );
   }
 
   /**
@@ -198,12 +602,12 @@ public class Chunk extends OutputStream
     int addr = mapAddress( aAddr );
     if ( validAddress( addr ) )
     {
-      this.data[addr + 0] = ( byte )( ( aValue >> 8 ) & 0xff );
-      this.data[addr + 1] = ( byte )( aValue & 0xff );
+      this.dataView.putShort( addr, aValue );
+      stored( addr, 2 );
     }
     else
     {
-      throw new IllegalArgumentException( String.format( "Invalid address to write: 0x%08x", aAddr ) );
+      throw invalidAccess( aAddr, true, false );
     }
   }
 
@@ -220,14 +624,12 @@ public class Chunk extends OutputStream
     int addr = mapAddress( aAddr );
     if ( validAddress( addr ) )
     {
-      this.data[addr + 0] = ( byte )( ( aValue >> 24 ) & 0xff );
-      this.data[addr + 1] = ( byte )( ( aValue >> 16 ) & 0xff );
-      this.data[addr + 2] = ( byte )( ( aValue >> 8 ) & 0xff );
-      this.data[addr + 3] = ( byte )( aValue & 0xff );
+      this.dataView.putInt( addr, aValue );
+      stored( addr, 4 );
     }
     else
     {
-      throw new IllegalArgumentException( String.format( "Invalid address to write: 0x%08x", aAddr ) );
+      throw invalidAccess( aAddr, true, false );
     }
   }
 
@@ -244,35 +646,421 @@ public class Chunk extends OutputStream
     int addr = mapAddress( aAddr );
     if ( validAddress( addr ) )
     {
-      this.data[addr] = aValue;
+      this.dataView.put( addr, aValue );
+      stored( addr, 1 );
     }
     else
     {
-      throw new IllegalArgumentException( String.format( "Invalid address to write: 0x%08x", aAddr ) );
+      throw invalidAccess( aAddr, true, false );
     }
   }
 
   /**
+   * Returns the page of this chunk that holds the given address, for tracking
+   * writes to the code decoded from it.
+   * 
    * @param aAddr
-   * @return
+   *          an address mapped by this chunk.
+   * @return the code page, never <code>null</code>.
+   */
+  final synchronized CodePage codePage( int aAddr )
+  {
+    CodePage[] pages = this.codePages;
+    if ( pages == null )
+    {
+      pages = new CodePage[pageIndex( this.size - 1 ) + 1];
+    }
+
+    int idx = pageIndex( mapAddress( aAddr ) );
+    CodePage page = pages[idx];
+    if ( page == null )
+    {
+      page = pages[idx] = new CodePage();
+    }
+    // Publish the pages only once they are filled in...
+    this.codePages = pages;
+    return page;
+  }
+
+  /**
+   * Invalidates the code decoded from the pages that the given block of
+   * addresses overlaps with, and marks these pages as changed since the
+   * snapshot.
+   * 
+   * @param aAddr
+   *          the start address of the block;
+   * @param aLength
+   *          the length of the block, in bytes.
+   */
+  final void written( int aAddr, int aLength )
+  {
+    blockWritten( mapAddress( aAddr ), aLength );
+  }
+
+  /**
+   * Returns whether code is decoded from the page holding the given address,
+   * or whether that page is unchanged since the snapshot.
+   * 
+   * @param aAddr
+   *          an address mapped by this chunk.
+   * @return <code>true</code> if writes to the given address should be
+   *         tracked, <code>false</code> otherwise.
+   */
+  final boolean isTracked( int aAddr )
+  {
+    int idx = pageIndex( mapAddress( aAddr ) );
+
+    boolean[] clean = this.cleanPages;
+    if ( ( clean != null ) && clean[idx] )
+    {
+      return true;
+    }
+
+    CodePage[] pages = this.codePages;
+    if ( pages == null )
+    {
+      return false;
+    }
+    CodePage page = pages[idx];
+    return ( page != null ) && page.isCode();
+  }
+
+  /**
+   * Copies the pages that changed since the given snapshot back from it, and
+   * tracks the changes since that snapshot from now on. If the given snapshot
+   * is not the one currently tracked, all pages are copied.
+   * 
+   * @param aSnapshot
+   *          the snapshot to restore, as returned by {@link #snapshot()}.
+   * @return the number of copied pages, &gt;= 0.
+   */
+  final synchronized int restore( byte[][] aSnapshot )
+  {
+    boolean[] clean = this.cleanPages;
+    boolean all = ( clean == null ) || ( this.baseline != aSnapshot );
+    if ( all )
+    {
+      clean = new boolean[aSnapshot.length];
+    }
+
+    int result = 0;
+    for ( int i = 0; i < clean.length; i++ )
+    {
+      if ( clean[i] )
+      {
+        continue;
+      }
+
+      int start = pageStart( i );
+      int length = pageStart( i + 1 ) - start;
+      restorePage( start, length, aSnapshot[i] );
+      invalidateCode( start, length );
+
+      clean[i] = true;
+      result++;
+    }
+
+    this.baseline = aSnapshot;
+    this.cleanPages = clean;
+    return result;
+  }
+
+  /**
+   * Copies the current contents of this chunk, and starts tracking the pages
+   * that change from now on, so {@link #restore(byte[][])} only needs to copy
+   * those pages back.
+   * 
+   * @return the copy of each (absolute) 4 KB page of this chunk, or
+   *         <code>null</code> if the contents of this chunk cannot be copied.
    */
-  private int mapAddress( long aAddr )
+  final synchronized byte[][] snapshot()
   {
-    long addr = aAddr - this.address;
-    if ( addr < 0 )
+    if ( !canSnapshot() )
+    {
+      return null;
+    }
+
+    byte[][] result = new byte[pageIndex( this.size - 1 ) + 1][];
+    for ( int i = 0; i < result.length; i++ )
     {
-      addr -= 1;
+      int start = pageStart( i );
+      result[i] = savePage( start, pageStart( i + 1 ) - start );
     }
-    return ( int )( addr & 0xFFFFFFFF );
+
+    boolean[] clean = new boolean[result.length];
+    Arrays.fill( clean, true );
+
+    this.baseline = result;
+    this.cleanPages = clean;
+    return result;
+  }
+
+  /**
+   * Returns whether the contents of this chunk can be saved and restored by
+   * {@link #savePage(int, int)} and {@link #restorePage(int, int, byte[])}.
+   * 
+   * @return <code>true</code> if this chunk accesses its own, writable,
+   *         storage, <code>false</code> otherwise.
+   */
+  boolean canSnapshot()
+  {
+    return isBuffered() && !this.dataView.isReadOnly();
+  }
+
+  /**
+   * Restores a single page of this chunk.
+   * 
+   * @param aOffset
+   *          the offset of the page in this chunk;
+   * @param aLength
+   *          the length of the page, in bytes;
+   * @param aSaved
+   *          the contents of the page, as returned by
+   *          {@link #savePage(int, int)}.
+   */
+  void restorePage( int aOffset, int aLength, byte[] aSaved )
+  {
+    ByteBuffer view = this.dataView.duplicate();
+    view.position( aOffset );
+    view.put( aSaved, 0, aLength );
+  }
+
+  /**
+   * Saves a single page of this chunk.
+   * 
+   * @param aOffset
+   *          the offset of the page in this chunk;
+   * @param aLength
+   *          the length of the page, in bytes.
+   * @return the contents of the page, can only be <code>null</code> for
+   *         subclasses that restore such a page themselves.
+   */
+  byte[] savePage( int aOffset, int aLength )
+  {
+    byte[] result = new byte[aLength];
+    ByteBuffer view = this.dataView.duplicate();
+    view.position( aOffset );
+    view.get( result );
+    return result;
+  }
+
+  /**
+   * Returns the fault to throw upon an access outside this chunk. Each thread
+   * reuses the same instance for all such accesses, so no message is formatted
+   * and no exception is constructed when one is made.
+   * 
+   * @param aAddr
+   *          the faulting address;
+   * @param aWrite
+   *          <code>true</code> for a write, <code>false</code> for a read;
+   * @param aFetch
+   *          <code>true</code> if the read is an instruction fetch.
+   * @return the fault to throw, never <code>null</code>.
+   */
+  protected final MemoryFault invalidAccess( int aAddr, boolean aWrite, boolean aFetch )
+  {
+    return MemoryFault.get( aAddr, aWrite, aFetch );
+  }
+
+  /**
+   * Called after each single value that is stored in this chunk, including
+   * those of subclasses that override the write methods, to invalidate the
+   * code decoded from the written page, and to mark it as changed since the
+   * snapshot. Costs nothing but two tests as long as no code is decoded from
+   * this chunk, and no snapshot is taken of it.
+   * 
+   * @param aOffset
+   *          the offset of the stored value in this chunk;
+   * @param aLength
+   *          the size of the stored value, in bytes.
+   */
+  protected final void stored( int aOffset, int aLength )
+  {
+    blockWritten( aOffset, aLength );
+  }
+
+  /**
+   * Stores a byte at the given offset in the storage of this chunk, as used
+   * when this chunk is written as {@link OutputStream}.
+   * 
+   * @param aOffset
+   *          the offset in this chunk, &gt;= 0;
+   * @param aValue
+   *          the byte to store.
+   */
+  protected void put( int aOffset, byte aValue )
+  {
+    this.dataView.put( aOffset, aValue );
+  }
+
+  /**
+   * Maps the given address onto an offset in this chunk. Addresses are taken
+   * modulo 2^32, so 32-bit addresses in the upper half of the address space
+   * map the same, whether they are passed as (sign-extended) int or as long.
+   * 
+   * @param aAddr
+   *          the address to map.
+   * @return the offset of the given address in this chunk, only valid if it is
+   *         accepted by {@link #validAddress(int)}.
+   */
+  protected final int mapAddress( long aAddr )
+  {
+    return ( int )( ( aAddr - this.address ) & 0xFFFFFFFFL );
   }
 
   /**
    * @param aAddr
    * @return
    */
-  private boolean validAddress( int aAddr )
+  protected final boolean validAddress( int aAddr )
   {
     long addr = aAddr & 0xFFFFFFFF;
-    return ( addr >= 0 ) && ( addr < this.data.length );
+    return ( addr >= 0 ) && ( addr < this.size );
+  }
+
+  /**
+   * Called upon each block write, with the offset and length of the written
+   * block.
+   */
+  private void blockWritten( int aOffset, int aLength )
+  {
+    invalidateCode( aOffset, aLength );
+    markDirty( aOffset, aLength );
+  }
+
+  /**
+   * Invalidates the code decoded from the pages that the given block of
+   * offsets overlaps with. Costs nothing but a test as long as no code is
+   * decoded from this chunk.
+   * 
+   * @return <code>true</code> if any code is invalidated, <code>false</code>
+   *         otherwise.
+   */
+  private boolean invalidateCode( int aOffset, int aLength )
+  {
+    CodePage[] pages = this.codePages;
+    if ( ( pages == null ) || ( aLength <= 0 ) )
+    {
+      return false;
+    }
+
+    int first = pageIndex( aOffset );
+    int last = Math.min( pages.length - 1, lastPageIndex( aOffset, aLength ) );
+
+    boolean result = false;
+    for ( int i = first; i <= last; i++ )
+    {
+      CodePage page = pages[i];
+      if ( ( page != null ) && page.isCode() )
+      {
+        page.invalidate();
+        result = true;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Marks the pages that the given block of offsets overlaps with as changed
+   * since the snapshot. Costs nothing but a test as long as no snapshot is
+   * taken of this chunk.
+   * 
+   * @return <code>true</code> if any page was unchanged until now,
+   *         <code>false</code> otherwise.
+   */
+  private boolean markDirty( int aOffset, int aLength )
+  {
+    boolean[] clean = this.cleanPages;
+    if ( ( clean == null ) || ( aLength <= 0 ) )
+    {
+      return false;
+    }
+
+    int first = pageIndex( aOffset );
+    int last = Math.min( clean.length - 1, lastPageIndex( aOffset, aLength ) );
+
+    boolean result = false;
+    for ( int i = first; i <= last; i++ )
+    {
+      if ( clean[i] )
+      {
+        clean[i] = false;
+        result = true;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the index of the page holding the last byte of the given block of
+   *         offsets.
+   */
+  private int lastPageIndex( int aOffset, int aLength )
+  {
+    return pageIndex( ( int )Math.min( ( long )aOffset + aLength - 1, Integer.MAX_VALUE ) );
+  }
+
+  /**
+   * @return the index of the (absolute) 4 KB page holding the given offset,
+   *         relative to the first page of this chunk.
+   */
+  private int pageIndex( int aOffset )
+  {
+    return ( int )( ( aOffset + ( this.address & ( Memory.PAGE_SIZE - 1 ) ) ) >>> Memory.PAGE_SHIFT );
+  }
+
+  /**
+   * @return the offset in this chunk of the (absolute) 4 KB page with the
+   *         given index, clamped to the bounds of this chunk.
+   */
+  private int pageStart( int aIndex )
+  {
+    long offset = ( ( long )aIndex << Memory.PAGE_SHIFT ) - ( this.address & ( Memory.PAGE_SIZE - 1 ) );
+    return ( int )Math.max( 0L, Math.min( this.size, offset ) );
+  }
+
+  /**
+   * @return <code>true</code> if this chunk accesses its own storage, or
+   *         <code>false</code> if a subclass overrides all accesses, in which
+   *         case block transfers go through those accesses as well.
+   */
+  private boolean isBuffered()
+  {
+    return this.dataView != EMPTY;
+  }
+
+  /**
+   * Checks whether a block of the given length, starting at the given address,
+   * is mapped by this chunk.
+   * 
+   * @return the offset of the block in this chunk.
+   */
+  private int validRange( int aAddr, int aLength, boolean aWrite )
+  {
+    int addr = mapAddress( aAddr );
+    if ( ( aLength < 0 ) || ( aLength > 0 && ( !validAddress( addr ) || !validAddress( addr + aLength - 1 ) ) ) )
+    {
+      throw invalidAccess( aAddr, aWrite, false );
+    }
+    return addr;
+  }
+
+  /**
+   * Allocates the heap storage for a chunk, filled with 0xFF.
+   * 
+   * @param aSize
+   *          the size of the storage, in bytes.
+   * @return the storage, never <code>null</code>.
+   */
+  private static ByteBuffer allocate( int aSize )
+  {
+    if ( aSize <= 0 )
+    {
+      throw new IllegalArgumentException( "Illegal memory size!" );
+    }
+
+    byte[] data = new byte[aSize];
+    Arrays.fill( data, ( byte )0xff );
+    return ByteBuffer.wrap( data );
   }
 }
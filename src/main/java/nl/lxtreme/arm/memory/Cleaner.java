@@ -0,0 +1,99 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import java.lang.reflect.*;
+import java.nio.*;
+
+
+/**
+ * Releases the off-heap memory of direct and mapped byte buffers right away,
+ * using the internal API of the running JVM, instead of waiting for the
+ * garbage collector.
+ */
+abstract class Cleaner
+{
+  // CONSTANTS
+
+  /** The cleaner for the running JVM. */
+  static final Cleaner INSTANCE = create();
+
+  // METHODS
+
+  /**
+   * Returns a cleaner for the running JVM.
+   * 
+   * @return a cleaner, never <code>null</code>.
+   */
+  private static Cleaner create()
+  {
+    try
+    {
+      // Java 9 and later...
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+
+      final Object unsafe = field.get(null);
+      final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+
+      return new Cleaner()
+      {
+        @Override
+        void clean(ByteBuffer aBuffer) throws Exception
+        {
+          invokeCleaner.invoke(unsafe, aBuffer);
+        }
+      };
+    }
+    catch (Exception exception)
+    {
+      // Ignore, try the older API...
+    }
+
+    try
+    {
+      // Java 8 and earlier...
+      final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+      final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+
+      return new Cleaner()
+      {
+        @Override
+        void clean(ByteBuffer aBuffer) throws Exception
+        {
+          Object c = cleaner.invoke(aBuffer);
+          if (c != null)
+          {
+            clean.invoke(c);
+          }
+        }
+      };
+    }
+    catch (Exception exception)
+    {
+      // Ignore, leave it to the garbage collector...
+    }
+
+    return new Cleaner()
+    {
+      @Override
+      void clean(ByteBuffer aBuffer)
+      {
+        // NO-op
+      }
+    };
+  }
+
+  /**
+   * Releases the off-heap memory of the given buffer.
+   * 
+   * @param aBuffer
+   *          the direct or mapped buffer to release, cannot be <code>null</code>.
+   */
+  abstract void clean(ByteBuffer aBuffer) throws Exception;
+}
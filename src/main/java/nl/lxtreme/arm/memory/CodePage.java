@@ -0,0 +1,85 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+/**
+ * Denotes a 4 KB page of a chunk that holds decoded or translated code.
+ * <p>
+ * Its version is incremented upon each write to the page, so anything decoded
+ * from it can detect whether it is still current, without being affected by
+ * writes to other pages of the same chunk.
+ * </p>
+ * 
+ * @see Memory#codePage(int)
+ */
+public final class CodePage
+{
+  // VARIABLES
+
+  private int version;
+  private boolean code;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new CodePage instance.
+   */
+  CodePage()
+  {
+    super();
+  }
+
+  // METHODS
+
+  /**
+   * Returns the version of this page, which is incremented upon each write to
+   * it.
+   * 
+   * @return a version number.
+   */
+  public int getVersion()
+  {
+    return this.version;
+  }
+
+  /**
+   * Returns whether code is decoded from this page since it was last written.
+   * 
+   * @return <code>true</code> if writes to this page should be tracked,
+   *         <code>false</code> otherwise.
+   */
+  boolean isCode()
+  {
+    return this.code;
+  }
+
+  /**
+   * Marks this page as holding decoded code.
+   * 
+   * @return <code>true</code> if this page was not yet marked,
+   *         <code>false</code> otherwise.
+   */
+  boolean mark()
+  {
+    if (this.code)
+    {
+      return false;
+    }
+    this.code = true;
+    return true;
+  }
+
+  /**
+   * Invalidates all code decoded from this page. Until code is decoded from it
+   * again, writes to this page are no longer tracked.
+   */
+  void invalidate()
+  {
+    this.version++;
+    this.code = false;
+  }
+}
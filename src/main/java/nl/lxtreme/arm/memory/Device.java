@@ -0,0 +1,48 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+/**
+ * Denotes a memory-mapped device, such as a peripheral, whose registers are
+ * accessed through a range of addresses.
+ * <p>
+ * Devices are registered in a {@link Memory} like any other chunk, so
+ * accesses to plain memory do not pay for any device check.
+ * </p>
+ * 
+ * @see Memory#register(long, int, Device)
+ */
+public interface Device
+{
+  // METHODS
+
+  /**
+   * Called when the CPU reads from this device.
+   * 
+   * @param aOffset
+   *          the offset of the accessed address, relative to the base address
+   *          of this device;
+   * @param aWidth
+   *          the width of the access, in bytes: 1, 2 or 4.
+   * @return the value read, only the lower <tt>aWidth</tt> bytes are used.
+   */
+  int read(int aOffset, int aWidth);
+
+  /**
+   * Called when the CPU writes to this device.
+   * 
+   * @param aOffset
+   *          the offset of the accessed address, relative to the base address
+   *          of this device;
+   * @param aWidth
+   *          the width of the access, in bytes: 1, 2 or 4;
+   * @param aValue
+   *          the value written, only the lower <tt>aWidth</tt> bytes are
+   *          significant.
+   */
+  void write(int aOffset, int aWidth, int aValue);
+}
@@ -0,0 +1,198 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+/**
+ * Provides a chunk of memory that passes all accesses on to a {@link Device}.
+ */
+public class DeviceChunk extends Chunk
+{
+  // VARIABLES
+
+  private final Device device;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new DeviceChunk instance.
+   * 
+   * @param aAddress
+   *          the base address of the device;
+   * @param aSize
+   *          the size of the address range of the device, in bytes, &gt; 0;
+   * @param aDevice
+   *          the device to pass all accesses on to, cannot be
+   *          <code>null</code>.
+   */
+  public DeviceChunk(long aAddress, int aSize, Device aDevice)
+  {
+    super(aAddress, aSize, null, Endianness.BE_32);
+
+    if (aDevice == null)
+    {
+      throw new IllegalArgumentException("Device cannot be null!");
+    }
+
+    this.device = aDevice;
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public short fetch16(int aAddr)
+  {
+    return (short) read(aAddr, 2);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int fetch32(int aAddr)
+  {
+    return read(aAddr, 4);
+  }
+
+  /**
+   * Returns the device of this chunk.
+   * 
+   * @return the device, never <code>null</code>.
+   */
+  public Device getDevice()
+  {
+    return this.device;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean maps(long aAddress)
+  {
+    return validOffset(offset(aAddress));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public short read16(int aAddr)
+  {
+    return (short) read(aAddr, 2);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read32(int aAddr)
+  {
+    return read(aAddr, 4);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public byte read8(int aAddr)
+  {
+    return (byte) read(aAddr, 1);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return String.format("%s @ 0x%08x: %d bytes", this.device, getBaseAddress(), getSize());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write16(int aAddr, short aValue)
+  {
+    write(aAddr, 2, aValue);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write32(int aAddr, int aValue)
+  {
+    write(aAddr, 4, aValue);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write8(int aAddr, byte aValue)
+  {
+    write(aAddr, 1, aValue);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void put(int aOffset, byte aValue)
+  {
+    this.device.write(aOffset, 1, aValue);
+  }
+
+  /**
+   * @return the offset of the given address, relative to the base address of
+   *         this device.
+   */
+  private int offset(long aAddress)
+  {
+    return (int) (aAddress - getBaseAddress());
+  }
+
+  /**
+   * Passes a read on to the device.
+   */
+  private int read(int aAddr, int aWidth)
+  {
+    int addr = offset(aAddr);
+    if (!validOffset(addr))
+    {
+      throw invalidAccess(aAddr, false, false);
+    }
+    return this.device.read(addr, aWidth);
+  }
+
+  /**
+   * Passes a write on to the device.
+   */
+  private void write(int aAddr, int aWidth, int aValue)
+  {
+    int addr = offset(aAddr);
+    if (!validOffset(addr))
+    {
+      throw invalidAccess(aAddr, true, false);
+    }
+    // Device registers hold no code, so nothing needs to be invalidated...
+    this.device.write(addr, aWidth, aValue);
+  }
+
+  /**
+   * @return <code>true</code> if the given offset lies within the address
+   *         range of this device, <code>false</code> otherwise.
+   */
+  private boolean validOffset(int aOffset)
+  {
+    return (aOffset & 0xFFFFFFFFL) < getSize();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import java.nio.*;
+
+
+/**
+ * Provides a chunk of memory that keeps its contents outside the Java heap, in
+ * a direct byte buffer.
+ * <p>
+ * Large guest memories then do not add to the work of the garbage collector.
+ * Off-heap memory is only returned when the buffer itself is collected, so
+ * {@link #dispose()} should be called once this chunk is no longer used, to
+ * release it right away.
+ * </p>
+ */
+public class DirectChunk extends Chunk
+{
+  // VARIABLES
+
+  private ByteBuffer storage;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new, word-invariant big-endian, DirectChunk instance.
+   * 
+   * @param aAddress
+   *          the base address of this chunk;
+   * @param aSize
+   *          the size of this chunk, in bytes, &gt; 0.
+   */
+  public DirectChunk(long aAddress, int aSize)
+  {
+    this(aAddress, aSize, Endianness.BE_32);
+  }
+
+  /**
+   * Creates a new DirectChunk instance.
+   * 
+   * @param aAddress
+   *          the base address of this chunk;
+   * @param aSize
+   *          the size of this chunk, in bytes, &gt; 0;
+   * @param aEndianness
+   *          the byte order of this chunk, cannot be <code>null</code>.
+   */
+  public DirectChunk(long aAddress, int aSize, Endianness aEndianness)
+  {
+    this(allocate(aSize), aAddress, aEndianness);
+  }
+
+  /**
+   * Creates a new DirectChunk instance.
+   */
+  private DirectChunk(ByteBuffer aStorage, long aAddress, Endianness aEndianness)
+  {
+    super(aAddress, aStorage.capacity(), aStorage, aEndianness);
+
+    this.storage = aStorage;
+  }
+
+  // METHODS
+
+  /**
+   * Releases the off-heap memory of this chunk right away.
+   * 
+   * @see Chunk#dispose()
+   */
+  @Override
+  public synchronized void dispose()
+  {
+    super.dispose();
+
+    if (this.storage != null)
+    {
+      try
+      {
+        Cleaner.INSTANCE.clean(this.storage);
+      }
+      catch (Exception exception)
+      {
+        // Ignore, the garbage collector will release it eventually...
+      }
+      this.storage = null;
+    }
+  }
+
+  /**
+   * Allocates the off-heap storage for a chunk, filled with 0xFF.
+   * 
+   * @param aSize
+   *          the size of the storage, in bytes.
+   * @return the storage, never <code>null</code>.
+   */
+  private static ByteBuffer allocate(int aSize)
+  {
+    if (aSize <= 0)
+    {
+      throw new IllegalArgumentException("Illegal memory size!");
+    }
+
+    ByteBuffer result = ByteBuffer.allocateDirect(aSize);
+    while (result.remaining() >= 8)
+    {
+      result.putLong(-1L);
+    }
+    while (result.hasRemaining())
+    {
+      result.put((byte) 0xff);
+    }
+    result.clear();
+    return result;
+  }
+}
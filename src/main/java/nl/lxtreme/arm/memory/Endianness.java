@@ -0,0 +1,46 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import java.nio.*;
+
+
+/**
+ * Represents the byte orders in which a memory map stores 16- and 32-bit
+ * values.
+ */
+public enum Endianness
+{
+  /** Little-endian data and instructions. */
+  LITTLE(ByteOrder.LITTLE_ENDIAN, ByteOrder.LITTLE_ENDIAN),
+  /**
+   * Byte-invariant big-endian (ARMv6 and later): big-endian data, but
+   * little-endian instructions.
+   */
+  BE_8(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN),
+  /**
+   * Word-invariant big-endian (ARMv5 and earlier): big-endian data and
+   * instructions.
+   */
+  BE_32(ByteOrder.BIG_ENDIAN, ByteOrder.BIG_ENDIAN);
+
+  // VARIABLES
+
+  final ByteOrder dataOrder;
+  final ByteOrder codeOrder;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new Endianness instance.
+   */
+  private Endianness(ByteOrder aDataOrder, ByteOrder aCodeOrder)
+  {
+    this.dataOrder = aDataOrder;
+    this.codeOrder = aCodeOrder;
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import java.util.*;
+
+
+/**
+ * Counts the invalid accesses per address, in an open-addressed table of
+ * primitive ints, so counting an address that is seen before does not create
+ * any objects.
+ * <p>
+ * To bound its memory usage, the table stops tracking new addresses once it
+ * holds {@link #MAX_ADDRESSES} of them.
+ * </p>
+ */
+final class FaultCounter
+{
+  // CONSTANTS
+
+  /** The maximum number of distinct addresses that are tracked. */
+  static final int MAX_ADDRESSES = 1 << 16;
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  // VARIABLES
+
+  private int[] addresses;
+  private int[] counts; // 0 denotes a free slot
+  private int size;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new FaultCounter instance.
+   */
+  FaultCounter()
+  {
+    clear();
+  }
+
+  // METHODS
+
+  /**
+   * Removes all counts.
+   */
+  void clear()
+  {
+    this.addresses = new int[INITIAL_CAPACITY];
+    this.counts = new int[INITIAL_CAPACITY];
+    this.size = 0;
+  }
+
+  /**
+   * @param aAddress
+   *          the address to return the count for.
+   * @return the number of counted faults for the given address, &gt;= 0.
+   */
+  int get(int aAddress)
+  {
+    int idx = indexOf(this.addresses, this.counts, aAddress);
+    return this.counts[idx];
+  }
+
+  /**
+   * @return all tracked addresses, in ascending unsigned order, never
+   *         <code>null</code>.
+   */
+  int[] getAddresses()
+  {
+    long[] sorted = new long[this.size];
+    int n = 0;
+    for (int i = 0; i < this.counts.length; i++)
+    {
+      if (this.counts[i] != 0)
+      {
+        sorted[n++] = this.addresses[i] & 0xFFFFFFFFL;
+      }
+    }
+    Arrays.sort(sorted);
+
+    int[] result = new int[n];
+    for (int i = 0; i < n; i++)
+    {
+      result[i] = (int) sorted[i];
+    }
+    return result;
+  }
+
+  /**
+   * Counts a fault for the given address.
+   * 
+   * @param aAddress
+   *          the faulting address.
+   */
+  void increment(int aAddress)
+  {
+    int idx = indexOf(this.addresses, this.counts, aAddress);
+    if (this.counts[idx] != 0)
+    {
+      this.counts[idx]++;
+      return;
+    }
+    if (this.size >= MAX_ADDRESSES)
+    {
+      return;
+    }
+
+    this.addresses[idx] = aAddress;
+    this.counts[idx] = 1;
+    if (++this.size > ((this.counts.length * 3) >> 2))
+    {
+      grow();
+    }
+  }
+
+  /**
+   * Doubles the capacity of the table.
+   */
+  private void grow()
+  {
+    int[] oldAddresses = this.addresses;
+    int[] oldCounts = this.counts;
+
+    this.addresses = new int[oldAddresses.length << 1];
+    this.counts = new int[oldCounts.length << 1];
+    for (int i = 0; i < oldCounts.length; i++)
+    {
+      if (oldCounts[i] != 0)
+      {
+        int idx = indexOf(this.addresses, this.counts, oldAddresses[i]);
+        this.addresses[idx] = oldAddresses[i];
+        this.counts[idx] = oldCounts[i];
+      }
+    }
+  }
+
+  /**
+   * @return the slot of the given address, or the free slot it should go in.
+   */
+  private static int indexOf(int[] aAddresses, int[] aCounts, int aAddress)
+  {
+    int mask = aCounts.length - 1;
+    int idx = (aAddress * 0x9E3779B9) >>> 16 & mask;
+    while ((aCounts[idx] != 0) && (aAddresses[idx] != aAddress))
+    {
+      idx = (idx + 1) & mask;
+    }
+    return idx;
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+/**
+ * Denotes what a {@link Memory} does upon an access to an address that is not
+ * mapped by any chunk.
+ * <p>
+ * Except for {@link #LOG}, no policy formats any text or creates any object
+ * when an invalid access is made, so guest code that probes memory in a loop
+ * stays cheap.
+ * </p>
+ * 
+ * @see Memory#setInvalidAccessPolicy(InvalidAccessPolicy)
+ */
+public enum InvalidAccessPolicy
+{
+  /**
+   * Reads yield zero, writes are dropped, and a message is printed for each
+   * access; the default.
+   */
+  LOG, //
+  /** Reads yield zero and writes are dropped, without any bookkeeping. */
+  IGNORE, //
+  /** Reads yield zero and writes are dropped, but the access is counted. */
+  COUNT, //
+  /**
+   * The access is counted and the CPU takes a data abort, or, for instruction
+   * fetches, a prefetch abort.
+   */
+  ABORT, //
+  /**
+   * The access is counted and the CPU stops running, with the PC pointing to
+   * the faulting instruction.
+   */
+  STOP;
+}
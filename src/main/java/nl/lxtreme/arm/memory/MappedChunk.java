@@ -0,0 +1,299 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.channels.FileChannel.MapMode;
+
+
+/**
+ * Provides a chunk of memory that maps a region of an image file, such as a
+ * ROM or flash image, directly into memory.
+ * <p>
+ * Mapping an image takes constant time, regardless of its size, as its pages
+ * are only read from the file once they are accessed. Read-only and private
+ * mappings of the same file share their pages with all other mappings of that
+ * file, even across simulator instances.
+ * </p>
+ * <ul>
+ * <li>{@link MapMode#READ_ONLY}: like real ROM, writes to this chunk are
+ * ignored;</li>
+ * <li>{@link MapMode#PRIVATE}: copy-on-write; a page is only copied once it is
+ * written to, and changes are never written back to the file;</li>
+ * <li>{@link MapMode#READ_WRITE}: changes are written back to the file, like
+ * persistent flash.</li>
+ * </ul>
+ */
+public class MappedChunk extends Chunk
+{
+  // VARIABLES
+
+  private final MapMode mode;
+  private ByteBuffer storage;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new MappedChunk instance that maps an entire file.
+   * 
+   * @param aAddress
+   *          the base address of this chunk;
+   * @param aFile
+   *          the image file to map, cannot be <code>null</code>;
+   * @param aMode
+   *          how to map the file, cannot be <code>null</code>;
+   * @param aEndianness
+   *          the byte order of this chunk, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case the file could not be mapped.
+   */
+  public MappedChunk(long aAddress, File aFile, MapMode aMode, Endianness aEndianness) throws IOException
+  {
+    this(aAddress, aFile, 0L, -1, aMode, aEndianness);
+  }
+
+  /**
+   * Creates a new MappedChunk instance.
+   * 
+   * @param aAddress
+   *          the base address of this chunk;
+   * @param aFile
+   *          the image file to map, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset in the file to start mapping, &gt;= 0;
+   * @param aSize
+   *          the number of bytes to map, or -1 to map up to the end of the
+   *          file;
+   * @param aMode
+   *          how to map the file, cannot be <code>null</code>;
+   * @param aEndianness
+   *          the byte order of this chunk, cannot be <code>null</code>.
+   * @throws IOException
+   *           in case the file could not be mapped.
+   */
+  public MappedChunk(long aAddress, File aFile, long aOffset, int aSize, MapMode aMode, Endianness aEndianness)
+      throws IOException
+  {
+    this(aAddress, map(aFile, aOffset, aSize, aMode), aMode, aEndianness);
+  }
+
+  /**
+   * Creates a new MappedChunk instance.
+   */
+  private MappedChunk(long aAddress, ByteBuffer aStorage, MapMode aMode, Endianness aEndianness)
+  {
+    super(aAddress, aStorage.capacity(), aStorage, aEndianness);
+
+    this.mode = aMode;
+    this.storage = aStorage;
+  }
+
+  // METHODS
+
+  /**
+   * Unmaps the file right away.
+   * 
+   * @see Chunk#dispose()
+   */
+  @Override
+  public synchronized void dispose()
+  {
+    super.dispose();
+
+    if (this.storage != null)
+    {
+      try
+      {
+        Cleaner.INSTANCE.clean(this.storage);
+      }
+      catch (Exception exception)
+      {
+        // Ignore, the garbage collector will unmap it eventually...
+      }
+      this.storage = null;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void copy(int aSrc, int aDst, int aLength)
+  {
+    if (!isReadOnly())
+    {
+      super.copy(aSrc, aDst, aLength);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void fill(int aAddr, int aLength, byte aValue)
+  {
+    if (!isReadOnly())
+    {
+      super.fill(aAddr, aLength, aValue);
+    }
+  }
+
+  /**
+   * Returns how the file is mapped.
+   * 
+   * @return the map mode, never <code>null</code>.
+   */
+  public MapMode getMode()
+  {
+    return this.mode;
+  }
+
+  /**
+   * Returns whether writes to this chunk are ignored.
+   * 
+   * @return <code>true</code> if this chunk is read-only, <code>false</code>
+   *         otherwise.
+   */
+  public boolean isReadOnly()
+  {
+    return this.mode == MapMode.READ_ONLY;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(byte[] aBuffer, int aOffset, int aLength) throws IOException
+  {
+    if (isReadOnly())
+    {
+      throw new IOException("Chunk is read-only!");
+    }
+    super.write(aBuffer, aOffset, aLength);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(int aAddr, byte[] aSrc, int aOffset, int aLength)
+  {
+    if (!isReadOnly())
+    {
+      super.write(aAddr, aSrc, aOffset, aLength);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(int aAddr, int[] aSrc, int aOffset, int aLength)
+  {
+    if (!isReadOnly())
+    {
+      super.write(aAddr, aSrc, aOffset, aLength);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write(int aByte) throws IOException
+  {
+    if (isReadOnly())
+    {
+      throw new IOException("Chunk is read-only!");
+    }
+    super.write(aByte);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write16(int aAddr, short aValue)
+  {
+    if (!isReadOnly())
+    {
+      super.write16(aAddr, aValue);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write32(int aAddr, int aValue)
+  {
+    if (!isReadOnly())
+    {
+      super.write32(aAddr, aValue);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write8(int aAddr, byte aValue)
+  {
+    if (!isReadOnly())
+    {
+      super.write8(aAddr, aValue);
+    }
+  }
+
+  /**
+   * Maps the given region of a file.
+   * 
+   * @return the mapped region, never <code>null</code>.
+   */
+  private static ByteBuffer map(File aFile, long aOffset, int aSize, MapMode aMode) throws IOException
+  {
+    if (aFile == null)
+    {
+      throw new IllegalArgumentException("File cannot be null!");
+    }
+    if (aMode == null)
+    {
+      throw new IllegalArgumentException("Mode cannot be null!");
+    }
+    if (aOffset < 0)
+    {
+      throw new IllegalArgumentException("Offset cannot be negative!");
+    }
+
+    // Private mappings need a writable channel, even though the file itself
+    // is never written...
+    RandomAccessFile file = new RandomAccessFile(aFile, (aMode == MapMode.READ_ONLY) ? "r" : "rw");
+    try
+    {
+      FileChannel channel = file.getChannel();
+
+      long size = aSize;
+      if (size < 0)
+      {
+        size = channel.size() - aOffset;
+      }
+      if ((size <= 0) || (size > Integer.MAX_VALUE) || ((aOffset + size) > channel.size()))
+      {
+        throw new IOException("Invalid region to map: " + aFile + " @ " + aOffset + ", " + size + " bytes");
+      }
+
+      // The mapping stays valid after the channel is closed...
+      return channel.map(aMode, aOffset, size);
+    }
+    finally
+    {
+      file.close();
+    }
+  }
+}
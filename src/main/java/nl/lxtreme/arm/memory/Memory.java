@@ -6,132 +6,1053 @@
 package nl.lxtreme.arm.memory;
 
 
+import java.io.*;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
  * Denotes a memory map, containing various chunks of data.
+ * <p>
+ * Chunks are looked up through a two-level page table with 4 KB pages, so
+ * finding the chunk for an address takes constant time, regardless of the
+ * number of mapped chunks.
+ * </p>
+ * <p>
+ * On top of that, a small direct-mapped TLB remembers the chunks of recently
+ * accessed pages, with separate entries for instruction fetches and data
+ * accesses, so most accesses do not need the page table at all.
+ * </p>
+ * <p>
+ * Memory-mapped devices are registered as chunks as well, so they are found
+ * through the same lookups, and accesses to plain memory do not need to check
+ * for devices.
+ * </p>
+ * <p>
+ * What happens upon an access to an unmapped address is determined by an
+ * {@link InvalidAccessPolicy}; the faulting addresses can be queried
+ * afterwards.
+ * </p>
+ * <p>
+ * Watchpoints are tracked per page: only for pages that carry a watchpoint,
+ * the TLB hands out a view on the chunk that checks each data access, so
+ * accesses to all other pages are as fast as without any watchpoint.
+ * </p>
+ * <p>
+ * Likewise, the pages that hold decoded or translated code are tracked, and
+ * only writes to those pages go through a view that invalidates the code, so
+ * stores to pure data pages do not pay for any check.
+ * </p>
+ * <p>
+ * All of the above is kept in an immutable {@link RegionMap}, published
+ * through a volatile reference. Accesses never lock, and adding or removing
+ * chunks swaps in a new map at once, so multiple CPU threads can safely share
+ * a single memory map. The TLB statistics are not synchronized, and are only
+ * exact for a single thread; as all threads would update the same counters,
+ * they can be turned off for multi-threaded use.
+ * </p>
+ * <p>
+ * For such use, this memory also provides the global exclusive monitor used
+ * by LDREX and STREX, and memory barriers. Plain accesses are not ordered
+ * between threads, as on a weakly ordered multi-core CPU, until one of the
+ * threads executes a barrier or an exclusive access.
+ * </p>
+ * <p>
+ * Finally, the contents of all chunks can be saved with {@link #snapshot()},
+ * and reset to it with {@link #restore(MemorySnapshot)}, which only copies the
+ * pages written in the meantime.
+ * </p>
  */
 public class Memory
 {
+  // INNER TYPES
+
+  /**
+   * Denotes a watched range of addresses.
+   */
+  static final class Watchpoint
+  {
+    // VARIABLES
+
+    final int address;
+    final int length;
+    final boolean read;
+    final boolean write;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Watchpoint instance.
+     */
+    Watchpoint(int aAddress, int aLength, boolean aRead, boolean aWrite)
+    {
+      this.address = aAddress;
+      this.length = aLength;
+      this.read = aRead;
+      this.write = aWrite;
+    }
+
+    // METHODS
+
+    /**
+     * @return <code>true</code> if the given access overlaps with this
+     *         watchpoint, <code>false</code> otherwise.
+     */
+    boolean matches(int aAddress, int aSize, boolean aWrite)
+    {
+      if (aWrite ? !this.write : !this.read)
+      {
+        return false;
+      }
+      // Compare offsets relative to this watchpoint, modulo 4 GB...
+      long offset = (aAddress - this.address) & 0xFFFFFFFFL;
+      return (offset < this.length) || (offset > (0x100000000L - aSize));
+    }
+  }
+
+
+  // CONSTANTS
+
+  static final int PAGE_SHIFT = 12;
+  static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  /** The default number of TLB entries, for both fetches and data. */
+  public static final int DEFAULT_TLB_SIZE = 64;
+
   // VARIABLES
 
-  private final List<Chunk> chunks;
+  private final Endianness endianness;
+  private volatile RegionMap map;
+
+  private long fetchHits;
+  private long fetchMisses;
+  private long dataHits;
+  private long dataMisses;
+  private boolean statistics;
+
+  private InvalidAccessPolicy invalidAccessPolicy;
+  private final FaultCounter faults;
+  private long faultCount;
+
+  private final ConcurrentMap<Chunk, TrackingChunk> trackingChunks;
+  private WatchpointListener watchpointListener;
+
+  // Serializes all exclusive accesses of all threads...
+  private final Object exclusiveLock;
+  // Only written and read for the ordering guarantees of a volatile field...
+  private volatile int fence;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new, word-invariant big-endian, Memory instance with a default
+   * sized TLB.
+   */
+  public Memory()
+  {
+    this(DEFAULT_TLB_SIZE, Endianness.BE_32);
+  }
+
+  /**
+   * Creates a new Memory instance with a default sized TLB.
+   * 
+   * @param aEndianness
+   *          the byte order of all chunks in this memory map, cannot be
+   *          <code>null</code>.
+   */
+  public Memory(Endianness aEndianness)
+  {
+    this(DEFAULT_TLB_SIZE, aEndianness);
+  }
+
+  /**
+   * Creates a new, word-invariant big-endian, Memory instance.
+   * 
+   * @param aTlbSize
+   *          the number of TLB entries for both fetches and data, should be a
+   *          power of two.
+   */
+  public Memory(int aTlbSize)
+  {
+    this(aTlbSize, Endianness.BE_32);
+  }
+
+  /**
+   * Creates a new Memory instance.
+   * 
+   * @param aTlbSize
+   *          the number of TLB entries for both fetches and data, should be a
+   *          power of two;
+   * @param aEndianness
+   *          the byte order of all chunks in this memory map, cannot be
+   *          <code>null</code>.
+   */
+  public Memory(int aTlbSize, Endianness aEndianness)
+  {
+    if ((aTlbSize <= 0) || (Integer.bitCount(aTlbSize) != 1))
+    {
+      throw new IllegalArgumentException("TLB size must be a power of two!");
+    }
+    if (aEndianness == null)
+    {
+      throw new IllegalArgumentException("Endianness cannot be null!");
+    }
+
+    this.endianness = aEndianness;
+    this.map = new RegionMap(aTlbSize);
+    this.statistics = true;
+
+    this.invalidAccessPolicy = InvalidAccessPolicy.LOG;
+    this.faults = new FaultCounter();
+
+    this.trackingChunks = new ConcurrentHashMap<Chunk, TrackingChunk>();
+    this.exclusiveLock = new Object();
+  }
+
+  // METHODS
+
+  /**
+   * Adds the given chunk of memory to this map, for example, a
+   * {@link DirectChunk} that keeps its contents off-heap.
+   * 
+   * @param aChunk
+   *          the chunk to add, cannot be <code>null</code> and should not
+   *          overlap with any chunk already in this map.
+   * @return the given chunk, never <code>null</code>.
+   */
+  public synchronized Chunk add(Chunk aChunk)
+  {
+    if (aChunk == null)
+    {
+      throw new IllegalArgumentException("Chunk cannot be null!");
+    }
+    if (aChunk.isDisposed())
+    {
+      throw new IllegalArgumentException("Chunk is disposed!");
+    }
+    for (Chunk c : this.map.chunks)
+    {
+      if (c.maps(aChunk.getBaseAddress()) || aChunk.maps(c.getBaseAddress()))
+      {
+        throw new IllegalArgumentException("Chunk overlaps with " + c + "!");
+      }
+    }
+
+    this.map = this.map.withChunk(aChunk);
+
+    return aChunk;
+  }
+
+  /**
+   * Adds a watchpoint on the given range of addresses. Upon each matching data
+   * access, the {@link WatchpointListener} is called.
+   * 
+   * @param aAddress
+   *          the first watched address;
+   * @param aLength
+   *          the number of watched bytes, &gt; 0;
+   * @param aRead
+   *          <code>true</code> to watch reads;
+   * @param aWrite
+   *          <code>true</code> to watch writes.
+   * @see #setWatchpointListener(WatchpointListener)
+   */
+  public synchronized void addWatchpoint(int aAddress, int aLength, boolean aRead, boolean aWrite)
+  {
+    if (aLength <= 0)
+    {
+      throw new IllegalArgumentException("Length must be positive!");
+    }
+
+    Watchpoint[] watchpoints = Arrays.copyOf(this.map.watchpoints, this.map.watchpoints.length + 1);
+    watchpoints[watchpoints.length - 1] = new Watchpoint(aAddress, aLength, aRead, aWrite);
+    this.map = this.map.withWatchpoints(watchpoints);
+  }
+
+  /**
+   * Acts as a full memory barrier: all accesses of the calling thread before
+   * this call are visible to any other thread that calls this method, or makes
+   * an exclusive access, afterwards.
+   */
+  public void barrier()
+  {
+    // A volatile read followed by a volatile write orders all accesses...
+    this.fence++;
+  }
+
+  /**
+   * Forgets all counted invalid accesses.
+   */
+  public void clearFaults()
+  {
+    synchronized (this.faults)
+    {
+      this.faults.clear();
+      this.faultCount = 0L;
+    }
+  }
+
+  /**
+   * Copies a block of memory, which may overlap, to another address.
+   * 
+   * @param aSrc
+   *          the memory location to copy from;
+   * @param aDst
+   *          the memory location to copy to;
+   * @param aLength
+   *          the number of bytes to copy, &gt;= 0.
+   */
+  public void copy(int aSrc, int aDst, int aLength)
+  {
+    if (aLength < 0)
+    {
+      throw new IllegalArgumentException("Length cannot be negative!");
+    }
+
+    Chunk chunk = findBlock(aSrc, aLength);
+    if ((chunk != null) && (chunk == findBlock(aDst, aLength)))
+    {
+      chunk.copy(aSrc, aDst, aLength);
+      return;
+    }
+
+    // Copy page-sized blocks, starting at the end if the destination overlaps
+    // the end of the source...
+    byte[] buffer = new byte[Math.min(aLength, PAGE_SIZE)];
+    boolean backwards = (aDst != aSrc) && (((aDst - aSrc) & 0xFFFFFFFFL) < aLength);
+    for (int done = 0; done < aLength;)
+    {
+      int n = Math.min(aLength - done, buffer.length);
+      int offset = backwards ? (aLength - done - n) : done;
+      read(aSrc + offset, buffer, 0, n);
+      write(aDst + offset, buffer, 0, n);
+      done += n;
+    }
+  }
+
+  /**
+   * Creates a new chunk of memory and adds this to this map. If there is
+   * already a chunk of memory for the given address range, this method will do
+   * nothing.
+   * 
+   * @param aAddress
+   *          the base address of the memory chunk;
+   * @param aSize
+   *          the size of the memory chunk.
+   * @return the (newly created) memory chunk, never <code>null</code>.
+   */
+  public synchronized Chunk create(long aAddress, int aSize)
+  {
+    Chunk result = find(aAddress);
+    if (result == null)
+    {
+      result = new Chunk(aAddress, aSize, this.endianness);
+      this.map = this.map.withChunk(result);
+    }
+    return result;
+  }
+
+  /**
+   * Creates a new chunk of memory whose pages are only allocated once they
+   * are written to, and adds this to this map. If there is already a chunk of
+   * memory for the given address range, this method will do nothing.
+   * 
+   * @param aAddress
+   *          the base address of the memory chunk;
+   * @param aSize
+   *          the size of the memory chunk.
+   * @return the (newly created) memory chunk, never <code>null</code>.
+   * @see SparseChunk
+   */
+  public synchronized Chunk createSparse(long aAddress, int aSize)
+  {
+    Chunk result = find(aAddress);
+    if (result == null)
+    {
+      result = add(new SparseChunk(aAddress, aSize, this.endianness));
+    }
+    return result;
+  }
+
+  /**
+   * Disposes all chunks of this map, releasing their storage, and removes them
+   * from this map.
+   */
+  public synchronized void dispose()
+  {
+    RegionMap old = this.map;
+    this.map = new RegionMap(old.tlbMask + 1).withWatchpoints(old.watchpoints);
+    this.trackingChunks.clear();
+
+    for (Chunk c : old.chunks)
+    {
+      c.dispose();
+    }
+  }
+
+  /**
+   * Fills a block of memory with the given value.
+   * 
+   * @param aAddr
+   *          the memory location to start filling;
+   * @param aLength
+   *          the number of bytes to fill, &gt;= 0;
+   * @param aValue
+   *          the value to fill with.
+   */
+  public void fill(int aAddr, int aLength, byte aValue)
+  {
+    Chunk chunk = findBlock(aAddr, aLength);
+    if (chunk != null)
+    {
+      chunk.fill(aAddr, aLength, aValue);
+    }
+    else
+    {
+      for (int i = 0; i < aLength; i++)
+      {
+        write8(aAddr + i, aValue);
+      }
+    }
+  }
+
+  /**
+   * Reads a 16-bit instruction from this memory at the given address.
+   * 
+   * @param aAddr
+   *          the memory location to read.
+   * @return the 16-bit instruction at the given memory location.
+   */
+  public short fetch16(int aAddr)
+  {
+    Chunk chunk = findCode(aAddr);
+    if (chunk != null)
+    {
+      return chunk.fetch16(aAddr);
+    }
+    invalidAccess(aAddr, false, true);
+    return 0x0;
+  }
+
+  /**
+   * Reads a 32-bit instruction from this memory at the given address.
+   * 
+   * @param aAddr
+   *          the memory location to read.
+   * @return the 32-bit instruction at the given memory location.
+   */
+  public int fetch32(int aAddr)
+  {
+    Chunk chunk = findCode(aAddr);
+    if (chunk != null)
+    {
+      return chunk.fetch32(aAddr);
+    }
+    invalidAccess(aAddr, false, true);
+    return 0x0;
+  }
+
+  /**
+   * Finds a chunk of memory that maps the given address.
+   * 
+   * @param aAddress
+   *          the address to return the memory chunk for.
+   * @return a memory chunk for the given address, can be <code>null</code> if
+   *         no chunk maps to the given address.
+   */
+  public Chunk find(long aAddress)
+  {
+    return this.map.find(aAddress);
+  }
+
+  /**
+   * Finds the chunk of memory that maps the given instruction address, using
+   * the fetch entries of the TLB.
+   * 
+   * @param aAddress
+   *          the address of the instruction to return the memory chunk for.
+   * @return a memory chunk for the given address, can be <code>null</code> if
+   *         no chunk maps to the given address.
+   */
+  public Chunk findCode(int aAddress)
+  {
+    RegionMap map = this.map;
+
+    int page = aAddress >>> PAGE_SHIFT;
+    int idx = page & map.tlbMask;
+    RegionMap.TlbEntry entry = map.fetchTlb[idx];
+    if (entry.page == page)
+    {
+      if (this.statistics)
+      {
+        this.fetchHits++;
+      }
+      return entry.chunk;
+    }
+
+    if (this.statistics)
+    {
+      this.fetchMisses++;
+    }
+
+    Chunk c = map.find(aAddress);
+    if (map.mapsPage(c, page))
+    {
+      map.fetchTlb[idx] = new RegionMap.TlbEntry(page, c);
+    }
+    return c;
+  }
+
+  /**
+   * Maps an entire image file, such as a ROM or flash image, into this memory
+   * map without copying it.
+   * 
+   * @param aAddress
+   *          the base address of the image;
+   * @param aFile
+   *          the image file to map, cannot be <code>null</code>;
+   * @param aMode
+   *          how to map the file, cannot be <code>null</code>.
+   * @return the chunk that maps the file, never <code>null</code>.
+   * @throws IOException
+   *           in case the file could not be mapped.
+   * @see MappedChunk
+   */
+  public Chunk mapFile(long aAddress, File aFile, MapMode aMode) throws IOException
+  {
+    return add(new MappedChunk(aAddress, aFile, aMode, this.endianness));
+  }
+
+  /**
+   * Registers a memory-mapped device on the given address range. All accesses
+   * to this range are passed on to the device.
+   * 
+   * @param aAddress
+   *          the base address of the device;
+   * @param aSize
+   *          the size of the address range of the device, in bytes;
+   * @param aDevice
+   *          the device to register, cannot be <code>null</code>.
+   * @return the chunk that maps the device, never <code>null</code>.
+   * @see DeviceChunk
+   */
+  public Chunk register(long aAddress, int aSize, Device aDevice)
+  {
+    return add(new DeviceChunk(aAddress, aSize, aDevice));
+  }
+
+  /**
+   * Returns the byte order of the chunks in this memory map.
+   * 
+   * @return the endianness, never <code>null</code>.
+   */
+  public Endianness getEndianness()
+  {
+    return this.endianness;
+  }
+
+  /**
+   * Returns the page that holds the code at the given address, and starts
+   * tracking writes to it. Code decoded from this page is current as long as
+   * the version of the page is unchanged.
+   * 
+   * @param aAddress
+   *          the address of the decoded code.
+   * @return the code page, or <code>null</code> if the given address is not
+   *         mapped.
+   */
+  public CodePage codePage(int aAddress)
+  {
+    Chunk c = findCode(aAddress);
+    if (c == null)
+    {
+      return null;
+    }
+
+    CodePage result = c.codePage(aAddress);
+    if (result.mark())
+    {
+      // Writes to this page should go through a tracking view from now on. As
+      // another thread could still be filling the current TLB with the plain
+      // chunk, start with fresh TLBs altogether...
+      flushTlb();
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of data accesses that were resolved by the TLB.
+   * 
+   * @return a number of TLB hits, &gt;= 0.
+   */
+  public long getDataHits()
+  {
+    return this.dataHits;
+  }
+
+  /**
+   * Returns the number of data accesses that were not resolved by the TLB.
+   * 
+   * @return a number of TLB misses, &gt;= 0.
+   */
+  public long getDataMisses()
+  {
+    return this.dataMisses;
+  }
+
+  /**
+   * Returns all addresses for which invalid accesses are counted.
+   * 
+   * @return the faulting addresses, in ascending order, never
+   *         <code>null</code>.
+   * @see #setInvalidAccessPolicy(InvalidAccessPolicy)
+   */
+  public int[] getFaultAddresses()
+  {
+    synchronized (this.faults)
+    {
+      return this.faults.getAddresses();
+    }
+  }
+
+  /**
+   * Returns the total number of counted invalid accesses.
+   * 
+   * @return a number of invalid accesses, &gt;= 0.
+   * @see #setInvalidAccessPolicy(InvalidAccessPolicy)
+   */
+  public long getFaultCount()
+  {
+    synchronized (this.faults)
+    {
+      return this.faultCount;
+    }
+  }
+
+  /**
+   * Returns the number of counted invalid accesses to the given address.
+   * 
+   * @param aAddress
+   *          the address to return the count for.
+   * @return a number of invalid accesses, &gt;= 0.
+   * @see #setInvalidAccessPolicy(InvalidAccessPolicy)
+   */
+  public int getFaultCount(int aAddress)
+  {
+    synchronized (this.faults)
+    {
+      return this.faults.get(aAddress);
+    }
+  }
+
+  /**
+   * Returns the listener that is called upon each watchpoint hit.
+   * 
+   * @return the watchpoint listener, can be <code>null</code>.
+   */
+  public WatchpointListener getWatchpointListener()
+  {
+    return this.watchpointListener;
+  }
+
+  /**
+   * Returns the number of instruction fetches that were resolved by the TLB.
+   * 
+   * @return a number of TLB hits, &gt;= 0.
+   */
+  public long getFetchHits()
+  {
+    return this.fetchHits;
+  }
+
+  /**
+   * Returns the number of instruction fetches that were not resolved by the
+   * TLB.
+   * 
+   * @return a number of TLB misses, &gt;= 0.
+   */
+  public long getFetchMisses()
+  {
+    return this.fetchMisses;
+  }
+
+  /**
+   * Returns what this memory does upon an access to an unmapped address.
+   * 
+   * @return the invalid access policy, never <code>null</code>.
+   */
+  public InvalidAccessPolicy getInvalidAccessPolicy()
+  {
+    return this.invalidAccessPolicy;
+  }
+
+  /**
+   * Returns whether TLB hits and misses are counted.
+   * 
+   * @return <code>true</code> if the TLB statistics are kept,
+   *         <code>false</code> otherwise.
+   */
+  public boolean isStatisticsEnabled()
+  {
+    return this.statistics;
+  }
+
+  /**
+   * Reads a block of bytes from this memory at the given address.
+   * 
+   * @param aAddr
+   *          the memory location to start reading;
+   * @param aDst
+   *          the array to read into, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset in the given array to start storing;
+   * @param aLength
+   *          the number of bytes to read, &gt;= 0.
+   */
+  public void read(int aAddr, byte[] aDst, int aOffset, int aLength)
+  {
+    Chunk chunk = findBlock(aAddr, aLength);
+    if (chunk != null)
+    {
+      chunk.read(aAddr, aDst, aOffset, aLength);
+    }
+    else
+    {
+      for (int i = 0; i < aLength; i++)
+      {
+        aDst[aOffset + i] = read8(aAddr + i);
+      }
+    }
+  }
+
+  /**
+   * Reads a block of 32-bit values from this memory at the given address.
+   * 
+   * @param aAddr
+   *          the memory location to start reading;
+   * @param aDst
+   *          the array to read into, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset in the given array to start storing;
+   * @param aLength
+   *          the number of 32-bit values to read, &gt;= 0.
+   */
+  public void read(int aAddr, int[] aDst, int aOffset, int aLength)
+  {
+    Chunk chunk = findBlock(aAddr, 4 * aLength);
+    if (chunk != null)
+    {
+      chunk.read(aAddr, aDst, aOffset, aLength);
+    }
+    else
+    {
+      for (int i = 0; i < aLength; i++)
+      {
+        aDst[aOffset + i] = read32(aAddr + 4 * i);
+      }
+    }
+  }
+
+  /**
+   * Reads a 16-bit value from this memory at the given address.
+   * 
+   * @param aAddr
+   *          the memory location to read.
+   * @return the 16-bit value at the given memory location.
+   */
+  public short read16(int aAddr)
+  {
+    Chunk chunk = findData(aAddr);
+    if (chunk != null)
+    {
+      return chunk.read16(aAddr);
+    }
+    invalidAccess(aAddr, false, false);
+    return 0x0;
+  }
 
-  // CONSTRUCTORS
+  /**
+   * Reads a 32-bit value from this memory at the given address.
+   * 
+   * @param aAddr
+   *          the memory location to read.
+   * @return the 32-bit value at the given memory location.
+   */
+  public int read32(int aAddr)
+  {
+    Chunk chunk = findData(aAddr);
+    if (chunk != null)
+    {
+      return chunk.read32(aAddr);
+    }
+    invalidAccess(aAddr, false, false);
+    return 0x00;
+  }
 
   /**
-   * Creates a new Memory instance.
+   * Reads a 8-bit value from this memory at the given address.
+   * 
+   * @param aAddr
+   *          the memory location to read.
+   * @return the 8-bit value at the given memory location.
    */
-  public Memory()
+  public byte read8(int aAddr)
   {
-    this.chunks = new ArrayList<Chunk>();
+    Chunk chunk = findData(aAddr);
+    if (chunk != null)
+    {
+      return chunk.read8(aAddr);
+    }
+    invalidAccess(aAddr, false, false);
+    return 0x00;
   }
 
-  // METHODS
+  /**
+   * Reads a 32-bit value from this memory as part of an exclusive access, as
+   * done by LDREX. All exclusive accesses of all threads are serialized, and
+   * act as a barrier.
+   * 
+   * @param aAddr
+   *          the memory location to read.
+   * @return the 32-bit value at the given memory location.
+   * @see #writeExclusive32(int, int, int)
+   */
+  public int readExclusive32(int aAddr)
+  {
+    synchronized (this.exclusiveLock)
+    {
+      return read32(aAddr);
+    }
+  }
 
   /**
-   * Creates a new chunk of memory and adds this to this map. If there is
-   * already a chunk of memory for the given address range, this method will do
-   * nothing.
+   * Removes the given chunk from this map, without disposing it. Threads that
+   * are accessing this map at the same time see the chunk either mapped or
+   * removed, never anything in between.
    * 
-   * @param aAddress
-   *          the base address of the memory chunk;
-   * @param aSize
-   *          the size of the memory chunk.
-   * @return the (newly created) memory chunk, never <code>null</code>.
+   * @param aChunk
+   *          the chunk to remove, cannot be <code>null</code>.
+   * @return <code>true</code> if the chunk is removed, <code>false</code> if it
+   *         was not part of this map.
    */
-  public synchronized Chunk create(long aAddress, int aSize)
+  public synchronized boolean remove(Chunk aChunk)
   {
-    Chunk result = find(aAddress);
-    if (result == null)
+    if (aChunk == null)
     {
-      result = new Chunk(aAddress, aSize);
-      this.chunks.add(result);
+      throw new IllegalArgumentException("Chunk cannot be null!");
     }
-    return result;
+    if (!Arrays.asList(this.map.chunks).contains(aChunk))
+    {
+      return false;
+    }
+
+    this.map = this.map.withoutChunk(aChunk);
+    this.trackingChunks.remove(aChunk);
+    return true;
   }
 
   /**
-   * Finds a chunk of memory that maps the given address.
+   * Removes all watchpoints that start at the given address. Once no
+   * watchpoints are left, all accesses take the fast path again.
    * 
    * @param aAddress
-   *          the address to return the memory chunk for.
-   * @return a memory chunk for the given address, can be <code>null</code> if
-   *         no chunk maps to the given address.
+   *          the first address of the watchpoints to remove.
    */
-  public Chunk find(long aAddress)
+  public synchronized void removeWatchpoint(int aAddress)
   {
-    for (Chunk c : this.chunks)
+    List<Watchpoint> watchpoints = new ArrayList<Watchpoint>();
+    for (Watchpoint w : this.map.watchpoints)
     {
-      if (c.maps(aAddress))
+      if (w.address != aAddress)
       {
-        return c;
+        watchpoints.add(w);
       }
     }
-    return null;
+    this.map = this.map.withWatchpoints(watchpoints.toArray(new Watchpoint[watchpoints.size()]));
   }
 
   /**
-   * Reads a 16-bit value from this memory at the given address.
+   * Restores the contents of all chunks in the given snapshot. Only the pages
+   * that changed since the snapshot (or since the last restore of it) are
+   * copied, so restoring a large memory after a short run is cheap. Restoring
+   * another snapshot than the last one copies all pages.
+   * <p>
+   * Chunks that are added to this map after the snapshot are left as they
+   * are; chunks that are removed from this map are restored nonetheless.
+   * Should only be called while no CPU accesses this memory.
+   * </p>
    * 
-   * @param aAddr
-   *          the memory location to read.
-   * @return the 16-bit value at the given memory location.
+   * @param aSnapshot
+   *          the snapshot to restore, taken from this memory, cannot be
+   *          <code>null</code>.
+   * @return the number of copied 4 KB pages, &gt;= 0.
+   * @throws IllegalStateException
+   *           in case any chunk of the snapshot is disposed.
    */
-  public short read16(int aAddr)
+  public synchronized int restore(MemorySnapshot aSnapshot)
   {
-    Chunk chunk = find(aAddr);
-    if (chunk != null)
+    if (aSnapshot == null)
     {
-      return chunk.read16(aAddr);
+      throw new IllegalArgumentException("Snapshot cannot be null!");
     }
-    else
+    if (aSnapshot.memory != this)
+    {
+      throw new IllegalArgumentException("Snapshot is not taken from this memory!");
+    }
+
+    int result = 0;
+    for (int i = 0; i < aSnapshot.chunks.length; i++)
     {
-      System.out.printf("Ignoring read from invalid address: 0x%08x\n", aAddr);
-      return 0x0;
+      Chunk c = aSnapshot.chunks[i];
+      if (c.isDisposed())
+      {
+        throw new IllegalStateException("Chunk is disposed: " + c);
+      }
+      result += c.restore(aSnapshot.data[i]);
     }
+
+    // The restored pages are tracked again, so the TLB should no longer hand
+    // out their plain chunks...
+    flushTlb();
+    return result;
   }
 
   /**
-   * Reads a 32-bit value from this memory at the given address.
+   * Sets what this memory does upon an access to an unmapped address. By
+   * default, {@link InvalidAccessPolicy#LOG} is used.
+   * 
+   * @param aPolicy
+   *          the invalid access policy to use, cannot be <code>null</code>.
+   */
+  public void setInvalidAccessPolicy(InvalidAccessPolicy aPolicy)
+  {
+    if (aPolicy == null)
+    {
+      throw new IllegalArgumentException("Policy cannot be null!");
+    }
+    this.invalidAccessPolicy = aPolicy;
+  }
+
+  /**
+   * Sets whether TLB hits and misses are counted, which is the default. When
+   * multiple threads share this memory, they all update the same counters
+   * upon each access, so turning the statistics off lets them scale better.
+   * 
+   * @param aEnabled
+   *          <code>true</code> to keep the TLB statistics, <code>false</code>
+   *          to stop counting.
+   */
+  public void setStatisticsEnabled(boolean aEnabled)
+  {
+    this.statistics = aEnabled;
+  }
+
+  /**
+   * Sets the listener that is called upon each watchpoint hit.
+   * 
+   * @param aListener
+   *          the watchpoint listener to set, can be <code>null</code>.
+   */
+  public void setWatchpointListener(WatchpointListener aListener)
+  {
+    this.watchpointListener = aListener;
+  }
+
+  /**
+   * Takes a snapshot of the contents of all chunks in this map, which can be
+   * restored with {@link #restore(MemorySnapshot)}.
+   * <p>
+   * Taking a snapshot copies all chunks once; for sparse chunks, only their
+   * allocated pages are copied, and pages they allocate afterwards are freed
+   * again upon a restore. From then on, the first write to each page goes
+   * through a tracking view (as for watched pages), which marks the page as
+   * changed; later writes to that page take the fast path again.
+   * </p>
+   * <p>
+   * The state of registered devices is not part of a snapshot, as it is kept
+   * by the devices themselves; neither are read-only mapped files, which
+   * cannot change anyway.
+   * </p>
+   * <p>
+   * Only the last snapshot (or the last restored one) is tracked. Should only
+   * be called while no CPU accesses this memory.
+   * </p>
+   * 
+   * @return the snapshot, never <code>null</code>.
+   */
+  public synchronized MemorySnapshot snapshot()
+  {
+    List<Chunk> chunks = new ArrayList<Chunk>();
+    List<byte[][]> data = new ArrayList<byte[][]>();
+    for (Chunk c : this.map.chunks)
+    {
+      byte[][] copy = c.snapshot();
+      if (copy != null)
+      {
+        chunks.add(c);
+        data.add(copy);
+      }
+    }
+
+    // All pages are tracked from now on, so the TLB should no longer hand out
+    // their plain chunks...
+    flushTlb();
+    return new MemorySnapshot(this, chunks.toArray(new Chunk[chunks.size()]), data.toArray(new byte[data.size()][][]));
+  }
+
+  /**
+   * Writes a block of bytes to the memory denoted by the given address.
    * 
    * @param aAddr
-   *          the memory location to read.
-   * @return the 32-bit value at the given memory location.
+   *          the memory location to start writing;
+   * @param aSrc
+   *          the array to write, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset in the given array to start writing from;
+   * @param aLength
+   *          the number of bytes to write, &gt;= 0.
    */
-  public int read32(int aAddr)
+  public void write(int aAddr, byte[] aSrc, int aOffset, int aLength)
   {
-    Chunk chunk = find(aAddr);
+    Chunk chunk = findBlock(aAddr, aLength);
     if (chunk != null)
     {
-      return chunk.read32(aAddr);
+      chunk.write(aAddr, aSrc, aOffset, aLength);
     }
     else
     {
-      System.out.printf("Ignoring read from invalid address: 0x%08x\n", aAddr);
-      return 0x00;
+      for (int i = 0; i < aLength; i++)
+      {
+        write8(aAddr + i, aSrc[aOffset + i]);
+      }
     }
   }
 
   /**
-   * Reads a 8-bit value from this memory at the given address.
+   * Writes a block of 32-bit values to the memory denoted by the given address.
    * 
    * @param aAddr
-   *          the memory location to read.
-   * @return the 8-bit value at the given memory location.
+   *          the memory location to start writing;
+   * @param aSrc
+   *          the array to write, cannot be <code>null</code>;
+   * @param aOffset
+   *          the offset in the given array to start writing from;
+   * @param aLength
+   *          the number of 32-bit values to write, &gt;= 0.
    */
-  public byte read8(int aAddr)
+  public void write(int aAddr, int[] aSrc, int aOffset, int aLength)
   {
-    Chunk chunk = find(aAddr);
+    Chunk chunk = findBlock(aAddr, 4 * aLength);
     if (chunk != null)
     {
-      return chunk.read8(aAddr);
+      chunk.write(aAddr, aSrc, aOffset, aLength);
     }
     else
     {
-      System.out.printf("Ignoring read from invalid address: 0x%08x\n", aAddr);
-      return 0x00;
+      for (int i = 0; i < aLength; i++)
+      {
+        write32(aAddr + 4 * i, aSrc[aOffset + i]);
+      }
     }
   }
 
@@ -145,14 +1066,14 @@ public class Memory
    */
   public void write16(int aAddr, short aValue)
   {
-    Chunk chunk = find(aAddr);
+    Chunk chunk = findData(aAddr);
     if (chunk != null)
     {
       chunk.write16(aAddr, aValue);
     }
     else
     {
-      System.out.printf("Ignoring write to invalid address: 0x%08x\n", aAddr);
+      invalidAccess(aAddr, true, false);
     }
   }
 
@@ -166,14 +1087,14 @@ public class Memory
    */
   public void write32(int aAddr, int aValue)
   {
-    Chunk chunk = find(aAddr);
+    Chunk chunk = findData(aAddr);
     if (chunk != null)
     {
       chunk.write32(aAddr, aValue);
     }
     else
     {
-      System.out.printf("Ignoring write to invalid address: 0x%08x\n", aAddr);
+      invalidAccess(aAddr, true, false);
     }
   }
 
@@ -187,15 +1108,285 @@ public class Memory
    */
   public void write8(int aAddr, byte aValue)
   {
-    Chunk chunk = find(aAddr);
+    Chunk chunk = findData(aAddr);
     if (chunk != null)
     {
       chunk.write8(aAddr, aValue);
     }
     else
     {
-      System.out.printf("Ignoring write to invalid address: 0x%08x\n", aAddr);
+      invalidAccess(aAddr, true, false);
+    }
+  }
+
+  /**
+   * Writes a 32-bit value to this memory as part of an exclusive access, as
+   * done by STREX. The write only succeeds if the memory location still holds
+   * the value read by the matching {@link #readExclusive32(int)}, and both the
+   * comparison and the write are atomic with respect to all other exclusive
+   * accesses.
+   * <p>
+   * Comparing values, rather than tracking each store, keeps plain stores free
+   * of any check. As a consequence, a plain store that races with the exclusive
+   * write, or that stores the very same value, goes unnoticed; neither matters
+   * for the usual lock and atomic update sequences.
+   * </p>
+   * 
+   * @param aAddr
+   *          the memory location to write;
+   * @param aExpected
+   *          the value read by the matching exclusive read;
+   * @param aValue
+   *          the 32-bit value to write.
+   * @return <code>true</code> if the value is written, <code>false</code> if
+   *         the memory location is changed since it was read.
+   */
+  public boolean writeExclusive32(int aAddr, int aExpected, int aValue)
+  {
+    synchronized (this.exclusiveLock)
+    {
+      if (read32(aAddr) != aExpected)
+      {
+        return false;
+      }
+      write32(aAddr, aValue);
+      return true;
+    }
+  }
+
+  /**
+   * Finds the chunk of memory that maps an entire block of data, so the block
+   * can be transferred at once.
+   * 
+   * @param aAddress
+   *          the start address of the block;
+   * @param aLength
+   *          the length of the block, in bytes.
+   * @return the memory chunk that maps the entire block, or <code>null</code>
+   *         if the block is empty, (partially) unmapped, spans multiple chunks
+   *         or overlaps a watched page, in which case it should be transferred
+   *         per value.
+   */
+  private Chunk findBlock(int aAddress, int aLength)
+  {
+    if (aLength <= 0)
+    {
+      return null;
+    }
+
+    Chunk c = findData(aAddress);
+    if ((c == null) || (aLength > c.getSize()) || (findData(aAddress + aLength - 1) != c))
+    {
+      return null;
+    }
+
+    // The first and last page are checked by findData, the pages in between
+    // should be checked as well. Pages with code or pages tracked for a
+    // snapshot need no check, as the chunk itself updates those upon a block
+    // transfer...
+    RegionMap map = this.map;
+    int last = (aAddress + aLength - 1) >>> PAGE_SHIFT;
+    for (int page = (aAddress >>> PAGE_SHIFT) + 1; page < last; page++)
+    {
+      if (map.isWatched(page))
+      {
+        return null;
+      }
+    }
+    return c;
+  }
+
+  /**
+   * Finds the chunk of memory that maps the given data address, using the data
+   * entries of the TLB.
+   * 
+   * @param aAddress
+   *          the address to return the memory chunk for.
+   * @return a memory chunk for the given address, can be <code>null</code> if
+   *         no chunk maps to the given address.
+   */
+  private Chunk findData(int aAddress)
+  {
+    RegionMap map = this.map;
+
+    int page = aAddress >>> PAGE_SHIFT;
+    int idx = page & map.tlbMask;
+    RegionMap.TlbEntry entry = map.dataTlb[idx];
+    if (entry.page == page)
+    {
+      if (this.statistics)
+      {
+        this.dataHits++;
+      }
+      return entry.chunk;
+    }
+
+    if (this.statistics)
+    {
+      this.dataMisses++;
+    }
+
+    Chunk c = map.find(aAddress);
+    boolean cacheable = map.mapsPage(c, page);
+    if ((c != null) && (map.isWatched(page) || c.isTracked(aAddress)))
+    {
+      // Swap in a view that checks each access...
+      c = trackingChunk(c);
+    }
+    if (cacheable)
+    {
+      map.dataTlb[idx] = new RegionMap.TlbEntry(page, c);
+    }
+    return c;
+  }
+
+  /**
+   * Invalidates all TLB entries, by swapping in a copy of the current map with
+   * empty TLBs.
+   */
+  private synchronized void flushTlb()
+  {
+    this.map = this.map.withEmptyTlb();
+  }
+
+  /**
+   * Handles an access to an unmapped address according to the invalid access
+   * policy. Only the {@link InvalidAccessPolicy#LOG} policy formats any text.
+   * 
+   * @param aAddr
+   *          the faulting address;
+   * @param aWrite
+   *          <code>true</code> for a write, <code>false</code> for a read;
+   * @param aFetch
+   *          <code>true</code> if the read is an instruction fetch.
+   * @throws MemoryFault
+   *           in case the access should abort or stop the CPU.
+   */
+  private void invalidAccess(int aAddr, boolean aWrite, boolean aFetch)
+  {
+    switch (this.invalidAccessPolicy)
+    {
+      case LOG:
+        System.out.printf("Ignoring %s invalid address: 0x%08x\n", aWrite ? "write to" : "read from", aAddr);
+        break;
+
+      case IGNORE:
+        break;
+
+      case COUNT:
+        countFault(aAddr);
+        break;
+
+      default:
+        countFault(aAddr);
+        throw MemoryFault.get(aAddr, aWrite, aFetch);
+    }
+  }
+
+  /**
+   * Counts an invalid access to the given address.
+   */
+  private void countFault(int aAddr)
+  {
+    synchronized (this.faults)
+    {
+      this.faults.increment(aAddr);
+      this.faultCount++;
+    }
+  }
+
+  /**
+   * Returns the view on the given chunk that checks for watchpoints and writes
+   * to code.
+   * 
+   * @param aChunk
+   *          the chunk to return the view for, cannot be <code>null</code>.
+   * @return the view, never <code>null</code>.
+   */
+  private Chunk trackingChunk(Chunk aChunk)
+  {
+    TrackingChunk result = this.trackingChunks.get(aChunk);
+    if (result == null)
+    {
+      TrackingChunk view = new TrackingChunk(this, aChunk);
+      result = this.trackingChunks.putIfAbsent(aChunk, view);
+      if (result == null)
+      {
+        result = view;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Called by a {@link TrackingChunk} after each data access to a watched page,
+   * to check whether the access hits a watchpoint.
+   * 
+   * @param aAddr
+   *          the accessed address;
+   * @param aSize
+   *          the size of the access, in bytes;
+   * @param aValue
+   *          the value read or written;
+   * @param aWrite
+   *          <code>true</code> for a write, <code>false</code> for a read.
+   */
+  void watched(int aAddr, int aSize, int aValue, boolean aWrite)
+  {
+    WatchpointListener listener = this.watchpointListener;
+    if (listener == null)
+    {
+      return;
+    }
+
+    for (Watchpoint w : this.map.watchpoints)
+    {
+      if (w.matches(aAddr, aSize, aWrite))
+      {
+        listener.watchpointHit(aAddr, aValue, aWrite);
+        return;
+      }
     }
   }
 
+  /**
+   * Called by a {@link TrackingChunk} after each write to a tracked page, to
+   * invalidate the code decoded from it, to mark it as changed since the
+   * snapshot, and to check whether the write hits a watchpoint.
+   * 
+   * @param aChunk
+   *          the written chunk;
+   * @param aAddr
+   *          the written address;
+   * @param aSize
+   *          the size of the write, in bytes;
+   * @param aValue
+   *          the value written.
+   */
+  void written(Chunk aChunk, int aAddr, int aSize, int aValue)
+  {
+    aChunk.written(aAddr, aSize);
+
+    // Once the page holds (changed) data, further writes can take the fast
+    // path. As the chunk can invalidate the code itself upon the write, check
+    // whether the page is still tracked, rather than whether it changed...
+    RegionMap map = this.map;
+    evictUntracked(map, aChunk, aAddr);
+    evictUntracked(map, aChunk, aAddr + aSize - 1);
+
+    watched(aAddr, aSize, aValue, true);
+  }
+
+  /**
+   * Evicts the tracking view of the page holding the given address from the
+   * data TLB, if that page no longer needs to be tracked.
+   */
+  private static void evictUntracked(RegionMap aMap, Chunk aChunk, int aAddr)
+  {
+    int page = aAddr >>> PAGE_SHIFT;
+    if (!aMap.isWatched(page) && !aChunk.isTracked(aAddr))
+    {
+      aMap.evictData(page);
+    }
+  }
 }
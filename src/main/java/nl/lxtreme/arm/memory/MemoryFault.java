@@ -0,0 +1,143 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+/**
+ * Thrown by a {@link Memory} upon an invalid access, when its policy is
+ * {@link InvalidAccessPolicy#ABORT} or {@link InvalidAccessPolicy#STOP}, and
+ * by a {@link Chunk} upon an access outside its address range.
+ * <p>
+ * All memory maps and chunks reuse a single instance per thread, without a
+ * stack trace, so raising a fault does not create any objects, and CPUs that
+ * run on different threads never see each other's faults. The details of a
+ * fault are therefore only valid until the next fault on the same thread.
+ * </p>
+ */
+public final class MemoryFault extends IllegalArgumentException
+{
+  // CONSTANTS
+
+  private static final long serialVersionUID = 1L;
+
+  /** The fault raised by each thread. */
+  private static final ThreadLocal<MemoryFault> CURRENT = new ThreadLocal<MemoryFault>()
+  {
+    @Override
+    protected MemoryFault initialValue()
+    {
+      return new MemoryFault();
+    }
+  };
+
+  // VARIABLES
+
+  private int address;
+  private boolean write;
+  private boolean fetch;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new MemoryFault instance.
+   */
+  private MemoryFault()
+  {
+    super();
+  }
+
+  // METHODS
+
+  /**
+   * Returns the fault of the current thread, with the given details, to be
+   * raised.
+   * 
+   * @param aAddress
+   *          the faulting address;
+   * @param aWrite
+   *          <code>true</code> for a write, <code>false</code> for a read;
+   * @param aFetch
+   *          <code>true</code> if the read is an instruction fetch.
+   * @return the fault, never <code>null</code>.
+   */
+  static MemoryFault get(int aAddress, boolean aWrite, boolean aFetch)
+  {
+    return CURRENT.get().set(aAddress, aWrite, aFetch);
+  }
+
+  /**
+   * Does not fill in a stack trace, which is the most expensive part of
+   * raising an exception.
+   * 
+   * @return this fault.
+   */
+  @Override
+  public synchronized Throwable fillInStackTrace()
+  {
+    return this;
+  }
+
+  /**
+   * Returns the address of the invalid access.
+   * 
+   * @return the faulting address.
+   */
+  public int getAddress()
+  {
+    return this.address;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getMessage()
+  {
+    String access = this.write ? "write to" : (this.fetch ? "fetch from" : "read from");
+    return String.format("Invalid %s address: 0x%08x", access, this.address);
+  }
+
+  /**
+   * Returns whether the invalid access is an instruction fetch.
+   * 
+   * @return <code>true</code> if an instruction fetch caused this fault,
+   *         <code>false</code> if a data access did.
+   */
+  public boolean isFetch()
+  {
+    return this.fetch;
+  }
+
+  /**
+   * Returns whether the invalid access is a write.
+   * 
+   * @return <code>true</code> if a write caused this fault, <code>false</code>
+   *         if a read did.
+   */
+  public boolean isWrite()
+  {
+    return this.write;
+  }
+
+  /**
+   * Sets the details of this fault, before it is raised.
+   * 
+   * @param aAddress
+   *          the faulting address;
+   * @param aWrite
+   *          <code>true</code> for a write, <code>false</code> for a read;
+   * @param aFetch
+   *          <code>true</code> if the read is an instruction fetch.
+   * @return this fault.
+   */
+  private MemoryFault set(int aAddress, boolean aWrite, boolean aFetch)
+  {
+    this.address = aAddress;
+    this.write = aWrite;
+    this.fetch = aFetch;
+    return this;
+  }
+}
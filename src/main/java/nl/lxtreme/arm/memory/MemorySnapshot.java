@@ -0,0 +1,63 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+/**
+ * Provides the saved contents of the chunks of a {@link Memory}, as taken by
+ * {@link Memory#snapshot()}. A snapshot is never changed, so it can be
+ * restored any number of times.
+ */
+public final class MemorySnapshot
+{
+  // VARIABLES
+
+  final Memory memory;
+  final Chunk[] chunks;
+  final byte[][][] data;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new MemorySnapshot instance.
+   * 
+   * @param aMemory
+   *          the memory this snapshot is taken from;
+   * @param aChunks
+   *          the saved chunks;
+   * @param aData
+   *          the contents of each page of each saved chunk.
+   */
+  MemorySnapshot(Memory aMemory, Chunk[] aChunks, byte[][][] aData)
+  {
+    this.memory = aMemory;
+    this.chunks = aChunks;
+    this.data = aData;
+  }
+
+  // METHODS
+
+  /**
+   * Returns the number of bytes this snapshot holds.
+   * 
+   * @return the size of this snapshot, in bytes, &gt;= 0.
+   */
+  public long getSize()
+  {
+    long result = 0L;
+    for (byte[][] pages : this.data)
+    {
+      for (byte[] page : pages)
+      {
+        if (page != null)
+        {
+          result += page.length;
+        }
+      }
+    }
+    return result;
+  }
+}
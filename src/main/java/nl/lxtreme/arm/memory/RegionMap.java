@@ -0,0 +1,341 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import java.util.*;
+
+import nl.lxtreme.arm.memory.Memory.Watchpoint;
+
+
+/**
+ * Provides an immutable snapshot of everything that determines how a
+ * {@link Memory} resolves an address: its chunks, the two-level page table
+ * and the watchpoints.
+ * <p>
+ * A memory map publishes its current snapshot through a volatile reference, so
+ * readers never need to lock, while changes build a new snapshot and swap it
+ * in at once. Page tables that are not affected by a change are shared
+ * between snapshots.
+ * </p>
+ * <p>
+ * Each snapshot has its own TLBs, which only cache lookups in that snapshot.
+ * TLB entries are immutable, so threads that share a snapshot never see the
+ * page of one entry combined with the chunk of another.
+ * </p>
+ */
+final class RegionMap
+{
+  // INNER TYPES
+
+  /**
+   * Denotes a single TLB entry.
+   */
+  static final class TlbEntry
+  {
+    // VARIABLES
+
+    final int page;
+    final Chunk chunk;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new TlbEntry instance.
+     */
+    TlbEntry(int aPage, Chunk aChunk)
+    {
+      this.page = aPage;
+      this.chunk = aChunk;
+    }
+  }
+
+  // CONSTANTS
+
+  /** The 20-bit page number is split in two 10-bit indices. */
+  private static final int LEVEL_SHIFT = 10;
+  private static final int LEVEL_SIZE = 1 << LEVEL_SHIFT;
+  private static final int LEVEL_MASK = LEVEL_SIZE - 1;
+
+  /** Marks a page that is (partially) mapped by more than one chunk. */
+  private static final Chunk SHARED = new Chunk(0, 1);
+
+  /** Page numbers are 20 bits, so this entry never matches. */
+  private static final TlbEntry INVALID = new TlbEntry(-1, null);
+
+  private static final Chunk[] NO_CHUNKS = new Chunk[0];
+  private static final Watchpoint[] NO_WATCHPOINTS = new Watchpoint[0];
+
+  // VARIABLES
+
+  final Chunk[] chunks;
+  final Watchpoint[] watchpoints;
+
+  private final Chunk[][] pages;
+  private final int[] watchedPages; // one bit per page, null if nothing is watched
+
+  final int tlbMask;
+  final TlbEntry[] fetchTlb;
+  final TlbEntry[] dataTlb;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new, empty, RegionMap instance.
+   * 
+   * @param aTlbSize
+   *          the number of TLB entries for both fetches and data, a power of
+   *          two.
+   */
+  RegionMap(int aTlbSize)
+  {
+    this(aTlbSize, NO_CHUNKS, new Chunk[LEVEL_SIZE][], NO_WATCHPOINTS, null);
+  }
+
+  /**
+   * Creates a new RegionMap instance with empty TLBs.
+   */
+  private RegionMap(int aTlbSize, Chunk[] aChunks, Chunk[][] aPages, Watchpoint[] aWatchpoints, int[] aWatchedPages)
+  {
+    this.chunks = aChunks;
+    this.pages = aPages;
+    this.watchpoints = aWatchpoints;
+    this.watchedPages = aWatchedPages;
+
+    this.tlbMask = aTlbSize - 1;
+    this.fetchTlb = new TlbEntry[aTlbSize];
+    this.dataTlb = new TlbEntry[aTlbSize];
+    Arrays.fill(this.fetchTlb, INVALID);
+    Arrays.fill(this.dataTlb, INVALID);
+  }
+
+  // METHODS
+
+  /**
+   * Finds a chunk of memory that maps the given address.
+   * 
+   * @param aAddress
+   *          the address to return the memory chunk for.
+   * @return a memory chunk for the given address, can be <code>null</code> if
+   *         no chunk maps to the given address.
+   */
+  Chunk find(long aAddress)
+  {
+    Chunk c = pageEntry((int) (aAddress >>> Memory.PAGE_SHIFT));
+    if (c == SHARED)
+    {
+      return scan(aAddress);
+    }
+    if ((c != null) && c.maps(aAddress))
+    {
+      return c;
+    }
+    return null;
+  }
+
+  /**
+   * Invalidates the data TLB entry of the given page. Used for entries that
+   * are merely less efficient than needed, as another thread might fill the
+   * same entry again.
+   * 
+   * @param aPage
+   *          the page number.
+   */
+  void evictData(int aPage)
+  {
+    int idx = aPage & this.tlbMask;
+    if (this.dataTlb[idx].page == aPage)
+    {
+      this.dataTlb[idx] = INVALID;
+    }
+  }
+
+  /**
+   * @param aPage
+   *          the page number.
+   * @return <code>true</code> if the given page carries a watchpoint,
+   *         <code>false</code> otherwise.
+   */
+  boolean isWatched(int aPage)
+  {
+    int[] watched = this.watchedPages;
+    return (watched != null) && ((watched[aPage >>> 5] & (1 << aPage)) != 0);
+  }
+
+  /**
+   * Returns whether the given chunk is the only chunk that maps the given page,
+   * and maps all of it, which is the case for which TLB entries can be used.
+   * 
+   * @param aChunk
+   *          the chunk to test, can be <code>null</code>;
+   * @param aPage
+   *          the page number.
+   * @return <code>true</code> if the given chunk maps the entire page,
+   *         <code>false</code> otherwise.
+   */
+  boolean mapsPage(Chunk aChunk, int aPage)
+  {
+    int start = aPage << Memory.PAGE_SHIFT;
+    return (aChunk != null) && (pageEntry(aPage) == aChunk) && aChunk.maps(start)
+        && aChunk.maps(start + Memory.PAGE_SIZE - 1);
+  }
+
+  /**
+   * @return a copy of this snapshot with empty TLBs.
+   */
+  RegionMap withEmptyTlb()
+  {
+    return new RegionMap(this.tlbMask + 1, this.chunks, this.pages, this.watchpoints, this.watchedPages);
+  }
+
+  /**
+   * @param aChunk
+   *          the chunk to add, cannot be <code>null</code>.
+   * @return a copy of this snapshot that maps the given chunk as well.
+   */
+  RegionMap withChunk(Chunk aChunk)
+  {
+    Chunk[] chunks = Arrays.copyOf(this.chunks, this.chunks.length + 1);
+    chunks[chunks.length - 1] = aChunk;
+
+    Chunk[][] pages = this.pages.clone();
+    map(pages, aChunk, true);
+
+    return new RegionMap(this.tlbMask + 1, chunks, pages, this.watchpoints, this.watchedPages);
+  }
+
+  /**
+   * @param aChunk
+   *          the chunk to remove, cannot be <code>null</code>.
+   * @return a copy of this snapshot without the given chunk.
+   */
+  RegionMap withoutChunk(Chunk aChunk)
+  {
+    List<Chunk> chunks = new ArrayList<Chunk>();
+    Chunk[][] pages = new Chunk[LEVEL_SIZE][];
+    for (Chunk c : this.chunks)
+    {
+      if (c != aChunk)
+      {
+        chunks.add(c);
+        map(pages, c, false);
+      }
+    }
+
+    return new RegionMap(this.tlbMask + 1, chunks.toArray(new Chunk[chunks.size()]), pages, this.watchpoints,
+        this.watchedPages);
+  }
+
+  /**
+   * @param aWatchpoints
+   *          the new watchpoints, cannot be <code>null</code>.
+   * @return a copy of this snapshot with the given watchpoints.
+   */
+  RegionMap withWatchpoints(Watchpoint[] aWatchpoints)
+  {
+    int[] watched = null;
+    if (aWatchpoints.length > 0)
+    {
+      watched = new int[1 << (32 - Memory.PAGE_SHIFT - 5)];
+      for (Watchpoint w : aWatchpoints)
+      {
+        long first = (w.address & 0xFFFFFFFFL) >>> Memory.PAGE_SHIFT;
+        long last = ((w.address & 0xFFFFFFFFL) + w.length - 1) >>> Memory.PAGE_SHIFT;
+        for (long p = first; p <= last; p++)
+        {
+          int page = (int) p & ((1 << (32 - Memory.PAGE_SHIFT)) - 1);
+          watched[page >>> 5] |= (1 << page);
+        }
+      }
+    }
+
+    return new RegionMap(this.tlbMask + 1, this.chunks, this.pages, aWatchpoints, watched);
+  }
+
+  /**
+   * Enters the given chunk in the given page table, for all pages it
+   * (partially) maps.
+   * 
+   * @param aPages
+   *          the page table to update;
+   * @param aChunk
+   *          the chunk to map, cannot be <code>null</code>;
+   * @param aShared
+   *          <code>true</code> if the second-level tables of the given page
+   *          table are shared with another snapshot, and should be copied
+   *          before they are changed.
+   */
+  private static void map(Chunk[][] aPages, Chunk aChunk, boolean aShared)
+  {
+    // Chunks map their addresses modulo 4 GB...
+    long first = aChunk.getBaseAddress() >>> Memory.PAGE_SHIFT;
+    long last = (aChunk.getBaseAddress() + aChunk.getSize() - 1) >>> Memory.PAGE_SHIFT;
+
+    int copied = -1;
+    for (long p = first; p <= last; p++)
+    {
+      int page = (int) p;
+      int level = (page >>> LEVEL_SHIFT) & LEVEL_MASK;
+
+      Chunk[] table = aPages[level];
+      if (table == null)
+      {
+        table = aPages[level] = new Chunk[LEVEL_SIZE];
+        copied = level;
+      }
+      else if (aShared && (copied != level))
+      {
+        table = aPages[level] = table.clone();
+        copied = level;
+      }
+
+      int idx = page & LEVEL_MASK;
+      if (table[idx] == null)
+      {
+        table[idx] = aChunk;
+      }
+      else if (table[idx] != aChunk)
+      {
+        table[idx] = SHARED;
+      }
+    }
+  }
+
+  /**
+   * @param aPage
+   *          the page number, only its lower 20 bits are used.
+   * @return the page table entry of the given page, can be <code>null</code>.
+   */
+  private Chunk pageEntry(int aPage)
+  {
+    Chunk[] table = this.pages[(aPage >>> LEVEL_SHIFT) & LEVEL_MASK];
+    if (table == null)
+    {
+      return null;
+    }
+    return table[aPage & LEVEL_MASK];
+  }
+
+  /**
+   * Finds the first chunk that maps the given address by scanning all chunks,
+   * which is only needed for pages that are shared by multiple chunks.
+   * 
+   * @param aAddress
+   *          the address to return the memory chunk for.
+   * @return a memory chunk for the given address, can be <code>null</code>.
+   */
+  private Chunk scan(long aAddress)
+  {
+    for (Chunk c : this.chunks)
+    {
+      if (c.maps(aAddress))
+      {
+        return c;
+      }
+    }
+    return null;
+  }
+}
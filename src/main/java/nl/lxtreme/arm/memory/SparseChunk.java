@@ -0,0 +1,425 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+
+/**
+ * Provides a chunk of memory whose storage is only allocated, per 4 KB page,
+ * when that page is first written to. Untouched pages read as 0xFF, like the
+ * pages of a regular chunk.
+ * <p>
+ * Large memory regions, of which only a small part is actually used, then
+ * only take up as much memory as their used pages.
+ * </p>
+ * <p>
+ * Pages are allocated atomically, so multiple CPU threads can share a sparse
+ * chunk: when they first write to the same page at once, only one page is
+ * allocated, and all writes end up in it.
+ * </p>
+ */
+public class SparseChunk extends Chunk
+{
+  // INNER TYPES
+
+  /**
+   * Denotes an allocated page, with views for data and instructions on the
+   * same storage.
+   */
+  static final class Page
+  {
+    // VARIABLES
+
+    final byte[] storage;
+    final ByteBuffer data;
+    final ByteBuffer code;
+
+    // CONSTRUCTORS
+
+    /**
+     * Creates a new Page instance.
+     */
+    Page(byte[] aStorage, Endianness aEndianness)
+    {
+      this.storage = aStorage;
+      this.data = ByteBuffer.wrap(aStorage).order(aEndianness.dataOrder);
+      this.code = ByteBuffer.wrap(aStorage).order(aEndianness.codeOrder);
+    }
+  }
+
+  // CONSTANTS
+
+  private static final int PAGE_SHIFT = Memory.PAGE_SHIFT;
+  private static final int PAGE_SIZE = Memory.PAGE_SIZE;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+  /** The value of untouched memory, regardless of the width of the access. */
+  private static final int FILL = -1;
+
+  // VARIABLES
+
+  private final AtomicReferenceArray<Page> pages;
+  private final AtomicLong allocated;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new, word-invariant big-endian, SparseChunk instance.
+   * 
+   * @param aAddress
+   *          the base address of this chunk;
+   * @param aSize
+   *          the size of this chunk, in bytes, &gt; 0.
+   */
+  public SparseChunk(long aAddress, int aSize)
+  {
+    this(aAddress, aSize, Endianness.BE_32);
+  }
+
+  /**
+   * Creates a new SparseChunk instance.
+   * 
+   * @param aAddress
+   *          the base address of this chunk;
+   * @param aSize
+   *          the size of this chunk, in bytes, &gt; 0;
+   * @param aEndianness
+   *          the byte order of this chunk, cannot be <code>null</code>.
+   */
+  public SparseChunk(long aAddress, int aSize, Endianness aEndianness)
+  {
+    super(aAddress, aSize, null, aEndianness);
+
+    this.pages = new AtomicReferenceArray<Page>((int) ((aSize + (long) PAGE_MASK) >>> PAGE_SHIFT));
+    this.allocated = new AtomicLong();
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized void dispose()
+  {
+    super.dispose();
+
+    for (int i = 0; i < this.pages.length(); i++)
+    {
+      this.pages.set(i, null);
+    }
+    this.allocated.set(0L);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public short fetch16(int aAddr)
+  {
+    return (short) read(aAddr, 2, true);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int fetch32(int aAddr)
+  {
+    return read(aAddr, 4, true);
+  }
+
+  /**
+   * Returns the amount of memory that is actually allocated by this chunk.
+   * 
+   * @return the allocated size, in bytes, &gt;= 0.
+   */
+  public long getAllocatedSize()
+  {
+    return this.allocated.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public short read16(int aAddr)
+  {
+    return (short) read(aAddr, 2, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read32(int aAddr)
+  {
+    return read(aAddr, 4, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public byte read8(int aAddr)
+  {
+    return (byte) read(aAddr, 1, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write16(int aAddr, short aValue)
+  {
+    write(aAddr, 2, aValue);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write32(int aAddr, int aValue)
+  {
+    write(aAddr, 4, aValue);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write8(int aAddr, byte aValue)
+  {
+    write(aAddr, 1, aValue);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void put(int aOffset, byte aValue)
+  {
+    page(aOffset >>> PAGE_SHIFT).data.put(aOffset & PAGE_MASK, aValue);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  boolean canSnapshot()
+  {
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Pages that hold nothing but untouched memory afterwards, such as pages
+   * allocated after the snapshot, are freed again.
+   * </p>
+   */
+  @Override
+  void restorePage(int aOffset, int aLength, byte[] aSaved)
+  {
+    for (int p = aOffset >>> PAGE_SHIFT; p <= ((aOffset + aLength - 1) >>> PAGE_SHIFT); p++)
+    {
+      int start = p << PAGE_SHIFT;
+      int from = Math.max(aOffset, start);
+      int to = (int) Math.min(aOffset + (long) aLength, start + (long) PAGE_SIZE);
+
+      Page page = this.pages.get(p);
+      if (aSaved == null)
+      {
+        if (page != null)
+        {
+          Arrays.fill(page.storage, from - start, to - start, (byte) FILL);
+        }
+      }
+      else if ((page != null) || !isUntouched(aSaved, from - aOffset, to - aOffset))
+      {
+        page = page(p);
+        System.arraycopy(aSaved, from - aOffset, page.storage, from - start, to - from);
+      }
+
+      if ((page != null) && isUntouched(page.storage, 0, page.storage.length))
+      {
+        this.pages.set(p, null);
+        this.allocated.addAndGet(-page.storage.length);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * Pages that are not allocated are saved as <code>null</code>.
+   * </p>
+   */
+  @Override
+  byte[] savePage(int aOffset, int aLength)
+  {
+    byte[] result = null;
+    for (int p = aOffset >>> PAGE_SHIFT; p <= ((aOffset + aLength - 1) >>> PAGE_SHIFT); p++)
+    {
+      Page page = this.pages.get(p);
+      if (page == null)
+      {
+        continue;
+      }
+      if (result == null)
+      {
+        result = new byte[aLength];
+        Arrays.fill(result, (byte) FILL);
+      }
+
+      int start = p << PAGE_SHIFT;
+      int from = Math.max(aOffset, start);
+      int to = (int) Math.min(aOffset + (long) aLength, start + (long) PAGE_SIZE);
+      System.arraycopy(page.storage, from - start, result, from - aOffset, to - from);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the given page, allocating it if needed.
+   * 
+   * @param aPage
+   *          the index of the page.
+   * @return the page, never <code>null</code>.
+   */
+  private Page page(int aPage)
+  {
+    Page result = this.pages.get(aPage);
+    if (result == null)
+    {
+      // The last page only covers the remainder of this chunk...
+      byte[] storage = new byte[Math.min(PAGE_SIZE, getSize() - (aPage << PAGE_SHIFT))];
+      Arrays.fill(storage, (byte) FILL);
+
+      result = new Page(storage, getEndianness());
+      if (this.pages.compareAndSet(aPage, null, result))
+      {
+        this.allocated.addAndGet(storage.length);
+      }
+      else
+      {
+        // Another thread allocated the page first, use that one...
+        result = this.pages.get(aPage);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return <code>true</code> if the given range of the given array only holds
+   *         the value of untouched memory, <code>false</code> otherwise.
+   */
+  private static boolean isUntouched(byte[] aData, int aFrom, int aTo)
+  {
+    for (int i = aFrom; i < aTo; i++)
+    {
+      if (aData[i] != (byte) FILL)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads a value of the given width.
+   * 
+   * @return the value read, not sign- or zero-extended.
+   */
+  private int read(int aAddr, int aWidth, boolean aFetch)
+  {
+    int addr = mapAddress(aAddr);
+    if (!validAddress(addr) || !validAddress(addr + aWidth - 1))
+    {
+      throw invalidAccess(aAddr, false, aFetch);
+    }
+
+    int offset = addr & PAGE_MASK;
+    if ((offset + aWidth) > PAGE_SIZE)
+    {
+      // Unaligned access spanning two pages...
+      Endianness endianness = getEndianness();
+      ByteOrder order = aFetch ? endianness.codeOrder : endianness.dataOrder;
+
+      int result = 0;
+      for (int i = 0; i < aWidth; i++)
+      {
+        Page page = this.pages.get((addr + i) >>> PAGE_SHIFT);
+        int b = (page == null) ? 0xFF : (page.storage[(addr + i) & PAGE_MASK] & 0xFF);
+        result = (order == ByteOrder.BIG_ENDIAN) ? ((result << 8) | b) : (result | (b << (8 * i)));
+      }
+      return result;
+    }
+
+    Page page = this.pages.get(addr >>> PAGE_SHIFT);
+    if (page == null)
+    {
+      return FILL;
+    }
+
+    ByteBuffer view = aFetch ? page.code : page.data;
+    if (aWidth == 4)
+    {
+      return view.getInt(offset);
+    }
+    else if (aWidth == 2)
+    {
+      return view.getShort(offset);
+    }
+    return view.get(offset);
+  }
+
+  /**
+   * Writes a value of the given width.
+   */
+  private void write(int aAddr, int aWidth, int aValue)
+  {
+    int addr = mapAddress(aAddr);
+    if (!validAddress(addr) || !validAddress(addr + aWidth - 1))
+    {
+      throw invalidAccess(aAddr, true, false);
+    }
+
+    int offset = addr & PAGE_MASK;
+    if ((offset + aWidth) > PAGE_SIZE)
+    {
+      // Unaligned access spanning two pages...
+      boolean bigEndian = getEndianness().dataOrder == ByteOrder.BIG_ENDIAN;
+      for (int i = 0; i < aWidth; i++)
+      {
+        int shift = 8 * (bigEndian ? (aWidth - 1 - i) : i);
+        put(addr + i, (byte) (aValue >> shift));
+      }
+    }
+    else
+    {
+      ByteBuffer page = page(addr >>> PAGE_SHIFT).data;
+      if (aWidth == 4)
+      {
+        page.putInt(offset, aValue);
+      }
+      else if (aWidth == 2)
+      {
+        page.putShort(offset, (short) aValue);
+      }
+      else
+      {
+        page.put(offset, (byte) aValue);
+      }
+    }
+
+    stored(addr, aWidth);
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+/**
+ * Provides a view on a chunk that checks all data accesses for watchpoints,
+ * and all writes for code that should be invalidated.
+ * <p>
+ * A {@link Memory} only hands out this view for pages that carry a watchpoint
+ * or hold decoded code, so accesses to all other pages go to the chunk
+ * directly and do not pay for any check.
+ * </p>
+ */
+final class TrackingChunk extends Chunk
+{
+  // VARIABLES
+
+  private final Memory memory;
+  private final Chunk chunk;
+
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new TrackingChunk instance.
+   * 
+   * @param aMemory
+   *          the memory that holds the watchpoints;
+   * @param aChunk
+   *          the chunk to pass all accesses on to.
+   */
+  TrackingChunk(Memory aMemory, Chunk aChunk)
+  {
+    super(aChunk.getBaseAddress(), aChunk.getSize(), null, aChunk.getEndianness());
+
+    this.memory = aMemory;
+    this.chunk = aChunk;
+  }
+
+  // METHODS
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public short fetch16(int aAddr)
+  {
+    return this.chunk.fetch16(aAddr);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int fetch32(int aAddr)
+  {
+    return this.chunk.fetch32(aAddr);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public short read16(int aAddr)
+  {
+    short value = this.chunk.read16(aAddr);
+    this.memory.watched(aAddr, 2, value & 0xFFFF, false);
+    return value;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int read32(int aAddr)
+  {
+    int value = this.chunk.read32(aAddr);
+    this.memory.watched(aAddr, 4, value, false);
+    return value;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public byte read8(int aAddr)
+  {
+    byte value = this.chunk.read8(aAddr);
+    this.memory.watched(aAddr, 1, value & 0xFF, false);
+    return value;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString()
+  {
+    return "tracked " + this.chunk;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write16(int aAddr, short aValue)
+  {
+    this.chunk.write16(aAddr, aValue);
+    this.memory.written(this.chunk, aAddr, 2, aValue & 0xFFFF);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write32(int aAddr, int aValue)
+  {
+    this.chunk.write32(aAddr, aValue);
+    this.memory.written(this.chunk, aAddr, 4, aValue);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void write8(int aAddr, byte aValue)
+  {
+    this.chunk.write8(aAddr, aValue);
+    this.memory.written(this.chunk, aAddr, 1, aValue & 0xFF);
+  }
+}
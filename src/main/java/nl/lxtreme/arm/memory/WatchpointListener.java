@@ -0,0 +1,30 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+/**
+ * Denotes a listener that is called when a watched address is accessed.
+ * 
+ * @see Memory#addWatchpoint(int, int, boolean, boolean)
+ */
+public interface WatchpointListener
+{
+  // METHODS
+
+  /**
+   * Called after a watched address is read or written.
+   * 
+   * @param aAddress
+   *          the accessed address;
+   * @param aValue
+   *          the value read or written;
+   * @param aWrite
+   *          <code>true</code> if the access is a write, <code>false</code> if
+   *          it is a read.
+   */
+  void watchpointHit(int aAddress, int aValue, boolean aWrite);
+}
@@ -0,0 +1,140 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.io.*;
+import java.util.*;
+
+import nl.lxtreme.arm.memory.*;
+import nl.lxtreme.binutils.elf.*;
+import nl.lxtreme.binutils.hex.*;
+
+
+/**
+ * Compares the table-driven ARM decoder with the original cascade, by decoding
+ * all words of the bundled ELF and hex images over and over again.
+ * <p>
+ * Run from the command line with the test resources on the classpath; not a
+ * unit test.
+ * </p>
+ */
+public class ArmDecoderBenchmark
+{
+  // CONSTANTS
+
+  private static final String[] ELF_IMAGES = { "helloWorld_static", "helloWorld_loop" };
+  private static final String[] HEX_IMAGES = { "arm7tdmi_Blinky_iFlash.hex", "blinkingLEDAndButton.hex",
+      "blinking_leds.hex", "led.hex", "rtcAndInterruptExample.hex" };
+
+  private static final int ROUNDS = 10;
+  private static final int ITERATIONS = 200;
+
+  // METHODS
+
+  /**
+   * @param aArgs
+   *          the command line arguments, ignored.
+   * @throws IOException
+   *           in case the images could not be read.
+   */
+  public static void main(String[] aArgs) throws IOException
+  {
+    int[] opcodes = loadOpcodes();
+    System.out.printf("Decoding %d opcodes, %d times per round...%n", opcodes.length, ITERATIONS);
+
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      long cascade = run(opcodes, false);
+      long table = run(opcodes, true);
+
+      double count = (double) opcodes.length * ITERATIONS;
+      System.out.printf("Round %2d: cascade %6.2f ns/op, table %6.2f ns/op%n", round, cascade / count, table / count);
+    }
+  }
+
+  /**
+   * @param aOpcodes
+   * @param aTable
+   * @return the elapsed time, in nanoseconds.
+   */
+  private static long run(int[] aOpcodes, boolean aTable)
+  {
+    int hash = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++)
+    {
+      for (int opcode : aOpcodes)
+      {
+        Instruction insn = aTable ? ArmDecoder.decode(opcode) : CascadeArmDecoder.decode(opcode);
+        hash += insn.opcode;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    if (hash == 42)
+    {
+      // Keeps the JIT from eliminating the decoding...
+      System.out.println();
+    }
+    return elapsed;
+  }
+
+  /**
+   * @return all 32-bit words of the bundled images.
+   * @throws IOException
+   */
+  private static int[] loadOpcodes() throws IOException
+  {
+    ClassLoader cl = ArmDecoderBenchmark.class.getClassLoader();
+    List<Integer> words = new ArrayList<Integer>();
+
+    for (String name : ELF_IMAGES)
+    {
+      Elf elf = new Elf(new File(cl.getResource(name).getPath()));
+      for (ProgramHeader ph : elf.getProgramHeaders())
+      {
+        int size = (int) ph.getMemorySize();
+        if (size <= 0)
+        {
+          continue;
+        }
+
+        Chunk chunk = new Chunk(ph.getVirtualAddress(), size);
+        elf.readSegment(ph, chunk);
+
+        int base = (int) ph.getVirtualAddress();
+        for (int offset = 0; offset + 4 <= size; offset += 4)
+        {
+          words.add(Integer.valueOf(chunk.read32(base + offset)));
+        }
+      }
+    }
+
+    for (String name : HEX_IMAGES)
+    {
+      IntelHexReader reader = new IntelHexReader(new InputStreamReader(cl.getResourceAsStream(name)));
+      try
+      {
+        int word;
+        while ((word = reader.readLongWord()) != -1)
+        {
+          words.add(Integer.valueOf(word));
+        }
+      }
+      finally
+      {
+        reader.close();
+      }
+    }
+
+    int[] result = new int[words.size()];
+    for (int i = 0; i < result.length; i++)
+    {
+      result[i] = words.get(i).intValue();
+    }
+    return result;
+  }
+}
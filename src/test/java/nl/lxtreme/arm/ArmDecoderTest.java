@@ -0,0 +1,75 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+
+/**
+ * Tests the table-driven ARM decoder against the original cascade.
+ */
+public class ArmDecoderTest
+{
+  // CONSTANTS
+
+  private static final int[] MIDDLE_BITS = { 0x000, 0xFFF, 0xF00, 0x0FF, 0x5A5 };
+  private static final int[] LOW_BITS = { 0x0, 0xF };
+
+  // METHODS
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.ArmDecoder#decode(int)}.
+   */
+  @Test
+  public void testDecodeAllTableEntries()
+  {
+    for (int index = 0; index < 4096; index++)
+    {
+      int opcode = ((index & 0xFF0) << 16) | ((index & 0x0F) << 4);
+
+      for (int cond = 0; cond < 16; cond++)
+      {
+        for (int middle : MIDDLE_BITS)
+        {
+          for (int low : LOW_BITS)
+          {
+            assertSameDecoding(opcode | (cond << 28) | (middle << 8) | low);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.ArmDecoder#decode(int)}.
+   */
+  @Test
+  public void testDecodeRandomOpcodes()
+  {
+    Random rnd = new Random(0x41524d);
+    for (int i = 0; i < 100000; i++)
+    {
+      assertSameDecoding(rnd.nextInt());
+    }
+  }
+
+  /**
+   * @param aOpcode
+   */
+  private void assertSameDecoding(int aOpcode)
+  {
+    Instruction expected = CascadeArmDecoder.decode(aOpcode);
+    Instruction actual = ArmDecoder.decode(aOpcode);
+
+    assertEquals(String.format("0x%08x", aOpcode), expected.getClass(), actual.getClass());
+    assertEquals(aOpcode, actual.opcode);
+  }
+}
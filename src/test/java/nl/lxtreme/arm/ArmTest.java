@@ -75,7 +75,7 @@ public class ArmTest
   {
     this.m = new Memory();
     // Initial stack of 8Kb...
-    this.m.create(0xFFFFFFFFL - STACK_SIZE, STACK_SIZE);
+    this.m.create(0x100000000L - STACK_SIZE, STACK_SIZE);
     this.arm = new Arm(this.m);
   }
 
@@ -163,6 +163,26 @@ public class ArmTest
     }
   }
 
+  /**
+   * Tests that executing whole blocks yields the same state as stepping
+   * through the same number of instructions one at a time.
+   */
+  @Test
+  public void testElfExample1BlockExecution() throws Exception
+  {
+    assertBlockExecutionMatchesStepping("helloWorld_static", 500);
+  }
+
+  /**
+   * Tests that executing whole blocks yields the same state as stepping
+   * through the same number of instructions one at a time.
+   */
+  @Test
+  public void testElfExample2BlockExecution() throws Exception
+  {
+    assertBlockExecutionMatchesStepping("helloWorld_loop", 500);
+  }
+
   /**
    * 
    */
@@ -197,6 +217,51 @@ public class ArmTest
     }
   }
 
+  /**
+   * Tests that the PLL setup of example 2 talks to a memory-mapped device,
+   * and stops polling once the PLL reports it is locked.
+   */
+  @Test
+  public void testExample2WithDevice() throws Exception
+  {
+    final int[] pllStatReads = { 0 };
+    final StringBuilder feeds = new StringBuilder();
+
+    this.m.create(0, 4096);
+    // LPC2xxx system control block, of which PLLSTAT and PLLFEED are used...
+    this.m.register(0xE01FC000L, 0x1000, new Device()
+    {
+      public int read(int aOffset, int aWidth)
+      {
+        if (aOffset == 0x88)
+        {
+          pllStatReads[0]++;
+          return 0x400; // PLOCK
+        }
+        return 0;
+      }
+
+      public void write(int aOffset, int aWidth, int aValue)
+      {
+        if (aOffset == 0x8C)
+        {
+          feeds.append(String.format("%02X ", aValue));
+        }
+      }
+    });
+
+    loadIntelHexResource("arm7tdmi_Blinky_iFlash.hex");
+
+    int i = 250;
+    while (i-- >= 0)
+    {
+      this.arm.step();
+    }
+
+    assertEquals(1, pllStatReads[0]);
+    assertTrue(feeds.toString(), feeds.toString().startsWith("AA 55 AA 55 "));
+  }
+
   /**
    * 
    */
@@ -248,6 +313,323 @@ public class ArmTest
     }
   }
 
+  /**
+   * Tests that rewriting an already executed instruction causes it to be
+   * decoded again.
+   */
+  @Test
+  public void testModifiedCodeIsDecodedAgain()
+  {
+    this.m.create(0, 4096);
+
+    this.m.write32(0, 0xE3A00001); // mov r0, #1
+    this.arm.step();
+    assertEquals(1, this.arm.peekReg(0));
+
+    this.arm.reset();
+
+    this.m.write32(0, 0xE3A00002); // mov r0, #2
+    this.arm.step();
+    assertEquals(2, this.arm.peekReg(0));
+  }
+
+  /**
+   * Tests that code copied over already translated code, as a bootloader
+   * does, is executed instead of the stale translation.
+   */
+  @Test
+  public void testCopiedCodeIsTranslatedAgain()
+  {
+    writeCountingLoop();
+
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(100, this.arm.peekReg(0));
+
+    // Copy a loop counting in steps of two over the original one...
+    this.m.write32(0x800, 0xE2800002); // add r0, r0, #2
+    this.m.copy(0x800, 4, 4);
+
+    this.arm.reset();
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(100, this.arm.peekReg(0));
+    assertEquals(152, this.arm.getInstructionCount());
+  }
+
+  /**
+   * Tests that running a program stops when it exceeds its budget.
+   */
+  @Test
+  public void testRunBudgetExhausted()
+  {
+    writeCountingLoop();
+
+    assertEquals(StopReason.BUDGET_EXHAUSTED, this.arm.run(10));
+    assertEquals(10, this.arm.getInstructionCount());
+
+    assertEquals(StopReason.BUDGET_EXHAUSTED, this.arm.run(250));
+    assertEquals(260, this.arm.getInstructionCount());
+  }
+
+  /**
+   * Tests that running a program stops at a breakpoint.
+   */
+  @Test
+  public void testRunBreakpoint()
+  {
+    writeCountingLoop();
+    this.arm.breakAdd(16);
+
+    assertEquals(StopReason.BREAKPOINT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(16, this.arm.peekReg(15));
+    assertEquals(100, this.arm.peekReg(0));
+    assertEquals(301, this.arm.getInstructionCount());
+  }
+
+  /**
+   * Tests that running a program stops when it exits.
+   */
+  @Test
+  public void testRunExit()
+  {
+    writeCountingLoop();
+
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(100, this.arm.peekReg(0));
+    assertEquals(302, this.arm.getInstructionCount());
+
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(302, this.arm.getInstructionCount());
+  }
+
+  /**
+   * Tests that running a program stops at unmapped memory or undefined
+   * instructions.
+   */
+  @Test
+  public void testRunFaults()
+  {
+    this.m.create(0, 4096);
+    this.m.write32(0, 0xE3A00001); // mov r0, #1
+    this.m.write32(4, 0xEC000000); // undefined
+
+    assertEquals(StopReason.UNDEFINED_INSTRUCTION, this.arm.run(Long.MAX_VALUE));
+    assertEquals(4, this.arm.peekReg(15));
+    assertEquals(1, this.arm.getInstructionCount());
+
+    this.arm.setPC(0x100000);
+    assertEquals(StopReason.MEMORY_FAULT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(0x100000, this.arm.peekReg(15));
+  }
+
+  /**
+   * Tests that an invalid data access raises a data abort when the memory
+   * policy says so.
+   */
+  @Test
+  public void testRunDataAbort()
+  {
+    this.m.create(0, 4096);
+    this.m.write32(0, 0xE3A00601); // mov r0, #0x100000
+    this.m.write32(4, 0xE5901000); // ldr r1, [r0]
+    this.m.write32(0x10, 0xE3A02001); // mov r2, #1 (data abort vector)
+    this.m.write32(0x14, 0xEC000000); // undefined
+    this.m.setInvalidAccessPolicy(InvalidAccessPolicy.ABORT);
+
+    assertEquals(StopReason.UNDEFINED_INSTRUCTION, this.arm.run(Long.MAX_VALUE));
+    assertEquals(0x14, this.arm.peekReg(15));
+    assertEquals(12, this.arm.peekReg(14));
+    assertEquals(1, this.arm.peekReg(2));
+    assertEquals(1, this.m.getFaultCount(0x100000));
+  }
+
+  /**
+   * Tests that an invalid data access stops a run when the memory policy says
+   * so.
+   */
+  @Test
+  public void testRunStopsOnInvalidAccess()
+  {
+    this.m.create(0, 4096);
+    this.m.write32(0, 0xE3A00601); // mov r0, #0x100000
+    this.m.write32(4, 0xE5901000); // ldr r1, [r0]
+    this.m.setInvalidAccessPolicy(InvalidAccessPolicy.STOP);
+
+    assertEquals(StopReason.MEMORY_FAULT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(4, this.arm.peekReg(15));
+    assertEquals(1, this.arm.getInstructionCount());
+    assertEquals(1L, this.m.getFaultCount());
+  }
+
+  /**
+   * Tests that running a program stops right after an instruction that writes
+   * to a watched address, both in the interpreter and in translated blocks.
+   */
+  @Test
+  public void testRunWatchpoint()
+  {
+    this.m.create(0, 4096);
+    this.m.write32(0, 0xE3A00000); // mov r0, #0
+    this.m.write32(4, 0xE2800001); // add r0, r0, #1
+    this.m.write32(8, 0xE5810000); // str r0, [r1]
+    this.m.write32(12, 0xE3500064); // cmp r0, #100
+    this.m.write32(16, 0x1AFFFFFB); // bne 4
+    this.m.write32(20, 0xEF000000); // swi 0
+    this.arm.pokeReg(1, 0x800);
+
+    this.arm.watchAdd(0x800, 4, false, true);
+    this.arm.watchAdd(0x900, 4, true, true);
+
+    for (int i = 1; i <= 50; i++)
+    {
+      assertEquals(StopReason.WATCHPOINT, this.arm.run(Long.MAX_VALUE));
+      assertEquals(12, this.arm.peekReg(15));
+      assertEquals(i, this.arm.peekReg(0));
+    }
+
+    this.arm.watchDel(0x800);
+
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(100, this.arm.peekReg(0));
+    assertEquals(100, this.m.read32(0x800));
+  }
+
+  /**
+   * Tests that restoring a snapshot resets both the CPU and its memory, so a
+   * program can be run again from the same state.
+   */
+  @Test
+  public void testSnapshotRestore()
+  {
+    this.m.create(0, 4096);
+    this.m.write32(0, 0xE5910000); // ldr r0, [r1]
+    this.m.write32(4, 0xE2800001); // add r0, r0, #1
+    this.m.write32(8, 0xE5810000); // str r0, [r1]
+    this.m.write32(12, 0xEF000000); // swi 0
+    this.m.write32(0x800, 41);
+    this.arm.pokeReg(1, 0x800);
+
+    ArmSnapshot snapshot = this.arm.snapshot();
+
+    for (int i = 0; i < 3; i++)
+    {
+      assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+      assertEquals(42, this.arm.peekReg(0));
+      assertEquals(42, this.m.read32(0x800));
+      assertEquals(4L, this.arm.getInstructionCount());
+
+      this.arm.restore(snapshot);
+      assertEquals(0, this.arm.peekReg(15));
+      assertEquals(0x800, this.arm.peekReg(1));
+      assertEquals(0L, this.arm.getInstructionCount());
+      assertEquals(41, this.m.read32(0x800));
+    }
+  }
+
+  /**
+   * Tests that the write syscall only copies the mapped part of a block with a
+   * bogus length, rather than allocating a buffer of that length.
+   */
+  @Test
+  public void testWriteSyscallIsClamped()
+  {
+    this.m.create(0, 4096);
+    this.m.write32(0, 0xE3A00001); // mov r0, #1
+    this.m.write32(4, 0xE3A01EFF); // mov r1, #0xFF0
+    this.m.write32(8, 0xE3E02102); // mvn r2, #0x80000000
+    this.m.write32(12, 0xEF000004); // swi 4
+    this.m.write32(16, 0xE1A03000); // mov r3, r0
+    this.m.write32(20, 0xE3A01801); // mov r1, #0x10000
+    this.m.write32(24, 0xE3A00001); // mov r0, #1
+    this.m.write32(28, 0xEF000004); // swi 4
+    this.m.write32(32, 0xEF000000); // swi 0
+
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(16, this.arm.peekReg(3));
+    // Unmapped addresses are not written at all...
+    assertEquals(0, this.arm.peekReg(0));
+  }
+
+  /**
+   * Tests that a trace sink receives every executed instruction, both from the
+   * interpreter and from translated blocks.
+   */
+  @Test
+  public void testTraceSink()
+  {
+    final StringBuilder trace = new StringBuilder();
+    final int[] count = { 0 };
+
+    writeCountingLoop();
+
+    assertNull(this.arm.getTraceSink());
+    this.arm.setTraceSink(new TraceSink()
+    {
+      @Override
+      public void instruction(int aAddress, int aOpcode, boolean aThumb)
+      {
+        assertFalse(aThumb);
+        assertEquals(ArmTest.this.m.read32(aAddress), aOpcode);
+        if (count[0]++ < 5)
+        {
+          trace.append(String.format("%X ", aAddress));
+        }
+      }
+    });
+
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(302, count[0]);
+    assertEquals("0 4 8 C 4 ", trace.toString());
+  }
+
+  /**
+   * Tests that registers stored with STM and loaded with LDM end up in the
+   * right order in memory.
+   */
+  @Test
+  public void testLoadStoreMultiple()
+  {
+    this.m.create(0, 4096);
+    this.m.write32(0, 0xE3A00C01); // mov r0, #0x100
+    this.m.write32(4, 0xE3A01001); // mov r1, #1
+    this.m.write32(8, 0xE3A02002); // mov r2, #2
+    this.m.write32(12, 0xE3A03003); // mov r3, #3
+    this.m.write32(16, 0xE920000E); // stmdb r0!, {r1-r3}
+    this.m.write32(20, 0xE8B00070); // ldmia r0!, {r4-r6}
+    this.m.write32(24, 0xEF000000); // swi 0
+
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+
+    assertEquals(1, this.m.read32(0xF4));
+    assertEquals(3, this.m.read32(0xFC));
+    assertEquals(0x100, this.arm.peekReg(0));
+    assertEquals(1, this.arm.peekReg(4));
+    assertEquals(2, this.arm.peekReg(5));
+    assertEquals(3, this.arm.peekReg(6));
+  }
+
+  /**
+   * Tests that a raw little-endian image runs from a little-endian memory map.
+   */
+  @Test
+  public void testRunLittleEndianImage() throws IOException
+  {
+    this.m = new Memory(Endianness.LITTLE);
+    this.arm = new Arm(this.m);
+
+    Chunk chunk = this.m.create(0, 4096);
+    int[] image = { 0xE3A00000, 0xE2800001, 0xE3500064, 0x1AFFFFFC, 0xEF000000 };
+    for (int insn : image)
+    {
+      chunk.write(insn);
+      chunk.write(insn >> 8);
+      chunk.write(insn >> 16);
+      chunk.write(insn >> 24);
+    }
+
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(100, this.arm.peekReg(0));
+  }
+
   /**
    * 
    */
@@ -271,6 +653,68 @@ public class ArmTest
     }
   }
 
+  /**
+   * @param aName
+   * @param aCount
+   * @throws IOException
+   */
+  private void assertBlockExecutionMatchesStepping(final String aName, final int aCount) throws IOException
+  {
+    Arm blockArm = createElfArm(aName);
+    Arm stepArm = createElfArm(aName);
+
+    int retired = 0;
+    while (retired < aCount)
+    {
+      int count = blockArm.stepBlock();
+      if (count == 0)
+      {
+        break;
+      }
+      retired += count;
+    }
+
+    while (retired-- > 0)
+    {
+      stepArm.step();
+    }
+
+    for (int i = 0; i < 16; i++)
+    {
+      assertEquals("r" + i, stepArm.peekReg(i), blockArm.peekReg(i));
+    }
+    assertEquals(stepArm.cpsr.getValue(), blockArm.cpsr.getValue());
+  }
+
+  /**
+   * @param aName
+   * @return a new CPU with the given ELF-file loaded in its own memory.
+   * @throws IOException
+   */
+  private Arm createElfArm(final String aName) throws IOException
+  {
+    Elf elf = new Elf(getFileResource(aName));
+
+    Memory memory = new Memory();
+    memory.create(0x100000000L - STACK_SIZE, STACK_SIZE);
+
+    for (ProgramHeader ph : elf.getProgramHeaders())
+    {
+      int size = (int) ph.getMemorySize();
+      if (size <= 0)
+      {
+        continue;
+      }
+
+      Chunk chunk = memory.create(ph.getVirtualAddress(), size);
+      elf.readSegment(ph, chunk);
+    }
+
+    Arm result = new Arm(memory);
+    result.setPC((int) elf.getHeader().getEntryPoint());
+    return result;
+  }
+
   /**
    * @param aName
    * @throws IOException
@@ -286,6 +730,20 @@ public class ArmTest
     return null; // to keep compiler happy...
   }
 
+  /**
+   * Writes a loop counting r0 from 0 to 100, followed by an exit-syscall.
+   */
+  private void writeCountingLoop()
+  {
+    this.m.create(0, 4096);
+
+    this.m.write32(0, 0xE3A00000); // mov r0, #0
+    this.m.write32(4, 0xE2800001); // add r0, r0, #1
+    this.m.write32(8, 0xE3500064); // cmp r0, #100
+    this.m.write32(12, 0x1AFFFFFC); // bne 4
+    this.m.write32(16, 0xEF000000); // swi 0
+  }
+
   /**
    * @param aName
    * @throws IOException
@@ -0,0 +1,199 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+
+/**
+ * Tests running many independent simulations in parallel.
+ */
+public class BatchRunnerTest
+{
+  // VARIABLES
+
+  private byte[] program;
+  private Image image;
+  private BatchRunner runner;
+
+  // METHODS
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    // Counts r0 up to the value of r1, then exits...
+    int[] program = { 0xE3A00000, // mov r0, #0
+        0xE2800001, // add r0, r0, #1
+        0xE1500001, // cmp r0, r1
+        0x1AFFFFFC, // bne 4
+        0xEF000000 // swi 0
+    };
+
+    byte[] data = new byte[4 * program.length];
+    for (int i = 0; i < program.length; i++)
+    {
+      data[4 * i] = (byte) (program[i] >> 24);
+      data[4 * i + 1] = (byte) (program[i] >> 16);
+      data[4 * i + 2] = (byte) (program[i] >> 8);
+      data[4 * i + 3] = (byte) program[i];
+    }
+
+    this.program = data;
+    this.image = new Image();
+    this.image.addSegment(0, 4096, data);
+
+    this.runner = new BatchRunner();
+  }
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @After
+  public void tearDown() throws Exception
+  {
+    this.runner.dispose();
+  }
+
+  /**
+   * Tests that each job runs with its own registers and patches, and that the
+   * results are in the order of the jobs.
+   */
+  @Test
+  public void testRunJobs() throws Exception
+  {
+    List<BatchJob> jobs = new ArrayList<BatchJob>();
+    for (int i = 1; i <= 200; i++)
+    {
+      BatchJob job = new BatchJob(this.image, Long.MAX_VALUE);
+      job.setRegister(1, i);
+      jobs.add(job);
+    }
+
+    // Patch the first instruction into "mov r0, #10"...
+    BatchJob patched = new BatchJob(this.image, Long.MAX_VALUE);
+    patched.addPatch(0, 0xE3A0000A);
+    patched.setRegister(1, 20);
+    jobs.add(patched);
+
+    List<BatchResult> results = this.runner.run(jobs);
+    assertEquals(jobs.size(), results.size());
+
+    for (int i = 0; i < 200; i++)
+    {
+      BatchResult result = results.get(i);
+      assertSame(jobs.get(i), result.getJob());
+      assertTrue(result.isExited());
+      assertEquals(i + 1, result.getExitCode());
+      assertEquals(3 * (i + 1) + 2, result.getInstructionCount());
+      assertEquals(0, result.getFaultCount());
+    }
+
+    assertEquals(20, results.get(200).getExitCode());
+    assertEquals(3 * 10 + 2, results.get(200).getInstructionCount());
+  }
+
+  /**
+   * Tests that the budget, invalid accesses and failures of a job end up in
+   * its result only.
+   */
+  @Test
+  public void testRunBudgetAndFaults() throws Exception
+  {
+    BatchJob endless = new BatchJob(this.image, 1000);
+    endless.setRegister(1, -1);
+
+    // Let the program start at unmapped memory...
+    BatchJob faulting = new BatchJob(this.image, 1000);
+    faulting.setRegister(15, 0x100000);
+
+    BatchJob exiting = new BatchJob(this.image, 1000);
+    exiting.setRegister(1, 5);
+
+    List<BatchResult> results = this.runner.run(Arrays.asList(endless, faulting, exiting));
+
+    assertEquals(StopReason.BUDGET_EXHAUSTED, results.get(0).getStopReason());
+    assertEquals(1000, results.get(0).getInstructionCount());
+
+    assertEquals(StopReason.MEMORY_FAULT, results.get(1).getStopReason());
+    assertEquals(0x100000, results.get(1).getRegister(15));
+    assertEquals(1, results.get(1).getFaultCount());
+
+    assertEquals(StopReason.EXIT, results.get(2).getStopReason());
+    assertEquals(5, results.get(2).getExitCode());
+  }
+
+  /**
+   * Tests that an image with an initialized segment in the upper half of the
+   * address space is loaded.
+   */
+  @Test
+  public void testRunHighSegment() throws Exception
+  {
+    Image high = new Image();
+    high.addSegment(0x90000000L, 4096, this.program);
+    high.setEntryPoint(0x90000000);
+
+    BatchJob job = new BatchJob(high, 1000);
+    job.setRegister(1, 3);
+
+    BatchResult result = this.runner.run(Arrays.asList(job)).get(0);
+    assertNull(result.getFailure());
+    assertTrue(result.isExited());
+    assertEquals(3, result.getExitCode());
+  }
+
+  /**
+   * Tests that jobs can run on an executor of the caller, using an ELF image.
+   */
+  @Test
+  public void testRunElfOnExecutor() throws Exception
+  {
+    URL resource = getClass().getClassLoader().getResource("helloWorld_static");
+    Image elf = Image.loadElf(new File(resource.toURI()));
+    elf.addSegment(0xFFFFE000L, 0x2000, null);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try
+    {
+      BatchRunner runner = new BatchRunner(executor);
+
+      List<BatchJob> jobs = new ArrayList<BatchJob>();
+      for (int i = 0; i < 8; i++)
+      {
+        BatchJob job = new BatchJob(elf, 500);
+        job.setRegister(13, 0xFFFFFFF0);
+        jobs.add(job);
+      }
+
+      List<BatchResult> results = runner.run(jobs);
+      for (BatchResult result : results)
+      {
+        assertNull(result.getFailure());
+        assertEquals(results.get(0).getStopReason(), result.getStopReason());
+        assertEquals(results.get(0).getInstructionCount(), result.getInstructionCount());
+        for (int i = 0; i < 16; i++)
+        {
+          assertEquals(results.get(0).getRegister(i), result.getRegister(i));
+        }
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+/**
+ * Provides the original if/switch cascade for decoding ARM opcodes, used as
+ * reference for the table-driven {@link ArmDecoder}.
+ */
+final class CascadeArmDecoder
+{
+  // CONSTRUCTORS
+
+  /**
+   * Creates a new CascadeArmDecoder instance, never used.
+   */
+  private CascadeArmDecoder()
+  {
+    // NO-op
+  }
+
+  // METHODS
+
+  /**
+   * Decodes the given ARM opcode.
+   * 
+   * @param aOpcode
+   *          the 32-bit opcode to decode.
+   * @return the decoded instruction, never <code>null</code>.
+   */
+  static Instruction decode(int aOpcode)
+  {
+    if (((aOpcode >> 8) & 0x0FFFFF) == 0x012FFF)
+    {
+      return new ArmDecoder.BranchExchange(aOpcode);
+    }
+
+    if ((aOpcode >>> 24) == 0xEF)
+    {
+      return new ArmDecoder.SoftwareInterrupt(aOpcode);
+    }
+
+    if ((((aOpcode >> 22) & 0x3F) == 0) && (((aOpcode >> 4) & 0x0F) == 9))
+    {
+      return new ArmDecoder.Multiply(aOpcode);
+    }
+
+    if ((((aOpcode >> 21) & 0x7F) == 0x0C) && (((aOpcode >> 4) & 0x0F) == 9))
+    {
+      return new ArmDecoder.Exclusive(aOpcode);
+    }
+
+    boolean S = ((aOpcode >> 20) & 1) != 0;
+
+    switch ((aOpcode >> 26) & 0x3)
+    {
+      case 0:
+      {
+        switch ((aOpcode >> 21) & 0xF)
+        {
+          case 0:
+            return new ArmDecoder.And(aOpcode);
+          case 1:
+            return new ArmDecoder.Eor(aOpcode);
+          case 2:
+            return new ArmDecoder.Sub(aOpcode);
+          case 3:
+            return new ArmDecoder.Rsb(aOpcode);
+          case 4:
+            return new ArmDecoder.Add(aOpcode);
+          case 5:
+            return new ArmDecoder.Adc(aOpcode);
+          case 6:
+            return new ArmDecoder.Sbc(aOpcode);
+          case 7:
+            return new ArmDecoder.Rsc(aOpcode);
+          case 8:
+            return S ? new ArmDecoder.Tst(aOpcode) : new ArmDecoder.Mrs(aOpcode);
+          case 9:
+            return S ? new ArmDecoder.Teq(aOpcode) : new ArmDecoder.Msr(aOpcode);
+          case 10:
+            return S ? new ArmDecoder.Cmp(aOpcode) : new ArmDecoder.StatusTransfer(aOpcode);
+          case 11:
+            return S ? new ArmDecoder.Cmn(aOpcode) : new ArmDecoder.StatusTransfer(aOpcode);
+          case 12:
+            return new ArmDecoder.Orr(aOpcode);
+          case 13:
+            return new ArmDecoder.Mov(aOpcode);
+          case 14:
+            return new ArmDecoder.Bic(aOpcode);
+          default:
+            return new ArmDecoder.Mvn(aOpcode);
+        }
+      }
+
+      case 1:
+      {
+        if (ArmDecoder.Barrier.matches(aOpcode))
+        {
+          return new ArmDecoder.Barrier(aOpcode);
+        }
+        if (S && (((aOpcode >> 16) & 0xF) == 15))
+        {
+          return new ArmDecoder.LoadLiteral(aOpcode);
+        }
+        return new ArmDecoder.LoadStore(aOpcode);
+      }
+
+      default:
+        break;
+    }
+
+    switch ((aOpcode >> 25) & 7)
+    {
+      case 4:
+        return new ArmDecoder.LoadStoreMultiple(aOpcode);
+      case 5:
+        return new ArmDecoder.Branch(aOpcode);
+      case 7:
+        if (ArmDecoder.SystemControl.matches(aOpcode))
+        {
+          return new ArmDecoder.SystemControl(aOpcode);
+        }
+        return new ArmDecoder.CoprocessorTransfer(aOpcode);
+    }
+
+    return new ArmDecoder.Unknown(aOpcode);
+  }
+}
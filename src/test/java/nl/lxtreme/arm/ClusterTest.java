@@ -0,0 +1,102 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import static org.junit.Assert.*;
+
+import nl.lxtreme.arm.memory.*;
+
+import org.junit.*;
+
+
+/**
+ * Tests multiple cores that share a single memory.
+ */
+public class ClusterTest
+{
+  // CONSTANTS
+
+  private static final int CORES = 4;
+
+  // VARIABLES
+
+  private Memory m;
+  private Cluster cluster;
+
+  // METHODS
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.m = new Memory();
+    this.m.create(0, 0x2000);
+    this.cluster = new Cluster(this.m, CORES);
+    this.cluster.setQuantum(100);
+  }
+
+  /**
+   * Tests that all cores atomically increment a shared counter through
+   * LDREX/STREX, and read their own number from the MPIDR.
+   */
+  @Test
+  public void testExclusiveCounter() throws Exception
+  {
+    this.m.write32(0x00, 0xE3A02000); // mov r2, #0
+    this.m.write32(0x04, 0xE3A01A01); // mov r1, #0x1000
+    this.m.write32(0x08, 0xE1910F9F); // ldrex r0, [r1]
+    this.m.write32(0x0C, 0xE2800001); // add r0, r0, #1
+    this.m.write32(0x10, 0xE1813F90); // strex r3, r0, [r1]
+    this.m.write32(0x14, 0xE3530000); // cmp r3, #0
+    this.m.write32(0x18, 0x1AFFFFFA); // bne 0x08
+    this.m.write32(0x1C, 0xF57FF05F); // dmb
+    this.m.write32(0x20, 0xE2822001); // add r2, r2, #1
+    this.m.write32(0x24, 0xE3520FFA); // cmp r2, #1000
+    this.m.write32(0x28, 0x1AFFFFF6); // bne 0x08
+    this.m.write32(0x2C, 0xEE104FB0); // mrc p15, 0, r4, c0, c0, 5
+    this.m.write32(0x30, 0xEF000000); // swi 0
+    this.m.write32(0x1000, 0);
+
+    StopReason[] reasons = this.cluster.run(Long.MAX_VALUE);
+
+    assertEquals(CORES, reasons.length);
+    for (int i = 0; i < CORES; i++)
+    {
+      assertEquals(StopReason.EXIT, reasons[i]);
+      assertEquals(0x80000000 | i, this.cluster.getCore(i).peekReg(4));
+    }
+    assertEquals(CORES * 1000, this.m.read32(0x1000));
+  }
+
+  /**
+   * Tests that a core that hits a breakpoint halts all other cores.
+   */
+  @Test
+  public void testBreakpointHaltsAllCores() throws Exception
+  {
+    this.m.write32(0x00, 0xE2800001); // add r0, r0, #1
+    this.m.write32(0x04, 0xEAFFFFFD); // b 0x00
+
+    this.cluster.getCore(1).breakAdd(0x00);
+
+    StopReason[] reasons = this.cluster.run(Long.MAX_VALUE);
+    assertEquals(StopReason.BUDGET_EXHAUSTED, reasons[0]);
+    assertEquals(StopReason.BREAKPOINT, reasons[1]);
+    assertEquals(0, this.cluster.getCore(1).peekReg(0));
+
+    this.cluster.getCore(1).breakDel(0x00);
+
+    reasons = this.cluster.run(1000);
+    for (int i = 0; i < CORES; i++)
+    {
+      assertEquals(StopReason.BUDGET_EXHAUSTED, reasons[i]);
+    }
+    assertEquals(500, this.cluster.getCore(1).peekReg(0));
+  }
+}
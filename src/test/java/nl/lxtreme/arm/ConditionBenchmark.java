@@ -0,0 +1,112 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import java.util.*;
+
+import nl.lxtreme.arm.Arm.Cpsr;
+
+
+/**
+ * Compares the table-driven condition check of the CPSR with evaluating the
+ * condition through a switch, for random conditions and flags.
+ * <p>
+ * Run from the command line; not a unit test.
+ * </p>
+ */
+public class ConditionBenchmark
+{
+  // CONSTANTS
+
+  private static final int ROUNDS = 10;
+  private static final int ITERATIONS = 10000000;
+
+  // METHODS
+
+  /**
+   * @param aArgs
+   *          the command line arguments, ignored.
+   */
+  public static void main(String[] aArgs)
+  {
+    Random rnd = new Random(0x4e5a4356);
+    int[] conds = new int[1024];
+    int[] flags = new int[conds.length];
+    for (int i = 0; i < conds.length; i++)
+    {
+      conds[i] = rnd.nextInt(15);
+      flags[i] = rnd.nextInt(16);
+    }
+
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      long switched = runSwitch(conds, flags);
+      long table = runTable(conds, flags);
+
+      System.out.printf("Round %2d: switch %6.2f ns/op, table %6.2f ns/op%n", round, switched
+          / (double) ITERATIONS, table / (double) ITERATIONS);
+    }
+  }
+
+  /**
+   * @return the elapsed time, in nanoseconds.
+   */
+  private static long runSwitch(int[] aConds, int[] aFlags)
+  {
+    ConditionCode[] codes = ConditionCode.values();
+    int mask = aConds.length - 1;
+    int passed = 0;
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++)
+    {
+      if (Arm.evaluate(codes[aConds[i & mask]], aFlags[i & mask]))
+      {
+        passed++;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    consume(passed);
+    return elapsed;
+  }
+
+  /**
+   * @return the elapsed time, in nanoseconds.
+   */
+  private static long runTable(int[] aConds, int[] aFlags)
+  {
+    Cpsr cpsr = new Cpsr();
+    int mask = aConds.length - 1;
+    int passed = 0;
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++)
+    {
+      cpsr.setValue(aFlags[i & mask] << 28);
+      if (cpsr.conditionPassed(aConds[i & mask]))
+      {
+        passed++;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    consume(passed);
+    return elapsed;
+  }
+
+  /**
+   * Keeps the JIT from eliminating the benchmarked code.
+   */
+  private static void consume(int aValue)
+  {
+    if (aValue == 42)
+    {
+      System.out.println();
+    }
+  }
+}
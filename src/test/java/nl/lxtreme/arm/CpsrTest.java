@@ -32,13 +32,37 @@ public class CpsrTest
     this.cpsr = new Cpsr();
   }
 
+  /**
+   * Test method for {@link nl.lxtreme.arm.Arm.Cpsr#conditionPassed(int)}.
+   */
+  @Test
+  public void testConditionPassed()
+  {
+    ConditionCode[] codes = ConditionCode.values();
+    for (int flags = 0; flags < 16; flags++)
+    {
+      this.cpsr.setValue(flags << 28);
+      for (int cond = 0; cond < codes.length; cond++)
+      {
+        assertEquals(codes[cond] + " @ " + flags, Arm.evaluate(codes[cond], flags), this.cpsr.conditionPassed(cond));
+      }
+      assertTrue(this.cpsr.conditionPassed(ConditionCode.AL.ordinal()));
+      assertFalse(this.cpsr.conditionPassed(ConditionCode.NV.ordinal()));
+    }
+
+    // Pending flags are taken into account...
+    this.cpsr.setSubtraction(3, 3);
+    assertTrue(this.cpsr.conditionPassed(ConditionCode.EQ.ordinal()));
+    assertFalse(this.cpsr.conditionPassed(ConditionCode.NE.ordinal()));
+  }
+
   /**
    * Test method for {@link nl.lxtreme.arm.Arm.Cpsr#getValue()}.
    */
   @Test
   public void testGetValue_A()
   {
-    this.cpsr.A = true;
+    this.cpsr.setA(true);
     assertEquals(1 << 8, this.cpsr.getValue());
   }
 
@@ -48,7 +72,7 @@ public class CpsrTest
   @Test
   public void testGetValue_c()
   {
-    this.cpsr.c = true;
+    this.cpsr.setC(true);
     assertEquals(1 << 29, this.cpsr.getValue());
   }
 
@@ -58,7 +82,7 @@ public class CpsrTest
   @Test
   public void testGetValue_E()
   {
-    this.cpsr.E = true;
+    this.cpsr.setE(true);
     assertEquals(1 << 9, this.cpsr.getValue());
   }
 
@@ -68,7 +92,7 @@ public class CpsrTest
   @Test
   public void testGetValue_F()
   {
-    this.cpsr.F = true;
+    this.cpsr.setF(true);
     assertEquals(1 << 6, this.cpsr.getValue());
   }
 
@@ -78,7 +102,7 @@ public class CpsrTest
   @Test
   public void testGetValue_ge()
   {
-    this.cpsr.ge = 0x0F;
+    this.cpsr.setGE(0x0F);
     assertEquals(0xF0000, this.cpsr.getValue());
   }
 
@@ -88,7 +112,7 @@ public class CpsrTest
   @Test
   public void testGetValue_I()
   {
-    this.cpsr.I = true;
+    this.cpsr.setI(true);
     assertEquals(1 << 7, this.cpsr.getValue());
   }
 
@@ -98,7 +122,7 @@ public class CpsrTest
   @Test
   public void testGetValue_it()
   {
-    this.cpsr.it = 0xFF;
+    this.cpsr.setIT(0xFF);
     assertEquals(0x600FC00, this.cpsr.getValue());
   }
 
@@ -108,7 +132,7 @@ public class CpsrTest
   @Test
   public void testGetValue_mode()
   {
-    this.cpsr.mode = 0x1F;
+    this.cpsr.setMode(0x1F);
     assertEquals(0x1F, this.cpsr.getValue());
   }
 
@@ -118,7 +142,7 @@ public class CpsrTest
   @Test
   public void testGetValue_n()
   {
-    this.cpsr.n = true;
+    this.cpsr.setN(true);
     assertEquals(1 << 31, this.cpsr.getValue());
   }
 
@@ -128,7 +152,7 @@ public class CpsrTest
   @Test
   public void testGetValue_q()
   {
-    this.cpsr.q = true;
+    this.cpsr.setQ(true);
     assertEquals(1 << 27, this.cpsr.getValue());
   }
 
@@ -138,7 +162,7 @@ public class CpsrTest
   @Test
   public void testGetValue_t()
   {
-    this.cpsr.t = true;
+    this.cpsr.setT(true);
     assertEquals(1 << 5, this.cpsr.getValue());
   }
 
@@ -148,7 +172,7 @@ public class CpsrTest
   @Test
   public void testGetValue_v()
   {
-    this.cpsr.v = true;
+    this.cpsr.setV(true);
     assertEquals(1 << 28, this.cpsr.getValue());
   }
 
@@ -158,10 +182,57 @@ public class CpsrTest
   @Test
   public void testGetValue_z()
   {
-    this.cpsr.z = true;
+    this.cpsr.setZ(true);
     assertEquals(1 << 30, this.cpsr.getValue());
   }
 
+  /**
+   * Test method for {@link nl.lxtreme.arm.Arm.Cpsr#setAddition(int, int)}.
+   */
+  @Test
+  public void testSetAddition()
+  {
+    this.cpsr.setAddition(0x7FFFFFFF, 1);
+    assertEquals(0xB0000000, this.cpsr.getValue());
+
+    this.cpsr.setAddition(1, 2);
+    assertFalse(this.cpsr.isZ());
+    assertFalse(this.cpsr.isN());
+    assertFalse(this.cpsr.isC());
+    assertFalse(this.cpsr.isV());
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.Arm.Cpsr#setNZ(int)}.
+   */
+  @Test
+  public void testSetNZ()
+  {
+    this.cpsr.setC(true);
+    this.cpsr.setNZ(0);
+    assertEquals(0x60000000, this.cpsr.getValue());
+
+    this.cpsr.setNZ(-1);
+    assertTrue(this.cpsr.isN());
+    assertFalse(this.cpsr.isZ());
+    assertTrue(this.cpsr.isC());
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.Arm.Cpsr#setSubtraction(int, int)}.
+   */
+  @Test
+  public void testSetSubtraction()
+  {
+    this.cpsr.setSubtraction(5, 5);
+    assertEquals(0x60000000, this.cpsr.getValue());
+
+    // Pending flags are discarded when the whole CPSR is set...
+    this.cpsr.setSubtraction(5, 5);
+    this.cpsr.setValue(0);
+    assertEquals(0, this.cpsr.getValue());
+  }
+
   /**
    * Test method for {@link nl.lxtreme.arm.Arm.Cpsr#setValue(int)}.
    */
@@ -169,7 +240,7 @@ public class CpsrTest
   public void testSetValue_A()
   {
     this.cpsr.setValue(1 << 8);
-    assertTrue(this.cpsr.A);
+    assertTrue(this.cpsr.isA());
   }
 
   /**
@@ -179,7 +250,7 @@ public class CpsrTest
   public void testSetValue_c()
   {
     this.cpsr.setValue(1 << 29);
-    assertTrue(this.cpsr.c);
+    assertTrue(this.cpsr.isC());
   }
 
   /**
@@ -189,7 +260,7 @@ public class CpsrTest
   public void testSetValue_E()
   {
     this.cpsr.setValue(1 << 9);
-    assertTrue(this.cpsr.E);
+    assertTrue(this.cpsr.isE());
   }
 
   /**
@@ -199,7 +270,7 @@ public class CpsrTest
   public void testSetValue_F()
   {
     this.cpsr.setValue(1 << 6);
-    assertTrue(this.cpsr.F);
+    assertTrue(this.cpsr.isF());
   }
 
   /**
@@ -209,7 +280,7 @@ public class CpsrTest
   public void testSetValue_ge()
   {
     this.cpsr.setValue(0xF0000);
-    assertEquals(0x0F, this.cpsr.ge);
+    assertEquals(0x0F, this.cpsr.getGE());
   }
 
   /**
@@ -219,7 +290,7 @@ public class CpsrTest
   public void testSetValue_I()
   {
     this.cpsr.setValue(1 << 7);
-    assertTrue(this.cpsr.I);
+    assertTrue(this.cpsr.isI());
   }
 
   /**
@@ -229,13 +300,13 @@ public class CpsrTest
   public void testSetValue_it()
   {
     this.cpsr.setValue(0x600FC00);
-    assertEquals(0xFF, this.cpsr.it);
+    assertEquals(0xFF, this.cpsr.getIT());
 
     this.cpsr.setValue(0xFC00);
-    assertEquals(0xFC, this.cpsr.it);
+    assertEquals(0xFC, this.cpsr.getIT());
 
     this.cpsr.setValue(0x6000000);
-    assertEquals(0x3, this.cpsr.it);
+    assertEquals(0x3, this.cpsr.getIT());
   }
 
   /**
@@ -245,7 +316,7 @@ public class CpsrTest
   public void testSetValue_mode()
   {
     this.cpsr.setValue(0x1F);
-    assertEquals(0x1F, this.cpsr.mode);
+    assertEquals(0x1F, this.cpsr.getMode());
   }
 
   /**
@@ -255,7 +326,7 @@ public class CpsrTest
   public void testSetValue_n()
   {
     this.cpsr.setValue(1 << 31);
-    assertTrue(this.cpsr.n);
+    assertTrue(this.cpsr.isN());
   }
 
   /**
@@ -265,7 +336,7 @@ public class CpsrTest
   public void testSetValue_q()
   {
     this.cpsr.setValue(1 << 27);
-    assertTrue(this.cpsr.q);
+    assertTrue(this.cpsr.isQ());
   }
 
   /**
@@ -275,7 +346,7 @@ public class CpsrTest
   public void testSetValue_t()
   {
     this.cpsr.setValue(1 << 5);
-    assertTrue(this.cpsr.t);
+    assertTrue(this.cpsr.isT());
   }
 
   /**
@@ -285,7 +356,7 @@ public class CpsrTest
   public void testSetValue_v()
   {
     this.cpsr.setValue(1 << 28);
-    assertTrue(this.cpsr.v);
+    assertTrue(this.cpsr.isV());
   }
 
   /**
@@ -295,6 +366,6 @@ public class CpsrTest
   public void testSetValue_z()
   {
     this.cpsr.setValue(1 << 30);
-    assertTrue(this.cpsr.z);
+    assertTrue(this.cpsr.isZ());
   }
 }
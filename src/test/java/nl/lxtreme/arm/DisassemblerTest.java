@@ -0,0 +1,110 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import static org.junit.Assert.*;
+
+import nl.lxtreme.arm.memory.*;
+
+import org.junit.*;
+
+
+/**
+ * Tests the disassembler.
+ */
+public class DisassemblerTest
+{
+  // VARIABLES
+
+  private Memory m;
+  private Disassembler disassembler;
+
+  // METHODS
+
+  /**
+   * Set up for each test case.
+   */
+  @Before
+  public void setUp()
+  {
+    this.m = new Memory();
+    this.m.create(0, 4096);
+
+    this.disassembler = new Disassembler(this.m);
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.Disassembler#disassemble(int, int, boolean)}.
+   */
+  @Test
+  public void testDisassembleArm()
+  {
+    assertArm("movAL r0, #0x1", 0, 0xE3A00001);
+    assertArm("addAL r0, r1, r2", 0, 0xE0810002);
+    assertArm("addALs r0, r1, r2,LSL#2", 0, 0xE0910102);
+    assertArm("cmpNE r0, 0x00000064", 0, 0x13500064);
+    assertArm("bAL 0x00000100", 0x100, 0xEAFFFFFE);
+    assertArm("blAL 0x00000108", 0x100, 0xEB000000);
+    assertArm("strAL r0, [r1, #0x4]!", 0, 0xE5A10004);
+    assertArm("stmfd sp!, {r4, r14}", 0, 0xE92D4010);
+    assertArm("swi 0x0", 0, 0xEF000000);
+    assertArm("Unknown opcode! (0xEC000000)", 0, 0xEC000000);
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.Disassembler#disassemble(int, int, boolean)}.
+   */
+  @Test
+  public void testDisassembleArmLiteral()
+  {
+    this.m.write32(0x108, 0x12345678);
+
+    assertArm("ldrAL r0, =0x12345678", 0x100, 0xE59F0000);
+    // Unmapped literals are shown as zero...
+    assertArm("ldrAL r0, =0x0", 0x2000, 0xE59F0000);
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.Disassembler#disassemble(int, int, boolean)}.
+   */
+  @Test
+  public void testDisassembleThumb()
+  {
+    assertThumb("mov r0, #0x01", 0, 0x2001);
+    assertThumb("add r0, r1, r2", 0, 0x1888);
+    assertThumb("and r0, r1", 0, 0x4008);
+    assertThumb("bx r14", 0, 0x4770);
+    assertThumb("nop", 0, 0x46c0);
+    assertThumb("push {r4,lr}", 0, 0xb510);
+    assertThumb("pop {r4,pc}", 0, 0xbd10);
+    assertThumb("b 0x00000100, 0x2", 0x100, 0xe7fe);
+    assertThumb("Unknown opcode! (0xF8CC)", 0, 0xf8cc);
+  }
+
+  /**
+   * @param aExpected
+   * @param aAddress
+   * @param aOpcode
+   */
+  private void assertArm(final String aExpected, final int aAddress, final int aOpcode)
+  {
+    assertEquals(aExpected, this.disassembler.disassemble(aAddress, aOpcode, false /* aThumb */));
+  }
+
+  /**
+   * @param aExpected
+   * @param aAddress
+   * @param aOpcode
+   */
+  private void assertThumb(final String aExpected, final int aAddress, final int aOpcode)
+  {
+    assertEquals(aExpected, this.disassembler.disassemble(aAddress, aOpcode, true /* aThumb */));
+  }
+}
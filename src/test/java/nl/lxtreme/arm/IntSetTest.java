@@ -0,0 +1,104 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link IntSet}.
+ */
+public class IntSetTest
+{
+  // VARIABLES
+
+  private IntSet set;
+
+  // METHODS
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.set = new IntSet();
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.IntSet#add(int)}.
+   */
+  @Test
+  public void testAdd()
+  {
+    assertTrue(this.set.isEmpty());
+
+    assertTrue(this.set.add(0));
+    assertTrue(this.set.add(0x8000));
+    assertTrue(this.set.add(-4));
+    assertFalse(this.set.add(0));
+    assertFalse(this.set.add(0x8000));
+
+    assertEquals(3, this.set.size());
+    assertTrue(this.set.contains(0));
+    assertTrue(this.set.contains(0x8000));
+    assertTrue(this.set.contains(-4));
+    assertFalse(this.set.contains(4));
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.IntSet#remove(int)}.
+   */
+  @Test
+  public void testRemove()
+  {
+    this.set.add(0);
+    this.set.add(0x8000);
+
+    assertTrue(this.set.remove(0));
+    assertFalse(this.set.remove(0));
+    assertFalse(this.set.contains(0));
+
+    assertTrue(this.set.remove(0x8000));
+    assertFalse(this.set.remove(0x8000));
+    assertTrue(this.set.isEmpty());
+  }
+
+  /**
+   * Tests {@link IntSet} against {@link HashSet} with many random operations.
+   */
+  @Test
+  public void testRandomOperations()
+  {
+    Set<Integer> expected = new HashSet<Integer>();
+    Random rnd = new Random(0x42524b);
+
+    for (int i = 0; i < 100000; i++)
+    {
+      // Word aligned addresses in a small range, to force many collisions...
+      int value = rnd.nextInt(4096) << 2;
+      if (rnd.nextBoolean())
+      {
+        assertEquals(expected.add(value), this.set.add(value));
+      }
+      else
+      {
+        assertEquals(expected.remove(value), this.set.remove(value));
+      }
+      assertEquals(expected.size(), this.set.size());
+    }
+
+    for (int value = 0; value < (4096 << 2); value++)
+    {
+      assertEquals(expected.contains(value), this.set.contains(value));
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+
+/**
+ * Tests the table-driven THUMB decoder.
+ */
+public class ThumbDecoderTest
+{
+  // METHODS
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.ThumbDecoder#decode(int)}.
+   */
+  @Test
+  public void testDecodeAllOpcodes()
+  {
+    for (int opcode = 0; opcode < 65536; opcode++)
+    {
+      Instruction insn = ThumbDecoder.decode(opcode);
+      assertNotNull(insn);
+      assertEquals(opcode, insn.opcode);
+      // Only the lower 16 bits are significant...
+      assertSame(insn, ThumbDecoder.decode(opcode | 0xFFFF0000));
+    }
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.ThumbDecoder#decode(int)}.
+   */
+  @Test
+  public void testDecodeKnownOpcodes()
+  {
+    assertDecodesTo(ThumbDecoder.ShiftImmediate.class, 0x0048); // lsl r0, r1, #1
+    assertDecodesTo(ThumbDecoder.AddSubtract.class, 0x1888); // add r0, r1, r2
+    assertDecodesTo(ThumbDecoder.Immediate.class, 0x2001); // mov r0, #1
+    assertDecodesTo(ThumbDecoder.Alu.class, 0x4008); // and r0, r1
+    assertDecodesTo(ThumbDecoder.BranchLinkExchange.class, 0x47c0); // blx r8
+    assertDecodesTo(ThumbDecoder.HighRegister.class, 0x4770); // bx lr
+    assertDecodesTo(ThumbDecoder.LoadLiteral.class, 0x4801); // ldr r0, [pc, #4]
+    assertDecodesTo(ThumbDecoder.LoadStoreRegister.class, 0x5088); // str r0, [r1, r2]
+    assertDecodesTo(ThumbDecoder.LoadStoreImmediate.class, 0x6808); // ldr r0, [r1]
+    assertDecodesTo(ThumbDecoder.LoadStoreHalfword.class, 0x8808); // ldrh r0, [r1]
+    assertDecodesTo(ThumbDecoder.LoadStoreStack.class, 0x9001); // str r0, [sp, #4]
+    assertDecodesTo(ThumbDecoder.LoadAddress.class, 0xa001); // add r0, pc, #4
+    assertDecodesTo(ThumbDecoder.AdjustStack.class, 0xb082); // sub sp, #8
+    assertDecodesTo(ThumbDecoder.Push.class, 0xb500); // push {lr}
+    assertDecodesTo(ThumbDecoder.Pop.class, 0xbd00); // pop {pc}
+    assertDecodesTo(ThumbDecoder.LoadStoreMultiple.class, 0xc806); // ldmia r0!, {r1, r2}
+    assertDecodesTo(ThumbDecoder.ConditionalBranch.class, 0xd0fe); // beq .
+    assertDecodesTo(ThumbDecoder.Branch.class, 0xe7fe); // b .
+    assertDecodesTo(ThumbDecoder.BranchLinkPrefix.class, 0xf000); // bl (prefix)
+    assertDecodesTo(ThumbDecoder.Unknown.class, 0xbf00); // nop
+  }
+
+  /**
+   * @param aType
+   * @param aOpcode
+   */
+  private void assertDecodesTo(Class<? extends Instruction> aType, int aOpcode)
+  {
+    assertEquals(String.format("0x%04x", aOpcode), aType, ThumbDecoder.decode(aOpcode).getClass());
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import nl.lxtreme.arm.memory.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link TraceRecorder} and {@link TraceDecoder}.
+ */
+public class TraceRecorderTest
+{
+  // VARIABLES
+
+  private Memory m;
+  private Arm arm;
+  private File file;
+
+  // METHODS
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.m = new Memory();
+    this.m.create(0, 4096);
+
+    this.arm = new Arm(this.m);
+
+    this.file = File.createTempFile("trace", ".bin");
+    this.file.deleteOnExit();
+  }
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @After
+  public void tearDown() throws Exception
+  {
+    this.file.delete();
+  }
+
+  /**
+   * Tests that the changed register and accessed memory of each instruction
+   * are recorded.
+   */
+  @Test
+  public void testRecordRegistersAndMemory() throws IOException
+  {
+    this.m.write32(0, 0xE3A00C01); // mov r0, #0x100
+    this.m.write32(4, 0xE3A01005); // mov r1, #5
+    this.m.write32(8, 0xE5801000); // str r1, [r0]
+    this.m.write32(12, 0xE5902000); // ldr r2, [r0]
+    this.m.write32(16, 0xEF000000); // swi 0
+
+    String[] lines = record(16);
+
+    assertEquals(5, lines.length);
+    assertTrue(lines[0], lines[0].startsWith("00000000 [A] (e3a00c01) movAL r0, #0x100\t; r0=0x00000100"));
+    assertTrue(lines[1], lines[1].endsWith("; r1=0x00000005"));
+    assertTrue(lines[2], lines[2].endsWith("strAL r1, [r0, #0x0]\t; write [0x00000100]=0x00000005"));
+    assertTrue(lines[3], lines[3].endsWith("; r2=0x00000005\t; read [0x00000100]=0x00000005"));
+    assertTrue(lines[4], lines[4].endsWith("swi 0x0"));
+  }
+
+  /**
+   * Tests that only the most recent records are kept once the ring file is
+   * full.
+   */
+  @Test
+  public void testRecordWrapsAround() throws IOException
+  {
+    this.m.write32(0, 0xE3A00000); // mov r0, #0
+    this.m.write32(4, 0xE2800001); // add r0, r0, #1
+    this.m.write32(8, 0xE3500064); // cmp r0, #100
+    this.m.write32(12, 0x1AFFFFFC); // bne 4
+    this.m.write32(16, 0xEF000000); // swi 0
+
+    String[] lines = record(6);
+
+    assertEquals(302, new TraceDecoder(this.file).getRecordCount());
+    assertEquals(6, lines.length);
+    assertTrue(lines[0], lines[0].startsWith("00000008 [A]"));
+    assertTrue(lines[1], lines[1].startsWith("0000000C [A]"));
+    assertTrue(lines[2], lines[2].endsWith("; r0=0x00000064"));
+    assertTrue(lines[5], lines[5].endsWith("swi 0x0"));
+  }
+
+  /**
+   * Tests that data accesses are not remembered as long as no trace sink is
+   * set.
+   */
+  @Test
+  public void testNoDataAccessesWithoutSink()
+  {
+    this.m.write32(0, 0xE3A00C01); // mov r0, #0x100
+    this.m.write32(4, 0xE5800000); // str r0, [r0]
+    this.m.write32(8, 0xE5901000); // ldr r1, [r0]
+    this.m.write32(12, 0xEF000000); // swi 0
+
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+    assertEquals(0x100, this.arm.r[1]);
+    assertEquals(0, this.arm.dataAccesses);
+  }
+
+  /**
+   * Tests that a file that is not a ring file is refused.
+   */
+  @Test(expected = IOException.class)
+  public void testDecodeInvalidFileFails() throws IOException
+  {
+    FileOutputStream fos = new FileOutputStream(this.file);
+    try
+    {
+      fos.write(new byte[64]);
+    }
+    finally
+    {
+      fos.close();
+    }
+
+    new TraceDecoder(this.file);
+  }
+
+  /**
+   * Runs the program in memory until it exits, and returns the decoded trace.
+   */
+  private String[] record(final int aCapacity) throws IOException
+  {
+    TraceRecorder recorder = new TraceRecorder(this.arm, this.file, aCapacity);
+    this.arm.setTraceSink(recorder);
+
+    assertEquals(StopReason.EXIT, this.arm.run(Long.MAX_VALUE));
+    recorder.close();
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    new TraceDecoder(this.file).decode(new PrintStream(baos, true));
+
+    return baos.toString().split("\n");
+  }
+}
@@ -8,6 +8,8 @@ package nl.lxtreme.arm.memory;
 
 import static org.junit.Assert.*;
 
+import java.io.*;
+
 import org.junit.*;
 
 
@@ -78,4 +80,216 @@ public class ChunkTest
     assertEquals(v2, this.chunk.read8(1));
     assertEquals(v1, this.chunk.read8(0));
   }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Chunk#read32(int)}.
+   */
+  @Test
+  public void testBigEndian32() throws IOException
+  {
+    Chunk c = createChunk(Endianness.BE_32, 0x12, 0x34, 0x56, 0x78);
+
+    assertEquals(0x12345678, c.read32(0));
+    assertEquals(0x1234, c.read16(0));
+    assertEquals(0x12, c.read8(0));
+    assertEquals(0x12345678, c.fetch32(0));
+    assertEquals(0x1234, c.fetch16(0));
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Chunk#read32(int)}.
+   */
+  @Test
+  public void testBigEndian8() throws IOException
+  {
+    Chunk c = createChunk(Endianness.BE_8, 0x12, 0x34, 0x56, 0x78);
+
+    // Data is big-endian, instructions are little-endian...
+    assertEquals(0x12345678, c.read32(0));
+    assertEquals(0x1234, c.read16(0));
+    assertEquals(0x78563412, c.fetch32(0));
+    assertEquals(0x3412, c.fetch16(0));
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Chunk#read32(int)}.
+   */
+  @Test
+  public void testLittleEndian() throws IOException
+  {
+    Chunk c = createChunk(Endianness.LITTLE, 0x12, 0x34, 0x56, 0x78);
+
+    assertEquals(0x78563412, c.read32(0));
+    assertEquals(0x3412, c.read16(0));
+    assertEquals(0x12, c.read8(0));
+    assertEquals(0x78563412, c.fetch32(0));
+
+    c.write32(0, 0x11223344);
+    assertEquals(0x44, c.read8(0));
+    assertEquals(0x11, c.read8(3));
+
+    c.write16(2, (short) 0xAABB);
+    assertEquals(0xAABB3344, c.read32(0));
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Chunk#read(int, byte[], int, int)}.
+   */
+  @Test
+  public void testReadWriteBlock()
+  {
+    byte[] src = { 1, 2, 3, 4, 5, 6 };
+    this.chunk.write( 4, src, 1, 4 );
+
+    assertEquals( 0x02030405, this.chunk.read32( 4 ) );
+    assertEquals( ( byte )0xff, this.chunk.read8( 8 ) );
+
+    byte[] dst = new byte[6];
+    this.chunk.read( 3, dst, 0, 6 );
+    assertArrayEquals( new byte[] { ( byte )0xff, 2, 3, 4, 5, ( byte )0xff }, dst );
+
+    int[] words = { 0x11223344, 0x55667788 };
+    this.chunk.write( 16, words, 0, 2 );
+    assertEquals( 0x55667788, this.chunk.read32( 20 ) );
+
+    int[] result = new int[3];
+    this.chunk.read( 12, result, 0, 3 );
+    assertArrayEquals( new int[] { 0xffffffff, 0x11223344, 0x55667788 }, result );
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Chunk#fill(int, int, byte)}.
+   */
+  @Test
+  public void testFill()
+  {
+    this.chunk.fill( 2, 4, ( byte )0 );
+
+    assertEquals( 0xffff0000, this.chunk.read32( 0 ) );
+    assertEquals( 0x0000ffff, this.chunk.read32( 4 ) );
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Chunk#copy(int, int, int)}.
+   */
+  @Test
+  public void testCopy()
+  {
+    this.chunk.write32( 4, 0x11223344 );
+    this.chunk.write32( 8, 0x55667788 );
+    // Overlapping copies in both directions...
+    this.chunk.copy( 4, 6, 8 );
+    assertEquals( 0x11221122, this.chunk.read32( 4 ) );
+    assertEquals( 0x33445566, this.chunk.read32( 8 ) );
+    this.chunk.copy( 6, 4, 8 );
+    assertEquals( 0x11223344, this.chunk.read32( 4 ) );
+    assertEquals( 0x55667788, this.chunk.read32( 8 ) );
+    assertEquals( 0x7788ffff, this.chunk.read32( 12 ) );
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Chunk#read(int, int[], int, int)}.
+   */
+  @Test( expected = IllegalArgumentException.class )
+  public void testReadBlockBeyondEndFails()
+  {
+    this.chunk.read( 24, new int[3], 0, 3 );
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Chunk#write(byte[], int, int)}.
+   */
+  @Test
+  public void testWriteAsStream() throws IOException
+  {
+    this.chunk.write( new byte[] { 0x12, 0x34, 0x56, 0x78 }, 1, 3 );
+    this.chunk.write( 0x9a );
+
+    assertEquals( 0x3456789a, this.chunk.read32( 0 ) );
+  }
+
+  /**
+   * Tests that writing beyond the end of a chunk as stream fails, without
+   * writing anything.
+   */
+  @Test
+  public void testWriteAsStreamBeyondEnd() throws IOException
+  {
+    this.chunk.write( new byte[28] );
+    try
+    {
+      this.chunk.write( new byte[5] );
+      fail( "Expected IOException!" );
+    }
+    catch ( IOException exception )
+    {
+      // Ok; expected...
+    }
+    this.chunk.write( new byte[4] );
+    try
+    {
+      this.chunk.write( 0 );
+      fail( "Expected IOException!" );
+    }
+    catch ( IOException exception )
+    {
+      // Ok; expected...
+    }
+  }
+
+  /**
+   * Tests that threads that access the same chunk out of range each get a
+   * fault of their own, so their details do not get mixed up.
+   */
+  @Test
+  public void testFaultPerThread() throws Exception
+  {
+    final MemoryFault[] other = new MemoryFault[1];
+    Thread thread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          ChunkTest.this.chunk.write8(0x100, (byte) 0);
+        }
+        catch (MemoryFault fault)
+        {
+          other[0] = fault;
+        }
+      }
+    });
+
+    try
+    {
+      this.chunk.read8(0x40);
+      fail("Expected MemoryFault!");
+    }
+    catch (MemoryFault fault)
+    {
+      thread.start();
+      thread.join();
+
+      assertNotSame(fault, other[0]);
+      assertEquals(0x40, fault.getAddress());
+      assertFalse(fault.isWrite());
+      assertEquals(0x100, other[0].getAddress());
+      assertTrue(other[0].isWrite());
+    }
+  }
+
+  /**
+   * Creates a chunk with the given raw contents.
+   */
+  private Chunk createChunk(Endianness aEndianness, int... aBytes) throws IOException
+  {
+    Chunk c = new Chunk(0x0, 32, aEndianness);
+    assertEquals(aEndianness, c.getEndianness());
+    for (int b : aBytes)
+    {
+      c.write(b);
+    }
+    return c;
+  }
 }
@@ -0,0 +1,113 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link DirectChunk}.
+ */
+public class DirectChunkTest
+{
+  // VARIABLES
+
+  private DirectChunk chunk;
+
+  // METHODS
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.chunk = new DirectChunk(0x1000, 4099);
+  }
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @After
+  public void tearDown() throws Exception
+  {
+    this.chunk.dispose();
+  }
+
+  /**
+   * Tests that a new chunk is filled with 0xFF, like a heap-based chunk.
+   */
+  @Test
+  public void testInitialContents()
+  {
+    assertEquals(4099, this.chunk.getSize());
+    assertEquals(0xFFFFFFFF, this.chunk.read32(0x1000));
+    assertEquals((byte) 0xFF, this.chunk.read8(0x1000 + 4098));
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Chunk#write32(int, int)}.
+   */
+  @Test
+  public void testReadWrite()
+  {
+    this.chunk.write32(0x1000, 0x12345678);
+    this.chunk.write16(0x1004, (short) 0x9abc);
+    this.chunk.write8(0x1006, (byte) 0xde);
+
+    assertEquals(0x12345678, this.chunk.read32(0x1000));
+    assertEquals(0x12345678, this.chunk.fetch32(0x1000));
+    assertEquals((short) 0x9abc, this.chunk.read16(0x1004));
+    assertEquals((byte) 0xde, this.chunk.read8(0x1006));
+  }
+
+  /**
+   * Tests that a little-endian chunk stores its words in little-endian order.
+   */
+  @Test
+  public void testLittleEndian()
+  {
+    DirectChunk c = new DirectChunk(0, 16, Endianness.LITTLE);
+    try
+    {
+      c.write32(0, 0x12345678);
+      assertEquals(0x78, c.read8(0));
+      assertEquals(0x12345678, c.read32(0));
+    }
+    finally
+    {
+      c.dispose();
+    }
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.DirectChunk#dispose()}.
+   */
+  @Test
+  public void testDispose()
+  {
+    this.chunk.dispose();
+
+    assertTrue(this.chunk.isDisposed());
+    assertFalse(this.chunk.maps(0x1000));
+
+    try
+    {
+      this.chunk.read32(0x1000);
+      fail("IllegalArgumentException expected!");
+    }
+    catch (IllegalArgumentException exception)
+    {
+      // Ok; expected...
+    }
+
+    // Disposing twice is harmless...
+    this.chunk.dispose();
+  }
+}
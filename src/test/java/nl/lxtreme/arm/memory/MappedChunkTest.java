@@ -0,0 +1,175 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link MappedChunk}.
+ */
+public class MappedChunkTest
+{
+  // VARIABLES
+
+  private File file;
+
+  // METHODS
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.file = File.createTempFile("image", ".bin");
+    this.file.deleteOnExit();
+
+    FileOutputStream fos = new FileOutputStream(this.file);
+    try
+    {
+      fos.write(new byte[] { 0x12, 0x34, 0x56, 0x78, (byte) 0x9a, (byte) 0xbc, (byte) 0xde, (byte) 0xf0 });
+    }
+    finally
+    {
+      fos.close();
+    }
+  }
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @After
+  public void tearDown() throws Exception
+  {
+    this.file.delete();
+  }
+
+  /**
+   * Tests that writes to a read-only mapping are ignored.
+   */
+  @Test
+  public void testReadOnly() throws IOException
+  {
+    MappedChunk c = new MappedChunk(0x1000, this.file, MapMode.READ_ONLY, Endianness.BE_32);
+    try
+    {
+      assertTrue(c.isReadOnly());
+      assertEquals(8, c.getSize());
+      assertEquals(0x12345678, c.read32(0x1000));
+      assertEquals(0x9abcdef0, c.fetch32(0x1004));
+
+      c.write32(0x1000, 0);
+      c.write16(0x1000, (short) 0);
+      c.write8(0x1000, (byte) 0);
+      c.write(0x1000, new int[] { 0 }, 0, 1);
+      c.fill(0x1000, 4, (byte) 0);
+      assertEquals(0x12345678, c.read32(0x1000));
+    }
+    finally
+    {
+      c.dispose();
+    }
+  }
+
+  /**
+   * Tests that writes to a private mapping are not written back to the file.
+   */
+  @Test
+  public void testCopyOnWrite() throws IOException
+  {
+    MappedChunk c1 = new MappedChunk(0, this.file, MapMode.PRIVATE, Endianness.LITTLE);
+    MappedChunk c2 = new MappedChunk(0, this.file, MapMode.PRIVATE, Endianness.LITTLE);
+    try
+    {
+      assertEquals(0x78563412, c1.read32(0));
+
+      c1.write32(0, 0xCAFEBABE);
+      assertEquals(0xCAFEBABE, c1.read32(0));
+
+      // Other mappings, and the file itself, are not affected...
+      assertEquals(0x78563412, c2.read32(0));
+      assertEquals(0x12, readFile()[0]);
+    }
+    finally
+    {
+      c1.dispose();
+      c2.dispose();
+    }
+  }
+
+  /**
+   * Tests that a part of a file can be mapped.
+   */
+  @Test
+  public void testMapRegion() throws IOException
+  {
+    MappedChunk c = new MappedChunk(0x100, this.file, 4L, 4, MapMode.READ_ONLY, Endianness.BE_32);
+    try
+    {
+      assertEquals(4, c.getSize());
+      assertEquals(0x9abcdef0, c.read32(0x100));
+    }
+    finally
+    {
+      c.dispose();
+    }
+  }
+
+  /**
+   * Tests that a region beyond the end of the file cannot be mapped.
+   */
+  @Test(expected = IOException.class)
+  public void testMapBeyondEndOfFileFails() throws IOException
+  {
+    new MappedChunk(0x100, this.file, 4L, 8, MapMode.READ_ONLY, Endianness.BE_32);
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.memory.Memory#mapFile(long, File, MapMode)}.
+   */
+  @Test
+  public void testMapFileInMemory() throws IOException
+  {
+    Memory memory = new Memory();
+    try
+    {
+      Chunk c = memory.mapFile(0x08000000L, this.file, MapMode.READ_ONLY);
+
+      assertSame(c, memory.find(0x08000004L));
+      assertEquals(0x9abcdef0, memory.read32(0x08000004));
+    }
+    finally
+    {
+      memory.dispose();
+    }
+  }
+
+  /**
+   * @return the current contents of the image file.
+   */
+  private byte[] readFile() throws IOException
+  {
+    DataInputStream dis = new DataInputStream(new FileInputStream(this.file));
+    try
+    {
+      byte[] result = new byte[(int) this.file.length()];
+      dis.readFully(result);
+      return result;
+    }
+    finally
+    {
+      dis.close();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import java.util.*;
+
+
+/**
+ * Shows how looking up chunks through the page table of {@link Memory} scales
+ * with the number of mapped regions, compared to scanning all chunks.
+ * <p>
+ * Run from the command line; not a unit test.
+ * </p>
+ */
+public class MemoryBenchmark
+{
+  // CONSTANTS
+
+  private static final int ROUNDS = 5;
+  private static final int ITERATIONS = 10000000;
+  private static final int REGION_SIZE = 4096;
+
+  // METHODS
+
+  /**
+   * @param aArgs
+   *          the command line arguments, ignored.
+   */
+  public static void main(String[] aArgs)
+  {
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      System.out.printf("Round %d:%n", round);
+
+      for (int regions = 1; regions <= 256; regions <<= 1)
+      {
+        Memory memory = new Memory();
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int i = 0; i < regions; i++)
+        {
+          // Leave a gap between regions, like separate segments and peripherals...
+          chunks.add(memory.create(0x40000000L + (i * 2L * REGION_SIZE), REGION_SIZE));
+        }
+
+        Random rnd = new Random(0x4d454d42);
+        int[] addresses = new int[1024];
+        for (int i = 0; i < addresses.length; i++)
+        {
+          addresses[i] = 0x40000000 + (rnd.nextInt(regions) * 2 * REGION_SIZE) + (rnd.nextInt(REGION_SIZE / 4) * 4);
+        }
+
+        long table = runPageTable(memory, addresses);
+        long scan = runScan(chunks, addresses);
+
+        System.out.printf("  %3d regions: page table %6.2f ns/op, scan %7.2f ns/op%n", regions, table
+            / (double) ITERATIONS, scan / (double) ITERATIONS);
+      }
+    }
+  }
+
+  /**
+   * @return the elapsed time, in nanoseconds.
+   */
+  private static long runPageTable(Memory aMemory, int[] aAddresses)
+  {
+    int mask = aAddresses.length - 1;
+    int sum = 0;
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++)
+    {
+      sum += aMemory.read32(aAddresses[i & mask]);
+    }
+    long elapsed = System.nanoTime() - start;
+
+    consume(sum);
+    return elapsed;
+  }
+
+  /**
+   * @return the elapsed time, in nanoseconds.
+   */
+  private static long runScan(List<Chunk> aChunks, int[] aAddresses)
+  {
+    int mask = aAddresses.length - 1;
+    int sum = 0;
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++)
+    {
+      int addr = aAddresses[i & mask];
+      for (Chunk c : aChunks)
+      {
+        if (c.maps(addr))
+        {
+          sum += c.read32(addr);
+          break;
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    consume(sum);
+    return elapsed;
+  }
+
+  /**
+   * Keeps the JIT from eliminating the benchmarked code.
+   */
+  private static void consume(int aValue)
+  {
+    if (aValue == 42)
+    {
+      System.out.println();
+    }
+  }
+}
@@ -8,6 +8,8 @@ package nl.lxtreme.arm.memory;
 
 import static org.junit.Assert.*;
 
+import java.io.*;
+
 import org.junit.*;
 
 
@@ -50,6 +52,519 @@ public class MemoryTest
     assertSame(c4, c2);
   }
 
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#add(Chunk)}.
+   */
+  @Test
+  public void testAdd()
+  {
+    Chunk c1 = this.memory.create(0, 0x2000);
+    Chunk c2 = this.memory.add(new DirectChunk(0x2000, 0x1000));
+
+    this.memory.write32(0x2004, 0xCAFEBABE);
+
+    assertSame(c2, this.memory.find(0x2000));
+    assertSame(c1, this.memory.find(0x1FFF));
+    assertEquals(0xCAFEBABE, c2.read32(0x2004));
+    assertEquals(0xCAFEBABE, this.memory.read32(0x2004));
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#add(Chunk)}.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testAddOverlappingChunkFails()
+  {
+    this.memory.create(0x1000, 0x1000);
+    this.memory.add(new Chunk(0x800, 0x1000));
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.memory.Memory#register(long, int, Device)}.
+   */
+  @Test
+  public void testRegisterDevice()
+  {
+    final StringBuilder log = new StringBuilder();
+
+    this.memory.create(0, 0x1000);
+    this.memory.register(0xE0028000L, 0x20, new Device()
+    {
+      public int read(int aOffset, int aWidth)
+      {
+        log.append(String.format("r%d@%x ", aWidth, aOffset));
+        return 0x12345678;
+      }
+
+      public void write(int aOffset, int aWidth, int aValue)
+      {
+        log.append(String.format("w%d@%x=%x ", aWidth, aOffset, aValue));
+      }
+    });
+
+    this.memory.write32(0xE0028004, 0xCAFE);
+    this.memory.write8(0xE0028008, (byte) 0x12);
+    assertEquals(0x12345678, this.memory.read32(0xE0028000));
+    assertEquals(0x5678, this.memory.read16(0xE002800C));
+    assertEquals(0x78, this.memory.read8(0xE002801F));
+
+    // Plain memory is not passed on to the device...
+    this.memory.write32(0x100, 0xCAFE);
+    assertEquals(0xCAFE, this.memory.read32(0x100));
+
+    assertEquals("w4@4=cafe w1@8=12 r4@0 r2@c r1@1f ", log.toString());
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.memory.Memory#setInvalidAccessPolicy(InvalidAccessPolicy)}
+   * .
+   */
+  @Test
+  public void testInvalidAccessCount()
+  {
+    this.memory.create(0, 0x1000);
+    this.memory.setInvalidAccessPolicy(InvalidAccessPolicy.COUNT);
+
+    for (int i = 0; i < 10; i++)
+    {
+      assertEquals(0, this.memory.read32(0x2000));
+    }
+    this.memory.write8(-4, (byte) 1);
+    this.memory.read32(0x100);
+
+    assertEquals(11L, this.memory.getFaultCount());
+    assertEquals(10, this.memory.getFaultCount(0x2000));
+    assertEquals(1, this.memory.getFaultCount(-4));
+    assertEquals(0, this.memory.getFaultCount(0x100));
+    assertArrayEquals(new int[] { 0x2000, -4 }, this.memory.getFaultAddresses());
+
+    this.memory.clearFaults();
+    assertEquals(0L, this.memory.getFaultCount());
+    assertEquals(0, this.memory.getFaultAddresses().length);
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.memory.Memory#setInvalidAccessPolicy(InvalidAccessPolicy)}
+   * .
+   */
+  @Test
+  public void testInvalidAccessAbort()
+  {
+    this.memory.setInvalidAccessPolicy(InvalidAccessPolicy.ABORT);
+
+    MemoryFault f1 = null;
+    try
+    {
+      this.memory.write16(0x2000, (short) 1);
+      fail("MemoryFault expected!");
+    }
+    catch (MemoryFault fault)
+    {
+      assertEquals(0x2000, fault.getAddress());
+      assertTrue(fault.isWrite());
+      assertFalse(fault.isFetch());
+      f1 = fault;
+    }
+
+    try
+    {
+      this.memory.fetch32(0x3000);
+      fail("MemoryFault expected!");
+    }
+    catch (MemoryFault fault)
+    {
+      assertEquals(0x3000, fault.getAddress());
+      assertFalse(fault.isWrite());
+      assertTrue(fault.isFetch());
+      // The same instance is reused...
+      assertSame(f1, fault);
+    }
+
+    assertEquals(2L, this.memory.getFaultCount());
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.memory.Memory#addWatchpoint(int, int, boolean, boolean)}
+   * .
+   */
+  @Test
+  public void testWatchpoints()
+  {
+    final StringBuilder log = new StringBuilder();
+
+    Chunk c1 = this.memory.create(0, 0x2000);
+    this.memory.setWatchpointListener(new WatchpointListener()
+    {
+      public void watchpointHit(int aAddress, int aValue, boolean aWrite)
+      {
+        log.append(String.format("%s%x=%x ", aWrite ? "w@" : "r@", aAddress, aValue));
+      }
+    });
+    this.memory.addWatchpoint(0x1002, 2, true, true);
+    this.memory.addWatchpoint(0x1010, 1, false, true);
+
+    this.memory.write32(0x1000, 0x12345678);
+    this.memory.write8(0x1004, (byte) 1);
+    assertEquals(0x5678, this.memory.read16(0x1002));
+    this.memory.write(0x100C, new int[] { 1, 2 }, 0, 2);
+    assertEquals(2, this.memory.read32(0x1010));
+    // Pages without watchpoints are not affected...
+    this.memory.write32(0x10, 0xCAFE);
+
+    assertSame(c1, this.memory.find(0x1000));
+    assertEquals("w@1000=12345678 r@1002=5678 w@1010=2 ", log.toString());
+
+    this.memory.removeWatchpoint(0x1002);
+    this.memory.removeWatchpoint(0x1010);
+    log.setLength(0);
+
+    this.memory.write32(0x1000, 0);
+    this.memory.write32(0x1010, 0);
+    assertEquals("", log.toString());
+  }
+
+  /**
+   * Tests that block transfers that span three or more pages hit the
+   * watchpoints on the pages in between.
+   */
+  @Test
+  public void testBlockOverWatchedPage()
+  {
+    final int[] hits = { 0, 0 };
+
+    this.memory.create(0, 0x3000);
+    this.memory.setWatchpointListener(new WatchpointListener()
+    {
+      public void watchpointHit(int aAddress, int aValue, boolean aWrite)
+      {
+        hits[aWrite ? 1 : 0]++;
+      }
+    });
+    this.memory.addWatchpoint(0x1800, 4, false, true);
+    this.memory.addWatchpoint(0x1900, 4, true, false);
+
+    this.memory.fill(0, 0x3000, (byte) 0);
+    assertEquals(4, hits[1]);
+    this.memory.write(0, new byte[0x3000], 0, 0x3000);
+    assertEquals(8, hits[1]);
+    this.memory.write(0, new int[0xC00], 0, 0xC00);
+    assertEquals(9, hits[1]);
+
+    this.memory.read(0, new byte[0x3000], 0, 0x3000);
+    assertEquals(4, hits[0]);
+    this.memory.read(0, new int[0xC00], 0, 0xC00);
+    assertEquals(5, hits[0]);
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#codePage(int)}.
+   */
+  @Test
+  public void testCodePageTracking() throws Exception
+  {
+    Chunk c1 = this.memory.create(0, 0x3000);
+    // Cache the plain chunk in the data TLB...
+    this.memory.write32(0x1000, 1);
+
+    CodePage p1 = this.memory.codePage(0x1004);
+    CodePage p2 = this.memory.codePage(0x2000);
+    assertSame(p1, this.memory.codePage(0x1FFC));
+    assertNull(this.memory.codePage(0x3000));
+
+    int v1 = p1.getVersion();
+    int v2 = p2.getVersion();
+
+    // Writes to other pages leave the code alone...
+    this.memory.write32(0x0, 2);
+    this.memory.write(0x10, new byte[8], 0, 8);
+    assertEquals(v1, p1.getVersion());
+    assertEquals(v2, p2.getVersion());
+
+    this.memory.write8(0x1800, (byte) 3);
+    assertTrue(v1 != p1.getVersion());
+    assertEquals(v2, p2.getVersion());
+
+    // Block transfers and chunk writes are tracked as well...
+    this.memory.codePage(0x1000);
+    v1 = p1.getVersion();
+    this.memory.write(0x1FFC, new int[] { 1, 2 }, 0, 2);
+    assertTrue(v1 != p1.getVersion());
+    assertTrue(v2 != p2.getVersion());
+
+    this.memory.codePage(0x2000);
+    v2 = p2.getVersion();
+    c1.write(new byte[0x2004]);
+    assertTrue(v2 != p2.getVersion());
+  }
+
+  /**
+   * Tests that single values stored directly into a chunk, rather than through
+   * the memory map, invalidate the code decoded from their page as well.
+   */
+  @Test
+  public void testCodePageTrackingDirectChunkWrite()
+  {
+    Chunk c1 = this.memory.create(0, 0x2000);
+    Chunk c2 = this.memory.createSparse(0x10000, 0x2000);
+
+    CodePage p1 = this.memory.codePage(0x1000);
+    CodePage p2 = this.memory.codePage(0x11000);
+
+    int v1 = p1.getVersion();
+    c1.write32(0x0, 1);
+    assertEquals(v1, p1.getVersion());
+    c1.write32(0x1000, 1);
+    assertTrue(v1 != p1.getVersion());
+
+    this.memory.codePage(0x1000);
+    v1 = p1.getVersion();
+    c1.write16(0x1002, (short) 1);
+    assertTrue(v1 != p1.getVersion());
+
+    this.memory.codePage(0x1000);
+    v1 = p1.getVersion();
+    c1.write8(0x1FFF, (byte) 1);
+    assertTrue(v1 != p1.getVersion());
+
+    int v2 = p2.getVersion();
+    c2.write32(0x11000, 1);
+    assertTrue(v2 != p2.getVersion());
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#remove(Chunk)}.
+   */
+  @Test
+  public void testRemove()
+  {
+    Chunk c1 = this.memory.create(0, 0x1000);
+    Chunk c2 = this.memory.create(0x1000, 0x1000);
+    this.memory.write32(0x1000, 0x1234);
+
+    assertTrue(this.memory.remove(c2));
+    assertFalse(this.memory.remove(c2));
+
+    assertSame(c1, this.memory.find(0xFFC));
+    assertNull(this.memory.find(0x1000));
+    assertNull(this.memory.findCode(0x1000));
+    assertFalse(c2.isDisposed());
+    assertEquals(0x1234, c2.read32(0x1000));
+  }
+
+  /**
+   * Tests that chunks can be added while another thread accesses the memory.
+   */
+  @Test
+  public void testConcurrentAccess() throws Exception
+  {
+    this.memory.create(0, 0x1000);
+    this.memory.setInvalidAccessPolicy(InvalidAccessPolicy.IGNORE);
+
+    final Throwable[] failure = new Throwable[1];
+    Thread reader = new Thread()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          for (int i = 0; i < 200000; i++)
+          {
+            int addr = (i & 0x3F) << 12;
+            memory.write32(addr, i);
+            memory.read32(addr);
+            memory.findCode(addr);
+          }
+        }
+        catch (Throwable exception)
+        {
+          failure[0] = exception;
+        }
+      }
+    };
+    reader.start();
+
+    for (int i = 1; i < 64; i++)
+    {
+      this.memory.create(i << 12, 0x1000);
+    }
+    reader.join();
+
+    assertNull(failure[0]);
+    for (int i = 0; i < 64; i++)
+    {
+      assertNotNull(this.memory.find(i << 12));
+    }
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.memory.Memory#writeExclusive32(int, int, int)}.
+   */
+  @Test
+  public void testExclusiveAccess()
+  {
+    this.memory.create(0, 0x1000);
+    this.memory.write32(0x10, 5);
+
+    assertEquals(5, this.memory.readExclusive32(0x10));
+    assertFalse(this.memory.writeExclusive32(0x10, 6, 7));
+    assertEquals(5, this.memory.read32(0x10));
+    assertTrue(this.memory.writeExclusive32(0x10, 5, 7));
+    assertEquals(7, this.memory.read32(0x10));
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.memory.Memory#setStatisticsEnabled(boolean)}.
+   */
+  @Test
+  public void testStatisticsDisabled()
+  {
+    this.memory.create(0x8000, 0x1000);
+    this.memory.setStatisticsEnabled(false);
+    assertFalse(this.memory.isStatisticsEnabled());
+
+    this.memory.findCode(0x8000);
+    this.memory.findCode(0x8000);
+    this.memory.read32(0x8000);
+
+    assertEquals(0, this.memory.getFetchHits());
+    assertEquals(0, this.memory.getFetchMisses());
+    assertEquals(0, this.memory.getDataMisses());
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.memory.Memory#read(int, byte[], int, int)}.
+   */
+  @Test
+  public void testReadWriteBlock()
+  {
+    Chunk c1 = this.memory.create(0, 0x1000);
+    this.memory.add(new SparseChunk(0x1000, 0x1000));
+
+    int[] words = { 1, 2, 3, 4 };
+    // Within a single chunk...
+    this.memory.write(0x100, words, 0, 4);
+    // Spanning two chunks...
+    this.memory.write(0xFF8, words, 0, 4);
+
+    assertEquals(4, c1.read32(0x10C));
+    assertEquals(2, this.memory.read32(0xFFC));
+    assertEquals(3, this.memory.read32(0x1000));
+
+    byte[] bytes = new byte[8];
+    this.memory.read(0xFFC, bytes, 0, 8);
+    assertArrayEquals(new byte[] { 0, 0, 0, 2, 0, 0, 0, 3 }, bytes);
+
+    int[] result = new int[3];
+    this.memory.read(0x1004, result, 0, 3);
+    assertArrayEquals(new int[] { 4, -1, -1 }, result);
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#copy(int, int, int)}.
+   */
+  @Test
+  public void testCopyAndFill()
+  {
+    this.memory.create(0, 0x1000);
+
+    this.memory.fill(0x10, 8, (byte) 0x5A);
+    this.memory.write32(0x18, 0x12345678);
+    // Overlapping copy...
+    this.memory.copy(0x14, 0x18, 8);
+
+    assertEquals(0x5A5A5A5A, this.memory.read32(0x14));
+    assertEquals(0x5A5A5A5A, this.memory.read32(0x18));
+    assertEquals(0x12345678, this.memory.read32(0x1C));
+    assertEquals(0xFFFFFFFF, this.memory.read32(0x20));
+  }
+
+  /**
+   * Tests that overlapping copies across chunks, in either direction, and
+   * copies on sparse and direct chunks copy the right contents.
+   */
+  @Test
+  public void testCopyAcrossChunks()
+  {
+    this.memory.create(0, 0x2000);
+    this.memory.add(new DirectChunk(0x2000, 0x2000));
+    this.memory.createSparse(0x4000, 0x2000);
+    for (int i = 0; i < 0x6000; i += 4)
+    {
+      this.memory.write32(i, i);
+    }
+
+    this.memory.copy(0x1000, 0x1800, 0x3000);
+    assertEquals(0x17FC, this.memory.read32(0x17FC));
+    assertEquals(0x1000, this.memory.read32(0x1800));
+    assertEquals(0x3FFC, this.memory.read32(0x47FC));
+    assertEquals(0x4800, this.memory.read32(0x4800));
+
+    this.memory.copy(0x1800, 0x1000, 0x3000);
+    for (int i = 0; i < 0x4000; i += 4)
+    {
+      assertEquals(i, this.memory.read32(i));
+    }
+
+    this.memory.copy(0x2004, 0x2000, 8);
+    this.memory.copy(0x5000, 0x5002, 4);
+    assertEquals(0x2008, this.memory.read32(0x2004));
+    assertEquals(0x50005004, this.memory.read32(0x5004));
+  }
+
+  /**
+   * Tests that a chunk that ends on a page boundary does not share the page
+   * after it with the next chunk, so that page can still be entered in the
+   * TLB.
+   */
+  @Test
+  public void testAdjacentChunksDoNotSharePages()
+  {
+    Chunk c1 = new Chunk(0, 0x1000);
+    Chunk c2 = new Chunk(0x1000, 0x1000);
+    RegionMap map = new RegionMap(Memory.DEFAULT_TLB_SIZE).withChunk(c1).withChunk(c2);
+
+    assertTrue(map.mapsPage(c1, 0));
+    assertTrue(map.mapsPage(c2, 1));
+    assertNull(map.find(0x2000));
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#copy(int, int, int)}.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testCopyNegativeLengthFails()
+  {
+    this.memory.create(0, 0x1000);
+    this.memory.copy(0, 0x10, -1);
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#dispose()}.
+   */
+  @Test
+  public void testDispose()
+  {
+    Chunk c1 = this.memory.create(0, 0x1000);
+    Chunk c2 = this.memory.add(new DirectChunk(0x1000, 0x1000));
+    assertEquals(0xFFFFFFFF, this.memory.read32(0x1000));
+
+    this.memory.dispose();
+
+    assertTrue(c1.isDisposed());
+    assertTrue(c2.isDisposed());
+    assertNull(this.memory.find(0));
+    assertNull(this.memory.find(0x1000));
+    assertEquals(0, this.memory.read32(0x1000));
+  }
+
   /**
    * Test method for {@link nl.lxtreme.arm.memory.Memory#find(long)}.
    */
@@ -73,4 +588,265 @@ public class MemoryTest
     assertSame(c3, this.memory.find(399));
     assertNull(this.memory.find(400));
   }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#find(long)}.
+   */
+  @Test
+  public void testFindManyChunks()
+  {
+    Chunk[] chunks = new Chunk[256];
+    for (int i = 0; i < chunks.length; i++)
+    {
+      chunks[i] = this.memory.create(0x10000000L + (i * 0x3000L), 0x1800);
+    }
+
+    for (int i = 0; i < chunks.length; i++)
+    {
+      int base = 0x10000000 + (i * 0x3000);
+      assertSame(chunks[i], this.memory.find(base));
+      assertSame(chunks[i], this.memory.find(base + 0x17FF));
+      assertNull(this.memory.find(base + 0x1800));
+      assertNull(this.memory.find(base - 1));
+    }
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#find(long)}.
+   */
+  @Test
+  public void testFindTopOfAddressSpace()
+  {
+    // As used for the stack; mind that CPU addresses are sign-extended...
+    Chunk c1 = this.memory.create(0x100000000L - 8192, 8192);
+
+    assertSame(c1, this.memory.find(0x100000000L - 8192));
+    assertSame(c1, this.memory.find(0xFFFFE000));
+    assertSame(c1, this.memory.find(0xFFFFFFFC));
+    assertSame(c1, this.memory.find(-1));
+    assertNull(this.memory.find(0xFFFFD000));
+    assertNull(this.memory.find(0));
+  }
+
+  /**
+   * Tests that a chunk in the upper half of the address space maps its base
+   * address onto its first byte, whether written as memory or as stream.
+   */
+  @Test
+  public void testUpperHalfChunk() throws IOException
+  {
+    Chunk c1 = this.memory.create(0x90000000L, 4096);
+    c1.write(new byte[] { 1, 2, 3, 4 });
+
+    assertEquals(0x01020304, this.memory.read32(0x90000000));
+    assertEquals(0x01020304, c1.read32(0x90000000));
+
+    this.memory.write32(0x90000FFC, 0x05060708);
+    assertEquals(0x08, c1.read8(0x90000FFF));
+    assertSame(c1, this.memory.find(0x90000FFF));
+    assertNull(this.memory.find(0x90001000));
+    assertNull(this.memory.find(0x8FFFFFFF));
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#findCode(int)}.
+   */
+  @Test
+  public void testFindCodeUsesTlb()
+  {
+    Chunk c1 = this.memory.create(0x8000, 0x2000);
+
+    assertSame(c1, this.memory.findCode(0x8000));
+    assertSame(c1, this.memory.findCode(0x8004));
+    assertSame(c1, this.memory.findCode(0x9FFC));
+    assertNull(this.memory.findCode(0xA000));
+
+    assertEquals(1, this.memory.getFetchHits());
+    assertEquals(3, this.memory.getFetchMisses());
+    // Fetches and data have separate entries...
+    assertEquals(0, this.memory.getDataHits());
+    assertEquals(0, this.memory.getDataMisses());
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#read32(int)}.
+   */
+  @Test
+  public void testReadWriteUsesTlb()
+  {
+    this.memory.create(0x8000, 0x2000);
+
+    this.memory.write32(0x8000, 0x12345678);
+    assertEquals(0x12345678, this.memory.read32(0x8000));
+    assertEquals(0x12, this.memory.read8(0x8000));
+
+    assertEquals(2, this.memory.getDataHits());
+    assertEquals(1, this.memory.getDataMisses());
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#create(long, int)}.
+   */
+  @Test
+  public void testCreateFlushesTlb()
+  {
+    Chunk c1 = this.memory.create(0x8000, 0x1000);
+    assertSame(c1, this.memory.findCode(0x8000));
+    assertNull(this.memory.findCode(0x9000));
+
+    Chunk c2 = this.memory.create(0x9000, 0x1000);
+    assertSame(c2, this.memory.findCode(0x9000));
+    assertSame(c1, this.memory.findCode(0x8000));
+
+    assertEquals(0, this.memory.getFetchHits());
+    assertEquals(4, this.memory.getFetchMisses());
+  }
+
+  /**
+   * Tests that partially mapped pages are never cached in the TLB.
+   */
+  @Test
+  public void testPartialPagesAreNotCached()
+  {
+    Chunk c1 = this.memory.create(0, 100);
+    Chunk c2 = this.memory.create(200, 100);
+
+    assertSame(c1, this.memory.findCode(50));
+    assertNull(this.memory.findCode(150));
+    assertSame(c2, this.memory.findCode(250));
+
+    assertEquals(0, this.memory.getFetchHits());
+    assertEquals(3, this.memory.getFetchMisses());
+  }
+
+  /**
+   * Test method for {@link nl.lxtreme.arm.memory.Memory#restore(MemorySnapshot)}.
+   */
+  @Test
+  public void testSnapshotRestore()
+  {
+    this.memory.create(0, 16 * 1024 * 1024);
+    this.memory.write32(0x100, 1);
+
+    MemorySnapshot s1 = this.memory.snapshot();
+    assertEquals(16 * 1024 * 1024, s1.getSize());
+
+    this.memory.write32(0x100, 2);
+    this.memory.write32(0x104, 3); // same page
+    this.memory.write8(0x5000, (byte) 7);
+    this.memory.write(0x9FFE, new byte[] { 1, 2, 3, 4 }, 0, 4); // two pages
+    assertEquals(2, this.memory.read32(0x100));
+
+    // Only the written pages are copied back...
+    assertEquals(4, this.memory.restore(s1));
+    assertEquals(1, this.memory.read32(0x100));
+    assertEquals(-1, this.memory.read32(0x104));
+    assertEquals((byte) 0xFF, this.memory.read8(0x5000));
+    assertEquals(-1, this.memory.read32(0x9FFE));
+
+    // Nothing changed since the restore...
+    assertEquals(0, this.memory.restore(s1));
+
+    // Writes after a restore are tracked as well...
+    this.memory.write32(0x100, 4);
+    assertEquals(1, this.memory.restore(s1));
+    assertEquals(1, this.memory.read32(0x100));
+
+    // Restoring another snapshot than the last one copies everything...
+    this.memory.write32(0x100, 5);
+    MemorySnapshot s2 = this.memory.snapshot();
+    assertEquals(4096, this.memory.restore(s1));
+    assertEquals(1, this.memory.read32(0x100));
+    assertEquals(4096, this.memory.restore(s2));
+    assertEquals(5, this.memory.read32(0x100));
+  }
+
+  /**
+   * Tests that values stored directly into a chunk after a snapshot, rather
+   * than through the memory map, are restored as well.
+   */
+  @Test
+  public void testSnapshotRestoreDirectChunkWrite()
+  {
+    Chunk c1 = this.memory.create(0, 0x2000);
+    Chunk c2 = this.memory.createSparse(0x10000, 0x2000);
+    MemorySnapshot snapshot = this.memory.snapshot();
+
+    c1.write32(0x1000, 1);
+    c2.write32(0x11000, 2);
+
+    assertEquals(2, this.memory.restore(snapshot));
+    assertEquals(-1, c1.read32(0x1000));
+    assertEquals(-1, c2.read32(0x11000));
+  }
+
+  /**
+   * Tests that a snapshot covers sparse chunks as well, and that pages they
+   * allocate after the snapshot are freed again upon a restore.
+   */
+  @Test
+  public void testSnapshotRestoreSparse()
+  {
+    SparseChunk c = (SparseChunk) this.memory.createSparse(0x20000000L, 64 * 1024 * 1024);
+    this.memory.write32(0x20000000, 1);
+
+    MemorySnapshot snapshot = this.memory.snapshot();
+    assertEquals(4096, snapshot.getSize());
+
+    this.memory.write32(0x20000000, 2);
+    this.memory.write32(0x23000000, 3);
+    // Three pages, of which the one in the middle is never accessed alone...
+    this.memory.fill(0x21000000, 0x3000, (byte) 0);
+    assertEquals(5 * 4096L, c.getAllocatedSize());
+
+    assertEquals(5, this.memory.restore(snapshot));
+    assertEquals(1, this.memory.read32(0x20000000));
+    assertEquals(-1, this.memory.read32(0x23000000));
+    assertEquals(-1, this.memory.read32(0x21001000));
+    assertEquals(4096L, c.getAllocatedSize());
+  }
+
+  /**
+   * Tests that a block transfer over three or more pages marks the pages in
+   * between as changed since the snapshot.
+   */
+  @Test
+  public void testSnapshotBlockOverCleanPage()
+  {
+    this.memory.create(0, 0x4000);
+    MemorySnapshot snapshot = this.memory.snapshot();
+
+    this.memory.fill(0x800, 0x3000, (byte) 0);
+    assertEquals(0, this.memory.read32(0x1800));
+
+    assertEquals(4, this.memory.restore(snapshot));
+    assertEquals(-1, this.memory.read32(0x1800));
+    assertEquals(-1, this.memory.read32(0x2800));
+  }
+
+  /**
+   * Tests that restoring a snapshot invalidates the code decoded from the
+   * restored pages only.
+   */
+  @Test
+  public void testRestoreInvalidatesCode()
+  {
+    this.memory.create(0, 0x3000);
+    this.memory.write32(0x1000, 0xE3A00000);
+
+    MemorySnapshot snapshot = this.memory.snapshot();
+
+    CodePage p1 = this.memory.codePage(0x1000);
+    CodePage p2 = this.memory.codePage(0x2000);
+    int v2 = p2.getVersion();
+
+    this.memory.write32(0x1000, 0xE3A00001);
+    int v1 = p1.getVersion();
+    assertSame(p1, this.memory.codePage(0x1000));
+
+    assertEquals(1, this.memory.restore(snapshot));
+    assertTrue(v1 != p1.getVersion());
+    assertEquals(v2, p2.getVersion());
+    assertEquals(0xE3A00000, this.memory.fetch32(0x1000));
+  }
 }
@@ -0,0 +1,181 @@
+/*
+ * Java ARM-emu.
+ * 
+ * (C) Copyright 2011-2012, J.W. Janssen <j.w.janssen@lxtreme.nl>
+ */
+package nl.lxtreme.arm.memory;
+
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+
+import org.junit.*;
+
+
+/**
+ * Test cases for {@link SparseChunk}.
+ */
+public class SparseChunkTest
+{
+  // CONSTANTS
+
+  private static final int SIZE = 64 * 1024 * 1024;
+
+  // VARIABLES
+
+  private SparseChunk chunk;
+
+  // METHODS
+
+  /**
+   * @throws java.lang.Exception
+   */
+  @Before
+  public void setUp() throws Exception
+  {
+    this.chunk = new SparseChunk(0x20000000L, SIZE);
+  }
+
+  /**
+   * Tests that untouched memory reads as 0xFF, without allocating anything.
+   */
+  @Test
+  public void testUntouchedMemory()
+  {
+    assertEquals(SIZE, this.chunk.getSize());
+    assertEquals(0xFFFFFFFF, this.chunk.read32(0x20000000));
+    assertEquals((short) 0xFFFF, this.chunk.read16(0x20000000 + SIZE - 2));
+    assertEquals((byte) 0xFF, this.chunk.read8(0x21000000));
+    assertEquals(0xFFFFFFFF, this.chunk.fetch32(0x21000000));
+    assertEquals(0L, this.chunk.getAllocatedSize());
+  }
+
+  /**
+   * Tests that only the pages that are written to are allocated.
+   */
+  @Test
+  public void testReadWrite()
+  {
+    this.chunk.write32(0x20000000, 0x12345678);
+    this.chunk.write16(0x21000004, (short) 0x9abc);
+    this.chunk.write8(0x21000006, (byte) 0xde);
+
+    assertEquals(0x12345678, this.chunk.read32(0x20000000));
+    assertEquals(0x12345678, this.chunk.fetch32(0x20000000));
+    assertEquals(0xFFFFFFFF, this.chunk.read32(0x20000004));
+    assertEquals(0x9abcdeff, this.chunk.read32(0x21000004));
+    assertEquals(2L * 4096, this.chunk.getAllocatedSize());
+  }
+
+  /**
+   * Tests unaligned accesses that span two pages.
+   */
+  @Test
+  public void testAccessSpanningPages()
+  {
+    SparseChunk c = new SparseChunk(0, 8192, Endianness.LITTLE);
+
+    c.write32(4094, 0x12345678);
+    assertEquals(0x12345678, c.read32(4094));
+    assertEquals(0x78, c.read8(4094));
+    assertEquals(0x12, c.read8(4097));
+    assertEquals((short) 0x1234, c.read16(4096));
+    assertEquals(8192L, c.getAllocatedSize());
+
+    // Only the first half of this word is touched...
+    this.chunk.write16(0x20000FFE, (short) 0x1234);
+    assertEquals(0x1234FFFF, this.chunk.read32(0x20000FFE));
+    assertEquals(4096L, this.chunk.getAllocatedSize());
+  }
+
+  /**
+   * Tests that a chunk that does not end on a page boundary cannot be accessed
+   * beyond its end.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testAccessBeyondEndFails()
+  {
+    SparseChunk c = new SparseChunk(0, 4098);
+    c.write8(4097, (byte) 0x12);
+    c.read32(4096);
+  }
+
+  /**
+   * Tests that a sparse chunk can be loaded as {@link OutputStream}.
+   */
+  @Test
+  public void testWriteAsStream() throws IOException
+  {
+    this.chunk.write(0x12);
+    this.chunk.write(0x34);
+
+    assertEquals((short) 0x1234, this.chunk.read16(0x20000000));
+    assertEquals(4096L, this.chunk.getAllocatedSize());
+  }
+
+  /**
+   * Tests that threads that first write to the same pages at once all end up
+   * writing to the same storage.
+   */
+  @Test
+  public void testConcurrentFirstWrites() throws Exception
+  {
+    final int pages = 1024;
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++)
+    {
+      final int offset = 4 * t;
+      threads[t] = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          for (int p = 0; p < pages; p++)
+          {
+            int addr = 0x20000000 + (p << 12) + offset;
+            SparseChunkTest.this.chunk.write32(addr, addr);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads)
+    {
+      thread.start();
+    }
+    for (Thread thread : threads)
+    {
+      thread.join();
+    }
+
+    for (int p = 0; p < pages; p++)
+    {
+      for (int t = 0; t < threads.length; t++)
+      {
+        int addr = 0x20000000 + (p << 12) + 4 * t;
+        assertEquals(addr, this.chunk.read32(addr));
+        assertEquals(addr, this.chunk.fetch32(addr));
+      }
+    }
+    assertEquals(pages * 4096L, this.chunk.getAllocatedSize());
+  }
+
+  /**
+   * Test method for
+   * {@link nl.lxtreme.arm.memory.Memory#createSparse(long, int)}.
+   */
+  @Test
+  public void testCreateSparse()
+  {
+    Memory memory = new Memory();
+    Chunk c = memory.createSparse(0x20000000L, SIZE);
+
+    memory.write32(0x23000000, 0xCAFEBABE);
+
+    assertTrue(c instanceof SparseChunk);
+    assertSame(c, memory.createSparse(0x20000000L, SIZE));
+    assertEquals(0xCAFEBABE, memory.read32(0x23000000));
+    assertEquals(0xFFFFFFFF, memory.read32(0x23001000));
+    assertEquals(4096L, ((SparseChunk) c).getAllocatedSize());
+  }
+}